@@ -0,0 +1,143 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser;
+
+import java.util.Collections;
+import java.util.SortedMap;
+
+
+/**
+ * <p>
+ *   Result of parsing a batch of documents by means of
+ *   {@link MarkupParser#parseAll(Iterable, IMarkupHandlerFactory, java.util.concurrent.Executor)}, aggregating
+ *   the errors raised and the time spent.
+ * </p>
+ * <p>
+ *   Objects of this class are <strong>immutable</strong>.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class BatchParseResult {
+
+    private final int documentCount;
+    private final SortedMap<Integer,ParseException> errors;
+    private final long totalTimeNanos;
+    private final long parseTimeNanos;
+
+
+
+    BatchParseResult(
+            final int documentCount, final SortedMap<Integer,ParseException> errors,
+            final long totalTimeNanos, final long parseTimeNanos) {
+        super();
+        this.documentCount = documentCount;
+        this.errors = Collections.unmodifiableSortedMap(errors);
+        this.totalTimeNanos = totalTimeNanos;
+        this.parseTimeNanos = parseTimeNanos;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of documents that have been parsed (whether successfully or not).
+     * </p>
+     *
+     * @return the number of documents.
+     */
+    public int getDocumentCount() {
+        return this.documentCount;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of documents that could not be parsed because of an error.
+     * </p>
+     *
+     * @return the number of failed documents.
+     */
+    public int getFailedDocumentCount() {
+        return this.errors.size();
+    }
+
+
+    /**
+     * <p>
+     *   Returns whether all the documents have been parsed without errors.
+     * </p>
+     *
+     * @return true if no errors were raised, false if not.
+     */
+    public boolean isSuccessful() {
+        return this.errors.isEmpty();
+    }
+
+
+    /**
+     * <p>
+     *   Returns the errors raised during parsing, indexed by the index of the document that raised them (in
+     *   iteration order, starting at 0). Any exceptions other than {@link ParseException} raised by the handlers
+     *   will be wrapped into a {@link ParseException}.
+     * </p>
+     *
+     * @return the errors, as an unmodifiable map.
+     */
+    public SortedMap<Integer,ParseException> getErrors() {
+        return this.errors;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the (wall-clock) time spent parsing the whole batch, in nanoseconds.
+     * </p>
+     *
+     * @return the total time.
+     */
+    public long getTotalTimeNanos() {
+        return this.totalTimeNanos;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the sum of the time spent parsing each of the documents, in nanoseconds. Compared with
+     *   {@link #getTotalTimeNanos()}, this gives an idea of the parallelism achieved.
+     * </p>
+     *
+     * @return the aggregated parse time.
+     */
+    public long getParseTimeNanos() {
+        return this.parseTimeNanos;
+    }
+
+
+    @Override
+    public String toString() {
+        return "{documents=" + this.documentCount + ", failed=" + this.errors.size() +
+                ", totalTimeNanos=" + this.totalTimeNanos + ", parseTimeNanos=" + this.parseTimeNanos + "}";
+    }
+
+
+}
@@ -0,0 +1,118 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser;
+
+
+/**
+ * <p>
+ *   Snapshot of the statistics of the pool of <tt>char[]</tt> buffers used by a {@link MarkupParser},
+ *   obtained by means of {@link MarkupParser#getBufferPoolStatistics()}.
+ * </p>
+ * <p>
+ *   A high number of <em>misses</em> compared to <em>hits</em> usually means the pool size (or the
+ *   maximum retained size) is too small for the amount of concurrent parsing operations, and a high number
+ *   of <em>growths</em> usually means the buffer size is too small for the documents being parsed.
+ * </p>
+ * <p>
+ *   Objects of this class are <strong>immutable</strong>.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class BufferPoolStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final long growths;
+    private final long retainedSize;
+
+
+
+    BufferPoolStatistics(final long hits, final long misses, final long growths, final long retainedSize) {
+        super();
+        this.hits = hits;
+        this.misses = misses;
+        this.growths = growths;
+        this.retainedSize = retainedSize;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of buffer requests that were served with a pooled buffer.
+     * </p>
+     *
+     * @return the number of hits.
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of buffer requests that could not be served with a pooled buffer, and
+     *   therefore required the creation of a new one.
+     * </p>
+     *
+     * @return the number of misses.
+     */
+    public long getMisses() {
+        return this.misses;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of times a buffer had to grow (doubling its size) during parsing because
+     *   an artifact (structure or text) did not fit into it.
+     * </p>
+     *
+     * @return the number of growths.
+     */
+    public long getGrowths() {
+        return this.growths;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the amount of memory (in chars) currently retained by the pool, i.e. the sum of the
+     *   sizes of all the pooled buffers not currently in use.
+     * </p>
+     *
+     * @return the retained size, in chars.
+     */
+    public long getRetainedSize() {
+        return this.retainedSize;
+    }
+
+
+    @Override
+    public String toString() {
+        return "{hits=" + this.hits + ", misses=" + this.misses + ", growths=" + this.growths +
+                ", retainedSize=" + this.retainedSize + "}";
+    }
+
+
+}
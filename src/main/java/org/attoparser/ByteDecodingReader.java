@@ -0,0 +1,378 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+
+/*
+ * Reader implementation that decodes bytes (coming from an InputStream, a byte[], a ByteBuffer or a FileChannel)
+ * directly into the char[] buffers it is asked to fill, which will normally be the pooled buffers used by MarkupParser.
+ *
+ * Compared to an InputStreamReader, this avoids any intermediate char buffers, avoids copying the bytes at all
+ * when these are already in memory (byte[] or ByteBuffer), and applies a direct byte-to-char conversion without
+ * the need of a CharsetDecoder when the charset is ISO-8859-1 or US-ASCII.
+ *
+ * When reading from a FileChannel, the file is memory-mapped in consecutive read-only windows of (at most)
+ * DEFAULT_MAPPED_WINDOW_SIZE bytes, so that the I/O is performed by the OS page cache and no bytes are copied
+ * into heap buffers. Bytes not yet decoded at the end of a window (e.g. part of a multi-byte char) are
+ * simply included at the beginning of the next window.
+ *
+ * If no charset is specified, it will be detected by means of ParsingEncodingUtil.
+ *
+ * Just like InputStreamReader, malformed or unmappable input is replaced with the replacement character.
+ *
+ * This class is NOT thread-safe. Should only be used inside a specific parsing operation.
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+final class ByteDecodingReader extends Reader {
+
+    private static final int DEFAULT_INPUT_BUFFER_SIZE = 8192;
+    static final int DEFAULT_MAPPED_WINDOW_SIZE = 32 * 1024 * 1024;
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    private final InputStream stream;
+    private final FileChannel channel;
+    private final long channelSize;
+    private final int mappedWindowSize;
+    private long windowStart;
+    private ByteBuffer bytes;
+    private final Charset charset;
+
+    // Only one of these will apply: direct byte-to-char conversion (latin1 or ascii) or use of a decoder
+    private final boolean latin1;
+    private final boolean ascii;
+    private final CharsetDecoder decoder;
+
+    private boolean eof;
+    private boolean flushed;
+
+    // Needed only if asked to fill a one-char space with a decoded surrogate pair
+    private CharBuffer surrogatePair;
+    private boolean pendingCharPresent;
+    private char pendingChar;
+
+
+
+    ByteDecodingReader(
+            final InputStream stream, final Charset charset, final boolean html, final Charset defaultCharset)
+            throws IOException {
+
+        super();
+
+        this.stream = stream;
+        this.channel = null;
+        this.channelSize = -1L;
+        this.mappedWindowSize = 0;
+        this.bytes = ByteBuffer.allocate(DEFAULT_INPUT_BUFFER_SIZE);
+        this.bytes.flip(); // Initially empty
+        this.eof = false;
+
+        if (charset == null) {
+            // We need enough bytes to detect the encoding, so we will read these in advance
+            while (!this.eof && this.bytes.remaining() < ParsingEncodingUtil.PRESCAN_LEN) {
+                fill();
+            }
+        }
+
+        this.charset = initCharset(charset, html, defaultCharset);
+        this.latin1 = ParsingEncodingUtil.ISO_8859_1.equals(this.charset);
+        this.ascii = ParsingEncodingUtil.US_ASCII.equals(this.charset);
+        this.decoder = (this.latin1 || this.ascii ? null : newDecoder(this.charset));
+
+    }
+
+
+    ByteDecodingReader(
+            final ByteBuffer bytes, final Charset charset, final boolean html, final Charset defaultCharset) {
+
+        super();
+
+        this.stream = null;
+        this.channel = null;
+        this.channelSize = -1L;
+        this.mappedWindowSize = 0;
+        // A duplicate will allow us to not modify the position of the original buffer
+        this.bytes = bytes.duplicate();
+        this.eof = true; // All the bytes are already here
+
+        this.charset = initCharset(charset, html, defaultCharset);
+        this.latin1 = ParsingEncodingUtil.ISO_8859_1.equals(this.charset);
+        this.ascii = ParsingEncodingUtil.US_ASCII.equals(this.charset);
+        this.decoder = (this.latin1 || this.ascii ? null : newDecoder(this.charset));
+
+    }
+
+
+
+    ByteDecodingReader(
+            final FileChannel channel, final int mappedWindowSize,
+            final Charset charset, final boolean html, final Charset defaultCharset)
+            throws IOException {
+
+        super();
+
+        this.stream = null;
+        this.channel = channel;
+        this.channelSize = channel.size();
+        this.mappedWindowSize = mappedWindowSize;
+        // If the charset needs to be detected, the first window must include all the bytes to be examined
+        this.bytes = map(0L, (charset == null ? ParsingEncodingUtil.PRESCAN_LEN : 0));
+
+        this.charset = initCharset(charset, html, defaultCharset);
+        this.latin1 = ParsingEncodingUtil.ISO_8859_1.equals(this.charset);
+        this.ascii = ParsingEncodingUtil.US_ASCII.equals(this.charset);
+        this.decoder = (this.latin1 || this.ascii ? null : newDecoder(this.charset));
+
+    }
+
+
+
+    private Charset initCharset(final Charset charset, final boolean html, final Charset defaultCharset) {
+
+        if (charset != null) {
+            return charset;
+        }
+
+        final Charset detectedCharset = ParsingEncodingUtil.detectCharset(this.bytes, html, defaultCharset);
+
+        // When auto-detecting, the BOM (if any) is not part of the document
+        if (detectedCharset.equals(ParsingEncodingUtil.detectBOMCharset(this.bytes))) {
+            this.bytes.position(this.bytes.position() + ParsingEncodingUtil.computeBOMLength(this.bytes));
+        }
+
+        return detectedCharset;
+
+    }
+
+
+    private static CharsetDecoder newDecoder(final Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+
+
+    Charset getCharset() {
+        return this.charset;
+    }
+
+
+
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+
+        if (len == 0) {
+            return 0;
+        }
+
+        int n = 0;
+
+        if (this.pendingCharPresent) {
+            cbuf[off] = this.pendingChar;
+            this.pendingCharPresent = false;
+            n++;
+        }
+
+        if (this.decoder == null) {
+
+            while (n < len) {
+                if (!this.bytes.hasRemaining() && !fill()) {
+                    break;
+                }
+                n += convert(cbuf, off + n, len - n);
+            }
+
+        } else {
+
+            while (n < len && !this.flushed) {
+
+                final int start = off + n;
+                final CharBuffer out = CharBuffer.wrap(cbuf, start, len - n);
+
+                final CoderResult result = this.decoder.decode(this.bytes, out, this.eof);
+                final int produced = out.position() - start;
+                n += produced;
+
+                if (result.isOverflow()) {
+                    if (produced == 0) {
+                        // Not even one char could be output: only one char was left and we got a surrogate pair
+                        n += decodeSurrogatePair(cbuf, start);
+                    }
+                    break;
+                }
+
+                // Underflow: more input is needed, unless there is no more
+                if (this.eof) {
+                    final CharBuffer flushOut = CharBuffer.wrap(cbuf, off + n, len - n);
+                    if (this.decoder.flush(flushOut).isUnderflow()) {
+                        this.flushed = true;
+                    }
+                    n += flushOut.position() - (off + n);
+                } else {
+                    fill();
+                }
+
+            }
+
+        }
+
+        return (n == 0 ? -1 : n);
+
+    }
+
+
+
+    /*
+     * Direct conversion for ISO-8859-1 and US-ASCII, which do not need the use of a decoder.
+     */
+    private int convert(final char[] cbuf, final int off, final int len) {
+
+        final int count = Math.min(len, this.bytes.remaining());
+
+        if (this.bytes.hasArray()) {
+
+            final byte[] array = this.bytes.array();
+            final int arrayOffset = this.bytes.arrayOffset() + this.bytes.position();
+
+            if (this.latin1) {
+                for (int i = 0; i < count; i++) {
+                    cbuf[off + i] = (char)(array[arrayOffset + i] & 0xFF);
+                }
+            } else {
+                byte b;
+                for (int i = 0; i < count; i++) {
+                    b = array[arrayOffset + i];
+                    cbuf[off + i] = (b >= 0 ? (char) b : REPLACEMENT_CHAR);
+                }
+            }
+
+            this.bytes.position(this.bytes.position() + count);
+
+        } else {
+
+            byte b;
+            for (int i = 0; i < count; i++) {
+                b = this.bytes.get();
+                cbuf[off + i] = (this.latin1 ? (char)(b & 0xFF) : (b >= 0 ? (char) b : REPLACEMENT_CHAR));
+            }
+
+        }
+
+        return count;
+
+    }
+
+
+
+    private int decodeSurrogatePair(final char[] cbuf, final int off) throws IOException {
+
+        if (this.surrogatePair == null) {
+            this.surrogatePair = CharBuffer.allocate(2);
+        }
+        this.surrogatePair.clear();
+
+        this.decoder.decode(this.bytes, this.surrogatePair, this.eof);
+        this.surrogatePair.flip();
+
+        if (!this.surrogatePair.hasRemaining()) {
+            return 0;
+        }
+
+        cbuf[off] = this.surrogatePair.get();
+        if (this.surrogatePair.hasRemaining()) {
+            this.pendingChar = this.surrogatePair.get();
+            this.pendingCharPresent = true;
+        }
+        return 1;
+
+    }
+
+
+
+    /*
+     * Read more bytes from the input stream (if any) while keeping all not-yet-decoded bytes in the input buffer
+     */
+    private boolean fill() throws IOException {
+
+        if (this.eof) {
+            return false;
+        }
+
+        if (this.channel != null) {
+            // Map the next window, starting at the first byte that has not been decoded yet (and making sure
+            // the new window will include, at least, more bytes than the ones that could not be decoded yet)
+            this.bytes = map(this.windowStart + this.bytes.position(), this.bytes.remaining());
+            return true;
+        }
+
+        this.bytes.compact();
+        try {
+            final int read =
+                    this.stream.read(
+                            this.bytes.array(), this.bytes.arrayOffset() + this.bytes.position(), this.bytes.remaining());
+            if (read == -1) {
+                this.eof = true;
+                return false;
+            }
+            this.bytes.position(this.bytes.position() + read);
+            return true;
+        } finally {
+            this.bytes.flip();
+        }
+
+    }
+
+
+
+    private ByteBuffer map(final long position, final int pendingLen) throws IOException {
+        final long size = Math.min(pendingLen + this.mappedWindowSize, this.channelSize - position);
+        this.windowStart = position;
+        this.eof = (position + size >= this.channelSize);
+        return this.channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+
+
+    @Override
+    public void close() throws IOException {
+        if (this.stream != null) {
+            this.stream.close();
+        }
+        if (this.channel != null) {
+            this.channel.close();
+        }
+    }
+
+
+}
@@ -0,0 +1,394 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser;
+
+
+import org.attoparser.config.ParseConfiguration;
+import org.attoparser.select.ParseSelection;
+
+/*
+ * Handler that delegates all events to a next handler which can be replaced between parsing operations.
+ *
+ * This allows placing it at the end of a handler chain (HtmlMarkupHandler + MarkupEventProcessorHandler)
+ * that is reused for parsing several documents, each of them with its own handler. The parse configuration
+ * and status received are kept so that they can be set on each new handler, along with a new ParseSelection
+ * (handlers that are reused from one document to the next one are not set up again).
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+final class DelegatingMarkupHandler extends AbstractMarkupHandler {
+
+
+    private IMarkupHandler next = null;
+
+    private ParseConfiguration parseConfiguration = null;
+    private ParseStatus status = null;
+
+
+
+    DelegatingMarkupHandler() {
+        super();
+    }
+
+
+
+
+    void setNext(final IMarkupHandler next) {
+        if (next == null) {
+            throw new IllegalArgumentException("Next handler cannot be null");
+        }
+        if (next == this.next) {
+            // Same handler as in the previous operation, it has already been set up
+            return;
+        }
+        this.next = next;
+        if (this.parseConfiguration != null) {
+            this.next.setParseConfiguration(this.parseConfiguration);
+        }
+        if (this.status != null) {
+            this.next.setParseStatus(this.status);
+        }
+        this.next.setParseSelection(new ParseSelection());
+    }
+
+
+
+
+    void clearNext() {
+        this.next = null;
+    }
+
+
+
+
+    @Override
+    public void setParseConfiguration(final ParseConfiguration parseConfiguration) {
+        this.parseConfiguration = parseConfiguration;
+        if (this.next != null) {
+            this.next.setParseConfiguration(parseConfiguration);
+        }
+    }
+
+
+
+    @Override
+    public void setParseStatus(final ParseStatus status) {
+        this.status = status;
+        if (this.next != null) {
+            this.next.setParseStatus(status);
+        }
+    }
+
+
+
+    @Override
+    public void setParseSelection(final ParseSelection selection) {
+        // A new selection will be set on each new next handler
+        if (this.next != null) {
+            this.next.setParseSelection(selection);
+        }
+    }
+
+
+
+
+    @Override
+    public void handleDocumentStart(
+            final long startTimeNanos, final int line, final int col)
+            throws ParseException {
+        this.next.handleDocumentStart(startTimeNanos, line, col);
+    }
+
+
+    @Override
+    public void handleDocumentEnd(
+            final long endTimeNanos, final long totalTimeNanos, final int line, final int col)
+            throws ParseException {
+        this.next.handleDocumentEnd(endTimeNanos, totalTimeNanos, line, col);
+    }
+
+
+
+    @Override
+    public void handleXmlDeclaration(
+            final char[] buffer,
+            final int keywordOffset, final int keywordLen,
+            final int keywordLine, final int keywordCol,
+            final int versionOffset, final int versionLen,
+            final int versionLine, final int versionCol,
+            final int encodingOffset, final int encodingLen,
+            final int encodingLine, final int encodingCol,
+            final int standaloneOffset, final int standaloneLen,
+            final int standaloneLine, final int standaloneCol,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleXmlDeclaration(
+                buffer,
+                keywordOffset, keywordLen, keywordLine, keywordCol,
+                versionOffset, versionLen, versionLine, versionCol,
+                encodingOffset, encodingLen, encodingLine, encodingCol,
+                standaloneOffset, standaloneLen, standaloneLine, standaloneCol,
+                outerOffset, outerLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleDocType(
+            final char[] buffer,
+            final int keywordOffset, final int keywordLen,
+            final int keywordLine, final int keywordCol,
+            final int elementNameOffset, final int elementNameLen,
+            final int elementNameLine, final int elementNameCol,
+            final int typeOffset, final int typeLen,
+            final int typeLine, final int typeCol,
+            final int publicIdOffset, final int publicIdLen,
+            final int publicIdLine, final int publicIdCol,
+            final int systemIdOffset, final int systemIdLen,
+            final int systemIdLine, final int systemIdCol,
+            final int internalSubsetOffset, final int internalSubsetLen,
+            final int internalSubsetLine, final int internalSubsetCol,
+            final int outerOffset, final int outerLen,
+            final int outerLine, final int outerCol)
+            throws ParseException {
+        this.next.handleDocType(
+                buffer,
+                keywordOffset, keywordLen, keywordLine, keywordCol,
+                elementNameOffset, elementNameLen, elementNameLine, elementNameCol,
+                typeOffset, typeLen, typeLine, typeCol,
+                publicIdOffset, publicIdLen, publicIdLine, publicIdCol,
+                systemIdOffset, systemIdLen, systemIdLine, systemIdCol,
+                internalSubsetOffset, internalSubsetLen, internalSubsetLine, internalSubsetCol,
+                outerOffset, outerLen, outerLine, outerCol);
+    }
+
+
+
+    @Override
+    public void handleCDATASection(
+            final char[] buffer,
+            final int contentOffset, final int contentLen,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleCDATASection(buffer, contentOffset, contentLen, outerOffset, outerLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleComment(
+            final char[] buffer,
+            final int contentOffset, final int contentLen,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleComment(buffer, contentOffset, contentLen, outerOffset, outerLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleText(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleText(buffer, offset, len, line, col);
+    }
+
+
+    @Override
+    public void handleStandaloneElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final boolean minimized, final int line, final int col)
+            throws ParseException {
+        this.next.handleStandaloneElementStart(buffer, nameOffset, nameLen, minimized, line, col);
+    }
+
+    @Override
+    public void handleStandaloneElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final boolean minimized, final int line, final int col)
+            throws ParseException {
+        this.next.handleStandaloneElementEnd(buffer, nameOffset, nameLen, minimized, line, col);
+    }
+
+
+
+    @Override
+    public void handleOpenElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleOpenElementStart(buffer, nameOffset, nameLen, line, col);
+    }
+
+    @Override
+    public void handleOpenElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleOpenElementEnd(buffer, nameOffset, nameLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleAutoOpenElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleAutoOpenElementStart(buffer, nameOffset, nameLen, line, col);
+    }
+
+    @Override
+    public void handleAutoOpenElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleAutoOpenElementEnd(buffer, nameOffset, nameLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleCloseElementStart(buffer, nameOffset, nameLen, line, col);
+    }
+
+    @Override
+    public void handleCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleCloseElementEnd(buffer, nameOffset, nameLen, line, col);
+    }
+
+    @Override
+    public void handleCloseTagEndBadSymbol(char[] buffer, int offset, int len, int line, int col) throws ParseException {
+        this.next.handleCloseTagEndBadSymbol(buffer, offset, len, line, col);
+    }
+
+    @Override
+    public void handleAutoCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleAutoCloseElementStart(buffer, nameOffset, nameLen, line, col);
+    }
+
+    @Override
+    public void handleAutoCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleAutoCloseElementEnd(buffer, nameOffset, nameLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleUnmatchedCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleUnmatchedCloseElementStart(buffer, nameOffset, nameLen, line, col);
+    }
+
+
+    @Override
+    public void handleUnmatchedCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleUnmatchedCloseElementEnd(buffer, nameOffset, nameLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleAttribute(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int nameLine, final int nameCol,
+            final int operatorOffset, final int operatorLen,
+            final int operatorLine, final int operatorCol,
+            final int valueContentOffset, final int valueContentLen,
+            final int valueOuterOffset, final int valueOuterLen,
+            final int valueLine, final int valueCol)
+            throws ParseException {
+        this.next.handleAttribute(
+                buffer,
+                nameOffset, nameLen, nameLine, nameCol,
+                operatorOffset, operatorLen, operatorLine, operatorCol,
+                valueContentOffset, valueContentLen,
+                valueOuterOffset, valueOuterLen, valueLine, valueCol);
+    }
+
+
+
+    @Override
+    public void handleInnerWhiteSpace(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleInnerWhiteSpace(buffer, offset, len, line, col);
+    }
+
+
+
+    @Override
+    public void handleProcessingInstruction(
+            final char[] buffer,
+            final int targetOffset, final int targetLen,
+            final int targetLine, final int targetCol,
+            final int contentOffset, final int contentLen,
+            final int contentLine, final int contentCol,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        this.next.handleProcessingInstruction(
+                buffer,
+                targetOffset, targetLen, targetLine, targetCol,
+                contentOffset, contentLen, contentLine, contentCol,
+                outerOffset, outerLen, line, col);
+    }
+
+
+}
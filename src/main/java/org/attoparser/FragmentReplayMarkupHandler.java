@@ -0,0 +1,419 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser;
+
+
+/*
+ * Handler used for replaying the tape of events recorded for a fragment of a document parsed in parallel (see
+ * MarkupParser#parseInParallel) on the handler chain.
+ *
+ * Once a handler stops parsing, replay stops before the next structure (or text) starts, as parsing would have
+ * done: the rest of the events in the tape are ignored, and the location of that structure (the point at which
+ * parsing stopped) is set into the status.
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+final class FragmentReplayMarkupHandler extends AbstractMarkupHandler {
+
+
+    private final IMarkupHandler next;
+    private final ParseStatus status;
+    private boolean stopped = false;
+
+
+
+    FragmentReplayMarkupHandler(final IMarkupHandler next, final ParseStatus status) {
+        super();
+        this.next = next;
+        this.status = status;
+    }
+
+
+
+
+    boolean isStopped() {
+        return this.stopped;
+    }
+
+
+    private boolean skip(final int line, final int col) {
+        if (!this.stopped && this.status.parsingStopped) {
+            this.stopped = true;
+            this.status.line = line;
+            this.status.col = col;
+        }
+        return this.stopped;
+    }
+
+
+
+
+    @Override
+    public void handleDocumentStart(
+            final long startTimeNanos, final int line, final int col)
+            throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleDocumentStart(startTimeNanos, line, col);
+    }
+
+
+    @Override
+    public void handleDocumentEnd(
+            final long endTimeNanos, final long totalTimeNanos, final int line, final int col)
+            throws ParseException {
+        if (skip(line, col)) {
+            return;
+        }
+        this.next.handleDocumentEnd(endTimeNanos, totalTimeNanos, line, col);
+    }
+
+
+
+    @Override
+    public void handleXmlDeclaration(
+            final char[] buffer,
+            final int keywordOffset, final int keywordLen,
+            final int keywordLine, final int keywordCol,
+            final int versionOffset, final int versionLen,
+            final int versionLine, final int versionCol,
+            final int encodingOffset, final int encodingLen,
+            final int encodingLine, final int encodingCol,
+            final int standaloneOffset, final int standaloneLen,
+            final int standaloneLine, final int standaloneCol,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        if (skip(line, col)) {
+            return;
+        }
+        this.next.handleXmlDeclaration(
+                buffer,
+                keywordOffset, keywordLen, keywordLine, keywordCol,
+                versionOffset, versionLen, versionLine, versionCol,
+                encodingOffset, encodingLen, encodingLine, encodingCol,
+                standaloneOffset, standaloneLen, standaloneLine, standaloneCol,
+                outerOffset, outerLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleDocType(
+            final char[] buffer,
+            final int keywordOffset, final int keywordLen,
+            final int keywordLine, final int keywordCol,
+            final int elementNameOffset, final int elementNameLen,
+            final int elementNameLine, final int elementNameCol,
+            final int typeOffset, final int typeLen,
+            final int typeLine, final int typeCol,
+            final int publicIdOffset, final int publicIdLen,
+            final int publicIdLine, final int publicIdCol,
+            final int systemIdOffset, final int systemIdLen,
+            final int systemIdLine, final int systemIdCol,
+            final int internalSubsetOffset, final int internalSubsetLen,
+            final int internalSubsetLine, final int internalSubsetCol,
+            final int outerOffset, final int outerLen,
+            final int outerLine, final int outerCol)
+            throws ParseException {
+        if (skip(outerLine, outerCol)) {
+            return;
+        }
+        this.next.handleDocType(
+                buffer,
+                keywordOffset, keywordLen, keywordLine, keywordCol,
+                elementNameOffset, elementNameLen, elementNameLine, elementNameCol,
+                typeOffset, typeLen, typeLine, typeCol,
+                publicIdOffset, publicIdLen, publicIdLine, publicIdCol,
+                systemIdOffset, systemIdLen, systemIdLine, systemIdCol,
+                internalSubsetOffset, internalSubsetLen, internalSubsetLine, internalSubsetCol,
+                outerOffset, outerLen, outerLine, outerCol);
+    }
+
+
+
+    @Override
+    public void handleCDATASection(
+            final char[] buffer,
+            final int contentOffset, final int contentLen,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        if (skip(line, col)) {
+            return;
+        }
+        this.next.handleCDATASection(buffer, contentOffset, contentLen, outerOffset, outerLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleComment(
+            final char[] buffer,
+            final int contentOffset, final int contentLen,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        if (skip(line, col)) {
+            return;
+        }
+        this.next.handleComment(buffer, contentOffset, contentLen, outerOffset, outerLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleText(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        if (skip(line, col)) {
+            return;
+        }
+        this.next.handleText(buffer, offset, len, line, col);
+    }
+
+
+    @Override
+    public void handleStandaloneElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final boolean minimized, final int line, final int col)
+            throws ParseException {
+        if (skip(line, col)) {
+            return;
+        }
+        this.next.handleStandaloneElementStart(buffer, nameOffset, nameLen, minimized, line, col);
+    }
+
+    @Override
+    public void handleStandaloneElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final boolean minimized, final int line, final int col)
+            throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleStandaloneElementEnd(buffer, nameOffset, nameLen, minimized, line, col);
+    }
+
+
+
+    @Override
+    public void handleOpenElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        if (skip(line, col)) {
+            return;
+        }
+        this.next.handleOpenElementStart(buffer, nameOffset, nameLen, line, col);
+    }
+
+    @Override
+    public void handleOpenElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleOpenElementEnd(buffer, nameOffset, nameLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleAutoOpenElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleAutoOpenElementStart(buffer, nameOffset, nameLen, line, col);
+    }
+
+    @Override
+    public void handleAutoOpenElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleAutoOpenElementEnd(buffer, nameOffset, nameLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        if (skip(line, col)) {
+            return;
+        }
+        this.next.handleCloseElementStart(buffer, nameOffset, nameLen, line, col);
+    }
+
+    @Override
+    public void handleCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleCloseElementEnd(buffer, nameOffset, nameLen, line, col);
+    }
+
+    @Override
+    public void handleCloseTagEndBadSymbol(char[] buffer, int offset, int len, int line, int col) throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleCloseTagEndBadSymbol(buffer, offset, len, line, col);
+    }
+
+    @Override
+    public void handleAutoCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleAutoCloseElementStart(buffer, nameOffset, nameLen, line, col);
+    }
+
+    @Override
+    public void handleAutoCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleAutoCloseElementEnd(buffer, nameOffset, nameLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleUnmatchedCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleUnmatchedCloseElementStart(buffer, nameOffset, nameLen, line, col);
+    }
+
+
+    @Override
+    public void handleUnmatchedCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleUnmatchedCloseElementEnd(buffer, nameOffset, nameLen, line, col);
+    }
+
+
+
+    @Override
+    public void handleAttribute(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int nameLine, final int nameCol,
+            final int operatorOffset, final int operatorLen,
+            final int operatorLine, final int operatorCol,
+            final int valueContentOffset, final int valueContentLen,
+            final int valueOuterOffset, final int valueOuterLen,
+            final int valueLine, final int valueCol)
+            throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleAttribute(
+                buffer,
+                nameOffset, nameLen, nameLine, nameCol,
+                operatorOffset, operatorLen, operatorLine, operatorCol,
+                valueContentOffset, valueContentLen,
+                valueOuterOffset, valueOuterLen, valueLine, valueCol);
+    }
+
+
+
+    @Override
+    public void handleInnerWhiteSpace(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        if (this.stopped) {
+            return;
+        }
+        this.next.handleInnerWhiteSpace(buffer, offset, len, line, col);
+    }
+
+
+
+    @Override
+    public void handleProcessingInstruction(
+            final char[] buffer,
+            final int targetOffset, final int targetLen,
+            final int targetLine, final int targetCol,
+            final int contentOffset, final int contentLen,
+            final int contentLine, final int contentCol,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        if (skip(line, col)) {
+            return;
+        }
+        this.next.handleProcessingInstruction(
+                buffer,
+                targetOffset, targetLen, targetLine, targetCol,
+                contentOffset, contentLen, contentLine, contentCol,
+                outerOffset, outerLen, line, col);
+    }
+
+
+}
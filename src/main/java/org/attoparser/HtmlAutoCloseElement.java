@@ -34,6 +34,8 @@ class HtmlAutoCloseElement extends HtmlElement {
 
     protected final char[][] autoCloseRequired;
     protected final char[][] autoCloseLimits;
+    protected long[] autoCloseRequiredSet = null;
+    protected long[] autoCloseLimitsSet = null;
 
 
     HtmlAutoCloseElement(final String name, final String[] autoCloseElements, final String[] autoCloseLimits) {
@@ -65,6 +67,14 @@ class HtmlAutoCloseElement extends HtmlElement {
     }
 
 
+    @Override
+    void resolveIds() {
+        super.resolveIds();
+        this.autoCloseRequiredSet = HtmlElements.idSetForNames(this.autoCloseRequired);
+        this.autoCloseLimitsSet = HtmlElements.idSetForNames(this.autoCloseLimits);
+    }
+
+
     @Override
     public void handleOpenElementStart(
             final char[] buffer,
@@ -76,7 +86,8 @@ public void handleOpenElementStart(
             throws ParseException {
 
         if (autoCloseEnabled && !status.isAutoOpenCloseDone()) {
-            status.setAutoCloseRequired(this.autoCloseRequired, this.autoCloseLimits);
+            status.setAutoCloseRequired(
+                    this.autoCloseRequired, this.autoCloseLimits, this.autoCloseRequiredSet, this.autoCloseLimitsSet);
             return;
         }
 
@@ -98,7 +109,8 @@ public void handleStandaloneElementStart(
             throws ParseException {
 
         if (autoCloseEnabled && !status.isAutoOpenCloseDone()) {
-            status.setAutoCloseRequired(this.autoCloseRequired, this.autoCloseLimits);
+            status.setAutoCloseRequired(
+                    this.autoCloseRequired, this.autoCloseLimits, this.autoCloseRequiredSet, this.autoCloseLimitsSet);
             return;
         }
 
@@ -36,6 +36,8 @@ class HtmlAutoOpenCDATAContentElement extends HtmlCDATAContentElement {
 
     private final char[][] autoOpenParents;
     private final char[][] autoOpenLimits;
+    private int[] autoOpenParentsIds = null;
+    private long[] autoOpenLimitsSet = null;
 
 
     public HtmlAutoOpenCDATAContentElement(final String name, final String[] autoOpenParents, final String[] autoOpenLimits) {
@@ -67,6 +69,14 @@ public HtmlAutoOpenCDATAContentElement(final String name, final String[] autoOpe
     }
 
 
+    @Override
+    void resolveIds() {
+        super.resolveIds();
+        this.autoOpenParentsIds = HtmlElements.idsForNames(this.autoOpenParents);
+        this.autoOpenLimitsSet = HtmlElements.idSetForNames(this.autoOpenLimits);
+    }
+
+
     @Override
     public void handleOpenElementStart(
             final char[] buffer,
@@ -78,7 +88,8 @@ public void handleOpenElementStart(
             throws ParseException {
 
         if (autoOpenEnabled && !status.isAutoOpenCloseDone()) {
-            status.setAutoOpenRequired(this.autoOpenParents, this.autoOpenLimits);
+            status.setAutoOpenRequired(
+                    this.autoOpenParents, this.autoOpenLimits, this.autoOpenParentsIds, this.autoOpenLimitsSet);
             return;
         }
 
@@ -101,7 +112,8 @@ public void handleStandaloneElementStart(
             throws ParseException {
 
         if (autoOpenEnabled && !status.isAutoOpenCloseDone()) {
-            status.setAutoOpenRequired(this.autoOpenParents, this.autoOpenLimits);
+            status.setAutoOpenRequired(
+                    this.autoOpenParents, this.autoOpenLimits, this.autoOpenParentsIds, this.autoOpenLimitsSet);
             return;
         }
 
@@ -36,6 +36,8 @@ class HtmlAutoOpenCloseElement extends HtmlAutoCloseElement {
 
     private final char[][] autoOpenParents;
     private final char[][] autoOpenLimits;
+    private int[] autoOpenParentsIds = null;
+    private long[] autoOpenLimitsSet = null;
 
 
     HtmlAutoOpenCloseElement(final String name,
@@ -69,6 +71,14 @@ class HtmlAutoOpenCloseElement extends HtmlAutoCloseElement {
     }
 
 
+    @Override
+    void resolveIds() {
+        super.resolveIds();
+        this.autoOpenParentsIds = HtmlElements.idsForNames(this.autoOpenParents);
+        this.autoOpenLimitsSet = HtmlElements.idSetForNames(this.autoOpenLimits);
+    }
+
+
     @Override
     public void handleOpenElementStart(
             final char[] buffer,
@@ -81,10 +91,12 @@ public void handleOpenElementStart(
 
         if ((autoOpenEnabled || autoCloseEnabled) && !status.isAutoOpenCloseDone()) {
             if (autoCloseEnabled) {
-                status.setAutoCloseRequired(this.autoCloseRequired, this.autoCloseLimits);
+                status.setAutoCloseRequired(
+                        this.autoCloseRequired, this.autoCloseLimits, this.autoCloseRequiredSet, this.autoCloseLimitsSet);
             }
             if (autoOpenEnabled) {
-                status.setAutoOpenRequired(this.autoOpenParents, this.autoOpenLimits);
+                status.setAutoOpenRequired(
+                        this.autoOpenParents, this.autoOpenLimits, this.autoOpenParentsIds, this.autoOpenLimitsSet);
             }
             return;
         }
@@ -108,10 +120,12 @@ public void handleStandaloneElementStart(
 
         if ((autoOpenEnabled || autoCloseEnabled) && !status.isAutoOpenCloseDone()) {
             if (autoCloseEnabled) {
-                status.setAutoCloseRequired(this.autoCloseRequired, this.autoCloseLimits);
+                status.setAutoCloseRequired(
+                        this.autoCloseRequired, this.autoCloseLimits, this.autoCloseRequiredSet, this.autoCloseLimitsSet);
             }
             if (autoOpenEnabled) {
-                status.setAutoOpenRequired(this.autoOpenParents, this.autoOpenLimits);
+                status.setAutoOpenRequired(
+                        this.autoOpenParents, this.autoOpenLimits, this.autoOpenParentsIds, this.autoOpenLimitsSet);
             }
             return;
         }
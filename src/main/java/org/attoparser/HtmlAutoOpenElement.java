@@ -34,6 +34,8 @@ class HtmlAutoOpenElement extends HtmlElement {
 
     private final char[][] autoOpenParents;
     private final char[][] autoOpenLimits;
+    private int[] autoOpenParentsIds = null;
+    private long[] autoOpenLimitsSet = null;
 
 
     HtmlAutoOpenElement(final String name, final String[] autoOpenParents, final String[] autoOpenLimits) {
@@ -65,6 +67,14 @@ class HtmlAutoOpenElement extends HtmlElement {
     }
 
 
+    @Override
+    void resolveIds() {
+        super.resolveIds();
+        this.autoOpenParentsIds = HtmlElements.idsForNames(this.autoOpenParents);
+        this.autoOpenLimitsSet = HtmlElements.idSetForNames(this.autoOpenLimits);
+    }
+
+
     @Override
     public void handleOpenElementStart(
             final char[] buffer,
@@ -76,7 +86,8 @@ public void handleOpenElementStart(
             throws ParseException {
 
         if (autoOpenEnabled && !status.isAutoOpenCloseDone()) {
-            status.setAutoOpenRequired(this.autoOpenParents, this.autoOpenLimits);
+            status.setAutoOpenRequired(
+                    this.autoOpenParents, this.autoOpenLimits, this.autoOpenParentsIds, this.autoOpenLimitsSet);
             return;
         }
 
@@ -98,7 +109,8 @@ public void handleStandaloneElementStart(
             throws ParseException {
 
         if (autoOpenEnabled && !status.isAutoOpenCloseDone()) {
-            status.setAutoOpenRequired(this.autoOpenParents, this.autoOpenLimits);
+            status.setAutoOpenRequired(
+                    this.autoOpenParents, this.autoOpenLimits, this.autoOpenParentsIds, this.autoOpenLimitsSet);
             return;
         }
 
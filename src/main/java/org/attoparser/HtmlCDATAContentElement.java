@@ -172,7 +172,7 @@ public void handleAttribute(
 
 
 
-    private char[] computeLimitSequence(final char[] buffer, final int nameOffset, final int nameLen) {
+    char[] computeLimitSequence(final char[] buffer, final int nameOffset, final int nameLen) {
 
         if (TextUtil.equals(true, this.nameLower, 0, this.nameLower.length, buffer, nameOffset, nameLen)) {
             return this.limitSequenceLower;
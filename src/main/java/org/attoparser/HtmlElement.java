@@ -33,6 +33,9 @@ class HtmlElement {
 
     final char[] name;
 
+    // Integer ID for standard and registered elements (assigned by the repository at HtmlElements), 0 for the rest
+    int id = 0;
+
 
     
     public HtmlElement(final String name) {
@@ -49,6 +52,16 @@ public HtmlElement(final String name) {
 
 
 
+    /*
+     * Called by the repository at HtmlElements once the IDs of all the standard elements have been assigned, so that
+     * elements referencing other elements by name (e.g. for auto-open and auto-close) can also reference their IDs.
+     */
+    void resolveIds() {
+        // Nothing to be resolved by default
+    }
+
+
+
 
 
     public void handleStandaloneElementStart(
@@ -19,17 +19,14 @@
  */
 package org.attoparser;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.LinkedHashSet;
-import java.util.List;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.attoparser.util.PerfectNameHash;
 import org.attoparser.util.TextUtil;
 
 
@@ -217,16 +214,47 @@ final class HtmlElements {
                         })));
 
         /*
-         * Register the standard elements at the element repository, in order to initialize it
+         * Register the standard elements at the element repository, in order to initialize it. IDs are assigned
+         * in order, and then resolved for the names referenced by each element.
          */
         for (final HtmlElement element : ALL_STANDARD_ELEMENTS) {
             ELEMENTS.storeStandardElement(element);
         }
+        ELEMENTS.compileStandardElements();
+        for (final HtmlElement element : ALL_STANDARD_ELEMENTS) {
+            element.resolveIds();
+        }
 
 
     }
 
 
+    // Elements which end tag can be omitted, and therefore whose end cannot be found by just looking for it
+    private static final HtmlElement[] OPTIONAL_END_TAG_ELEMENTS =
+            new HtmlElement[] {
+                    HTML, HEAD, BODY, P, LI, DT, DD, RB, RT, RTC, RP, OPTGROUP, OPTION,
+                    COLGROUP, CAPTION, THEAD, TBODY, TFOOT, TR, TD, TH
+            };
+
+
+    /*
+     * Determines whether the end of an element can be found by looking for its close tag: void elements have no
+     * close tag, and some elements (see "optional tags" at the HTML spec) can be implicitly closed.
+     */
+    static boolean isEndTagRequired(final char[] elementNameBuffer, final int offset, final int len) {
+        final HtmlElement element = forName(elementNameBuffer, offset, len);
+        if (element instanceof HtmlVoidElement) {
+            return false;
+        }
+        for (final HtmlElement optionalEndTagElement : OPTIONAL_END_TAG_ELEMENTS) {
+            if (element == optionalEndTagElement) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
     /*
      * Note this will always be case-insensitive, because we are dealing with HTML.
      */
@@ -238,6 +266,71 @@ static HtmlElement forName(final char[] elementNameBuffer, final int offset, fin
     }
 
 
+    /*
+     * Registers an element defined by the application (see HtmlVocabulary). Standard elements cannot be redefined.
+     */
+    static HtmlElement register(final HtmlElement element) {
+        return ELEMENTS.storeRegisteredElement(element);
+    }
+
+
+    /*
+     * Returns the standard or registered element with the specified ID, or null if there is none.
+     */
+    static HtmlElement forId(final int id) {
+        return ELEMENTS.getElement(id);
+    }
+
+
+    /*
+     * Computes the IDs of the elements with the specified names (0 for those with no ID).
+     */
+    static int[] idsForNames(final char[][] names) {
+        if (names == null) {
+            return null;
+        }
+        final int[] ids = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ids[i] = ELEMENTS.getElement(names[i], 0, names[i].length).id;
+        }
+        return ids;
+    }
+
+
+    /*
+     * Compiles the IDs of the elements with the specified names into a bitset (bit N set for the element with ID N),
+     * so that checking whether an element in the stack is one of them takes a couple of bit operations. Returns null
+     * if any of the names has no ID, in which case names have to be compared instead.
+     */
+    static long[] idSetForNames(final char[][] names) {
+        final int[] ids = idsForNames(names);
+        if (ids == null) {
+            return null;
+        }
+        int maxId = 0;
+        for (final int id : ids) {
+            if (id == 0) {
+                return null;
+            }
+            maxId = Math.max(maxId, id);
+        }
+        final long[] set = new long[(maxId >>> 6) + 1];
+        for (final int id : ids) {
+            set[id >>> 6] |= (1L << id);
+        }
+        return set;
+    }
+
+
+    /*
+     * Checks whether an ID set computed by idSetForNames(...) contains the specified ID (0 is never contained).
+     */
+    static boolean idSetContains(final long[] set, final int id) {
+        final int word = id >>> 6;
+        return (word < set.length && (set[word] & (1L << id)) != 0L);
+    }
+
+
     
 
     
@@ -249,24 +342,33 @@ private HtmlElements() {
     
 
     /*
-     * This repository class is thread-safe. The reason for this is that it not only contains the
-     * standard elements, but will also contain new instances of HtmlElement created during parsing (created
-     * when asking the repository for them when they do not exist yet. As any thread can create a new element,
-     * this has to be lock-protected.
+     * This repository class is thread-safe, and lock-free. It not only contains the standard elements, but also
+     * the elements registered by applications (see HtmlVocabulary) and instances of HtmlElement created during
+     * parsing for non-standard names. Standard elements never change (and are looked up by means of a perfect
+     * hash of their names); registered elements are kept in a sorted array replaced entirely on each (rare)
+     * registration; and elements for non-standard names are kept in a bounded cache so that documents with lots
+     * of different custom (or junk) element names cannot make it grow without limit. Any thread can replace any
+     * of the entries in this cache, as elements for non-standard names have no state other than their names.
      */
     static final class HtmlElementRepository {
 
-        private final List<HtmlElement> standardRepository; // read-only, no sync needed
-        private final List<HtmlElement> repository;  // read-write, sync will be needed
+        // Must be a power of two
+        private static final int DYNAMIC_CACHE_SIZE = 1024;
 
-        private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
-        private final Lock readLock = this.lock.readLock();
-        private final Lock writeLock = this.lock.writeLock();
+        private HtmlElement[] standardRepository; // read-only once initialized, no sync needed
+        private PerfectNameHash standardRepositoryHash; // read-only once initialized, no sync needed
+        private HtmlElement[] standardRepositoryById; // read-only once initialized, no sync needed
+        private final AtomicReference<RegisteredElements> registeredRepository;
+        private final AtomicReferenceArray<HtmlElement> dynamicRepository;
 
 
         HtmlElementRepository() {
-            this.standardRepository = new ArrayList<HtmlElement>(150);
-            this.repository = new ArrayList<HtmlElement>(150);
+            this.standardRepository = new HtmlElement[0];
+            this.standardRepositoryHash = new PerfectNameHash(new String[0], false);
+            this.standardRepositoryById = new HtmlElement[1]; // ID 0 means "no ID"
+            this.registeredRepository = new AtomicReference<RegisteredElements>(
+                    new RegisteredElements(new HtmlElement[0], new HtmlElement[0]));
+            this.dynamicRepository = new AtomicReferenceArray<HtmlElement>(DYNAMIC_CACHE_SIZE);
         }
 
 
@@ -275,85 +377,154 @@ HtmlElement getElement(final char[] text, final int offset, final int len) {
 
             /*
              * We first try to find it in the repository containing the standard elements, which does not need
-             * any synchronization.
+             * any synchronization (and is indexed by a perfect hash, so only one comparison is needed).
              */
-            int index = binarySearch(this.standardRepository, text, offset, len);
+            int index = this.standardRepositoryHash.indexOf(text, offset, len);
 
             if (index >= 0) {
-                return this.standardRepository.get(index);
+                return this.standardRepository[index];
             }
 
             /*
-             * We did not find it in the repository of standard elements, so let's try in the read+write one,
-             * which does require synchronization through a readwrite lock.
+             * Then in the one containing the elements registered by the application, which is never modified
+             * (only replaced), so we just need to read its current value.
              */
-
-            this.readLock.lock();
-            try {
-
-                index = binarySearch(this.repository, text, offset, len);
-
+            final HtmlElement[] registered = this.registeredRepository.get().byName;
+            if (registered.length > 0) {
+                index = binarySearch(registered, text, offset, len);
                 if (index >= 0) {
-                    return this.repository.get(index);
+                    return registered[index];
                 }
-
-            } finally {
-                this.readLock.unlock();
             }
 
-
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * Non-standard element: look for it at the cache, and replace whatever is in its slot if not found.
              */
-            this.writeLock.lock();
-            try {
-                return storeElement(text, offset, len);
-            } finally {
-                this.writeLock.unlock();
+            final int slot = hashCodeIgnoreCase(text, offset, len) & (DYNAMIC_CACHE_SIZE - 1);
+            final HtmlElement cached = this.dynamicRepository.get(slot);
+            if (cached != null && TextUtil.equals(false, cached.name, 0, cached.name.length, text, offset, len)) {
+                return cached;
             }
 
+            // Names are lowercased, so the element (and its cache entry) is the same for any case variant
+            final HtmlElement element = new HtmlElement(new String(text, offset, len).toLowerCase());
+            this.dynamicRepository.set(slot, element);
+
+            return element;
+
         }
 
 
-        private HtmlElement storeElement(final char[] text, final int offset, final int len) {
+        HtmlElement getElement(final int id) {
+            if (id <= 0) {
+                return null;
+            }
+            if (id < this.standardRepositoryById.length) {
+                return this.standardRepositoryById[id];
+            }
+            final HtmlElement[] registeredById = this.registeredRepository.get().byId;
+            final int index = id - this.standardRepositoryById.length;
+            return (index < registeredById.length ? registeredById[index] : null);
+        }
 
-            final int index = binarySearch(this.repository, text, offset, len);
-            if (index >= 0) {
-                // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+
+        HtmlElement storeRegisteredElement(final HtmlElement element) {
+
+            if (this.standardRepositoryHash.indexOf(element.name, 0, element.name.length) >= 0) {
+                throw new IllegalArgumentException(
+                        "Cannot register element \"" + new String(element.name) + "\": it is a standard HTML element");
             }
 
-            final HtmlElement element = new HtmlElement(new String(text, offset, len).toLowerCase());
+            element.resolveIds();
 
-            // binary Search returned (-(insertion point) - 1)
-            this.repository.add(((index + 1) * -1), element);
+            while (true) {
 
-            return element;
+                final RegisteredElements current = this.registeredRepository.get();
+                final HtmlElement[] registered = current.byName;
+                final int index = binarySearch(registered, element.name, 0, element.name.length);
+
+                if (index >= 0) {
+                    if (registered[index].getClass() != element.getClass()) {
+                        throw new IllegalArgumentException(
+                                "Cannot register element \"" + new String(element.name) + "\": it has already " +
+                                "been registered with a different type");
+                    }
+                    return registered[index];
+                }
+
+                // binary Search returned (-(insertion point) - 1)
+                final int insertionPoint = ((index + 1) * -1);
+                final HtmlElement[] newRegistered = new HtmlElement[registered.length + 1];
+                System.arraycopy(registered, 0, newRegistered, 0, insertionPoint);
+                newRegistered[insertionPoint] = element;
+                System.arraycopy(
+                        registered, insertionPoint, newRegistered, insertionPoint + 1, registered.length - insertionPoint);
+
+                // IDs of registered elements follow those of the standard ones, in registration order
+                element.id = this.standardRepositoryById.length + current.byId.length;
+                final HtmlElement[] newRegisteredById = Arrays.copyOf(current.byId, current.byId.length + 1);
+                newRegisteredById[current.byId.length] = element;
+
+                if (this.registeredRepository.compareAndSet(
+                        current, new RegisteredElements(newRegistered, newRegisteredById))) {
+                    return element;
+                }
+
+            }
 
         }
 
 
-        private HtmlElement storeStandardElement(final HtmlElement element) {
+        private void storeStandardElement(final HtmlElement element) {
 
             // This method will only be called from within the HtmlElements class itself, during initialization of
             // standard elements.
 
-            this.standardRepository.add(element);
-            this.repository.add(element);
-            Collections.sort(this.standardRepository,ElementComparator.INSTANCE);
-            Collections.sort(this.repository,ElementComparator.INSTANCE);
+            final HtmlElement[] newStandardRepository =
+                    Arrays.copyOf(this.standardRepository, this.standardRepository.length + 1);
+            newStandardRepository[this.standardRepository.length] = element;
+            this.standardRepository = newStandardRepository;
+
+            element.id = this.standardRepositoryById.length;
+            final HtmlElement[] newStandardRepositoryById =
+                    Arrays.copyOf(this.standardRepositoryById, this.standardRepositoryById.length + 1);
+            newStandardRepositoryById[element.id] = element;
+            this.standardRepositoryById = newStandardRepositoryById;
+
+        }
 
-            return element;
+
+
+        private void compileStandardElements() {
+
+            // Called once all standard elements have been stored, during initialization of HtmlElements.
+
+            final String[] names = new String[this.standardRepository.length];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = new String(this.standardRepository[i].name);
+            }
+            this.standardRepositoryHash = new PerfectNameHash(names, false);
 
         }
 
 
 
-        private static int binarySearch(final List<HtmlElement> values,
+        private static int hashCodeIgnoreCase(final char[] text, final int offset, final int len) {
+            // Entries for names not passing the case-insensitive equality check will simply be replaced
+            int h = 0;
+            final int maxi = offset + len;
+            for (int i = offset; i < maxi; i++) {
+                h = 31*h + Character.toLowerCase(text[i]);
+            }
+            return h ^ (h >>> 16);
+        }
+
+
+        private static int binarySearch(final HtmlElement[] values,
                                         final char[] text, final int offset, final int len) {
 
             int low = 0;
-            int high = values.size() - 1;
+            int high = values.length - 1;
 
             int mid, cmp;
             char[] midVal;
@@ -361,7 +532,7 @@ private static int binarySearch(final List<HtmlElement> values,
             while (low <= high) {
 
                 mid = (low + high) >>> 1;
-                midVal = values.get(mid).name;
+                midVal = values[mid].name;
 
                 cmp = TextUtil.compareTo(false, midVal, 0, midVal.length, text, offset, len);
 
@@ -381,13 +552,17 @@ private static int binarySearch(final List<HtmlElement> values,
         }
 
 
-        private static class ElementComparator implements Comparator<HtmlElement> {
+        private static final class RegisteredElements {
 
-            private static ElementComparator INSTANCE = new ElementComparator();
+            final HtmlElement[] byName; // sorted by name
+            final HtmlElement[] byId; // in ID order
 
-            public int compare(final HtmlElement o1, final HtmlElement o2) {
-                return TextUtil.compareTo(false, o1.name, o2.name);
+            RegisteredElements(final HtmlElement[] byName, final HtmlElement[] byId) {
+                super();
+                this.byName = byName;
+                this.byId = byId;
             }
+
         }
 
     }
@@ -22,6 +22,7 @@
 
 import org.attoparser.config.ParseConfiguration;
 import org.attoparser.select.ParseSelection;
+import org.attoparser.util.TextUtil;
 
 /*
  * Special implementation of the IMarkupHandler interface which implements the logic required to parse HTML
@@ -101,6 +102,13 @@ public void handleDocumentStart(
             final long startTimeNanos, final int line, final int col)
             throws ParseException {
 
+        // This handler might be reused for parsing several documents, so we reset the document-specific state
+        this.currentElement = null;
+        this.markupLevel = 0;
+        this.htmlElementHandled = false;
+        this.headElementHandled = false;
+        this.bodyElementHandled = false;
+
         this.next.handleDocumentStart(startTimeNanos, line, col);
 
     }
@@ -218,7 +226,7 @@ public void handleStandaloneElementStart(
             final boolean minimized, final int line, final int col)
             throws ParseException {
 
-        this.currentElement = HtmlElements.forName(buffer, nameOffset, nameLen);
+        this.currentElement = resolveElement(buffer, nameOffset, nameLen);
         this.currentElement.handleStandaloneElementStart(buffer, nameOffset, nameLen, minimized, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
 
     }
@@ -252,7 +260,7 @@ public void handleOpenElementStart(
             final int line, final int col)
             throws ParseException {
 
-        this.currentElement = HtmlElements.forName(buffer, nameOffset, nameLen);
+        this.currentElement = resolveElement(buffer, nameOffset, nameLen);
 
         if (this.autoOpenEnabled) {
             if (this.markupLevel == 0 && this.currentElement == HtmlElements.HTML) {
@@ -263,10 +271,12 @@ public void handleOpenElementStart(
                 if (!this.headElementHandled) {
                     // No <head> element has been handled, we should add it automatically
                     final HtmlElement headElement = HtmlElements.forName(HEAD_BUFFER, 0, HEAD_BUFFER.length);
+                    this.status.element = headElement;
                     headElement.handleAutoOpenElementStart(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoOpenElementEnd(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoCloseElementStart(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoCloseElementEnd(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
+                    this.status.element = this.currentElement;
                     this.headElementHandled = true;
                 }
                 this.bodyElementHandled = true;
@@ -307,7 +317,7 @@ public void handleAutoOpenElementStart(
             final int line, final int col)
             throws ParseException {
 
-        this.currentElement = HtmlElements.forName(buffer, nameOffset, nameLen);
+        this.currentElement = resolveElement(buffer, nameOffset, nameLen);
 
         if (this.autoOpenEnabled) {
             if (this.markupLevel == 0 && this.currentElement == HtmlElements.HTML) {
@@ -318,10 +328,12 @@ public void handleAutoOpenElementStart(
                 if (!this.headElementHandled) {
                     // No <head> element has been handled, we should add it automatically
                     final HtmlElement headElement = HtmlElements.forName(HEAD_BUFFER, 0, HEAD_BUFFER.length);
+                    this.status.element = headElement;
                     headElement.handleAutoOpenElementStart(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoOpenElementEnd(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoCloseElementStart(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoCloseElementEnd(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
+                    this.status.element = this.currentElement;
                     this.headElementHandled = true;
                 }
                 this.bodyElementHandled = true;
@@ -365,26 +377,30 @@ public void handleCloseElementStart(
 
         this.markupLevel--;
 
-        this.currentElement = HtmlElements.forName(buffer, nameOffset, nameLen);
+        this.currentElement = resolveElement(buffer, nameOffset, nameLen);
 
         if (this.autoOpenEnabled) {
             if (this.markupLevel == 0 && this.htmlElementHandled && this.currentElement == HtmlElements.HTML) {
                 if (!this.headElementHandled) {
                     // No <head> element has been handled, we should add it automatically
                     final HtmlElement headElement = HtmlElements.forName(HEAD_BUFFER, 0, HEAD_BUFFER.length);
+                    this.status.element = headElement;
                     headElement.handleAutoOpenElementStart(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoOpenElementEnd(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoCloseElementStart(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoCloseElementEnd(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
+                    this.status.element = this.currentElement;
                     this.headElementHandled = true;
                 }
                 if (!this.bodyElementHandled) {
                     // No <body> element has been handled, we should add it automatically
                     final HtmlElement headElement = HtmlElements.forName(BODY_BUFFER, 0, BODY_BUFFER.length);
+                    this.status.element = headElement;
                     headElement.handleAutoOpenElementStart(BODY_BUFFER, 0, BODY_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoOpenElementEnd(BODY_BUFFER, 0, BODY_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoCloseElementStart(BODY_BUFFER, 0, BODY_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoCloseElementEnd(BODY_BUFFER, 0, BODY_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
+                    this.status.element = this.currentElement;
                     this.bodyElementHandled = true;
                 }
             }
@@ -425,26 +441,30 @@ public void handleAutoCloseElementStart(
 
         this.markupLevel--;
 
-        this.currentElement = HtmlElements.forName(buffer, nameOffset, nameLen);
+        this.currentElement = resolveElement(buffer, nameOffset, nameLen);
 
         if (this.autoOpenEnabled) {
             if (this.markupLevel == 0 && this.htmlElementHandled && this.currentElement == HtmlElements.HTML) {
                 if (!this.headElementHandled) {
                     // No <head> element has been handled, we should add it automatically
                     final HtmlElement headElement = HtmlElements.forName(HEAD_BUFFER, 0, HEAD_BUFFER.length);
+                    this.status.element = headElement;
                     headElement.handleAutoOpenElementStart(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoOpenElementEnd(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoCloseElementStart(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoCloseElementEnd(HEAD_BUFFER, 0, HEAD_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
+                    this.status.element = this.currentElement;
                     this.headElementHandled = true;
                 }
                 if (!this.bodyElementHandled) {
                     // No <body> element has been handled, we should add it automatically
                     final HtmlElement headElement = HtmlElements.forName(BODY_BUFFER, 0, BODY_BUFFER.length);
+                    this.status.element = headElement;
                     headElement.handleAutoOpenElementStart(BODY_BUFFER, 0, BODY_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoOpenElementEnd(BODY_BUFFER, 0, BODY_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoCloseElementStart(BODY_BUFFER, 0, BODY_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
                     headElement.handleAutoCloseElementEnd(BODY_BUFFER, 0, BODY_BUFFER.length, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
+                    this.status.element = this.currentElement;
                     this.bodyElementHandled = true;
                 }
             }
@@ -483,7 +503,7 @@ public void handleUnmatchedCloseElementStart(
             final int line, final int col)
             throws ParseException {
 
-        this.currentElement = HtmlElements.forName(buffer, nameOffset, nameLen);
+        this.currentElement = resolveElement(buffer, nameOffset, nameLen);
         this.currentElement.handleUnmatchedCloseElementStart(buffer, nameOffset, nameLen, line, col, this.next, this.status, this.autoOpenEnabled, this.autoCloseEnabled);
 
     }
@@ -572,6 +592,18 @@ public void handleProcessingInstruction(
 
     }
 
+    private HtmlElement resolveElement(final char[] buffer, final int nameOffset, final int nameLen) {
+        // When parsing HTML, the markup event processor will have already resolved the element for this event
+        final HtmlElement element = this.status.element;
+        if (element != null &&
+                TextUtil.equals(false, element.name, 0, element.name.length, buffer, nameOffset, nameLen)) {
+            return element;
+        }
+        return HtmlElements.forName(buffer, nameOffset, nameLen);
+    }
+
+
+
     @Override
     public void handleCloseTagEndBadSymbol(char[] buffer, int offset, int len, int line, int col) throws ParseException {
         this.next.handleCloseTagEndBadSymbol(buffer, offset, len, line, col);
@@ -0,0 +1,203 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2014-2017, The ATTOPARSER team (http://www.attoparser.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.attoparser;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.attoparser.util.NameInternTable;
+
+
+/**
+ * <p>
+ *   Class for registering application-specific (non-standard) HTML elements, so that they are given the same
+ *   behaviour as standard elements of the same type when parsing in HTML mode (e.g. custom elements that
+ *   are known to have no body, or whose body should not be parsed).
+ * </p>
+ * <p>
+ *   Non-standard elements not registered here are handled as generic elements: never auto-opened, auto-closed or
+ *   closing any other elements.
+ * </p>
+ * <p>
+ *   Registrations apply to all parsers in the JVM, so they are meant to be performed once at application
+ *   startup, before parsing. Standard HTML elements cannot be redefined, and a name cannot be registered again
+ *   with a different type.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class HtmlVocabulary {
+
+
+    /**
+     * <p>
+     *   Registers void elements, i.e. elements that have no body nor close tag (like <tt>&lt;br&gt;</tt>).
+     * </p>
+     *
+     * @param names the names of the elements (case-insensitive).
+     */
+    public static void registerVoidElements(final String... names) {
+        checkNames(names);
+        for (final String name : names) {
+            HtmlElements.register(new HtmlVoidElement(name));
+        }
+    }
+
+
+    /**
+     * <p>
+     *   Registers block elements, i.e. elements that close any open <tt>&lt;p&gt;</tt> element and that (if
+     *   auto-open is enabled) ask for the creation of <tt>&lt;html&gt;</tt> and <tt>&lt;body&gt;</tt> elements
+     *   when not present (like <tt>&lt;div&gt;</tt>).
+     * </p>
+     *
+     * @param names the names of the elements (case-insensitive).
+     */
+    public static void registerBlockElements(final String... names) {
+        checkNames(names);
+        for (final String name : names) {
+            HtmlElements.register(new HtmlBodyBlockElement(name));
+        }
+    }
+
+
+    /**
+     * <p>
+     *   Registers elements whose body is not parsed but considered text until their close tag is found
+     *   (like <tt>&lt;script&gt;</tt> or <tt>&lt;style&gt;</tt>).
+     * </p>
+     *
+     * @param names the names of the elements (case-insensitive).
+     */
+    public static void registerCDATAContentElements(final String... names) {
+        checkNames(names);
+        for (final String name : names) {
+            HtmlElements.register(new HtmlCDATAContentElement(name));
+        }
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the names of all the standard HTML elements (lower case).
+     * </p>
+     *
+     * @return an unmodifiable set with the names.
+     */
+    public static Set<String> getStandardElementNames() {
+        return HtmlNames.ALL_STANDARD_ELEMENT_NAMES;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the names of all the standard HTML attributes (lower case).
+     * </p>
+     *
+     * @return an unmodifiable set with the names.
+     */
+    public static Set<String> getStandardAttributeNames() {
+        return HtmlNames.ALL_STANDARD_ATTRIBUTE_NAMES;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the table in which the element and attribute names found in documents are interned, shared by
+     *   all the parsers and handlers in the library. Standard HTML names (both in lowercase and in uppercase) are
+     *   always present in this table, and looked up by means of a perfect hash.
+     * </p>
+     *
+     * @return the shared table.
+     */
+    public static NameInternTable getNameInternTable() {
+        return SharedNameInternTable.TABLE;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the integer ID of a standard or registered element, which can be compared with the one returned
+     *   by {@link ParseStatus#getElementId()} during element events. IDs should not be hard-coded: they are
+     *   assigned at initialization (registered elements in order of registration) and might change between
+     *   versions.
+     * </p>
+     *
+     * @param name the name of the element (case-insensitive).
+     * @return the ID of the element, or 0 if it is neither a standard element nor a registered one.
+     */
+    public static int getElementId(final String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Name cannot be null");
+        }
+        final char[] nameChars = name.toCharArray();
+        return HtmlElements.forName(nameChars, 0, nameChars.length).id;
+    }
+
+
+
+
+    private static void checkNames(final String[] names) {
+        if (names == null) {
+            throw new IllegalArgumentException("Names cannot be null");
+        }
+        for (final String name : names) {
+            if (name == null || name.trim().length() == 0) {
+                throw new IllegalArgumentException("Element names cannot be null or empty");
+            }
+        }
+    }
+
+
+
+    private HtmlVocabulary() {
+        super();
+    }
+
+
+
+
+    /*
+     * Holder for the shared table, so that it is only created when first needed.
+     */
+    private static final class SharedNameInternTable {
+
+        static final NameInternTable TABLE;
+
+        static {
+            final Set<String> names = new LinkedHashSet<String>(HtmlNames.ALL_STANDARD_ELEMENT_NAMES);
+            names.addAll(HtmlNames.ALL_STANDARD_ATTRIBUTE_NAMES);
+            // Uppercase variants are also fixed, as they are frequent in legacy HTML and should never be evicted
+            for (final String name : new ArrayList<String>(names)) {
+                names.add(name.toUpperCase());
+            }
+            TABLE = new NameInternTable(NameInternTable.DEFAULT_CAPACITY, names);
+        }
+
+    }
+
+
+}
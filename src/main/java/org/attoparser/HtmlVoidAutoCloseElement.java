@@ -35,6 +35,8 @@ class HtmlVoidAutoCloseElement extends HtmlVoidElement {
 
     protected final char[][] autoCloseRequired;
     protected final char[][] autoCloseLimits;
+    protected long[] autoCloseRequiredSet = null;
+    protected long[] autoCloseLimitsSet = null;
 
 
     HtmlVoidAutoCloseElement(final String name, final String[] autoCloseElements, final String[] autoCloseLimits) {
@@ -66,6 +68,14 @@ class HtmlVoidAutoCloseElement extends HtmlVoidElement {
     }
 
 
+    @Override
+    void resolveIds() {
+        super.resolveIds();
+        this.autoCloseRequiredSet = HtmlElements.idSetForNames(this.autoCloseRequired);
+        this.autoCloseLimitsSet = HtmlElements.idSetForNames(this.autoCloseLimits);
+    }
+
+
 
 
     @Override
@@ -81,7 +91,8 @@ public void handleOpenElementStart(
         status.setAvoidStacking(true);
 
         if (autoCloseEnabled && !status.isAutoOpenCloseDone()) {
-            status.setAutoCloseRequired(this.autoCloseRequired, this.autoCloseLimits);
+            status.setAutoCloseRequired(
+                    this.autoCloseRequired, this.autoCloseLimits, this.autoCloseRequiredSet, this.autoCloseLimitsSet);
             return;
         }
 
@@ -105,7 +116,8 @@ public void handleStandaloneElementStart(
         status.setAvoidStacking(true);
 
         if (autoCloseEnabled && !status.isAutoOpenCloseDone()) {
-            status.setAutoCloseRequired(this.autoCloseRequired, this.autoCloseLimits);
+            status.setAutoCloseRequired(
+                    this.autoCloseRequired, this.autoCloseLimits, this.autoCloseRequiredSet, this.autoCloseLimitsSet);
             return;
         }
 
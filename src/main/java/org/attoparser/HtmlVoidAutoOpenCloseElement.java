@@ -35,6 +35,8 @@ class HtmlVoidAutoOpenCloseElement extends HtmlVoidAutoCloseElement {
 
     private final char[][] autoOpenParents;
     private final char[][] autoOpenLimits;
+    private int[] autoOpenParentsIds = null;
+    private long[] autoOpenLimitsSet = null;
 
 
     HtmlVoidAutoOpenCloseElement(final String name,
@@ -68,6 +70,14 @@ class HtmlVoidAutoOpenCloseElement extends HtmlVoidAutoCloseElement {
     }
 
 
+    @Override
+    void resolveIds() {
+        super.resolveIds();
+        this.autoOpenParentsIds = HtmlElements.idsForNames(this.autoOpenParents);
+        this.autoOpenLimitsSet = HtmlElements.idSetForNames(this.autoOpenLimits);
+    }
+
+
 
 
 
@@ -87,10 +97,12 @@ public void handleOpenElementStart(
 
         if ((autoOpenEnabled || autoCloseEnabled) && !status.isAutoOpenCloseDone()) {
             if (autoCloseEnabled) {
-                status.setAutoCloseRequired(this.autoCloseRequired, this.autoCloseLimits);
+                status.setAutoCloseRequired(
+                        this.autoCloseRequired, this.autoCloseLimits, this.autoCloseRequiredSet, this.autoCloseLimitsSet);
             }
             if (autoOpenEnabled) {
-                status.setAutoOpenRequired(this.autoOpenParents, this.autoOpenLimits);
+                status.setAutoOpenRequired(
+                        this.autoOpenParents, this.autoOpenLimits, this.autoOpenParentsIds, this.autoOpenLimitsSet);
             }
             return;
         }
@@ -116,10 +128,12 @@ public void handleStandaloneElementStart(
 
         if ((autoOpenEnabled || autoCloseEnabled) && !status.isAutoOpenCloseDone()) {
             if (autoCloseEnabled) {
-                status.setAutoCloseRequired(this.autoCloseRequired, this.autoCloseLimits);
+                status.setAutoCloseRequired(
+                        this.autoCloseRequired, this.autoCloseLimits, this.autoCloseRequiredSet, this.autoCloseLimitsSet);
             }
             if (autoOpenEnabled) {
-                status.setAutoOpenRequired(this.autoOpenParents, this.autoOpenLimits);
+                status.setAutoOpenRequired(
+                        this.autoOpenParents, this.autoOpenLimits, this.autoOpenParentsIds, this.autoOpenLimitsSet);
             }
             return;
         }
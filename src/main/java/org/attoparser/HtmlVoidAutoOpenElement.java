@@ -34,6 +34,8 @@ class HtmlVoidAutoOpenElement extends HtmlVoidElement {
 
     private final char[][] autoOpenParents;
     private final char[][] autoOpenLimits;
+    private int[] autoOpenParentsIds = null;
+    private long[] autoOpenLimitsSet = null;
 
 
     HtmlVoidAutoOpenElement(final String name,
@@ -66,6 +68,14 @@ class HtmlVoidAutoOpenElement extends HtmlVoidElement {
     }
 
 
+    @Override
+    void resolveIds() {
+        super.resolveIds();
+        this.autoOpenParentsIds = HtmlElements.idsForNames(this.autoOpenParents);
+        this.autoOpenLimitsSet = HtmlElements.idSetForNames(this.autoOpenLimits);
+    }
+
+
 
 
 
@@ -84,7 +94,8 @@ public void handleOpenElementStart(
         status.setAvoidStacking(true);
 
         if (autoOpenEnabled && !status.isAutoOpenCloseDone()) {
-            status.setAutoOpenRequired(this.autoOpenParents, this.autoOpenLimits);
+            status.setAutoOpenRequired(
+                    this.autoOpenParents, this.autoOpenLimits, this.autoOpenParentsIds, this.autoOpenLimitsSet);
             return;
         }
 
@@ -108,7 +119,8 @@ public void handleStandaloneElementStart(
         status.setAvoidStacking(true);
 
         if (autoOpenEnabled && status.isAutoOpenCloseDone()) {
-            status.setAutoOpenRequired(this.autoOpenParents, this.autoOpenLimits);
+            status.setAutoOpenRequired(
+                    this.autoOpenParents, this.autoOpenLimits, this.autoOpenParentsIds, this.autoOpenLimitsSet);
             return;
         }
 
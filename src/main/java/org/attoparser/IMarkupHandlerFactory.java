@@ -0,0 +1,53 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser;
+
+
+/**
+ * <p>
+ *   Factory of {@link IMarkupHandler} objects, used for obtaining a handler for each of the documents
+ *   parsed by means of {@link MarkupParser#parseAll(Iterable, IMarkupHandlerFactory, java.util.concurrent.Executor)}.
+ * </p>
+ * <p>
+ *   Implementations of this interface should be <strong>thread-safe</strong>, as they will be called from
+ *   all the threads parsing documents.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public interface IMarkupHandlerFactory {
+
+
+    /**
+     * <p>
+     *   Create the handler to be used for parsing a document.
+     * </p>
+     *
+     * @param documentIndex the index of the document in the batch (in iteration order, starting at 0).
+     * @param source the source of the document.
+     * @return the handler to be used, an {@link IMarkupHandler} implementation.
+     */
+    public IMarkupHandler createHandler(final int documentIndex, final MarkupSource source);
+
+
+}
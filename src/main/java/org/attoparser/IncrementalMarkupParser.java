@@ -0,0 +1,238 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser;
+
+
+/**
+ * <p>
+ *   Push-mode parser for a single document which contents are specified in chunks, as they become
+ *   available (e.g. when received from a non-blocking HTTP client).
+ * </p>
+ * <p>
+ *   Instances of this class are obtained by means of {@link MarkupParser#createIncrementalParser(IMarkupHandler)}.
+ *   Each call to {@link #feed(char[], int, int)} will fire the handler events for all the structures that
+ *   can be completely processed with the contents fed so far, keeping any unfinished structures (or texts)
+ *   until more contents arrive. Once all contents have been fed, {@link #finish()} must be called in order
+ *   to process any remaining contents and signal the end of the document.
+ * </p>
+ * <p>
+ *   Sample usage:
+ * </p>
+ * <pre><code>
+ *   final IncrementalMarkupParser incrementalParser = parser.createIncrementalParser(handler);
+ *
+ *   // Each time a chunk of the document is received...
+ *   incrementalParser.feed(chunk, 0, chunkLen);
+ *
+ *   // Once the whole document has been received
+ *   incrementalParser.finish();
+ * </code></pre>
+ * <p>
+ *   Chunks will be scanned directly whenever no unfinished structures are pending from previous calls, so
+ *   handlers might receive (as usual) event artifacts that point to the fed <tt>char[]</tt> objects. Only the
+ *   contents that cannot be processed yet will be copied into an internal buffer, and so the fed <tt>char[]</tt>
+ *   objects can be safely reused once {@link #feed(char[], int, int)} returns.
+ * </p>
+ * <p>
+ *   This class is <strong>not thread-safe</strong>, and each instance should only be used for parsing one
+ *   document. If a {@link ParseException} is raised, the instance cannot be used any more.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class IncrementalMarkupParser {
+
+    private final MarkupParser parser;
+    private final IMarkupHandler handler;
+    private final ParseStatus status;
+
+    private char[] buffer = null;
+    private int bufferContentSize = 0;
+
+    private long parsingStartTimeNanos;
+    private boolean started = false;
+    private boolean done = false;
+
+
+
+    IncrementalMarkupParser(final MarkupParser parser, final IMarkupHandler handler, final ParseStatus status) {
+        super();
+        this.parser = parser;
+        this.handler = handler;
+        this.status = status;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Feed a new chunk of the document, firing events for every structure that can be completely
+     *   processed.
+     * </p>
+     * <p>
+     *   If a handler has stopped parsing (see {@link ParseStatus#stopParsing()}), chunks are ignored.
+     * </p>
+     *
+     * @param buffer the char[] containing the chunk.
+     * @param offset the offset of the chunk in the char[].
+     * @param len the length (in chars) of the chunk.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void feed(final char[] buffer, final int offset, final int len) throws ParseException {
+
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+        if (offset < 0 || len < 0 || offset + len > buffer.length) {
+            throw new IllegalArgumentException(
+                    "Invalid buffer offset (" + offset + ") or length (" + len + ") for a buffer " +
+                    "of length " + buffer.length);
+        }
+
+        checkNotDone();
+
+        try {
+
+            start();
+
+            if (len == 0 || this.status.parsingStopped) {
+                // If a handler stopped parsing, the rest of the document is simply ignored
+                return;
+            }
+
+            if (this.bufferContentSize == 0) {
+                // Nothing pending from previous chunks, so we can scan the chunk directly and then keep only
+                // the part of it that could not be processed yet.
+                this.parser.parseBuffer(buffer, offset, len, this.handler, this.status);
+                retain(buffer, this.status.offset, (offset + len) - this.status.offset);
+            } else {
+                retain(buffer, offset, len);
+                this.parser.parseBuffer(this.buffer, 0, this.bufferContentSize, this.handler, this.status);
+                this.bufferContentSize -= this.status.offset;
+                System.arraycopy(this.buffer, this.status.offset, this.buffer, 0, this.bufferContentSize);
+            }
+
+            this.status.offset = 0;
+
+        } catch (final ParseException e) {
+            release();
+            throw e;
+        } catch (final Exception e) {
+            release();
+            throw new ParseException(e);
+        }
+
+    }
+
+
+    /**
+     * <p>
+     *   Signal that all the contents of the document have already been fed, processing the contents
+     *   that might still be pending and firing the end-of-document event.
+     * </p>
+     *
+     * @throws ParseException if the document cannot be parsed (e.g. it ends in an unfinished structure).
+     */
+    public void finish() throws ParseException {
+
+        checkNotDone();
+
+        try {
+            start();
+            MarkupParser.finishDocument(
+                    this.buffer, this.bufferContentSize, this.handler, this.status, this.parsingStartTimeNanos);
+        } catch (final ParseException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new ParseException(e);
+        } finally {
+            release();
+        }
+
+    }
+
+
+
+
+    private void start() throws ParseException {
+        if (this.started) {
+            return;
+        }
+        this.started = true;
+        this.parsingStartTimeNanos = System.nanoTime();
+        this.handler.handleDocumentStart(this.parsingStartTimeNanos, 1, 1);
+        MarkupParser.initializeParseStatus(this.status);
+        this.status.offset = 0;
+    }
+
+
+    /*
+     * Appends the specified contents to the ones pending to be processed, making the buffer grow if needed
+     */
+    private void retain(final char[] chars, final int offset, final int len) throws ParseLimitExceededException {
+
+        if (len == 0) {
+            return;
+        }
+
+        final int newContentSize = this.bufferContentSize + len;
+
+        if (this.buffer == null || newContentSize > this.buffer.length) {
+
+            final int newBufferSize =
+                    MarkupParser.computeGrownBufferSize(
+                            (this.buffer == null? this.parser.getPoolBufferSize() : this.buffer.length), newContentSize,
+                            this.parser.getMaxBufferSize(), this.status.line, this.status.col);
+
+            this.buffer =
+                    (this.buffer == null?
+                            this.parser.allocateBuffer(newBufferSize) :
+                            this.parser.growBuffer(this.buffer, this.bufferContentSize, newBufferSize));
+
+        }
+
+        System.arraycopy(chars, offset, this.buffer, this.bufferContentSize, len);
+        this.bufferContentSize = newContentSize;
+
+    }
+
+
+    private void release() {
+        this.done = true;
+        this.parser.releaseBuffer(this.buffer);
+        this.buffer = null;
+        this.bufferContentSize = 0;
+    }
+
+
+    private void checkNotDone() {
+        if (this.done) {
+            throw new IllegalStateException(
+                    "Incremental parser cannot be used anymore: document has already been finished or " +
+                    "an error was raised during parsing");
+        }
+    }
+
+
+}
@@ -0,0 +1,347 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser;
+
+
+/*
+ * Handler placed before the handler specified by the user when locations are tracked lazily (see
+ * ParseConfiguration#setLocationTracking(...)). In that mode the locations computed while parsing are only
+ * relative to the start of the event (text or structure) being reported, which is useful for the markup event
+ * processor (validation exceptions are made absolute afterwards) but not for handlers, which expect absolute
+ * locations. So these are reported as unknown (-1) instead, and handlers can ask ParseStatus#getEventLine() and
+ * ParseStatus#getEventCol() for the absolute ones.
+ *
+ * Locations are only hidden for documents actually parsed with lazy tracking (i.e. parsed from memory).
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+final class LazyLocationMarkupHandler extends AbstractChainedMarkupHandler {
+
+    static final int UNKNOWN_LOCATION = -1;
+
+    private ParseStatus status = null;
+
+
+
+    LazyLocationMarkupHandler(final IMarkupHandler next) {
+        super(next);
+    }
+
+
+
+
+    @Override
+    public void setParseStatus(final ParseStatus status) {
+        this.status = status;
+        super.setParseStatus(status);
+    }
+
+
+
+    private int loc(final int location) {
+        return (this.status.document != null ? UNKNOWN_LOCATION : location);
+    }
+
+
+
+
+    @Override
+    public void handleDocumentStart(
+            final long startTimeNanos, final int line, final int col)
+            throws ParseException {
+        getNext().handleDocumentStart(startTimeNanos, loc(line), loc(col));
+    }
+
+
+    @Override
+    public void handleDocumentEnd(
+            final long endTimeNanos, final long totalTimeNanos, final int line, final int col)
+            throws ParseException {
+        getNext().handleDocumentEnd(endTimeNanos, totalTimeNanos, loc(line), loc(col));
+    }
+
+
+
+    @Override
+    public void handleXmlDeclaration(
+            final char[] buffer,
+            final int keywordOffset, final int keywordLen,
+            final int keywordLine, final int keywordCol,
+            final int versionOffset, final int versionLen,
+            final int versionLine, final int versionCol,
+            final int encodingOffset, final int encodingLen,
+            final int encodingLine, final int encodingCol,
+            final int standaloneOffset, final int standaloneLen,
+            final int standaloneLine, final int standaloneCol,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleXmlDeclaration(
+                buffer,
+                keywordOffset, keywordLen, loc(keywordLine), loc(keywordCol),
+                versionOffset, versionLen, loc(versionLine), loc(versionCol),
+                encodingOffset, encodingLen, loc(encodingLine), loc(encodingCol),
+                standaloneOffset, standaloneLen, loc(standaloneLine), loc(standaloneCol),
+                outerOffset, outerLen, loc(line), loc(col));
+    }
+
+
+
+    @Override
+    public void handleDocType(
+            final char[] buffer,
+            final int keywordOffset, final int keywordLen,
+            final int keywordLine, final int keywordCol,
+            final int elementNameOffset, final int elementNameLen,
+            final int elementNameLine, final int elementNameCol,
+            final int typeOffset, final int typeLen,
+            final int typeLine, final int typeCol,
+            final int publicIdOffset, final int publicIdLen,
+            final int publicIdLine, final int publicIdCol,
+            final int systemIdOffset, final int systemIdLen,
+            final int systemIdLine, final int systemIdCol,
+            final int internalSubsetOffset, final int internalSubsetLen,
+            final int internalSubsetLine, final int internalSubsetCol,
+            final int outerOffset, final int outerLen,
+            final int outerLine, final int outerCol)
+            throws ParseException {
+        getNext().handleDocType(
+                buffer,
+                keywordOffset, keywordLen, loc(keywordLine), loc(keywordCol),
+                elementNameOffset, elementNameLen, loc(elementNameLine), loc(elementNameCol),
+                typeOffset, typeLen, loc(typeLine), loc(typeCol),
+                publicIdOffset, publicIdLen, loc(publicIdLine), loc(publicIdCol),
+                systemIdOffset, systemIdLen, loc(systemIdLine), loc(systemIdCol),
+                internalSubsetOffset, internalSubsetLen, loc(internalSubsetLine), loc(internalSubsetCol),
+                outerOffset, outerLen, loc(outerLine), loc(outerCol));
+    }
+
+
+
+    @Override
+    public void handleCDATASection(
+            final char[] buffer,
+            final int contentOffset, final int contentLen,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleCDATASection(buffer, contentOffset, contentLen, outerOffset, outerLen, loc(line), loc(col));
+    }
+
+
+
+    @Override
+    public void handleComment(
+            final char[] buffer,
+            final int contentOffset, final int contentLen,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleComment(buffer, contentOffset, contentLen, outerOffset, outerLen, loc(line), loc(col));
+    }
+
+
+
+    @Override
+    public void handleText(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleText(buffer, offset, len, loc(line), loc(col));
+    }
+
+
+    @Override
+    public void handleStandaloneElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final boolean minimized, final int line, final int col)
+            throws ParseException {
+        getNext().handleStandaloneElementStart(buffer, nameOffset, nameLen, minimized, loc(line), loc(col));
+    }
+
+    @Override
+    public void handleStandaloneElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final boolean minimized, final int line, final int col)
+            throws ParseException {
+        getNext().handleStandaloneElementEnd(buffer, nameOffset, nameLen, minimized, loc(line), loc(col));
+    }
+
+
+
+    @Override
+    public void handleOpenElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleOpenElementStart(buffer, nameOffset, nameLen, loc(line), loc(col));
+    }
+
+    @Override
+    public void handleOpenElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleOpenElementEnd(buffer, nameOffset, nameLen, loc(line), loc(col));
+    }
+
+
+
+    @Override
+    public void handleAutoOpenElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleAutoOpenElementStart(buffer, nameOffset, nameLen, loc(line), loc(col));
+    }
+
+    @Override
+    public void handleAutoOpenElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleAutoOpenElementEnd(buffer, nameOffset, nameLen, loc(line), loc(col));
+    }
+
+
+
+    @Override
+    public void handleCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleCloseElementStart(buffer, nameOffset, nameLen, loc(line), loc(col));
+    }
+
+    @Override
+    public void handleCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleCloseElementEnd(buffer, nameOffset, nameLen, loc(line), loc(col));
+    }
+
+    @Override
+    public void handleCloseTagEndBadSymbol(char[] buffer, int offset, int len, int line, int col) throws ParseException {
+        getNext().handleCloseTagEndBadSymbol(buffer, offset, len, loc(line), loc(col));
+    }
+
+    @Override
+    public void handleAutoCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleAutoCloseElementStart(buffer, nameOffset, nameLen, loc(line), loc(col));
+    }
+
+    @Override
+    public void handleAutoCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleAutoCloseElementEnd(buffer, nameOffset, nameLen, loc(line), loc(col));
+    }
+
+
+
+    @Override
+    public void handleUnmatchedCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleUnmatchedCloseElementStart(buffer, nameOffset, nameLen, loc(line), loc(col));
+    }
+
+
+    @Override
+    public void handleUnmatchedCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleUnmatchedCloseElementEnd(buffer, nameOffset, nameLen, loc(line), loc(col));
+    }
+
+
+
+    @Override
+    public void handleAttribute(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int nameLine, final int nameCol,
+            final int operatorOffset, final int operatorLen,
+            final int operatorLine, final int operatorCol,
+            final int valueContentOffset, final int valueContentLen,
+            final int valueOuterOffset, final int valueOuterLen,
+            final int valueLine, final int valueCol)
+            throws ParseException {
+        getNext().handleAttribute(
+                buffer,
+                nameOffset, nameLen, loc(nameLine), loc(nameCol),
+                operatorOffset, operatorLen, loc(operatorLine), loc(operatorCol),
+                valueContentOffset, valueContentLen,
+                valueOuterOffset, valueOuterLen, loc(valueLine), loc(valueCol));
+    }
+
+
+
+    @Override
+    public void handleInnerWhiteSpace(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleInnerWhiteSpace(buffer, offset, len, loc(line), loc(col));
+    }
+
+
+
+    @Override
+    public void handleProcessingInstruction(
+            final char[] buffer,
+            final int targetOffset, final int targetLen,
+            final int targetLine, final int targetCol,
+            final int contentOffset, final int contentLen,
+            final int contentLine, final int contentCol,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        getNext().handleProcessingInstruction(
+                buffer,
+                targetOffset, targetLen, loc(targetLine), loc(targetCol),
+                contentOffset, contentLen, loc(contentLine), loc(contentCol),
+                outerOffset, outerLen, loc(line), loc(col));
+    }
+
+
+}
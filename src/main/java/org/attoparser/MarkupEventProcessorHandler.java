@@ -19,12 +19,10 @@
  */
 package org.attoparser;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 
 import org.attoparser.config.ParseConfiguration;
+import org.attoparser.util.NameInternTable;
 import org.attoparser.util.TextUtil;
 
 
@@ -37,7 +35,8 @@
  * events to their specific position in the original document.
  *
  * Note that, although MarkupParser's are stateless, objects of this class are STATEFUL just like markup handlers can
- * potentially be, and therefore a new MarkupEventProcessor object will be built for each parsing operation.
+ * potentially be, and therefore a new MarkupEventProcessor object will be built for each parsing operation (or,
+ * in batch parsing, for each worker, which will reuse it for parsing its documents one after another).
  *
  * @author Daniel Fernandez
  * @since 2.0.0
@@ -48,6 +47,10 @@ final class MarkupEventProcessorHandler extends AbstractChainedMarkupHandler {
     private static final int DEFAULT_STACK_LEN = 10;
     private static final int DEFAULT_ATTRIBUTE_NAMES_LEN = 3;
 
+    // Element and attribute names kept in the element stack are shared among all parsing operations (standard
+    // HTML names are always present in the shared table, and found by means of a perfect hash)
+    private static final NameInternTable STRUCTURE_NAMES = HtmlVocabulary.getNameInternTable();
+
     private ParseStatus status;
 
     private boolean useStack;
@@ -74,11 +77,16 @@ final class MarkupEventProcessorHandler extends AbstractChainedMarkupHandler {
     // Will be used as an element name cache in order to avoid creating a new
     // char[] object each time an element is pushed into the stack or an attribute
     // is processed to check its uniqueness.
-    private StructureNamesRepository structureNamesRepository;
 
     private char[][] elementStack;
+    private int[] elementStackIds;
     private int elementStackSize;
 
+    // In HTML mode, elements are resolved here for each element event (see ParseStatus) and their IDs are kept in
+    // the stack. If validations are case-insensitive, elements are compared by ID (0 = unknown, compare names)
+    private boolean html;
+    private boolean useElementIds;
+
     private boolean validPrologXmlDeclarationRead = false;
     private boolean validPrologDocTypeRead = false;
     private boolean elementRead = false;
@@ -89,13 +97,46 @@ final class MarkupEventProcessorHandler extends AbstractChainedMarkupHandler {
 
     private boolean closeElementIsMatched = true;
 
+    private int maxElementDepth;
+    private int maxAttributesPerElement;
+    private int currentElementAttributeCount = 0;
+
+    // Text, comments and CDATA sections are not processed by this handler, nor by the HtmlMarkupHandler that might
+    // come after it (which only forwards them), so these events (the most frequent ones) are sent directly to the
+    // handler at the end of the internal chain instead of going through one more level of interface calls.
+    private IMarkupHandler directHandler;
+
 
     MarkupEventProcessorHandler(final IMarkupHandler handler) {
+        this(handler, handler);
+    }
+
+
+    MarkupEventProcessorHandler(final IMarkupHandler handler, final IMarkupHandler directHandler) {
 
         super(handler);
 
+        setDirectHandler(directHandler);
+
+    }
+
 
 
+
+    /*
+     * Sets the handler receiving text, comment and CDATA section events directly. It must be the handler
+     * all the rest of the events will end up being forwarded to.
+     */
+    void setDirectHandler(final IMarkupHandler directHandler) {
+        if (directHandler == null) {
+            throw new IllegalArgumentException("Direct handler cannot be null");
+        }
+        this.directHandler = directHandler;
+    }
+
+
+    IMarkupHandler getDirectHandler() {
+        return this.directHandler;
     }
 
 
@@ -115,6 +156,9 @@ public void setParseConfiguration(final ParseConfiguration parseConfiguration) {
 
         this.caseSensitive = parseConfiguration.isCaseSensitive();
 
+        this.html = ParseConfiguration.ParsingMode.HTML == parseConfiguration.getMode();
+        this.useElementIds = this.html && !this.caseSensitive;
+
         this.useStack = (ParseConfiguration.ElementBalancing.NO_BALANCING != parseConfiguration.getElementBalancing() ||
                 parseConfiguration.isUniqueAttributesInElementRequired() || parseConfiguration.isNoUnmatchedCloseElementsRequired() ||
                 ParseConfiguration.UniqueRootElementPresence.NOT_VALIDATED != parseConfiguration.getUniqueRootElementPresence());
@@ -143,18 +187,20 @@ public void setParseConfiguration(final ParseConfiguration parseConfiguration) {
         this.xmlDeclarationPresenceForbidden = this.prologParseConfiguration.getXmlDeclarationPresence().isRequired();
         this.doctypePresenceForbidden = this.prologParseConfiguration.getDoctypePresence().isRequired();
 
+        this.maxElementDepth = parseConfiguration.getMaxElementDepth();
+        this.maxAttributesPerElement = parseConfiguration.getMaxAttributesPerElement();
+
         if (this.useStack) {
 
             this.elementStack = new char[DEFAULT_STACK_LEN][];
+            this.elementStackIds = new int[DEFAULT_STACK_LEN];
             this.elementStackSize = 0;
 
-            this.structureNamesRepository = new StructureNamesRepository();
-
         } else {
 
             this.elementStack = null;
+            this.elementStackIds = null;
             this.elementStackSize = 0;
-            this.structureNamesRepository = null;
 
         }
 
@@ -165,10 +211,76 @@ public void setParseConfiguration(final ParseConfiguration parseConfiguration) {
 
 
 
+    @Override
+    public void handleDocumentStart(final long startTimeNanos, final int line, final int col)
+            throws ParseException {
+
+        // This handler might be reused for parsing several documents, so we reset the document-specific state
+        // (keeping the already created structures)
+        if (this.elementStack != null) {
+            Arrays.fill(this.elementStack, 0, this.elementStackSize, null);
+        }
+        this.elementStackSize = 0;
+        this.validPrologXmlDeclarationRead = false;
+        this.validPrologDocTypeRead = false;
+        this.elementRead = false;
+        this.rootElementName = null;
+        this.currentElementAttributeNamesSize = 0;
+        this.currentElementAttributeCount = 0;
+        this.closeElementIsMatched = true;
+
+        getNext().handleDocumentStart(startTimeNanos, line, col);
+
+    }
+
+
+
+
+    @Override
+    public void handleText(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        this.directHandler.handleText(buffer, offset, len, line, col);
+    }
+
+
+
+
+    @Override
+    public void handleComment(
+            final char[] buffer,
+            final int contentOffset, final int contentLen,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        this.directHandler.handleComment(buffer, contentOffset, contentLen, outerOffset, outerLen, line, col);
+    }
+
+
+
+
+    @Override
+    public void handleCDATASection(
+            final char[] buffer,
+            final int contentOffset, final int contentLen,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        this.directHandler.handleCDATASection(buffer, contentOffset, contentLen, outerOffset, outerLen, line, col);
+    }
+
+
+
+
     public void handleDocumentEnd(final long endTimeNanos, final long totalTimeNanos, final int line, final int col)
             throws ParseException {
 
-        if (this.requireBalancedElements && this.elementStackSize > 0) {
+        // If a handler stopped parsing, the document is incomplete on purpose, so it is not validated
+        final boolean validate = !this.status.parsingStopped;
+
+        if (validate && this.requireBalancedElements && this.elementStackSize > 0) {
             final char[] popped = popFromStack();
             throw new ParseException(
                 "Malformed markup: element " +
@@ -176,7 +288,7 @@ public void handleDocumentEnd(final long endTimeNanos, final long totalTimeNanos
                 " is never closed (no closing tag at the end of document)");
         }
 
-        if (!this.elementRead && (
+        if (validate && !this.elementRead && (
                 (this.validPrologDocTypeRead && this.uniqueRootElementPresence.isDependsOnPrologDoctype()) ||
                 this.uniqueRootElementPresence.isRequiredAlways())) {
             throw new ParseException(
@@ -184,7 +296,12 @@ public void handleDocumentEnd(final long endTimeNanos, final long totalTimeNanos
         }
 
         if (this.useStack) {
-            cleanStack(line, col);
+            if (validate || this.autoClose) {
+                cleanStack(line, col);
+            } else {
+                // Elements still open cannot be auto-closed, but that is not an error either
+                this.elementStackSize = 0;
+            }
         }
 
         getNext().handleDocumentEnd(endTimeNanos, totalTimeNanos, line, col);
@@ -255,6 +372,8 @@ public void handleStandaloneElementStart(
             final int line, final int col)
             throws ParseException {
 
+        this.currentElementAttributeCount = 0;
+
         if (this.useStack) {
 
             if (this.elementStackSize == 0) {
@@ -262,7 +381,6 @@ public void handleStandaloneElementStart(
             }
 
             if (this.requireUniqueAttributesInElement) {
-                this.currentElementAttributeNames = null;
                 this.currentElementAttributeNamesSize = 0;
             }
 
@@ -276,11 +394,18 @@ public void handleStandaloneElementStart(
          * have to be performed and then the event launched again.
          */
 
+        final HtmlElement element = (this.html ? HtmlElements.forName(buffer, nameOffset, nameLen) : null);
+
+        this.status.element = element;
         this.status.autoOpenCloseDone = false;
         this.status.autoOpenParents = null;
         this.status.autoOpenLimits = null;
+        this.status.autoOpenParentsIds = null;
+        this.status.autoOpenLimitsSet = null;
         this.status.autoCloseRequired = null;
         this.status.autoCloseLimits = null;
+        this.status.autoCloseRequiredSet = null;
+        this.status.autoCloseLimitsSet = null;
         this.status.avoidStacking = true; // Default for standalone elements is avoid stacking
 
         getNext().handleStandaloneElementStart(buffer, nameOffset, nameLen, minimized, line, col);
@@ -289,18 +414,23 @@ public void handleStandaloneElementStart(
             if (this.status.autoOpenParents != null || this.status.autoCloseRequired != null) {
                 if (this.status.autoCloseRequired != null) {
                     // Auto-close operations
-                    autoClose(this.status.autoCloseRequired, this.status.autoCloseLimits, line, col);
+                    autoClose(
+                            this.status.autoCloseRequired, this.status.autoCloseLimits,
+                            this.status.autoCloseRequiredSet, this.status.autoCloseLimitsSet, line, col);
                 }
                 if (this.status.autoOpenParents != null) {
                     // Auto-open operations
-                    autoOpen(this.status.autoOpenParents, this.status.autoOpenLimits, line, col);
+                    autoOpen(
+                            this.status.autoOpenParents, this.status.autoOpenLimits,
+                            this.status.autoOpenParentsIds, this.status.autoOpenLimitsSet, line, col);
                 }
                 // Re-launching of the event
+                this.status.element = element;
                 this.status.autoOpenCloseDone = true;
                 getNext().handleStandaloneElementStart(buffer, nameOffset, nameLen, minimized, line, col);
             }
             if (!this.status.avoidStacking) {
-                pushToStack(buffer, nameOffset, nameLen);
+                pushToStack(buffer, nameOffset, nameLen, elementId(element), line, col);
             }
         } else {
             if (this.status.autoOpenParents != null || this.status.autoCloseRequired != null) {
@@ -335,6 +465,8 @@ public void handleOpenElementStart(
             final int line, final int col)
             throws ParseException {
 
+        this.currentElementAttributeCount = 0;
+
         if (this.useStack) {
 
             if (this.elementStackSize == 0) {
@@ -342,7 +474,6 @@ public void handleOpenElementStart(
             }
 
             if (this.requireUniqueAttributesInElement) {
-                this.currentElementAttributeNames = null;
                 this.currentElementAttributeNamesSize = 0;
             }
 
@@ -354,11 +485,18 @@ public void handleOpenElementStart(
          * have to be performed and then the event launched again.
          */
 
+        final HtmlElement element = (this.html ? HtmlElements.forName(buffer, nameOffset, nameLen) : null);
+
+        this.status.element = element;
         this.status.autoOpenCloseDone = false;
         this.status.autoOpenParents = null;
         this.status.autoOpenLimits = null;
+        this.status.autoOpenParentsIds = null;
+        this.status.autoOpenLimitsSet = null;
         this.status.autoCloseRequired = null;
         this.status.autoCloseLimits = null;
+        this.status.autoCloseRequiredSet = null;
+        this.status.autoCloseLimitsSet = null;
         this.status.avoidStacking = false; // Default for open elements is not to avoid stacking
 
         getNext().handleOpenElementStart(buffer, nameOffset, nameLen, line, col);
@@ -367,19 +505,24 @@ public void handleOpenElementStart(
             if (this.status.autoOpenParents != null || this.status.autoCloseRequired != null) {
                 if (this.status.autoCloseRequired != null) {
                     // Auto-close operations
-                    autoClose(this.status.autoCloseRequired, this.status.autoCloseLimits, line, col);
+                    autoClose(
+                            this.status.autoCloseRequired, this.status.autoCloseLimits,
+                            this.status.autoCloseRequiredSet, this.status.autoCloseLimitsSet, line, col);
                 }
                 if (this.status.autoOpenParents != null) {
                     // Auto-open operations
-                    autoOpen(this.status.autoOpenParents, this.status.autoOpenLimits, line, col);
+                    autoOpen(
+                            this.status.autoOpenParents, this.status.autoOpenLimits,
+                            this.status.autoOpenParentsIds, this.status.autoOpenLimitsSet, line, col);
                 }
                 // Re-launching of the event
+                this.status.element = element;
                 this.status.autoOpenCloseDone = true;
                 getNext().handleOpenElementStart(buffer, nameOffset, nameLen, line, col);
             }
             if (!this.status.avoidStacking) {
                 // Can be an HTML void element
-                pushToStack(buffer, nameOffset, nameLen);
+                pushToStack(buffer, nameOffset, nameLen, elementId(element), line, col);
             }
         } else {
             if (this.status.autoOpenParents != null || this.status.autoCloseRequired != null) {
@@ -433,13 +576,18 @@ public void handleCloseElementStart(
             final int line, final int col)
             throws ParseException {
 
+        final HtmlElement element = (this.html ? HtmlElements.forName(buffer, nameOffset, nameLen) : null);
+        this.status.element = element;
+
         if (this.useStack) {
 
             this.closeElementIsMatched =
-                    checkStackForElement(buffer, nameOffset, nameLen, line, col);
+                    checkStackForElement(buffer, nameOffset, nameLen, elementId(element), line, col);
+
+            // Auto-close events might have been fired while checking the stack
+            this.status.element = element;
 
             if (this.requireUniqueAttributesInElement) {
-                this.currentElementAttributeNames = null;
                 this.currentElementAttributeNamesSize = 0;
             }
 
@@ -532,11 +680,19 @@ public void handleAttribute(
             final int valueLine, final int valueCol)
             throws ParseException {
 
+        if (++this.currentElementAttributeCount > this.maxAttributesPerElement) {
+            throw new ParseLimitExceededException(
+                    ParseLimitExceededException.Limit.MAX_ATTRIBUTES_PER_ELEMENT,
+                    "Element exceeds the maximum number of attributes established by configuration (" +
+                    this.maxAttributesPerElement + ")", nameLine, nameCol);
+        }
+
         if (this.useStack && this.requireUniqueAttributesInElement) {
 
             // Check attribute name is unique in this element
             if (this.currentElementAttributeNames == null) {
-                // we only create this structure if there is at least one attribute
+                // we only create this structure if there is at least one attribute (and then reuse it for the
+                // rest of the elements, just resetting its size)
                 this.currentElementAttributeNames = new char[DEFAULT_ATTRIBUTE_NAMES_LEN][];
             }
             for (int i = 0; i < this.currentElementAttributeNamesSize; i++) {
@@ -562,7 +718,7 @@ public void handleAttribute(
             }
 
             this.currentElementAttributeNames[this.currentElementAttributeNamesSize] =
-                    this.structureNamesRepository.getStructureName(buffer, nameOffset, nameLen);
+                    STRUCTURE_NAMES.internChars(buffer, nameOffset, nameLen);
 
             this.currentElementAttributeNamesSize++;
 
@@ -673,7 +829,7 @@ public void handleDocType(
         if (this.useStack) {
 
             this.rootElementName =
-                    this.structureNamesRepository.getStructureName(buffer, elementNameOffset, elementNameLen);
+                    STRUCTURE_NAMES.internChars(buffer, elementNameOffset, elementNameLen);
 
         }
 
@@ -743,7 +899,7 @@ private void checkValidRootElement(
 
 
     private boolean checkStackForElement(
-            final char[] buffer, final int offset, final int len, final int line, final int col)
+            final char[] buffer, final int offset, final int len, final int id, final int line, final int col)
             throws ParseException {
 
         int peekDelta = 0;
@@ -751,12 +907,15 @@ private boolean checkStackForElement(
 
         while (peek != null) {
 
-            if (TextUtil.equals(this.caseSensitive, peek, 0, peek.length, buffer, offset, len)) {
+            final int peekId = this.elementStackIds[(this.elementStackSize - 1) - peekDelta];
+            if ((this.useElementIds && id != 0 && peekId != 0) ?
+                    id == peekId : TextUtil.equals(this.caseSensitive, peek, 0, peek.length, buffer, offset, len)) {
 
                 // We found the corresponding opening element, so we execute all pending auto-close events
                 // (if needed) and return true (meaning the close element has a matching open element).
 
                 for (int i = 0; i < peekDelta; i++) {
+                    this.status.element = peekElementFromStack();
                     peek = popFromStack();
                     if (this.autoClose) {
                         getNext().handleAutoCloseElementStart(peek, 0, peek.length, line, col);
@@ -812,6 +971,7 @@ private void cleanStack(final int line, final int col)
             // When we arrive here we know that "requireBalancedElements" is
             // false. If it were true, an exception would have been raised before.
 
+            this.status.element = peekElementFromStack();
             char[] popped = popFromStack();
 
             while (popped != null) {
@@ -827,6 +987,7 @@ private void cleanStack(final int line, final int col)
                             " is never closed", line, col);
                 }
 
+                this.status.element = peekElementFromStack();
                 popped = popFromStack();
 
             }
@@ -838,43 +999,36 @@ private void cleanStack(final int line, final int col)
 
 
     private void autoClose(
-            final char[][] autoCloseElements, final char[][] autoCloseLimits, final int line, final int col)
+            final char[][] autoCloseElements, final char[][] autoCloseLimits,
+            final long[] autoCloseElementsSet, final long[] autoCloseLimitsSet,
+            final int line, final int col)
             throws ParseException {
 
         int peekDelta = 0;
         int unstackCount = 0;
         char[] peek = peekFromStack(peekDelta);
+        int peekId;
 
-        int i,n;
+        int n;
 
         while (peek != null) {
 
+            peekId = this.elementStackIds[(this.elementStackSize - 1) - peekDelta];
+
             if (autoCloseLimits != null) {
                 // First check whether we found a limit
-                i = 0;
-                n = autoCloseLimits.length;
-                while (n-- != 0) {
-                    if (TextUtil.equals(this.caseSensitive, autoCloseLimits[i], peek)) {
-                        // Just found a limit, we should stop computing unstacking here
-                        peek = null; // This will make us exit the loop
-                        break;
-                    }
-                    i++;
+                if (containsElement(autoCloseLimits, autoCloseLimitsSet, peek, peekId)) {
+                    // Just found a limit, we should stop computing unstacking here
+                    peek = null; // This will make us exit the loop
                 }
             }
 
             if (peek != null) {
 
                 // Check whether this is an element we must close
-                i = 0;
-                n = autoCloseElements.length;
-                while (n-- != 0) {
-                    if (TextUtil.equals(this.caseSensitive, autoCloseElements[i], peek)) {
-                        // This is an element we must unstack, so we should mark unstackCount
-                        unstackCount = peekDelta + 1;
-                        break;
-                    }
-                    i++;
+                if (containsElement(autoCloseElements, autoCloseElementsSet, peek, peekId)) {
+                    // This is an element we must unstack, so we should mark unstackCount
+                    unstackCount = peekDelta + 1;
                 }
 
                 // Feed the loop
@@ -888,6 +1042,7 @@ private void autoClose(
         n = unstackCount;
         while (n-- != 0) {
 
+            this.status.element = peekElementFromStack();
             peek = popFromStack();
 
             if (this.requireBalancedElements) {
@@ -909,7 +1064,9 @@ private void autoClose(
 
 
     private void autoOpen(
-            final char[][] autoOpenParents, final char[][] autoOpenLimits, final int line, final int col)
+            final char[][] autoOpenParents, final char[][] autoOpenLimits,
+            final int[] autoOpenParentsIds, final long[] autoOpenLimitsSet,
+            final int line, final int col)
             throws ParseException {
 
         if (!this.autoOpen) {
@@ -938,9 +1095,10 @@ private void autoOpen(
 
             } else {
 
+                final int peekId = this.elementStackIds[this.elementStackSize - 1];
                 n = autoOpenParents.length;
                 while (peek != null && n-- != 0) {
-                    if (TextUtil.equals(this.caseSensitive, autoOpenParents[n], peek)) {
+                    if (sameElement(autoOpenParents[n], idAt(autoOpenParentsIds, n), peek, peekId)) {
                         // We compute the amount of parent elements we need to insert
                         parentInsertCount = (autoOpenParents.length - n) - 1;
                         break;
@@ -964,14 +1122,10 @@ private void autoOpen(
             if (peek != null) {
                 // Let's check the immediate parent and see if it is in the list of limits
 
-                i = 0;
-                n = autoOpenLimits.length;
-                while (n-- != 0) {
-                    if (TextUtil.equals(this.caseSensitive, autoOpenLimits[i], peek)) {
-                        // Just found a limit, so there's nothing to insert here
-                        return;
-                    }
-                    i++;
+                final int peekId = this.elementStackIds[this.elementStackSize - 1];
+                if (containsElement(autoOpenLimits, autoOpenLimitsSet, peek, peekId)) {
+                    // Just found a limit, so there's nothing to insert here
+                    return;
                 }
 
             }
@@ -990,10 +1144,14 @@ private void autoOpen(
 
         while (n-- != 0) {
 
+            final int parentId = idAt(autoOpenParentsIds, i);
+
+            this.status.element = HtmlElements.forId(parentId);
             getNext().handleAutoOpenElementStart(autoOpenParents[i], 0, autoOpenParents[i].length, line, col);
             getNext().handleAutoOpenElementEnd(autoOpenParents[i], 0, autoOpenParents[i].length, line, col);
 
-            pushToStack(autoOpenParents[i], 0, autoOpenParents[i].length);
+            pushToStack(
+                    autoOpenParents[i], 0, autoOpenParents[i].length, parentId, line, col);
 
             i++;
 
@@ -1004,14 +1162,23 @@ private void autoOpen(
 
 
     private void pushToStack(
-            final char[] buffer, final int offset, final int len) {
+            final char[] buffer, final int offset, final int len, final int id, final int line, final int col)
+            throws ParseLimitExceededException {
+
+        if (this.elementStackSize == this.maxElementDepth) {
+            throw new ParseLimitExceededException(
+                    ParseLimitExceededException.Limit.MAX_ELEMENT_DEPTH,
+                    "Element exceeds the maximum depth established by configuration (" +
+                    this.maxElementDepth + ")", line, col);
+        }
 
         if (this.elementStackSize == this.elementStack.length) {
             growStack();
         }
 
         this.elementStack[this.elementStackSize] =
-                this.structureNamesRepository.getStructureName(buffer, offset, len);
+                STRUCTURE_NAMES.internChars(buffer, offset, len);
+        this.elementStackIds[this.elementStackSize] = id;
 
         this.elementStackSize++;
 
@@ -1026,6 +1193,14 @@ private char[] peekFromStack(final int delta) {
     }
 
 
+    private HtmlElement peekElementFromStack() {
+        if (this.elementStackSize == 0) {
+            return null;
+        }
+        return HtmlElements.forId(this.elementStackIds[this.elementStackSize - 1]);
+    }
+
+
     private char[] popFromStack() {
         if (this.elementStackSize == 0) {
             return null;
@@ -1037,148 +1212,54 @@ private char[] popFromStack() {
     }
 
 
-    private void growStack() {
-
-        final int newStackLen = this.elementStack.length + DEFAULT_STACK_LEN;
-        final char[][] newStack = new char[newStackLen][];
-        System.arraycopy(this.elementStack, 0, newStack, 0, this.elementStack.length);
-        this.elementStack = newStack;
-
+    private static int elementId(final HtmlElement element) {
+        return (element == null ? 0 : element.id);
     }
 
 
+    private static int idAt(final int[] ids, final int i) {
+        return (ids == null ? 0 : ids[i]);
+    }
 
 
-
-
-
-    /*
-     * In-instance repository for structure names (element + attribute names).
-     *
-     * This class is NOT thread-safe. Should only be used inside a specific handler
-     * instance/thread and only during a single execution.
-     */
-    static final class StructureNamesRepository {
-
-        private static final int REPOSITORY_INITIAL_LEN = 100;
-        private static final int REPOSITORY_INITIAL_INC = 20;
-        private char[][] repository;
-        private int repositorySize;
-
-
-        StructureNamesRepository() {
-            super();
-            this.repository = new char[REPOSITORY_INITIAL_LEN][];
-            this.repositorySize = 0;
+    private boolean sameElement(final char[] name1, final int id1, final char[] name2, final int id2) {
+        if (this.useElementIds && id1 != 0 && id2 != 0) {
+            return id1 == id2;
         }
+        return TextUtil.equals(this.caseSensitive, name1, name2);
+    }
 
 
-        char[] getStructureName(final char[] text, final int offset, final int len) {
-
-            final int index =
-                    TextUtil.binarySearch(true, this.repository, 0, this.repositorySize, text, offset, len);
-
-            if (index >= 0) {
-                return this.repository[index];
-            }
-
-            /*
-             * NOT FOUND. We need to store the text
-             */
-            return storeStructureName(index, text, offset, len);
-
+    private boolean containsElement(
+            final char[][] names, final long[] idSet, final char[] element, final int elementId) {
+        if (this.useElementIds && idSet != null) {
+            // All names have IDs, so an element with no ID cannot be any of them
+            return HtmlElements.idSetContains(idSet, elementId);
         }
-
-
-        private char[] storeStructureName(final int index, final char[] text, final int offset, final int len) {
-
-            if (this.repositorySize == this.repository.length) {
-                // We must grow the repository!
-                final char[][] newRepository = new char[this.repository.length + REPOSITORY_INITIAL_INC][];
-                Arrays.fill(newRepository, null);
-                System.arraycopy(this.repository, 0, newRepository, 0, this.repositorySize);
-                this.repository = newRepository;
+        int i = 0;
+        int n = names.length;
+        while (n-- != 0) {
+            if (TextUtil.equals(this.caseSensitive, names[i], element)) {
+                return true;
             }
-
-            // binary search returned (-(insertion point) - 1)
-            final int insertionIndex = ((index + 1) * -1);
-
-            // We rely on the static structure name cache, just in case it is a standard HTML structure name.
-            // Note the StandardNamesRepository will create the new char[] if not found, so no need to null-check.
-            final char[] structureName = StandardNamesRepository.getStructureName(text, offset, len);
-
-            // Make room and insert the new element
-            System.arraycopy(this.repository, insertionIndex, this.repository, insertionIndex + 1, this.repositorySize - insertionIndex);
-            this.repository[insertionIndex] = structureName;
-            this.repositorySize++;
-
-            return structureName;
-
+            i++;
         }
-
+        return false;
     }
 
 
+    private void growStack() {
 
+        final int newStackLen = this.elementStack.length + DEFAULT_STACK_LEN;
+        final char[][] newStack = new char[newStackLen][];
+        System.arraycopy(this.elementStack, 0, newStack, 0, this.elementStack.length);
+        this.elementStack = newStack;
 
-    /*
-     *     This class is IMMUTABLE, and therefore thread-safe. Will be used in a static manner by all
-     *     threads which require the use of a repository of standard names (HTML names, in this case).
-     */
-    static final class StandardNamesRepository {
-
-
-        private static final char[][] REPOSITORY;
-
-
-        static {
-
-            final List<String> names = new ArrayList<String>(150);
-            // Add all the standard HTML element (tag) names
-            names.addAll(HtmlNames.ALL_STANDARD_ELEMENT_NAMES);
-            // We know all standard element names are lowercase, so let's cache them uppercase too
-            for (final String name : HtmlNames.ALL_STANDARD_ELEMENT_NAMES) {
-                names.add(name.toUpperCase());
-            }
-            // Add all the standard HTML attribute names
-            names.addAll(HtmlNames.ALL_STANDARD_ATTRIBUTE_NAMES);
-            // We know all standard attribute names are lowercase, so let's cache them uppercase too
-            for (final String name : HtmlNames.ALL_STANDARD_ATTRIBUTE_NAMES) {
-                names.add(name.toUpperCase());
-            }
-            Collections.sort(names);
-
-            REPOSITORY = new char[names.size()][];
-
-            for (int i = 0; i < names.size(); i++) {
-                final String name = names.get(i);
-                REPOSITORY[i] = name.toCharArray();
-            }
-
-        }
-
-
-        static char[] getStructureName(final char[] text, final int offset, final int len) {
-
-            final int index = TextUtil.binarySearch(true, REPOSITORY, text, offset, len);
-
-            if (index < 0) {
-                final char[] structureName = new char[len];
-                System.arraycopy(text, offset, structureName, 0, len);
-                return structureName;
-            }
-
-            return REPOSITORY[index];
-
-        }
-
-
-        private StandardNamesRepository() {
-            super();
-        }
+        final int[] newStackIds = new int[newStackLen];
+        System.arraycopy(this.elementStackIds, 0, newStackIds, 0, this.elementStackIds.length);
+        this.elementStackIds = newStackIds;
 
     }
 
 
-
 }
\ No newline at end of file
@@ -19,12 +19,34 @@
  */
 package org.attoparser;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
-import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.attoparser.config.ParseConfiguration;
 import org.attoparser.select.ParseSelection;
+import org.attoparser.tape.TapeBuilderMarkupHandler;
+import org.attoparser.util.TextUtil;
 
 
 /**
@@ -74,14 +96,18 @@
  * </p>
  * <p>
  *   This parser class uses a (configurable) pool of <tt>char[]</tt> buffers, in order to reduce the amount of
- *   memory used for parsing (buffers are large structures). This pool works in a non-blocking mode,
- *   so if a new buffer is needed and all are currently allocated, a new (unpooled) <tt>char[]</tt> object
- *   is created and returned without waiting for a pooled buffer to be available.
+ *   memory used for parsing (buffers are large structures). This pool works in a non-blocking (lock-free) mode,
+ *   so if a new buffer is needed and all are currently allocated, a new <tt>char[]</tt> object
+ *   is created and returned without waiting for a pooled buffer to be available. Buffers are pooled by
+ *   size classes (so that buffers that had to grow can also be reused) up to a configurable maximum amount of
+ *   retained memory, and statistics on pool usage can be obtained by means of {@link #getBufferPoolStatistics()}.
  * </p>
  * <p>
  *   <em>(Note that these pooled buffers will not be used when parsing documents specified as <tt>char[]</tt>
  *   objects. In such case, the <tt>char[]</tt> documents themselves will be used as buffers, avoiding the need
- *   to allocate pooled buffers or use any additional amount of memory.)</em>
+ *   to allocate pooled buffers or use any additional amount of memory. The same applies to heap
+ *   <tt>java.nio.CharBuffer</tt> objects. Other <tt>CharSequence</tt> documents, including <tt>String</tt>,
+ *   are copied in bulk into a single buffer and parsed from it, without the need of a <tt>Reader</tt>.)</em>
  * </p>
  *
  * @author Daniel Fern&aacute;ndez
@@ -111,6 +137,46 @@ public final class MarkupParser implements IMarkupParser {
      */
     public static final int DEFAULT_POOL_SIZE = 2;
 
+    /**
+     * <p>
+     *   Default maximum amount of chars that can be retained in the pool of buffers,
+     *   adding up the sizes of all the buffers that are pooled and not currently in use.
+     *   Value: 1048576 chars (= 2 MBytes).
+     * </p>
+     */
+    public static final long DEFAULT_POOL_MAX_RETAINED_SIZE = 1024L * 1024L;
+
+    /*
+     * Charset to be used when parsing documents specified as bytes if no charset is specified and
+     * none can be detected from the document itself.
+     */
+    private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+    /*
+     * Types of structures (or texts) the scan of which can be resumed after reaching the end of the buffer
+     */
+    static final int SCAN_NONE = 0;
+    static final int SCAN_TEXT = 1;
+    static final int SCAN_OPEN_ELEMENT = 2;
+    static final int SCAN_CLOSE_ELEMENT = 3;
+    static final int SCAN_COMMENT = 4;
+    static final int SCAN_CDATA = 5;
+    static final int SCAN_XML_DECLARATION = 6;
+    static final int SCAN_PROCESSING_INSTRUCTION = 7;
+    // Structures will only be resumed once more chars than needed for determining their type have been read
+    // (e.g. "<!DOCTYPE" followed by whitespace or '>' is needed for telling a DOCTYPE from an open element)
+    private static final int MIN_RESUMABLE_STRUCTURE_LEN = 10;
+
+    /*
+     * Sequences closing the structures that have to be jumped over when skipping the contents of an element
+     */
+    private static final char[] COMMENT_END = "-->".toCharArray();
+    private static final char[] CDATA_END = "]]>".toCharArray();
+    private static final char[] PROCESSING_INSTRUCTION_END = "?>".toCharArray();
+
+    // Documents will only be split for parallel parsing in fragments of at least this size
+    static final int DEFAULT_PARALLEL_MIN_FRAGMENT_LEN = 64 * 1024;
+
 
     private final ParseConfiguration configuration;
     private final BufferPool pool;
@@ -157,9 +223,55 @@ public MarkupParser(final ParseConfiguration configuration) {
      * @param bufferSize the default size of the buffers to be instanced for this parser.
      */
     public MarkupParser(final ParseConfiguration configuration, final int poolSize, final int bufferSize) {
+        this(configuration, poolSize, bufferSize, DEFAULT_POOL_MAX_RETAINED_SIZE);
+    }
+
+
+    /**
+     * <p>
+     *   Creates a new instance of this parser, specifying the pool and buffer size, and also the maximum
+     *   amount of memory (in chars) that the pool of buffers will be allowed to retain.
+     * </p>
+     * <p>
+     *   Buffers are pooled by size classes, the smallest one being the buffer size and the rest of them
+     *   successive doublings of that size (which are the sizes buffers reach when they need to grow).
+     *   The pool can retain up to <tt>poolSize</tt> buffers for each size class, as long as the total size
+     *   of the retained buffers is not greater than <tt>maxRetainedSize</tt>. Default maximum retained size
+     *   is {@link MarkupParser#DEFAULT_POOL_MAX_RETAINED_SIZE}.
+     * </p>
+     *
+     * @param configuration the parsing configuration to be used.
+     * @param poolSize the size of the pool of buffers to be used (for each size class).
+     * @param bufferSize the default size of the buffers to be instanced for this parser.
+     * @param maxRetainedSize the maximum amount of chars to be retained in the pool of buffers.
+     */
+    public MarkupParser(
+            final ParseConfiguration configuration, final int poolSize, final int bufferSize,
+            final long maxRetainedSize) {
         super();
+        if (poolSize < 0 || bufferSize <= 0 || maxRetainedSize < 0L) {
+            throw new IllegalArgumentException(
+                    "Pool size (" + poolSize + ") and maximum retained size (" + maxRetainedSize + ") cannot be " +
+                    "less than zero, and buffer size (" + bufferSize + ") must be greater than zero");
+        }
         this.configuration = configuration;
-        this.pool = new BufferPool(poolSize, bufferSize);
+        this.pool = new BufferPool(poolSize, bufferSize, maxRetainedSize);
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns a snapshot of the statistics of the pool of buffers used by this parser, which can be
+     *   used for sizing the pool.
+     * </p>
+     *
+     * @return the pool statistics.
+     */
+    public BufferPoolStatistics getBufferPoolStatistics() {
+        return new BufferPoolStatistics(
+                this.pool.hits.get(), this.pool.misses.get(), this.pool.growths.get(), this.pool.retainedSize.get());
     }
 
 
@@ -172,7 +284,61 @@ public void parse(final String document, final IMarkupHandler handler)
         if (document == null) {
             throw new IllegalArgumentException("Document cannot be null");
         }
-        parse(new StringReader(document), handler);
+        parseCharSequence(document, handler);
+    }
+
+
+    /**
+     * <p>
+     *   Parse a document using the specified {@link IMarkupHandler}.
+     * </p>
+     * <p>
+     *   The contents of the sequence are scanned directly (or after a single bulk copy into a
+     *   buffer), without the need to wrap it into a {@link Reader}.
+     * </p>
+     *
+     * @param document the document to be parsed, as a CharSequence (e.g. a StringBuilder).
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parse(final CharSequence document, final IMarkupHandler handler)
+            throws ParseException {
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        if (document instanceof CharBuffer) {
+            parse((CharBuffer) document, handler);
+            return;
+        }
+        parseCharSequence(document, handler);
+    }
+
+
+    /**
+     * <p>
+     *   Parse a document using the specified {@link IMarkupHandler}.
+     * </p>
+     * <p>
+     *   Only the <em>remaining</em> contents of the buffer (between its position and its limit) will be
+     *   parsed, and the position of the buffer will not be modified. If the buffer is backed by an
+     *   accessible <tt>char[]</tt>, that array will be scanned in place.
+     * </p>
+     *
+     * @param document the document to be parsed, as a CharBuffer.
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parse(final CharBuffer document, final IMarkupHandler handler)
+            throws ParseException {
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        if (document.hasArray()) {
+            // Heap, writable buffer: we can directly use its backing array, no copy needed
+            parse(document.array(), document.arrayOffset() + document.position(), document.remaining(), handler);
+            return;
+        }
+        parseCharSequence(document, handler);
     }
 
 
@@ -202,21 +368,8 @@ public void parse(
             throw new IllegalArgumentException("Handler cannot be null");
         }
 
-        IMarkupHandler markupHandler =
-                (ParseConfiguration.ParsingMode.HTML.equals(this.configuration.getMode()) ?
-                        new HtmlMarkupHandler(handler) : handler);
-
-        // We will not report directly to the specified handler, but instead to an intermediate class that will be in
-        // charge of applying the required markup logic and rules, according to the specified configuration
-        markupHandler = new MarkupEventProcessorHandler(markupHandler);
-
-        markupHandler.setParseConfiguration(this.configuration);
-
         final ParseStatus status = new ParseStatus();
-        markupHandler.setParseStatus(status);
-
-        final ParseSelection selection = new ParseSelection();
-        markupHandler.setParseSelection(selection);
+        final IMarkupHandler markupHandler = prepareHandler(handler, status);
 
         // We already have a suitable char[] buffer, so there is no need to use one from the pool.
         parseDocument(document, offset, len, markupHandler, status);
@@ -237,21 +390,8 @@ public void parse(
             throw new IllegalArgumentException("Handler cannot be null");
         }
 
-        IMarkupHandler markupHandler =
-                (ParseConfiguration.ParsingMode.HTML.equals(this.configuration.getMode()) ?
-                        new HtmlMarkupHandler(handler) : handler);
-
-        // We will not report directly to the specified handler, but instead to an intermediate class that will be in
-        // charge of applying the required markup logic and rules, according to the specified configuration
-        markupHandler = new MarkupEventProcessorHandler(markupHandler);
-
-        markupHandler.setParseConfiguration(this.configuration);
-
         final ParseStatus status = new ParseStatus();
-        markupHandler.setParseStatus(status);
-
-        final ParseSelection selection = new ParseSelection();
-        markupHandler.setParseSelection(selection);
+        final IMarkupHandler markupHandler = prepareHandler(handler, status);
 
         // We don't already have a suitable char[] buffer, so we expect the parser to use one of its pooled buffers.
         parseDocument(reader, this.pool.poolBufferSize, markupHandler, status);
@@ -260,247 +400,1125 @@ public void parse(
 
 
 
-
-
-    /*
-     * This method receiving the buffer size with package visibility allows
-     * testing different buffer sizes.
+    /**
+     * <p>
+     *   Parse a document specified as a sequence of bytes using the specified {@link IMarkupHandler}.
+     * </p>
+     * <p>
+     *   Bytes will be decoded directly into the parser's buffers, without the need to wrap the stream into
+     *   an {@link java.io.InputStreamReader}. If <tt>charset</tt> is <tt>null</tt>, the encoding will be
+     *   detected by looking for a Byte Order Mark, an XML Declaration specifying an <tt>encoding</tt> and
+     *   (in HTML mode) a <tt>&lt;meta&gt;</tt> element specifying a <tt>charset</tt>, defaulting to
+     *   <tt>UTF-8</tt> if none of these are found.
+     * </p>
+     * <p>
+     *   The provided {@link InputStream} object will be closed after parsing.
+     * </p>
+     *
+     * @param inputStream an InputStream on the document.
+     * @param charset the charset to be used for decoding the document, or <tt>null</tt> for auto-detection.
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
      */
-    void parseDocument(
-            final Reader reader, final int suggestedBufferSize,
-            final IMarkupHandler handler, final ParseStatus status)
+    public void parse(
+            final InputStream inputStream, final Charset charset, final IMarkupHandler handler)
             throws ParseException {
 
+        if (inputStream == null) {
+            throw new IllegalArgumentException("Input stream cannot be null");
+        }
 
-        final long parsingStartTimeNanos = System.nanoTime();
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
 
-        char[] buffer = null;
+        parse(openReader(inputStream, charset), handler);
 
-        try {
+    }
 
-            handler.handleDocumentStart(parsingStartTimeNanos, 1, 1);
 
-            int bufferSize = suggestedBufferSize;
-            buffer = this.pool.allocateBuffer(bufferSize);
+    /**
+     * <p>
+     *   Parse a document specified as a sequence of bytes using the specified {@link IMarkupHandler}.
+     * </p>
+     * <p>
+     *   If <tt>charset</tt> is <tt>null</tt>, the encoding will be detected in the same way as explained
+     *   for {@link #parse(InputStream, Charset, IMarkupHandler)}.
+     * </p>
+     *
+     * @param document the document to be parsed, as a byte[].
+     * @param charset the charset to be used for decoding the document, or <tt>null</tt> for auto-detection.
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parse(final byte[] document, final Charset charset, final IMarkupHandler handler)
+            throws ParseException {
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        parse(ByteBuffer.wrap(document), charset, handler);
+    }
 
-            int bufferContentSize = reader.read(buffer);
 
-            boolean cont = (bufferContentSize != -1);
+    /**
+     * <p>
+     *   Parse a document specified as a sequence of bytes using the specified {@link IMarkupHandler}.
+     * </p>
+     * <p>
+     *   Only the <em>remaining</em> bytes in the buffer (between its position and its limit) will be
+     *   parsed, and the position of the buffer will not be modified. If <tt>charset</tt> is <tt>null</tt>,
+     *   the encoding will be detected in the same way as explained for
+     *   {@link #parse(InputStream, Charset, IMarkupHandler)}.
+     * </p>
+     *
+     * @param document the document to be parsed, as a ByteBuffer.
+     * @param charset the charset to be used for decoding the document, or <tt>null</tt> for auto-detection.
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parse(final ByteBuffer document, final Charset charset, final IMarkupHandler handler)
+            throws ParseException {
 
-            status.offset = -1;
-            status.line = 1;
-            status.col = 1;
-            status.inStructure = false;
-            status.parsingDisabled = true;
-            status.parsingDisabledLimitSequence = null;
-            status.autoCloseRequired = null;
-            status.autoCloseLimits = null;
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
 
-            while (cont) {
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
 
-                parseBuffer(buffer, 0, bufferContentSize, handler, status);
+        parse(openReader(document, charset), handler);
 
-                int readOffset = 0;
-                int readLen = bufferSize;
+    }
 
-                if (status.offset == 0) {
 
-                    if (bufferContentSize == bufferSize) {
-                        // Buffer is not big enough, double it!
 
-                        char[] newBuffer = null;
-                        try {
+    /**
+     * <p>
+     *   Parse a document stored in a file using the specified {@link IMarkupHandler}.
+     * </p>
+     * <p>
+     *   The file will be memory-mapped in consecutive read-only windows which will be decoded
+     *   incrementally into the parser's buffers, so that I/O is performed by the operating system's
+     *   page cache and the amount of heap memory used does not depend on the size of the file (except
+     *   for the size of the largest structure or text in the document, which must fit into a buffer).
+     *   This makes this method especially adequate for parsing very large documents.
+     * </p>
+     * <p>
+     *   If <tt>charset</tt> is <tt>null</tt>, the encoding will be detected in the same way as explained
+     *   for {@link #parse(InputStream, Charset, IMarkupHandler)}.
+     * </p>
+     *
+     * @param path the path of the file containing the document.
+     * @param charset the charset to be used for decoding the document, or <tt>null</tt> for auto-detection.
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parse(final Path path, final Charset charset, final IMarkupHandler handler)
+            throws ParseException {
+        parse(path, ByteDecodingReader.DEFAULT_MAPPED_WINDOW_SIZE, charset, handler);
+    }
 
-                            bufferSize *= 2;
 
-                            newBuffer = this.pool.allocateBuffer(bufferSize);
-                            System.arraycopy(buffer, 0, newBuffer, 0, bufferContentSize);
+    void parse(final Path path, final int mappedWindowSize, final Charset charset, final IMarkupHandler handler)
+            throws ParseException {
 
-                            this.pool.releaseBuffer(buffer);
+        if (path == null) {
+            throw new IllegalArgumentException("Path cannot be null");
+        }
 
-                            buffer = newBuffer;
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
 
-                        } catch (final Exception ignored) {
-                            this.pool.releaseBuffer(newBuffer);
-                        }
+        parse(openReader(path, mappedWindowSize, charset), handler);
 
-                    }
+    }
 
-                    // it's possible for two reads to occur in a row and 1) read less than the bufferSize and 2)
-                    // still not find the next tag/end of structure
-                    readOffset = bufferContentSize;
-                    readLen = bufferSize - readOffset;
 
-                } else if (status.offset < bufferContentSize) {
 
-                    System.arraycopy(buffer, status.offset, buffer, 0, bufferContentSize - status.offset);
+    Reader openReader(final InputStream inputStream, final Charset charset) throws ParseException {
+        try {
+            return new ByteDecodingReader(inputStream, charset, isHtml(), DEFAULT_CHARSET);
+        } catch (final IOException e) {
+            try {
+                inputStream.close();
+            } catch (final Throwable ignored) {
+                // This exception can be safely ignored
+            }
+            throw new ParseException(e);
+        }
+    }
 
-                    readOffset = bufferContentSize - status.offset;
-                    readLen = bufferSize - readOffset;
 
-                    status.offset = 0;
-                    bufferContentSize = readOffset;
+    Reader openReader(final ByteBuffer document, final Charset charset) {
+        // Bytes are already in memory, so they will be decoded directly from the specified buffer
+        return new ByteDecodingReader(document, charset, isHtml(), DEFAULT_CHARSET);
+    }
 
-                }
 
-                final int read = reader.read(buffer, readOffset, readLen);
-                if (read != -1) {
-                    bufferContentSize = readOffset + read;
-                } else {
-                    cont = false;
+    Reader openReader(final Path path, final int mappedWindowSize, final Charset charset) throws ParseException {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            return new ByteDecodingReader(channel, mappedWindowSize, charset, isHtml(), DEFAULT_CHARSET);
+        } catch (final IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final Throwable ignored) {
+                    // This exception can be safely ignored
                 }
-
             }
+            throw new ParseException(e);
+        }
+    }
 
-            // Iteration done, now it's time to clean up in case we still have some text to be notified
-
-            int lastLine = status.line;
-            int lastCol = status.col;
-
-            final int lastStart = status.offset;
-            final int lastLen = bufferContentSize - lastStart;
-
-            if (lastLen > 0) {
 
-                if (status.inStructure) {
-                    throw new ParseException(
-                            "Incomplete structure: \"" + new String(buffer, lastStart, lastLen) + "\"", status.line, status.col);
-                }
 
-                handler.handleText(buffer, lastStart, lastLen, status.line, status.col);
+    /**
+     * <p>
+     *   Creates a new {@link IncrementalMarkupParser} for parsing a single document which contents will be
+     *   specified in chunks, as they become available, by means of
+     *   {@link IncrementalMarkupParser#feed(char[], int, int)}.
+     * </p>
+     * <p>
+     *   This allows parsing documents without blocking (as would happen when reading from a {@link Reader}) and
+     *   without the need to keep the whole document in memory.
+     * </p>
+     *
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @return the incremental parser, which should only be used for a single document.
+     */
+    public IncrementalMarkupParser createIncrementalParser(final IMarkupHandler handler) {
 
-                // As we have produced an additional text event, we need to fast-forward the
-                // lastLine and lastCol position to include the last text structure.
-                for (int i = lastStart; i < (lastStart + lastLen); i++) {
-                    final char c = buffer[i];
-                    if (c == '\n') {
-                        lastLine++;
-                        lastCol = 1;
-                    } else {
-                        lastCol++;
-                    }
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
 
-                }
+        final ParseStatus status = new ParseStatus();
+        final IMarkupHandler markupHandler = prepareHandler(handler, status);
 
-            }
+        return new IncrementalMarkupParser(this, markupHandler, status);
 
-            final long parsingEndTimeNanos = System.nanoTime();
-            handler.handleDocumentEnd(parsingEndTimeNanos, (parsingEndTimeNanos - parsingStartTimeNanos), lastLine, lastCol);
+    }
 
-        } catch (final ParseException e) {
-            throw e;
-        } catch (final Exception e) {
-            throw new ParseException(e);
-        } finally {
-            this.pool.releaseBuffer(buffer);
-            try {
-                reader.close();
-            } catch (final Throwable ignored) {
-                // This exception can be safely ignored
-            }
-        }
 
-    }
 
+    /**
+     * <p>
+     *   Creates a new {@link ParseContext} for parsing documents one after another with this parser, reusing
+     *   the internal structures needed for parsing instead of building them again for each document.
+     * </p>
+     *
+     * @return the parse context, which should only be used by one thread at a time.
+     */
+    public ParseContext createParseContext() {
 
+        final ParseStatus status = new ParseStatus();
+        final DelegatingMarkupHandler delegatingHandler = new DelegatingMarkupHandler();
+        final MarkupEventProcessorHandler markupHandler = prepareHandler(delegatingHandler, status);
 
+        return new ParseContext(this, status, delegatingHandler, markupHandler);
 
+    }
 
 
 
+    /**
+     * <p>
+     *   Parse a batch of documents in parallel, using as many workers as available processors.
+     * </p>
+     * <p>
+     *   Equivalent to {@link #parseAll(Iterable, IMarkupHandlerFactory, Executor, int)} with
+     *   <tt>parallelism = Runtime.getRuntime().availableProcessors()</tt>.
+     * </p>
+     *
+     * @param sources the sources of the documents to be parsed.
+     * @param handlerFactory the factory of the handlers to be used for each document.
+     * @param executor the executor that will run the workers.
+     * @return the result of the batch, including the errors raised by each failed document.
+     */
+    public BatchParseResult parseAll(
+            final Iterable<? extends MarkupSource> sources, final IMarkupHandlerFactory handlerFactory,
+            final Executor executor) {
+        return parseAll(sources, handlerFactory, executor, Runtime.getRuntime().availableProcessors());
+    }
 
 
-    /*
-     * This method is roughly equivalent to the one receiving a Reader, but oriented to parsing an already-existing
-     * buffer without the need to allocate one from the pool.
+    /**
+     * <p>
+     *   Parse a batch of documents in parallel, fanning them out to <tt>parallelism</tt> workers run by the
+     *   specified {@link Executor} (e.g. a {@link java.util.concurrent.ForkJoinPool}), and waiting for all of
+     *   them to be parsed.
+     * </p>
+     * <p>
+     *   Each worker builds its own internal handler chain once and reuses it for all the documents it parses,
+     *   obtaining the handler for each document from <tt>handlerFactory</tt>. Buffers are obtained from the pool
+     *   of this parser, and so the pool size should be at least equal to <tt>parallelism</tt>
+     *   (see {@link #MarkupParser(ParseConfiguration, int, int)}).
+     * </p>
+     * <p>
+     *   An error parsing a document does not stop the batch: errors are collected in the returned
+     *   {@link BatchParseResult}. If the executor rejects a worker, that worker will be run by the calling thread.
+     *   If the calling thread is interrupted while waiting, no more documents will be parsed and the interrupted
+     *   status of the thread will be restored once the running workers finish their current documents.
+     * </p>
+     *
+     * @param sources the sources of the documents to be parsed.
+     * @param handlerFactory the factory of the handlers to be used for each document.
+     * @param executor the executor that will run the workers.
+     * @param parallelism the number of workers.
+     * @return the result of the batch, including the errors raised by each failed document.
      */
-    void parseDocument(
-            final char[] buffer, final int offset, final int len,
-            final IMarkupHandler handler, final ParseStatus status)
-            throws ParseException {
+    public BatchParseResult parseAll(
+            final Iterable<? extends MarkupSource> sources, final IMarkupHandlerFactory handlerFactory,
+            final Executor executor, final int parallelism) {
 
+        if (sources == null) {
+            throw new IllegalArgumentException("Sources cannot be null");
+        }
+        if (handlerFactory == null) {
+            throw new IllegalArgumentException("Handler factory cannot be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be greater than zero");
+        }
 
-        final long parsingStartTimeNanos = System.nanoTime();
+        final long startTimeNanos = System.nanoTime();
 
-        try {
+        final Batch batch = new Batch(sources.iterator(), parallelism);
+
+        for (int i = 0; i < parallelism; i++) {
+            final BatchWorker worker = new BatchWorker(batch, handlerFactory);
+            try {
+                executor.execute(worker);
+            } catch (final RejectedExecutionException e) {
+                worker.run();
+            }
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                batch.latch.await();
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+                batch.cancel();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return batch.buildResult(System.nanoTime() - startTimeNanos);
+
+    }
+
+
+
+    /**
+     * <p>
+     *   Parse a single (large) document using several threads.
+     * </p>
+     * <p>
+     *   Equivalent to {@link #parseInParallel(char[], int, int, IMarkupHandler, Executor, int)} for the whole
+     *   char[] and with <tt>parallelism = Runtime.getRuntime().availableProcessors()</tt>.
+     * </p>
+     *
+     * @param document the document to be parsed, as a char[].
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @param executor the executor that will scan the fragments of the document.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parseInParallel(final char[] document, final IMarkupHandler handler, final Executor executor)
+            throws ParseException {
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        parseInParallel(document, 0, document.length, handler, executor, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * <p>
+     *   Parse a single (large) document using several threads.
+     * </p>
+     * <p>
+     *   The document is split into up to <tt>parallelism</tt> fragments, each of them starting at a
+     *   <tt>&lt;</tt> char that looks like the start of an element. These fragments are scanned in parallel by
+     *   the specified {@link Executor}, recording their events, and then these events are fired on the handler
+     *   chain (element balancing, validations, etc.) sequentially and in document order by the calling thread.
+     *   The handler will therefore receive exactly the same events (and from the same thread) as it would
+     *   when calling {@link #parse(char[], int, int, IMarkupHandler)}.
+     * </p>
+     * <p>
+     *   Splitting is <em>speculative</em>: a fragment might turn out to start inside a structure (e.g. inside a
+     *   comment or a CDATA section). When this is detected, the events recorded for that fragment are discarded and
+     *   it is scanned again sequentially, continuing the scan of the previous fragment.
+     * </p>
+     * <p>
+     *   Parallel parsing only applies to XML mode (in HTML mode, elements like <tt>&lt;script&gt;</tt> disable
+     *   parsing of their contents, which makes splitting unsafe) and to documents large enough to be split into
+     *   fragments of a reasonable size. In any other case, the document will be parsed sequentially. If the executor
+     *   rejects a fragment, it will be scanned by the calling thread.
+     * </p>
+     *
+     * @param document the document to be parsed, as a char[].
+     * @param offset the offset to be applied on the char[] document to determine the
+     *        start of the document contents.
+     * @param len the length (in chars) of the document stored in the char[].
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @param executor the executor that will scan the fragments of the document.
+     * @param parallelism the maximum number of fragments the document will be split into.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parseInParallel(
+            final char[] document, final int offset, final int len, final IMarkupHandler handler,
+            final Executor executor, final int parallelism)
+            throws ParseException {
+        parseInParallel(document, offset, len, handler, executor, parallelism, DEFAULT_PARALLEL_MIN_FRAGMENT_LEN);
+    }
+
+
+    /*
+     * This method receiving the minimum fragment length with package visibility allows testing parallel parsing
+     * with small documents.
+     */
+    void parseInParallel(
+            final char[] document, final int offset, final int len, final IMarkupHandler handler,
+            final Executor executor, final int parallelism, final int minFragmentLen)
+            throws ParseException {
+
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        if (offset < 0 || len < 0) {
+            throw new IllegalArgumentException(
+                    "Neither document offset (" + offset + ") nor document length (" +
+                            len + ") can be less than zero");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be greater than zero");
+        }
+
+        final int[] bounds =
+                (isHtml() ? null : computeFragmentBounds(document, offset, len, parallelism, minFragmentLen));
+
+        if (bounds == null) {
+            parse(document, offset, len, handler);
+            return;
+        }
+
+        final int fragmentCount = bounds.length - 1;
+
+        final ParseStatus status = new ParseStatus();
+        final IMarkupHandler markupHandler = prepareHandler(handler, status);
+
+        final long parsingStartTimeNanos = System.nanoTime();
+
+        final List<FutureTask<FragmentScan>> scans = new ArrayList<FutureTask<FragmentScan>>(fragmentCount);
+
+        try {
+
+            // Fragments are scanned from their exact line and col, so we need these before the scans start
+            final int[][] locators = computeFragmentLocators(document, bounds, executor);
+
+            for (int i = 0; i < fragmentCount; i++) {
+                final FutureTask<FragmentScan> scan =
+                        new FutureTask<FragmentScan>(
+                                new FragmentScan(document, bounds[i], bounds[i + 1], locators[i][0], locators[i][1]));
+                scans.add(scan);
+                try {
+                    executor.execute(scan);
+                } catch (final RejectedExecutionException e) {
+                    scan.run();
+                }
+            }
+
+            markupHandler.handleDocumentStart(parsingStartTimeNanos, 1, 1);
+
+            initializeParseStatus(status);
+            // Fragments are scanned in advance, so skipping element contents cannot be honored
+            status.skipDisabled = true;
+
+            final FragmentReplayMarkupHandler replayHandler = new FragmentReplayMarkupHandler(markupHandler, status);
+
+            for (int i = 0; i < fragmentCount && !status.parsingStopped; i++) {
+
+                final FragmentScan scan = getFragmentScan(scans.get(i));
+
+                if (i > 0 && status.inStructure) {
+                    // Speculation failed: the previous fragment ends inside a structure, so this fragment did not
+                    // start at a real structure. Its scan is discarded and the previous one is simply continued.
+                    parseBuffer(document, status.offset, bounds[i + 1] - status.offset, markupHandler, status);
+                    continue;
+                }
+
+                if (i > 0 && status.offset < bounds[i]) {
+                    // The previous fragment ended in text, which is now known to be complete
+                    markupHandler.handleText(
+                            document, status.offset, bounds[i] - status.offset, status.line, status.col);
+                }
+
+                scan.tape.getTape().replayEvents(replayHandler);
+                if (replayHandler.isStopped()) {
+                    // A handler stopped parsing before the end of the fragment
+                    break;
+                }
+                if (scan.exception != null && !status.parsingStopped) {
+                    throw scan.exception;
+                }
+
+                copyScanStatus(scan.status, status);
+
+            }
+
+            // All fragments done, now it's time to clean up in case we still have some text to be notified
+            finishDocument(document, offset + len, markupHandler, status, parsingStartTimeNanos);
+
+        } catch (final ParseException e) {
+            throw e;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ParseException(e);
+        } catch (final Exception e) {
+            throw new ParseException(e);
+        } finally {
+            for (final FutureTask<FragmentScan> scan : scans) {
+                scan.cancel(false);
+            }
+        }
+
+    }
+
+
+
+    /*
+     * Computes the offsets at which the document will be split for parallel parsing (including start and end),
+     * or null if the document should not be split. Fragments start at a '<' char followed by an element name.
+     */
+    private static int[] computeFragmentBounds(
+            final char[] document, final int offset, final int len, final int parallelism, final int minFragmentLen) {
+
+        final int maxFragments = (int) Math.min((long) parallelism, (long) len / Math.max(minFragmentLen, 1));
+        if (maxFragments <= 1) {
+            return null;
+        }
+
+        final int maxi = offset + len;
+        final int[] bounds = new int[maxFragments + 1];
+        bounds[0] = offset;
+        int n = 1;
+
+        for (int i = 1; i < maxFragments; i++) {
+            int j = Math.max(offset + (int) (((long) len * i) / maxFragments), bounds[n - 1] + 1);
+            while (j < maxi &&
+                    !(document[j] == '<' &&
+                        (ParsingElementMarkupUtil.isOpenElementStart(document, j, maxi) ||
+                         ParsingElementMarkupUtil.isCloseElementStart(document, j, maxi)))) {
+                j++;
+            }
+            if (j >= maxi) {
+                break;
+            }
+            bounds[n++] = j;
+        }
+
+        if (n == 1) {
+            return null;
+        }
+
+        bounds[n] = maxi;
+        return (n == maxFragments ? bounds : Arrays.copyOf(bounds, n + 1));
+
+    }
+
+
+
+    /*
+     * Computes the line and col at the start of each fragment, counting the lines in each fragment in parallel
+     */
+    private static int[][] computeFragmentLocators(final char[] document, final int[] bounds, final Executor executor)
+            throws ExecutionException, InterruptedException {
+
+        final int fragmentCount = bounds.length - 1;
+
+        final List<FutureTask<int[]>> counts = new ArrayList<FutureTask<int[]>>(fragmentCount);
+        for (int i = 0; i < fragmentCount; i++) {
+            final int start = bounds[i];
+            final int end = bounds[i + 1];
+            final FutureTask<int[]> count = new FutureTask<int[]>(new Callable<int[]>() {
+                public int[] call() {
+                    // Returns the amount of newlines and the position of the last one
+                    int newLines = 0;
+                    int lastNewLine = -1;
+                    for (int j = start; j < end; j++) {
+                        if (document[j] == '\n') {
+                            newLines++;
+                            lastNewLine = j;
+                        }
+                    }
+                    return new int[] {newLines, lastNewLine};
+                }
+            });
+            counts.add(count);
+            try {
+                executor.execute(count);
+            } catch (final RejectedExecutionException e) {
+                count.run();
+            }
+        }
+
+        final int[][] locators = new int[fragmentCount][];
+        locators[0] = new int[] {1, 1};
+        for (int i = 1; i < fragmentCount; i++) {
+            final int[] count = counts.get(i - 1).get();
+            locators[i] =
+                    new int[] {
+                            locators[i - 1][0] + count[0],
+                            (count[1] == -1 ?
+                                    locators[i - 1][1] + (bounds[i] - bounds[i - 1]) : bounds[i] - count[1]) };
+        }
+        return locators;
+
+    }
+
+
+
+    private static FragmentScan getFragmentScan(final FutureTask<FragmentScan> scan)
+            throws ParseException, InterruptedException {
+        try {
+            return scan.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof ParseException) {
+                throw (ParseException) e.getCause();
+            }
+            throw new ParseException(e.getCause());
+        }
+    }
+
+
+
+    private static void copyScanStatus(final ParseStatus from, final ParseStatus to) {
+        to.offset = from.offset;
+        to.line = from.line;
+        to.col = from.col;
+        to.inStructure = from.inStructure;
+        to.scanStructure = from.scanStructure;
+        to.scanOffset = from.scanOffset;
+        to.scanLine = from.scanLine;
+        to.scanCol = from.scanCol;
+        to.scanInQuotes = from.scanInQuotes;
+        to.scanInApos = from.scanInApos;
+        to.splitStructureEnd = from.splitStructureEnd;
+        to.splitStructureLen = from.splitStructureLen;
+    }
+
+
+
+    private MarkupEventProcessorHandler prepareHandler(final IMarkupHandler userHandler, final ParseStatus status) {
+
+        // When tracking locations lazily, the locations computed during parsing are only relative to the start of
+        // each event, so the specified handler will be told they are unknown
+        final IMarkupHandler handler =
+                (this.configuration.getLocationTracking() == ParseConfiguration.LocationTracking.LAZY ?
+                        new LazyLocationMarkupHandler(userHandler) : userHandler);
+
+        final IMarkupHandler htmlHandler =
+                (ParseConfiguration.ParsingMode.HTML.equals(this.configuration.getMode()) ?
+                        new HtmlMarkupHandler(handler) : handler);
+
+        // We will not report directly to the specified handler, but instead to an intermediate class that will be in
+        // charge of applying the required markup logic and rules, according to the specified configuration (events
+        // not affected by these rules will be sent from it directly to the specified handler)
+        final MarkupEventProcessorHandler markupHandler = new MarkupEventProcessorHandler(htmlHandler, handler);
+
+        markupHandler.setParseConfiguration(this.configuration);
+
+        markupHandler.setParseStatus(status);
+
+        final ParseSelection selection = new ParseSelection();
+        markupHandler.setParseSelection(selection);
+
+        return markupHandler;
+
+    }
+
+
+    private boolean isHtml() {
+        return ParseConfiguration.ParsingMode.HTML.equals(this.configuration.getMode());
+    }
+
+
+
+    /*
+     * Documents specified as CharSequence objects are already in memory, so there is no need to go through
+     * a Reader and the buffer refill loop: we just copy them (in bulk, if possible) into a single buffer
+     * and parse that buffer as we would do with a char[] document. If the document fits into a pooled
+     * buffer, a pooled buffer will be used for this.
+     */
+    private void parseCharSequence(final CharSequence document, final IMarkupHandler handler)
+            throws ParseException {
+
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+
+        final ParseStatus status = new ParseStatus();
+        final IMarkupHandler markupHandler = prepareHandler(handler, status);
+
+        parseDocument(document, markupHandler, status);
+
+    }
+
+
+    void parseDocument(final CharSequence document, final IMarkupHandler handler, final ParseStatus status)
+            throws ParseException {
+
+        final int len = document.length();
+
+        char[] buffer = null;
+
+        try {
+
+            buffer = this.pool.allocateBuffer(this.pool.computePooledBufferSize(Math.max(len, this.pool.poolBufferSize)));
+
+            if (document instanceof String) {
+                ((String) document).getChars(0, len, buffer, 0);
+            } else if (document instanceof StringBuilder) {
+                ((StringBuilder) document).getChars(0, len, buffer, 0);
+            } else if (document instanceof StringBuffer) {
+                ((StringBuffer) document).getChars(0, len, buffer, 0);
+            } else if (document instanceof CharBuffer) {
+                // Use a duplicate so that the position of the original buffer is not modified
+                ((CharBuffer) document).duplicate().get(buffer, 0, len);
+            } else {
+                for (int i = 0; i < len; i++) {
+                    buffer[i] = document.charAt(i);
+                }
+            }
+
+            parseDocument(buffer, 0, len, handler, status);
+
+        } finally {
+            this.pool.releaseBuffer(buffer);
+        }
+
+    }
+
+
+
+
+
+    /*
+     * This method receiving the buffer size with package visibility allows
+     * testing different buffer sizes.
+     */
+    void parseDocument(
+            final Reader reader, final int suggestedBufferSize,
+            final IMarkupHandler handler, final ParseStatus status)
+            throws ParseException {
+
+
+        final long parsingStartTimeNanos = System.nanoTime();
+
+        char[] buffer = null;
+
+        try {
 
             handler.handleDocumentStart(parsingStartTimeNanos, 1, 1);
 
-            status.offset = -1;
-            status.line = 1;
-            status.col = 1;
-            status.inStructure = false;
-            status.parsingDisabled = true;
-            status.parsingDisabledLimitSequence = null;
-            status.autoCloseRequired = null;
-            status.autoCloseLimits = null;
+            int bufferSize = Math.min(suggestedBufferSize, this.configuration.getMaxBufferSize());
+            buffer = this.pool.allocateBuffer(bufferSize);
+
+            int bufferContentSize = reader.read(buffer, 0, bufferSize);
+
+            boolean cont = (bufferContentSize != -1);
+
+            initializeParseStatus(status);
+
+            // Start of the contents in the buffer that have not been processed yet
+            int bufferContentStart = 0;
+
+            while (cont) {
+
+                parseBuffer(buffer, bufferContentStart, bufferContentSize - bufferContentStart, handler, status);
+
+                if (status.parsingStopped) {
+                    // No need to read any more contents
+                    break;
+                }
+
+                bufferContentStart = status.offset;
+                final int freeLen = bufferSize - bufferContentSize;
+
+                if (bufferContentStart == bufferContentSize) {
+                    // Everything has been processed, so the whole buffer can be used again
+                    bufferContentStart = 0;
+                    bufferContentSize = 0;
+                } else if (bufferContentStart == 0) {
+                    if (freeLen == 0) {
+                        // Buffer is not big enough, double it! (as long as limits allow it)
+                        bufferSize = computeGrownBufferSize(
+                                bufferSize, bufferSize + 1, this.configuration.getMaxBufferSize(),
+                                status.line, status.col);
+                        buffer = this.pool.growBuffer(buffer, bufferContentSize, bufferSize);
+                    }
+                } else if (freeLen == 0 || freeLen < (bufferSize >> 1)) {
+                    // Not enough room left after the contents not yet processed, so we move them to the
+                    // start of the buffer. Otherwise, we just go on reading after them (no need to copy anything).
+                    System.arraycopy(buffer, bufferContentStart, buffer, 0, bufferContentSize - bufferContentStart);
+                    bufferContentSize -= bufferContentStart;
+                    bufferContentStart = 0;
+                }
+
+                status.offset = bufferContentStart;
+
+                // It's possible for several reads to occur in a row and not find the end of the current
+                // structure. If so, its scan will be resumed where it stopped (see ParseStatus)
+                final int read = reader.read(buffer, bufferContentSize, bufferSize - bufferContentSize);
+                if (read != -1) {
+                    bufferContentSize += read;
+                } else {
+                    cont = false;
+                }
+
+            }
+
+            // Iteration done, now it's time to clean up in case we still have some text to be notified
+            finishDocument(buffer, bufferContentSize, handler, status, parsingStartTimeNanos);
+
+        } catch (final ParseException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new ParseException(e);
+        } finally {
+            this.pool.releaseBuffer(buffer);
+            try {
+                reader.close();
+            } catch (final Throwable ignored) {
+                // This exception can be safely ignored
+            }
+        }
+
+    }
+
+
+
+
+
+
+
+
+
+    /*
+     * This method is roughly equivalent to the one receiving a Reader, but oriented to parsing an already-existing
+     * buffer without the need to allocate one from the pool.
+     */
+    void parseDocument(
+            final char[] buffer, final int offset, final int len,
+            final IMarkupHandler handler, final ParseStatus status)
+            throws ParseException {
+
+
+        final long parsingStartTimeNanos = System.nanoTime();
+
+        try {
+
+            handler.handleDocumentStart(parsingStartTimeNanos, 1, 1);
+
+            initializeParseStatus(status);
+
+            if (this.configuration.getLocationTracking() == ParseConfiguration.LocationTracking.LAZY) {
+                // The whole document is in memory, so locations can be computed from offsets whenever needed
+                status.document = buffer;
+                status.documentStart = offset;
+                status.lazyOffset = offset;
+                status.lazyLine = 1;
+                status.lazyCol = 1;
+            }
 
             parseBuffer(buffer, offset, len, handler, status);
 
             // First parse done, now it's time to clean up in case we still have some text to be notified
+            finishDocument(buffer, offset + len, handler, status, parsingStartTimeNanos);
+
+        } catch (final ParseException e) {
+            throw (status.document != null ? locateException(e, status) : e);
+        } catch (final Exception e) {
+            throw new ParseException(e);
+        } finally {
+            status.document = null;
+        }
+
+    }
+
+
+
+
+
+
+
+
+
+
+
+
+    private static int computeScanStructure(
+            final boolean inOpenElement, final boolean inCloseElement, final boolean inComment,
+            final boolean inCdata, final boolean inXmlDeclaration) {
+        if (inOpenElement) {
+            return SCAN_OPEN_ELEMENT;
+        }
+        if (inCloseElement) {
+            return SCAN_CLOSE_ELEMENT;
+        }
+        if (inComment) {
+            return SCAN_COMMENT;
+        }
+        if (inCdata) {
+            return SCAN_CDATA;
+        }
+        return (inXmlDeclaration ? SCAN_XML_DECLARATION : SCAN_PROCESSING_INSTRUCTION);
+    }
+
+
+    private static void saveScanState(
+            final ParseStatus status, final int scanStructure, final int scanOffset, final int[] locator) {
+        if (scanStructure != SCAN_TEXT && scanOffset < MIN_RESUMABLE_STRUCTURE_LEN) {
+            // The type of structure might have been determined on an incomplete prefix (e.g. "<?xm" could
+            // still become an XML Declaration instead of a Processing Instruction), so it will be scanned again
+            return;
+        }
+        status.scanStructure = scanStructure;
+        status.scanOffset = scanOffset;
+        status.scanLine = locator[0];
+        status.scanCol = locator[1];
+    }
+
+
+
+
+    /*
+     * Initializes the parse status before starting to parse a document.
+     */
+    static void initializeParseStatus(final ParseStatus status) {
+        status.offset = -1;
+        status.line = 1;
+        status.col = 1;
+        status.eventOffset = 0;
+        status.eventLine = 1;
+        status.eventCol = 1;
+        status.document = null;
+        status.parsingStopped = false;
+        status.skipRequested = false;
+        status.skipDisabled = false;
+        status.skipElementName = null;
+        status.skipDepth = 0;
+        status.element = null;
+        status.splitStructureEnd = null;
+        status.splitStructureLen = 0;
+        status.inStructure = false;
+        status.scanStructure = SCAN_NONE;
+        status.parsingDisabled = true;
+        status.parsingDisabledLimitSequence = null;
+        status.autoCloseRequired = null;
+        status.autoCloseLimits = null;
+    }
+
+
+
+
+    /*
+     * Once all the document has been parsed, notify the text (if any) remaining between the offset set in the
+     * parse status and the end of the document contents in the buffer, and then the end of the document.
+     */
+    static void finishDocument(
+            final char[] buffer, final int contentEnd,
+            final IMarkupHandler handler, final ParseStatus status, final long parsingStartTimeNanos)
+            throws ParseException {
+
+        int lastLine = status.line;
+        int lastCol = status.col;
+
+        final int lastStart = status.offset;
+        final int lastLen = contentEnd - lastStart;
+
+        status.eventOffset = lastStart;
+        status.eventLine = lastLine;
+        status.eventCol = lastCol;
+
+        if (status.splitStructureEnd != null && !status.parsingStopped) {
+            // Part of the structure has already been reported, but it was never closed
+            throw new ParseException(
+                    "Incomplete structure: " +
+                    (status.splitStructureEnd == COMMENT_END? "comment" : "CDATA section") + " is not closed",
+                    status.line, status.col);
+        }
+
+        // If parsing has been stopped (or we are skipping the contents of an unclosed element), whatever remains
+        // unprocessed is simply ignored
+        if (lastLen > 0 && !status.parsingStopped && status.skipElementName == null) {
+
+            if (status.inStructure) {
+                throw new ParseException(
+                        "Incomplete structure: \"" + new String(buffer, lastStart, lastLen) + "\"", status.line, status.col);
+            }
+
+            handler.handleText(buffer, lastStart, lastLen, status.line, status.col);
+
+            // As we have produced an additional text event, we need to fast-forward the
+            // lastLine and lastCol position to include the last text structure.
+            for (int i = lastStart; i < (lastStart + lastLen); i++) {
+                final char c = buffer[i];
+                if (c == '\n') {
+                    lastLine++;
+                    lastCol = 1;
+                } else {
+                    lastCol++;
+                }
+
+            }
+
+        }
+
+        final long parsingEndTimeNanos = System.nanoTime();
+        handler.handleDocumentEnd(parsingEndTimeNanos, (parsingEndTimeNanos - parsingStartTimeNanos), lastLine, lastCol);
+
+    }
+
+
+
+
+    /*
+     * Pooled buffers are also used by incremental parsers created by this parser.
+     */
+    char[] allocateBuffer(final int bufferSize) {
+        return this.pool.allocateBuffer(bufferSize);
+    }
 
-            int lastLine = status.line;
-            int lastCol = status.col;
+    void releaseBuffer(final char[] buffer) {
+        this.pool.releaseBuffer(buffer);
+    }
 
-            final int lastStart = status.offset;
-            final int lastLen = (offset + len) - lastStart;
+    char[] growBuffer(final char[] buffer, final int contentSize, final int newBufferSize) {
+        return this.pool.growBuffer(buffer, contentSize, newBufferSize);
+    }
 
-            if (lastLen > 0) {
+    int getPoolBufferSize() {
+        return this.pool.poolBufferSize;
+    }
 
-                if (status.inStructure) {
-                    throw new ParseException(
-                            "Incomplete structure: \"" + new String(buffer, lastStart, lastLen) + "\"", status.line, status.col);
-                }
 
-                handler.handleText(buffer, lastStart, lastLen, status.line, status.col);
+    int getMaxBufferSize() {
+        return this.configuration.getMaxBufferSize();
+    }
 
-                // As we have produced an additional text event, we need to fast-forward the
-                // lastLine and lastCol position to include the last text structure.
-                for (int i = lastStart; i < (lastStart + lastLen); i++) {
-                    final char c = buffer[i];
-                    if (c == '\n') {
-                        lastLine++;
-                        lastCol = 1;
-                    } else {
-                        lastCol++;
-                    }
 
-                }
 
-            }
 
-            final long parsingEndTimeNanos = System.nanoTime();
-            handler.handleDocumentEnd(parsingEndTimeNanos, (parsingEndTimeNanos - parsingStartTimeNanos), lastLine, lastCol);
+    /*
+     * When locations are tracked lazily, the location of exceptions raised during parsing will be relative to the
+     * beginning of the event (text or structure) being processed, so it has to be made absolute.
+     */
+    private static ParseException locateException(final ParseException e, final ParseStatus status) {
 
-        } catch (final ParseException e) {
-            throw e;
-        } catch (final Exception e) {
-            throw new ParseException(e);
+        if (e.getLine() == null || e.getCol() == null ||
+                (e.getClass() != ParseException.class && e.getClass() != ParseLimitExceededException.class)) {
+            // No location to be fixed, or we don't know how to create an equivalent exception
+            return e;
         }
 
-    }
-
+        final int relativeLine = e.getLine().intValue();
+        final int relativeCol = e.getCol().intValue();
 
+        status.locate(status.eventOffset);
+        final int line = (relativeLine == 1 ? status.lazyLine : status.lazyLine + relativeLine - 1);
+        final int col = (relativeLine == 1 ? status.lazyCol + relativeCol - 1 : relativeCol);
 
+        String message = e.getMessage();
+        final String relativePrefix = "(Line = " + relativeLine + ", Column = " + relativeCol + ")";
+        if (message != null && message.startsWith(relativePrefix)) {
+            message = message.substring(relativePrefix.length()).trim();
+        }
 
+        final ParseException located;
+        if (e instanceof ParseLimitExceededException) {
+            located = new ParseLimitExceededException(((ParseLimitExceededException) e).getLimit(), message, line, col);
+            if (e.getCause() != null) {
+                located.initCause(e.getCause());
+            }
+        } else if (message == null || message.length() == 0) {
+            located = new ParseException(e.getCause(), line, col);
+        } else {
+            located = new ParseException(message, e.getCause(), line, col);
+        }
+        located.setStackTrace(e.getStackTrace());
+        return located;
 
+    }
 
 
+    private static void checkStructureLength(
+            final int structureLength, final int maxStructureLength, final int line, final int col)
+            throws ParseLimitExceededException {
+        if (structureLength > maxStructureLength) {
+            throw new ParseLimitExceededException(
+                    ParseLimitExceededException.Limit.MAX_STRUCTURE_LENGTH,
+                    "Markup structure exceeds the maximum length established by configuration (" +
+                    maxStructureLength + " chars)", line, col);
+        }
+    }
 
 
+    /*
+     * Computes the size a buffer should grow to in order to contain (at least) the specified amount of chars,
+     * doubling its current size and never exceeding the maximum size established by configuration.
+     */
+    static int computeGrownBufferSize(
+            final int bufferSize, final int requiredSize, final int maxBufferSize, final int line, final int col)
+            throws ParseLimitExceededException {
+        if (requiredSize > maxBufferSize) {
+            throw new ParseLimitExceededException(
+                    ParseLimitExceededException.Limit.MAX_BUFFER_SIZE,
+                    "Parsing buffer would exceed the maximum size established by configuration (" +
+                    maxBufferSize + " chars)", line, col);
+        }
+        long newBufferSize = bufferSize;
+        while (newBufferSize < requiredSize) {
+            newBufferSize *= 2;
+        }
+        return (int) Math.min(newBufferSize, maxBufferSize);
+    }
 
 
 
-    
-    
-    private void parseBuffer(
+    /*
+     * Parses the contents of the buffer between offset and offset + len, leaving in the parse status
+     * the offset (and line and col) of the first char that could not be processed yet (because it belongs to
+     * an unfinished structure or text), so that parsing can be resumed from there once more content is available.
+     */
+    void parseBuffer(
             final char[] buffer, final int offset, final int len,
             final IMarkupHandler handler,
             final ParseStatus status)
             throws ParseException {
 
 
-        final int[] locator = new int[] {status.line, status.col};
+        final int[] locator = status.locator;
+        locator[0] = status.line;
+        locator[1] = status.col;
         
         int currentLine;
         int currentCol;
@@ -509,6 +1527,11 @@ private void parseBuffer(
         int i = offset;
         int current = i;
 
+        final int maxStructureLength = this.configuration.getMaxStructureLength();
+
+        // When locations are tracked lazily, the locator will only be relative to the beginning of each event
+        final boolean lazyLocations = (status.document != null);
+
         boolean inStructure;
 
         boolean inOpenElement = false;
@@ -521,12 +1544,114 @@ private void parseBuffer(
 
         int tagStart;
         int tagEnd;
-        
+
+        // If the structure (or text) at the beginning of the buffer was already partially scanned during the
+        // previous call, we will resume the scan at the point it stopped instead of starting again from its beginning
+        int resumeAt = -1;
+        if (status.scanStructure != SCAN_NONE) {
+            inOpenElement = (status.scanStructure == SCAN_OPEN_ELEMENT);
+            inCloseElement = (status.scanStructure == SCAN_CLOSE_ELEMENT);
+            inComment = (status.scanStructure == SCAN_COMMENT);
+            inCdata = (status.scanStructure == SCAN_CDATA);
+            inXmlDeclaration = (status.scanStructure == SCAN_XML_DECLARATION);
+            inProcessingInstruction = (status.scanStructure == SCAN_PROCESSING_INSTRUCTION);
+            resumeAt = offset + status.scanOffset;
+            status.scanStructure = SCAN_NONE;
+        }
+
         while (i < maxi) {
 
+            if (status.parsingStopped) {
+                // A handler asked to stop parsing during the last event
+                break;
+            }
+
+            // Requests to skip element contents are only honored right after the open element they refer to
+            status.skipRequested = false;
+
+            if (status.skipElementName != null) {
+                // A handler asked to skip the contents of the last open element, so we will fast-forward to its
+                // matching close element without firing any events
+                final int closeStart = skipElementContents(buffer, i, maxi, locator, status);
+                if (closeStart == -1) {
+                    // Not found yet, should ask for more buffer
+                    return;
+                }
+                current = closeStart;
+                i = current;
+                continue;
+            }
+
+            if (lazyLocations) {
+                locator[0] = 1;
+                locator[1] = 1;
+            }
+
             currentLine = locator[0];
             currentCol = locator[1];
 
+            status.eventOffset = current;
+            status.eventLine = currentLine;
+            status.eventCol = currentCol;
+
+            if (resumeAt != -1) {
+                locator[0] = status.scanLine;
+                locator[1] = status.scanCol;
+                i = resumeAt;
+                resumeAt = -1;
+            } else {
+                status.scanInQuotes = false;
+                status.scanInApos = false;
+            }
+
+            if (status.splitStructureEnd != null) {
+                // A comment or CDATA section is being reported in chunks, so we need to report the next one (or
+                // the last one, if it is closed in this buffer)
+                final char[] structureEnd = status.splitStructureEnd;
+                final int sequenceIndex = findSplitStructureEnd(buffer, i, maxi, locator, structureEnd);
+                if (sequenceIndex == -1) {
+
+                    // Not closed yet. The last chars might be the start of the closing sequence, so they are kept
+                    final int chunkEnd = Math.max(i, maxi - (structureEnd.length - 1));
+                    if (chunkEnd > current) {
+                        status.splitStructureLen += (chunkEnd - current);
+                        checkStructureLength(status.splitStructureLen, maxStructureLength, currentLine, currentCol);
+                        handleStructureChunk(
+                                buffer, current, chunkEnd - current, current, chunkEnd - current,
+                                currentLine, currentCol, structureEnd, handler);
+                    }
+
+                    status.offset = chunkEnd;
+                    status.line = locator[0];
+                    status.col = locator[1];
+                    status.inStructure = true;
+                    return;
+
+                }
+
+                for (int j = sequenceIndex; j < sequenceIndex + structureEnd.length; j++) {
+                    ParsingLocatorUtil.countChar(locator, buffer[j]);
+                }
+                final int chunkEnd = sequenceIndex + structureEnd.length;
+
+                status.splitStructureLen += (chunkEnd - current);
+                checkStructureLength(status.splitStructureLen, maxStructureLength, currentLine, currentCol);
+                status.splitStructureEnd = null;
+
+                handleStructureChunk(
+                        buffer, current, sequenceIndex - current, current, chunkEnd - current,
+                        currentLine, currentCol, structureEnd, handler);
+
+                if (status.parsingDisabledLimitSequence != null) {
+                    status.parsingDisabled = false;
+                }
+
+                current = chunkEnd;
+                i = current;
+                continue;
+
+            }
+
             if (status.parsingDisabledLimitSequence != null) {
                 // We need to disable parsing until we find a specific character sequence.
                 // This allows correct parsing of CDATA (not PCDATA) sections (e.g. <script> tags).
@@ -536,9 +1661,9 @@ private void parseBuffer(
 
                     // Not found, should ask for more buffer
                     if (this.configuration.isTextSplittable()) {
-                        handler.handleText(buffer, current, len - current, currentLine, currentCol);
+                        handler.handleText(buffer, current, maxi - current, currentLine, currentCol);
                         // No need to change the disability limit, as we havent reached the sequence yet
-                        current = len;
+                        current = maxi;
                     }
 
                     status.offset = current;
@@ -560,6 +1685,7 @@ private void parseBuffer(
 
                 current = sequenceIndex;
                 i = current;
+                status.eventOffset = current;
 
             }
 
@@ -568,19 +1694,25 @@ private void parseBuffer(
 
             if (!inStructure) {
                 
-                tagStart = ParsingMarkupUtil.findNextStructureStart(buffer, i, maxi, locator);
+                tagStart =
+                        (lazyLocations?
+                                ParsingMarkupUtil.findNextStructureStart(buffer, i, maxi) :
+                                ParsingMarkupUtil.findNextStructureStart(buffer, i, maxi, locator));
                 
                 if (tagStart == -1) {
 
                     if (this.configuration.isTextSplittable()) {
 
-                        handler.handleText(buffer, current, len - current, currentLine, currentCol);
+                        handler.handleText(buffer, current, maxi - current, currentLine, currentCol);
                         if (status.parsingDisabledLimitSequence != null) {
                             status.parsingDisabled = false;
                         }
 
-                        current = len;
+                        current = maxi;
 
+                    } else {
+                        // No structure starts in the rest of the buffer, so there is no need to scan it again
+                        saveScanState(status, SCAN_TEXT, maxi - current, locator);
                     }
 
                     status.offset = current;
@@ -619,8 +1751,12 @@ private void parseBuffer(
                     // We found a '<', but it cannot be considered a tag because it is not
                     // the beginning of any known structure
                     
-                    ParsingLocatorUtil.countChar(locator, buffer[tagStart]);
-                    tagStart = ParsingMarkupUtil.findNextStructureStart(buffer, tagStart + 1, maxi, locator);
+                    if (lazyLocations) {
+                        tagStart = ParsingMarkupUtil.findNextStructureStart(buffer, tagStart + 1, maxi);
+                    } else {
+                        ParsingLocatorUtil.countChar(locator, buffer[tagStart]);
+                        tagStart = ParsingMarkupUtil.findNextStructureStart(buffer, tagStart + 1, maxi, locator);
+                    }
                     
                     if (tagStart == -1) {
                         status.offset = current;
@@ -685,11 +1821,23 @@ private void parseBuffer(
                         (inDocType?
                                 ParsingDocTypeMarkupUtil.findNextDocTypeStructureEnd(buffer, i, maxi, locator) :
                                 (avoidQuotes?
-                                        ParsingMarkupUtil.findNextStructureEndAvoidQuotes(buffer, i, maxi, locator) :
+                                        ParsingMarkupUtil.findNextStructureEndAvoidQuotes(buffer, i, maxi, locator, status) :
                                         ParsingMarkupUtil.findNextStructureEndDontAvoidQuotes(buffer, i, maxi, locator)));
                 
                 if (tagEnd < 0) {
                     // This is an unfinished structure
+                    checkStructureLength(maxi - current, maxStructureLength, currentLine, currentCol);
+                    if ((inComment || inCdata) && this.configuration.isCommentAndCDATASplittable() &&
+                            startSplitStructure(buffer, current, maxi, currentLine, currentCol, inComment, handler, status)) {
+                        return;
+                    }
+                    if (!inDocType) {
+                        saveScanState(
+                                status,
+                                computeScanStructure(
+                                        inOpenElement, inCloseElement, inComment, inCdata, inXmlDeclaration),
+                                maxi - current, locator);
+                    }
                     status.offset = current;
                     status.line = currentLine;
                     status.col = currentCol;
@@ -697,6 +1845,7 @@ private void parseBuffer(
                     return;
                 }
 
+                checkStructureLength((tagEnd - current) + 1, maxStructureLength, currentLine, currentCol);
                 
                 if (inOpenElement) {
                     // This is a open/standalone tag (to be determined by looking at the penultimate character)
@@ -709,6 +1858,9 @@ private void parseBuffer(
                         ParsingElementMarkupUtil.
                                 parseOpenElement(
                                         buffer, current, (tagEnd - current) + 1, currentLine, currentCol, handler);
+                        if (status.skipRequested && !status.skipDisabled) {
+                            startSkippingElementContents(buffer, current + 1, tagEnd, status);
+                        }
                     }
 
 
@@ -741,6 +1893,12 @@ private void parseBuffer(
                         tagEnd = ParsingMarkupUtil.findNextStructureEndDontAvoidQuotes(buffer, tagEnd + 1, maxi, locator);
                         
                         if (tagEnd == -1) {
+                            checkStructureLength(maxi - current, maxStructureLength, currentLine, currentCol);
+                            if (this.configuration.isCommentAndCDATASplittable() &&
+                                    startSplitStructure(buffer, current, maxi, currentLine, currentCol, true, handler, status)) {
+                                return;
+                            }
+                            saveScanState(status, SCAN_COMMENT, maxi - current, locator);
                             status.offset = current;
                             status.line = currentLine;
                             status.col = currentCol;
@@ -750,6 +1908,8 @@ private void parseBuffer(
                         
                     }
 
+                    checkStructureLength((tagEnd - current) + 1, maxStructureLength, currentLine, currentCol);
+
                     ParsingCommentMarkupUtil.parseComment(buffer, current, (tagEnd - current) + 1, currentLine, currentCol, handler);
 
                     if (status.parsingDisabledLimitSequence != null) {
@@ -768,6 +1928,12 @@ private void parseBuffer(
                         tagEnd = ParsingMarkupUtil.findNextStructureEndDontAvoidQuotes(buffer, tagEnd + 1, maxi, locator);
                         
                         if (tagEnd == -1) {
+                            checkStructureLength(maxi - current, maxStructureLength, currentLine, currentCol);
+                            if (this.configuration.isCommentAndCDATASplittable() &&
+                                    startSplitStructure(buffer, current, maxi, currentLine, currentCol, false, handler, status)) {
+                                return;
+                            }
+                            saveScanState(status, SCAN_CDATA, maxi - current, locator);
                             status.offset = current;
                             status.line = currentLine;
                             status.col = currentCol;
@@ -777,6 +1943,8 @@ private void parseBuffer(
                         
                     }
 
+                    checkStructureLength((tagEnd - current) + 1, maxStructureLength, currentLine, currentCol);
+
                     ParsingCDATASectionMarkupUtil.parseCDATASection(buffer, current, (tagEnd - current) + 1, currentLine, currentCol, handler);
 
                     if (status.parsingDisabledLimitSequence != null) {
@@ -819,6 +1987,8 @@ private void parseBuffer(
                         tagEnd = ParsingMarkupUtil.findNextStructureEndDontAvoidQuotes(buffer, tagEnd + 1, maxi, locator);
                         
                         if (tagEnd == -1) {
+                            checkStructureLength(maxi - current, maxStructureLength, currentLine, currentCol);
+                            saveScanState(status, SCAN_PROCESSING_INSTRUCTION, maxi - current, locator);
                             status.offset = current;
                             status.line = currentLine;
                             status.col = currentCol;
@@ -828,6 +1998,8 @@ private void parseBuffer(
                         
                     }
 
+                    checkStructureLength((tagEnd - current) + 1, maxStructureLength, currentLine, currentCol);
+
                     ParsingProcessingInstructionUtil.parseProcessingInstruction(
                             buffer, current, (tagEnd - current) + 1, currentLine, currentCol, handler);
 
@@ -855,14 +2027,439 @@ private void parseBuffer(
         }
 
         status.offset = current;
+        status.line = (lazyLocations ? 1 : locator[0]);
+        status.col = (lazyLocations ? 1 : locator[1]);
+        status.inStructure = false;
+
+    }
+
+
+
+
+
+
+
+
+    /*
+     * Called after an open element event during which a handler asked to skip the element's contents. The name of
+     * the element is kept so that its matching close element can be found. Note that in HTML mode, elements that
+     * have no close tag (void elements) or which close tag can be omitted cannot be skipped this way.
+     */
+    private void startSkippingElementContents(
+            final char[] buffer, final int nameOffset, final int tagEnd, final ParseStatus status) {
+
+        status.skipRequested = false;
+
+        int nameEnd = nameOffset;
+        while (nameEnd < tagEnd && !Character.isWhitespace(buffer[nameEnd]) && buffer[nameEnd] != '/') {
+            nameEnd++;
+        }
+
+        if (isHtml() && !HtmlElements.isEndTagRequired(buffer, nameOffset, nameEnd - nameOffset)) {
+            return;
+        }
+
+        status.skipElementName = Arrays.copyOfRange(buffer, nameOffset, nameEnd);
+        status.skipDepth = 1;
+
+    }
+
+
+
+
+    /*
+     * Scans the buffer (without firing any events) until the close element matching the element which contents are
+     * being skipped is found, and returns its position. Only the structures that might contain something looking
+     * like that close element (comments, CDATA sections, etc.) and any elements with the same name are taken into
+     * account. If it is not found, returns -1 after leaving in the parse status the point from which the scan should
+     * be resumed once more content is available.
+     */
+    private int skipElementContents(
+            final char[] buffer, final int offset, final int maxi,
+            final int[] locator, final ParseStatus status) {
+
+        final boolean caseSensitive = this.configuration.isCaseSensitive();
+
+        int i = offset;
+
+        if (status.parsingDisabledLimitSequence != null) {
+            // Skipped element has a CDATA body (e.g. <script>), so its end is simply its limit sequence
+            final char[] limitSequence = status.parsingDisabledLimitSequence;
+            // Location at offset, as the locator will have been moved to the end of the buffer if not found
+            final int offsetLine = locator[0];
+            final int offsetCol = locator[1];
+            final int sequenceIndex = ParsingMarkupUtil.findCharacterSequence(buffer, i, maxi, locator, limitSequence);
+            if (sequenceIndex == -1) {
+                // The sequence might start at the end of the buffer, so the last chars will have to be scanned again
+                final int resumeAt = Math.max(offset, maxi - limitSequence.length + 1);
+                locator[0] = offsetLine;
+                locator[1] = offsetCol;
+                for (int j = offset; j < resumeAt; j++) {
+                    ParsingLocatorUtil.countChar(locator, buffer[j]);
+                }
+                status.offset = resumeAt;
+                status.line = locator[0];
+                status.col = locator[1];
+                status.inStructure = false;
+                return -1;
+            }
+            status.parsingDisabledLimitSequence = null;
+            status.parsingDisabled = true;
+            status.skipElementName = null;
+            return sequenceIndex;
+        }
+
+        while (true) {
+
+            final int tagStart = ParsingMarkupUtil.findNextStructureStart(buffer, i, maxi, locator);
+
+            if (tagStart == -1) {
+                // Nothing that could be the close element in the rest of the buffer
+                status.offset = maxi;
+                status.line = locator[0];
+                status.col = locator[1];
+                status.inStructure = false;
+                return -1;
+            }
+
+            final int tagLine = locator[0];
+            final int tagCol = locator[1];
+
+            final boolean isOpenElement = ParsingElementMarkupUtil.isOpenElementStart(buffer, tagStart, maxi);
+            final boolean isCloseElement =
+                    !isOpenElement && ParsingElementMarkupUtil.isCloseElementStart(buffer, tagStart, maxi);
+
+            int tagEnd;
+
+            if (isOpenElement || isCloseElement) {
+                tagEnd = ParsingMarkupUtil.findNextStructureEndAvoidQuotes(buffer, tagStart, maxi, locator);
+            } else if (ParsingCommentMarkupUtil.isCommentStart(buffer, tagStart, maxi)) {
+                tagEnd = findSequenceEnd(buffer, tagStart + 4, maxi, locator, COMMENT_END);
+            } else if (ParsingCDATASectionMarkupUtil.isCDATASectionStart(buffer, tagStart, maxi)) {
+                tagEnd = findSequenceEnd(buffer, tagStart + 9, maxi, locator, CDATA_END);
+            } else if (ParsingDocTypeMarkupUtil.isDocTypeStart(buffer, tagStart, maxi)) {
+                tagEnd = ParsingDocTypeMarkupUtil.findNextDocTypeStructureEnd(buffer, tagStart, maxi, locator);
+            } else if (ParsingProcessingInstructionUtil.isProcessingInstructionStart(buffer, tagStart, maxi) ||
+                       ParsingXmlDeclarationMarkupUtil.isXmlDeclarationStart(buffer, tagStart, maxi)) {
+                tagEnd = findSequenceEnd(buffer, tagStart + 2, maxi, locator, PROCESSING_INSTRUCTION_END);
+            } else if (maxi - tagStart < MIN_RESUMABLE_STRUCTURE_LEN) {
+                // Not enough chars yet for knowing whether this is the start of a structure or not
+                tagEnd = -1;
+            } else {
+                // Not the start of a structure, just a '<' char in text
+                ParsingLocatorUtil.countChar(locator, buffer[tagStart]);
+                i = tagStart + 1;
+                continue;
+            }
+
+            if (tagEnd == -1) {
+                // Unfinished structure, we will resume the scan from its beginning
+                status.offset = tagStart;
+                status.line = tagLine;
+                status.col = tagCol;
+                status.inStructure = false;
+                return -1;
+            }
+
+            if (isOpenElement || isCloseElement) {
+
+                final int nameOffset = tagStart + (isOpenElement ? 1 : 2);
+                int nameEnd = nameOffset;
+                while (nameEnd < tagEnd && !Character.isWhitespace(buffer[nameEnd]) && buffer[nameEnd] != '/') {
+                    nameEnd++;
+                }
+
+                final boolean sameName =
+                        TextUtil.equals(
+                                caseSensitive,
+                                status.skipElementName, 0, status.skipElementName.length,
+                                buffer, nameOffset, nameEnd - nameOffset);
+
+                if (isCloseElement) {
+                    if (sameName && --status.skipDepth == 0) {
+                        // Found it! The locator is left pointing to the start of the close element
+                        status.skipElementName = null;
+                        locator[0] = tagLine;
+                        locator[1] = tagCol;
+                        return tagStart;
+                    }
+                } else if (buffer[tagEnd - 1] != '/') {
+                    if (sameName) {
+                        status.skipDepth++;
+                    } else if (isHtml()) {
+                        final HtmlElement element = HtmlElements.forName(buffer, nameOffset, nameEnd - nameOffset);
+                        if (element instanceof HtmlCDATAContentElement) {
+                            // Nested elements with a CDATA body (e.g. <script>) might contain anything
+                            final char[] limitSequence =
+                                    ((HtmlCDATAContentElement) element).computeLimitSequence(
+                                            buffer, nameOffset, nameEnd - nameOffset);
+                            ParsingLocatorUtil.countChar(locator, buffer[tagEnd]);
+                            final int sequenceIndex =
+                                    ParsingMarkupUtil.findCharacterSequence(
+                                            buffer, tagEnd + 1, maxi, locator, limitSequence);
+                            if (sequenceIndex == -1) {
+                                status.offset = tagStart;
+                                status.line = tagLine;
+                                status.col = tagCol;
+                                status.inStructure = false;
+                                return -1;
+                            }
+                            i = sequenceIndex;
+                            continue;
+                        }
+                    }
+                }
+
+            }
+
+            // The '>' char will be considered as processed too
+            ParsingLocatorUtil.countChar(locator, buffer[tagEnd]);
+            i = tagEnd + 1;
+
+        }
+
+    }
+
+
+    /*
+     * Finds the end of a structure which is closed by a specific sequence of chars (e.g. "-->"), returning the
+     * position of its last char.
+     */
+    private static int findSequenceEnd(
+            final char[] buffer, final int offset, final int maxi, final int[] locator, final char[] sequence) {
+        final int sequenceIndex = ParsingMarkupUtil.findCharacterSequence(buffer, offset, maxi, locator, sequence);
+        if (sequenceIndex == -1) {
+            return -1;
+        }
+        for (int i = sequenceIndex; i < sequenceIndex + sequence.length - 1; i++) {
+            ParsingLocatorUtil.countChar(locator, buffer[i]);
+        }
+        return sequenceIndex + sequence.length - 1;
+    }
+
+
+
+
+    /*
+     * Starts reporting in chunks a comment or CDATA section that reached the end of the available contents without
+     * being closed, by reporting its first chunk. Returns false (and does nothing) if there is still not enough
+     * content for reporting a chunk.
+     */
+    private static boolean startSplitStructure(
+            final char[] buffer, final int offset, final int maxi, final int line, final int col,
+            final boolean comment, final IMarkupHandler handler, final ParseStatus status)
+            throws ParseException {
+
+        final char[] structureEnd = (comment? COMMENT_END : CDATA_END);
+        final int contentOffset = offset + (comment? 4 : 9);
+
+        // The last chars might be the start of the closing sequence, so they are kept for the next chunk
+        final int chunkEnd = maxi - (structureEnd.length - 1);
+        if (chunkEnd <= contentOffset) {
+            return false;
+        }
+
+        // The locator was moved to the end of the contents while scanning, so it needs to be computed again
+        final int[] locator = status.locator;
+        locator[0] = line;
+        locator[1] = col;
+        for (int i = offset; i < chunkEnd; i++) {
+            ParsingLocatorUtil.countChar(locator, buffer[i]);
+        }
+
+        status.splitStructureEnd = structureEnd;
+        status.splitStructureLen = chunkEnd - offset;
+
+        handleStructureChunk(
+                buffer, contentOffset, chunkEnd - contentOffset, offset, chunkEnd - offset, line, col,
+                structureEnd, handler);
+
+        status.offset = chunkEnd;
         status.line = locator[0];
         status.col = locator[1];
-        status.inStructure = false;
+        status.inStructure = true;
+        return true;
+
+    }
+
+
+    /*
+     * Finds the start of the sequence closing a comment or CDATA section being reported in chunks. If not found,
+     * the locator will be left at the position after which the closing sequence could still start.
+     */
+    private static int findSplitStructureEnd(
+            final char[] buffer, final int offset, final int maxi, final int[] locator, final char[] sequence) {
+        final int limit = maxi - (sequence.length - 1);
+        for (int i = offset; i < limit; i++) {
+            int j = 0;
+            while (j < sequence.length && buffer[i + j] == sequence[j]) {
+                j++;
+            }
+            if (j == sequence.length) {
+                return i;
+            }
+            ParsingLocatorUtil.countChar(locator, buffer[i]);
+        }
+        return -1;
+    }
+
+
+    private static void handleStructureChunk(
+            final char[] buffer,
+            final int contentOffset, final int contentLen, final int outerOffset, final int outerLen,
+            final int line, final int col, final char[] structureEnd, final IMarkupHandler handler)
+            throws ParseException {
+        if (structureEnd == COMMENT_END) {
+            handler.handleComment(buffer, contentOffset, contentLen, outerOffset, outerLen, line, col);
+        } else {
+            handler.handleCDATASection(buffer, contentOffset, contentLen, outerOffset, outerLen, line, col);
+        }
+    }
+
+
+
+
+    /*
+     * Scan of a fragment of a document being parsed in parallel. Events are recorded into a tape, and any exceptions
+     * are kept (instead of thrown) because they only matter if the fragment is finally used.
+     */
+    private final class FragmentScan implements Callable<FragmentScan> {
+
+        private final char[] document;
+        private final int start;
+        private final int end;
+        final ParseStatus status;
+        final TapeBuilderMarkupHandler tape;
+        ParseException exception = null;
+
+        FragmentScan(final char[] document, final int start, final int end, final int line, final int col) {
+            super();
+            this.document = document;
+            this.start = start;
+            this.end = end;
+            this.status = new ParseStatus();
+            this.tape = new TapeBuilderMarkupHandler(document);
+            initializeParseStatus(this.status);
+            this.status.line = line;
+            this.status.col = col;
+        }
+
+        public FragmentScan call() {
+            try {
+                parseBuffer(this.document, this.start, this.end - this.start, this.tape, this.status);
+            } catch (final ParseException e) {
+                this.exception = e;
+            } catch (final Exception e) {
+                this.exception = new ParseException(e);
+            }
+            return this;
+        }
+
+    }
+
+
+
+    /*
+     * Shared state of a batch parsing operation: the iterator on the sources (accessed in mutual exclusion by
+     * the workers) and the aggregated results.
+     */
+    private static final class Batch {
+
+        private final Iterator<? extends MarkupSource> sources;
+        private final CountDownLatch latch;
+        private final SortedMap<Integer,ParseException> errors = new TreeMap<Integer, ParseException>();
+        private int nextIndex = 0;
+        private int documentCount = 0;
+        private long parseTimeNanos = 0L;
+        private boolean cancelled = false;
+
+        Batch(final Iterator<? extends MarkupSource> sources, final int parallelism) {
+            super();
+            this.sources = sources;
+            this.latch = new CountDownLatch(parallelism);
+        }
+
+        // Returns the index of the next document (the source will be in the array), or -1 if there are no more
+        synchronized int next(final MarkupSource[] source) {
+            if (this.cancelled || !this.sources.hasNext()) {
+                return -1;
+            }
+            source[0] = this.sources.next();
+            return this.nextIndex++;
+        }
+
+        synchronized void cancel() {
+            this.cancelled = true;
+        }
+
+        synchronized void merge(
+                final int documentCount, final SortedMap<Integer,ParseException> errors, final long parseTimeNanos) {
+            this.documentCount += documentCount;
+            this.errors.putAll(errors);
+            this.parseTimeNanos += parseTimeNanos;
+        }
+
+        synchronized BatchParseResult buildResult(final long totalTimeNanos) {
+            return new BatchParseResult(this.documentCount, this.errors, totalTimeNanos, this.parseTimeNanos);
+        }
 
     }
 
 
 
+    /*
+     * Worker of a batch parsing operation. Each worker uses its own parse context for all of its documents.
+     */
+    private final class BatchWorker implements Runnable {
+
+        private final Batch batch;
+        private final IMarkupHandlerFactory handlerFactory;
+
+        BatchWorker(final Batch batch, final IMarkupHandlerFactory handlerFactory) {
+            super();
+            this.batch = batch;
+            this.handlerFactory = handlerFactory;
+        }
+
+        public void run() {
+
+            final SortedMap<Integer,ParseException> errors = new TreeMap<Integer, ParseException>();
+            int documentCount = 0;
+            long parseTimeNanos = 0L;
+
+            try {
+
+                final ParseContext context = createParseContext();
+
+                final MarkupSource[] source = new MarkupSource[1];
+                int index;
+                while ((index = this.batch.next(source)) != -1) {
+
+                    final long startTimeNanos = System.nanoTime();
+                    try {
+                        if (source[0] == null) {
+                            throw new IllegalArgumentException("Source cannot be null");
+                        }
+                        context.parse(source[0], this.handlerFactory.createHandler(index, source[0]));
+                    } catch (final ParseException e) {
+                        errors.put(Integer.valueOf(index), e);
+                    } catch (final Exception e) {
+                        errors.put(Integer.valueOf(index), new ParseException(e));
+                    }
+                    parseTimeNanos += System.nanoTime() - startTimeNanos;
+                    documentCount++;
+                    source[0] = null;
+
+                }
+
+            } finally {
+                this.batch.merge(documentCount, errors, parseTimeNanos);
+                this.batch.latch.countDown();
+            }
+
+        }
+
+    }
 
 
 
@@ -871,64 +2468,139 @@ private void parseBuffer(
      * This class models a pool of buffers, used to keep the amount of
      * large char[] buffer objects required to operate to a minimum.
      *
-     * Note this pool never blocks, so if a new buffer is needed and all
-     * are currently allocated, a new char[] object is created and returned.
+     * Buffers are pooled by size classes: the pool buffer size multiplied by successive
+     * powers of two (which are the sizes buffers reach when they grow by doubling). Each size
+     * class can retain up to poolSize buffers, but the total amount of chars retained in
+     * the whole pool can never be larger than maxRetainedSize.
+     * Buffers of any other size (e.g. those which growth has been capped by the maximum buffer
+     * size established by configuration) are created with the exact size requested and never retained.
+     *
+     * Note this pool is lock-free and never blocks, so if a new buffer is needed and none
+     * are currently available, a new char[] object is created and returned. Buffers that cannot
+     * be retained when released (because there is no room for them) are left to be GC-ed.
      *
      */
     private static final class BufferPool {
 
-        private final char[][] pool;
-        private final boolean[] allocated;
+        private static final int SIZE_CLASSES = 8;
+
+        private final AtomicReferenceArray<char[]>[] pool;
         private final int poolBufferSize;
+        private final long maxRetainedSize;
+
+        private final AtomicLong retainedSize = new AtomicLong(0L);
+        private final AtomicLong hits = new AtomicLong(0L);
+        private final AtomicLong misses = new AtomicLong(0L);
+        private final AtomicLong growths = new AtomicLong(0L);
 
-        private BufferPool(final int poolSize, final int poolBufferSize) {
+        private BufferPool(final int poolSize, final int poolBufferSize, final long maxRetainedSize) {
 
             super();
 
-            this.pool = new char[poolSize][];
-            this.allocated = new boolean[poolSize];
+            this.pool = newSlotsArray(SIZE_CLASSES);
             this.poolBufferSize = poolBufferSize;
+            this.maxRetainedSize = maxRetainedSize;
 
             for (int i = 0; i < this.pool.length; i++) {
-                this.pool[i] = new char[this.poolBufferSize];
+                this.pool[i] = new AtomicReferenceArray<char[]>(poolSize);
             }
-            Arrays.fill(this.allocated, false);
 
         }
 
-        private synchronized char[] allocateBuffer(final int bufferSize) {
-            if (bufferSize != this.poolBufferSize) {
-                // We will only pool buffers of the default size. If a different size is required, we just
-                // create it without pooling.
+        private char[] allocateBuffer(final int bufferSize) {
+            final int sizeClass = computeSizeClass(bufferSize);
+            if (sizeClass == -1 || bufferSize != (this.poolBufferSize << sizeClass)) {
+                // Too big to be pooled, or not the size of a size class (e.g. growth capped by the maximum buffer
+                // size), so we just create it with the exact size requested, without pooling
+                this.misses.incrementAndGet();
                 return new char[bufferSize];
             }
-            for (int i = 0; i < this.pool.length; i++) {
-                if (!this.allocated[i]) {
-                    this.allocated[i] = true;
-                    return this.pool[i];
+            final AtomicReferenceArray<char[]> slots = this.pool[sizeClass];
+            final int n = slots.length();
+            // Starting the scan at a thread-dependent position reduces contention among threads
+            final int start = (int) (Thread.currentThread().getId() % Math.max(1, n));
+            for (int i = 0; i < n; i++) {
+                final int slot = (start + i) % n;
+                if (slots.get(slot) != null) {
+                    final char[] buffer = slots.getAndSet(slot, null);
+                    if (buffer != null) {
+                        this.retainedSize.addAndGet(-buffer.length);
+                        this.hits.incrementAndGet();
+                        return buffer;
+                    }
                 }
             }
+            this.misses.incrementAndGet();
             return new char[bufferSize];
         }
 
-        private synchronized void releaseBuffer(final char[] buffer) {
+        private void releaseBuffer(final char[] buffer) {
             if (buffer == null) {
                 return;
             }
-            if (buffer.length != this.poolBufferSize) {
-                // This buffer cannot be part of the pool - only buffers with a specific size are contained
+            final int sizeClass = computeSizeClass(buffer.length);
+            if (sizeClass == -1 || buffer.length != (this.poolBufferSize << sizeClass)) {
+                // This buffer cannot be part of the pool - only buffers with the size of a size class are contained
                 return;
             }
-            for (int i = 0; i < this.pool.length; i++) {
-                if (this.pool[i] == buffer) {
-                    // Found it. Mark it as non-allocated
-                    this.allocated[i] = false;
+            if (this.retainedSize.addAndGet(buffer.length) > this.maxRetainedSize) {
+                // No room for this buffer: retaining it would exceed the maximum retained size
+                this.retainedSize.addAndGet(-buffer.length);
+                return;
+            }
+            final AtomicReferenceArray<char[]> slots = this.pool[sizeClass];
+            final int n = slots.length();
+            final int start = (int) (Thread.currentThread().getId() % Math.max(1, n));
+            for (int i = 0; i < n; i++) {
+                final int slot = (start + i) % n;
+                if (slots.get(slot) == null && slots.compareAndSet(slot, null, buffer)) {
                     return;
                 }
             }
-            // The buffer wasn't part of our pool. Just return.
+            // All slots for this size class are in use. Just return.
+            this.retainedSize.addAndGet(-buffer.length);
+        }
+
+        /*
+         * Buffers grow by doubling, in order to always keep them in a size class
+         */
+        private char[] growBuffer(final char[] buffer, final int contentSize, final int newBufferSize) {
+            final char[] newBuffer = allocateBuffer(newBufferSize);
+            System.arraycopy(buffer, 0, newBuffer, 0, contentSize);
+            releaseBuffer(buffer);
+            this.growths.incrementAndGet();
+            return newBuffer;
+        }
+
+        /*
+         * Returns the size of the smallest size class that can contain a buffer of the specified size, or
+         * the specified size itself if none can. Used when allocating buffers that are not limited by the
+         * maximum buffer size, so that they can be pooled.
+         */
+        private int computePooledBufferSize(final int bufferSize) {
+            final int sizeClass = computeSizeClass(bufferSize);
+            return (sizeClass == -1 ? bufferSize : (this.poolBufferSize << sizeClass));
+        }
+
+        /*
+         * Returns the smallest size class that can contain a buffer of the specified size, or -1 if none. Size
+         * classes which size would not fit into an int (for very large pool buffer sizes) are never used.
+         */
+        private int computeSizeClass(final int bufferSize) {
+            long classSize = this.poolBufferSize;
+            for (int i = 0; i < SIZE_CLASSES && classSize <= Integer.MAX_VALUE; i++) {
+                if (bufferSize <= classSize) {
+                    return i;
+                }
+                classSize <<= 1;
+            }
+            return -1;
         }
 
+        @SuppressWarnings("unchecked")
+        private static <T> AtomicReferenceArray<T>[] newSlotsArray(final int len) {
+            return (AtomicReferenceArray<T>[]) new AtomicReferenceArray<?>[len];
+        }
 
     }
 
@@ -0,0 +1,285 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+
+/**
+ * <p>
+ *   Source of a document to be parsed in batch by means of
+ *   {@link MarkupParser#parseAll(Iterable, IMarkupHandlerFactory, java.util.concurrent.Executor)}.
+ * </p>
+ * <p>
+ *   Objects of this class are created by means of its static factory methods, one for each of the
+ *   ways in which a document can be specified to a {@link MarkupParser}. Byte-based sources will be decoded
+ *   in the same way as explained for {@link MarkupParser#parse(java.io.InputStream, Charset, IMarkupHandler)}
+ *   (including auto-detection of the encoding if <tt>charset</tt> is <tt>null</tt>).
+ * </p>
+ * <p>
+ *   Sources based on a {@link Reader} will close it after parsing. Each source should only be parsed once.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public abstract class MarkupSource {
+
+
+
+    MarkupSource() {
+        super();
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Create a source for a document specified as a CharSequence (e.g. a String or a StringBuilder).
+     * </p>
+     *
+     * @param document the document.
+     * @return the source.
+     */
+    public static MarkupSource forCharSequence(final CharSequence document) {
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        return new CharSequenceMarkupSource(document);
+    }
+
+
+    /**
+     * <p>
+     *   Create a source for a document specified as a char[].
+     * </p>
+     *
+     * @param document the document.
+     * @return the source.
+     */
+    public static MarkupSource forChars(final char[] document) {
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        return forChars(document, 0, document.length);
+    }
+
+
+    /**
+     * <p>
+     *   Create a source for a document specified as a char[].
+     * </p>
+     *
+     * @param document the document.
+     * @param offset the offset of the document contents in the char[].
+     * @param len the length (in chars) of the document.
+     * @return the source.
+     */
+    public static MarkupSource forChars(final char[] document, final int offset, final int len) {
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        if (offset < 0 || len < 0) {
+            throw new IllegalArgumentException(
+                    "Neither document offset (" + offset + ") nor document length (" +
+                            len + ") can be less than zero");
+        }
+        return new CharArrayMarkupSource(document, offset, len);
+    }
+
+
+    /**
+     * <p>
+     *   Create a source for a document to be read from a {@link Reader}.
+     * </p>
+     *
+     * @param reader the reader.
+     * @return the source.
+     */
+    public static MarkupSource forReader(final Reader reader) {
+        if (reader == null) {
+            throw new IllegalArgumentException("Reader cannot be null");
+        }
+        return new ReaderMarkupSource(reader);
+    }
+
+
+    /**
+     * <p>
+     *   Create a source for a document specified as a sequence of bytes.
+     * </p>
+     *
+     * @param document the document.
+     * @param charset the charset to be used for decoding the document, or <tt>null</tt> for auto-detection.
+     * @return the source.
+     */
+    public static MarkupSource forBytes(final byte[] document, final Charset charset) {
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        return new ByteBufferMarkupSource(ByteBuffer.wrap(document), charset);
+    }
+
+
+    /**
+     * <p>
+     *   Create a source for a document stored in a file, which will be memory-mapped as explained for
+     *   {@link MarkupParser#parse(Path, Charset, IMarkupHandler)}.
+     * </p>
+     *
+     * @param path the path of the file.
+     * @param charset the charset to be used for decoding the document, or <tt>null</tt> for auto-detection.
+     * @return the source.
+     */
+    public static MarkupSource forPath(final Path path, final Charset charset) {
+        if (path == null) {
+            throw new IllegalArgumentException("Path cannot be null");
+        }
+        return new PathMarkupSource(path, charset);
+    }
+
+
+
+
+    /*
+     * Parses the document using a handler chain already prepared by the parser (see MarkupParser#prepareHandler)
+     */
+    abstract void parse(final MarkupParser parser, final IMarkupHandler handler, final ParseStatus status)
+            throws ParseException;
+
+
+
+
+    private static final class CharSequenceMarkupSource extends MarkupSource {
+
+        private final CharSequence document;
+
+        CharSequenceMarkupSource(final CharSequence document) {
+            super();
+            this.document = document;
+        }
+
+        @Override
+        void parse(final MarkupParser parser, final IMarkupHandler handler, final ParseStatus status)
+                throws ParseException {
+            if (this.document instanceof CharBuffer && ((CharBuffer) this.document).hasArray()) {
+                final CharBuffer charBuffer = (CharBuffer) this.document;
+                parser.parseDocument(
+                        charBuffer.array(), charBuffer.arrayOffset() + charBuffer.position(), charBuffer.remaining(),
+                        handler, status);
+                return;
+            }
+            parser.parseDocument(this.document, handler, status);
+        }
+
+    }
+
+
+    private static final class CharArrayMarkupSource extends MarkupSource {
+
+        private final char[] document;
+        private final int offset;
+        private final int len;
+
+        CharArrayMarkupSource(final char[] document, final int offset, final int len) {
+            super();
+            this.document = document;
+            this.offset = offset;
+            this.len = len;
+        }
+
+        @Override
+        void parse(final MarkupParser parser, final IMarkupHandler handler, final ParseStatus status)
+                throws ParseException {
+            parser.parseDocument(this.document, this.offset, this.len, handler, status);
+        }
+
+    }
+
+
+    private static final class ReaderMarkupSource extends MarkupSource {
+
+        private final Reader reader;
+
+        ReaderMarkupSource(final Reader reader) {
+            super();
+            this.reader = reader;
+        }
+
+        @Override
+        void parse(final MarkupParser parser, final IMarkupHandler handler, final ParseStatus status)
+                throws ParseException {
+            parser.parseDocument(this.reader, parser.getPoolBufferSize(), handler, status);
+        }
+
+    }
+
+
+    private static final class ByteBufferMarkupSource extends MarkupSource {
+
+        private final ByteBuffer document;
+        private final Charset charset;
+
+        ByteBufferMarkupSource(final ByteBuffer document, final Charset charset) {
+            super();
+            this.document = document;
+            this.charset = charset;
+        }
+
+        @Override
+        void parse(final MarkupParser parser, final IMarkupHandler handler, final ParseStatus status)
+                throws ParseException {
+            parser.parseDocument(
+                    parser.openReader(this.document, this.charset), parser.getPoolBufferSize(), handler, status);
+        }
+
+    }
+
+
+    private static final class PathMarkupSource extends MarkupSource {
+
+        private final Path path;
+        private final Charset charset;
+
+        PathMarkupSource(final Path path, final Charset charset) {
+            super();
+            this.path = path;
+            this.charset = charset;
+        }
+
+        @Override
+        void parse(final MarkupParser parser, final IMarkupHandler handler, final ParseStatus status)
+                throws ParseException {
+            parser.parseDocument(
+                    parser.openReader(this.path, ByteDecodingReader.DEFAULT_MAPPED_WINDOW_SIZE, this.charset),
+                    parser.getPoolBufferSize(), handler, status);
+        }
+
+    }
+
+
+}
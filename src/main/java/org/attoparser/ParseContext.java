@@ -0,0 +1,200 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser;
+
+
+/**
+ * <p>
+ *   Reusable context for parsing documents, one after another, with a {@link MarkupParser}.
+ * </p>
+ * <p>
+ *   Each call to the <tt>parse(...)</tt> methods of {@link MarkupParser} needs to build a number of internal
+ *   structures (the internal handlers that apply the configured HTML/XML rules, the element stack, the name
+ *   caches, the {@link ParseStatus}...) which are thrown away after parsing. For small documents, the cost of
+ *   building these structures can be similar to the cost of actually parsing. A parse context owns these structures
+ *   and resets them at the start of every document, so that they are built only once.
+ * </p>
+ * <p>
+ *   Parse contexts are obtained by means of {@link MarkupParser#createParseContext()}. If the same handler instance
+ *   is used for several documents, it will only be set up once (see
+ *   {@link IMarkupHandler#setParseConfiguration(org.attoparser.config.ParseConfiguration)}), so that parsing a
+ *   <tt>char[]</tt> document will not require building any per-document structures once the context has reached
+ *   its steady state (i.e. once its element stack and name caches have grown to the size the documents need).
+ * </p>
+ * <p>
+ *   Objects of this class are <strong>not thread-safe</strong>: a context can only parse one document at
+ *   a time. In multi-threaded scenarios, a context should be created for (and kept by) each thread, e.g. by means
+ *   of a {@link ThreadLocal}.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class ParseContext {
+
+    private final MarkupParser parser;
+    private final ParseStatus status;
+    private final DelegatingMarkupHandler delegatingHandler;
+    private final MarkupEventProcessorHandler markupHandler;
+    // Handler the internal chain ends in: the delegating handler, or a handler in front of it (e.g. for hiding
+    // lazily tracked locations) which direct events cannot skip
+    private final IMarkupHandler chainEndHandler;
+
+
+
+    ParseContext(
+            final MarkupParser parser, final ParseStatus status,
+            final DelegatingMarkupHandler delegatingHandler, final MarkupEventProcessorHandler markupHandler) {
+        super();
+        this.parser = parser;
+        this.status = status;
+        this.delegatingHandler = delegatingHandler;
+        this.markupHandler = markupHandler;
+        this.chainEndHandler = markupHandler.getDirectHandler();
+    }
+
+
+    /**
+     * <p>
+     *   Returns the parser this context was created by.
+     * </p>
+     *
+     * @return the parser.
+     */
+    public MarkupParser getParser() {
+        return this.parser;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Parse a document using the specified {@link IMarkupHandler}.
+     * </p>
+     *
+     * @param document the document to be parsed, as a char[].
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parse(final char[] document, final IMarkupHandler handler) throws ParseException {
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        parse(document, 0, document.length, handler);
+    }
+
+
+    /**
+     * <p>
+     *   Parse a document using the specified {@link IMarkupHandler}.
+     * </p>
+     *
+     * @param document the document to be parsed, as a char[].
+     * @param offset the offset to be applied on the char[] document to determine the
+     *        start of the document contents.
+     * @param len the length (in chars) of the document stored in the char[].
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parse(final char[] document, final int offset, final int len, final IMarkupHandler handler)
+            throws ParseException {
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        if (offset < 0 || len < 0) {
+            throw new IllegalArgumentException(
+                    "Neither document offset (" + offset + ") nor document length (" +
+                            len + ") can be less than zero");
+        }
+        prepare(handler);
+        this.parser.parseDocument(document, offset, len, this.markupHandler, this.status);
+    }
+
+
+    /**
+     * <p>
+     *   Parse a document using the specified {@link IMarkupHandler}.
+     * </p>
+     *
+     * @param document the document to be parsed, as a CharSequence (e.g. a String or a StringBuilder).
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parse(final CharSequence document, final IMarkupHandler handler) throws ParseException {
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        prepare(handler);
+        this.parser.parseDocument(document, this.markupHandler, this.status);
+    }
+
+
+    /**
+     * <p>
+     *   Parse a document using the specified {@link IMarkupHandler}.
+     * </p>
+     *
+     * @param source the source of the document to be parsed.
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parse(final MarkupSource source, final IMarkupHandler handler) throws ParseException {
+        if (source == null) {
+            throw new IllegalArgumentException("Source cannot be null");
+        }
+        prepare(handler);
+        source.parse(this.parser, this.markupHandler, this.status);
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Release the reference this context keeps to the handler used for the last document, so that it can be
+     *   garbage-collected. The rest of the structures owned by this context are reset at the start of each
+     *   document, so there is no need to call this method between documents.
+     * </p>
+     */
+    public void reset() {
+        this.delegatingHandler.clearNext();
+        this.markupHandler.setDirectHandler(this.chainEndHandler);
+    }
+
+
+
+
+    private void prepare(final IMarkupHandler handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+        this.delegatingHandler.setNext(handler);
+        // Events not processed by the internal handlers can skip the delegating handler too, unless there are
+        // other handlers between them
+        if (this.chainEndHandler == this.delegatingHandler) {
+            this.markupHandler.setDirectHandler(handler);
+        }
+    }
+
+
+}
@@ -0,0 +1,77 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.attoparser;
+
+
+
+/**
+ * <p>
+ *   Exception raised when a document exceeds one of the resource limits established at the
+ *   {@link org.attoparser.config.ParseConfiguration} (maximum structure length, maximum buffer size,
+ *   maximum element depth or maximum number of attributes per element).
+ * </p>
+ * <p>
+ *   The specific limit that has been exceeded can be obtained by means of {@link #getLimit()}.
+ * </p>
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ * @since 2.0.6
+ *
+ */
+public class ParseLimitExceededException extends ParseException {
+
+    private static final long serialVersionUID = 2406617826371604581L;
+
+    private final Limit limit;
+
+
+
+    public ParseLimitExceededException(final Limit limit, final String message, final int line, final int col) {
+        super(message, line, col);
+        this.limit = limit;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the limit that has been exceeded.
+     * </p>
+     *
+     * @return the exceeded limit.
+     */
+    public Limit getLimit() {
+        return this.limit;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Enumeration of the resource limits that can be established at the
+     *   {@link org.attoparser.config.ParseConfiguration}.
+     * </p>
+     */
+    public static enum Limit {
+        MAX_STRUCTURE_LENGTH, MAX_BUFFER_SIZE, MAX_ELEMENT_DEPTH, MAX_ATTRIBUTES_PER_ELEMENT
+    }
+
+}
@@ -43,12 +43,55 @@ public final class ParseStatus {
     int col;
     boolean inStructure;
 
+    // Locator (line, col) used by the parser while scanning, kept here so that it can be reused
+    final int[] locator = new int[2];
+
+    // Offset (in the buffer), line and col of the event (text or structure) currently being reported
+    int eventOffset;
+    int eventLine;
+    int eventCol;
+
+    // When locations are tracked lazily, the document being parsed (which will be entirely contained in memory)
+    // and the last location computed on demand, from which the next ones will be computed (events are reported
+    // in order, so there will normally be no need to scan again the part of the document before it)
+    char[] document;
+    int documentStart;
+    int lazyOffset;
+    int lazyLine;
+    int lazyCol;
+
+    // These attributes allow resuming the scan of an unfinished structure (or text) that reached the end of the
+    // buffer at the point where it stopped, once more content is available, instead of scanning it again from its
+    // start. Scan offset is relative to the start of the structure (i.e. 'offset'), and line and col are those of
+    // the point where the scan stopped. Quote state only applies to structures that avoid quotes (elements, etc.)
+    int scanStructure;
+    int scanOffset;
+    int scanLine;
+    int scanCol;
+    boolean scanInQuotes;
+    boolean scanInApos;
+
     boolean shouldDisableParsing; // This is meant to be modified only inside CDATA elements (disabling can depend on an attribute)
     boolean parsingDisabled;
     char[] parsingDisabledLimitSequence;
 
     boolean avoidStacking;
 
+    // Set by handlers in order to stop parsing before reaching the end of the document
+    boolean parsingStopped;
+
+    // Set by handlers in order to skip the contents of the element being opened. While skipping, the name of the
+    // element is kept along with the depth of the elements with that same name found inside it
+    boolean skipRequested;
+    boolean skipDisabled;
+    char[] skipElementName;
+    int skipDepth;
+
+    // While a comment or CDATA section is being reported in chunks (see ParseConfiguration), the sequence of chars
+    // that will close it, along with the length already reported (for checking the maximum structure length)
+    char[] splitStructureEnd;
+    int splitStructureLen;
+
 
     // These attributes instruct the event processor to make sure an element is correctly stacked inside the elements
     // it needs to. For example, a <tr> element will ask for the auto-opening of a <tbody> element as its
@@ -79,6 +122,11 @@ public final class ParseStatus {
     //
     char[][] autoOpenParents;
     char[][] autoOpenLimits;
+    // IDs of the parents (see HtmlElement) and bitset of the IDs of the limits (see HtmlElements#idSetForNames),
+    // allowing the event processor to check the elements in the stack with int and bit operations. Null (or 0)
+    // if unknown, in which case names are compared.
+    int[] autoOpenParentsIds;
+    long[] autoOpenLimitsSet;
 
     // These two attributes instruct the event processor to make sure certain elements are closed before an
     // open/standalone start event is actually fired. This avoids incorrect stacking of elements that cannot appear
@@ -91,6 +139,13 @@ public final class ParseStatus {
     // higher-level <ul> or <ol>.
     char[][] autoCloseRequired;
     char[][] autoCloseLimits;
+    // Bitsets of the IDs of the elements in the above arrays (null if unknown, in which case names are compared)
+    long[] autoCloseRequiredSet;
+    long[] autoCloseLimitsSet;
+
+    // Element resolved by the event processor (HTML only) for the element event being handled, so that handlers
+    // down the chain do not need to look it up again
+    HtmlElement element;
 
     // This flag indicates whether the auto-open and auto-close operations have already been done, so that the
     // firing events know that they don't need to stop the execution chain again.
@@ -146,6 +201,86 @@ public int getCol() {
     }
 
 
+    /**
+     * <p>
+     *   Returns the line in the document at which the event (text or structure) currently being reported
+     *   starts.
+     * </p>
+     * <p>
+     *   When locations are tracked eagerly, this is the same line reported with the event itself. When
+     *   they are tracked lazily (see
+     *   {@link org.attoparser.config.ParseConfiguration#setLocationTracking(org.attoparser.config.ParseConfiguration.LocationTracking)}),
+     *   events report unknown (<tt>-1</tt>) locations, and this method computes the actual one.
+     * </p>
+     *
+     * @return the line number.
+     * @since 2.0.6
+     */
+    public int getEventLine() {
+        if (this.document == null) {
+            return this.eventLine;
+        }
+        locate(this.eventOffset);
+        return this.lazyLine;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the column in the document at which the event (text or structure) currently being reported
+     *   starts.
+     * </p>
+     * <p>
+     *   When locations are tracked eagerly, this is the same column reported with the event itself. When
+     *   they are tracked lazily (see
+     *   {@link org.attoparser.config.ParseConfiguration#setLocationTracking(org.attoparser.config.ParseConfiguration.LocationTracking)}),
+     *   events report unknown (<tt>-1</tt>) locations, and this method computes the actual one.
+     * </p>
+     *
+     * @return the column number.
+     * @since 2.0.6
+     */
+    public int getEventCol() {
+        if (this.document == null) {
+            return this.eventCol;
+        }
+        locate(this.eventOffset);
+        return this.lazyCol;
+    }
+
+
+    /*
+     * Computes (into lazyLine and lazyCol) the location of the specified offset in the document being
+     * parsed with lazy location tracking, starting from the last location computed.
+     */
+    void locate(final int offset) {
+
+        if (offset < this.lazyOffset) {
+            this.lazyOffset = this.documentStart;
+            this.lazyLine = 1;
+            this.lazyCol = 1;
+        }
+
+        final char[] text = this.document;
+        int line = this.lazyLine;
+        int col = this.lazyCol;
+
+        for (int i = this.lazyOffset; i < offset; i++) {
+            if (text[i] == '\n') {
+                line++;
+                col = 1;
+            } else {
+                col++;
+            }
+        }
+
+        this.lazyOffset = offset;
+        this.lazyLine = line;
+        this.lazyCol = col;
+
+    }
+
+
 
     /**
      * <p>
@@ -178,6 +313,92 @@ public void setParsingDisabled(final char[] limitSequence) {
     }
 
 
+    /**
+     * <p>
+     *   Determines whether parsing has been stopped by a call to {@link #stopParsing()}.
+     * </p>
+     *
+     * @return whether parsing has been stopped or not.
+     * @since 2.0.6
+     */
+    public boolean isParsingStopped() {
+        return this.parsingStopped;
+    }
+
+    /**
+     * <p>
+     *   Stop parsing the document once the structure (element, text, comment...) currently being processed is
+     *   finished. No more contents will be read or scanned, and the end of the document will be reported right
+     *   away.
+     * </p>
+     * <p>
+     *   This allows handlers that only need a prefix of the document (e.g. the <tt>&lt;head&gt;</tt> of an
+     *   HTML document) to avoid the cost of reading and parsing the rest of it.
+     * </p>
+     * <p>
+     *   When parsing, the only events that can still be received by handlers after calling this method are:
+     * </p>
+     * <ul>
+     *   <li>The remaining events of the structure being processed (e.g. the rest of the attributes and the
+     *       element end of the element being opened).</li>
+     *   <li>If element balancing is configured to auto-close elements, an auto-close element start and end
+     *       for each element still open (innermost first), at the location of the end of the document.</li>
+     *   <li>The end of the document.</li>
+     * </ul>
+     * <p>
+     *   When replaying a {@link org.attoparser.tape.MarkupTape} (e.g. on hits of a
+     *   {@link org.attoparser.tape.MarkupTapeCache}), only the end of the document is received.
+     * </p>
+     * <p>
+     *   As the document is incomplete on purpose, it is not validated at its end: elements still open are not
+     *   an error even if balanced elements are required (they are just forgotten if they cannot be auto-closed),
+     *   and neither is the absence of a root element if one is required.
+     * </p>
+     *
+     * @since 2.0.6
+     */
+    public void stopParsing() {
+        this.parsingStopped = true;
+    }
+
+
+    /**
+     * <p>
+     *   Skip the contents of the element currently being opened, up to its matching close element, which will be
+     *   reported normally. No events are fired for the skipped contents, which are only scanned as much as needed
+     *   for finding the close element (i.e. element names, but no attributes). This should be called during the
+     *   events of an open element (its start, attributes or end), and is ignored otherwise.
+     * </p>
+     * <p>
+     *   This allows handlers to discard large parts of a document (e.g. <tt>&lt;svg&gt;</tt> elements) at
+     *   very low cost. Note that the matching close element is found by name, so in HTML mode elements which
+     *   end tag is optional (<tt>&lt;p&gt;</tt>, <tt>&lt;li&gt;</tt>, <tt>&lt;td&gt;</tt>, etc.) cannot be
+     *   skipped, and this will be ignored for them. Skipping is also ignored when parsing in parallel.
+     * </p>
+     *
+     * @since 2.0.6
+     */
+    public void skipElementContents() {
+        this.skipRequested = true;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the integer ID of the element being handled by the current element event (or by the attribute
+     *   or inner white space events of that element). IDs are only available in HTML mode, for standard elements
+     *   and for elements registered at {@link HtmlVocabulary}, and can be obtained for each name by means of
+     *   {@link HtmlVocabulary#getElementId(String)}, so that handlers can compare them instead of element names.
+     * </p>
+     *
+     * @return the ID of the element, or 0 if it has no ID. Value is undefined outside element events.
+     * @since 2.0.6
+     */
+    public int getElementId() {
+        return (this.element == null ? 0 : this.element.id);
+    }
+
+
     /**
      * <p>
      *   Indicates whether the parser has already performed a required auto-open or auto-close operation. This
@@ -244,8 +465,17 @@ public boolean isAutoOpenCloseDone() {
      *                       the parent sequence will only be applied if at root level, or of the sequence is incomplete.
      */
     public void setAutoOpenRequired(final char[][] autoOpenParents, final char[][] autoOpenLimits) {
+        setAutoOpenRequired(autoOpenParents, autoOpenLimits, null, null);
+    }
+
+
+    void setAutoOpenRequired(
+            final char[][] autoOpenParents, final char[][] autoOpenLimits,
+            final int[] autoOpenParentsIds, final long[] autoOpenLimitsSet) {
         this.autoOpenParents = autoOpenParents;
         this.autoOpenLimits = autoOpenLimits;
+        this.autoOpenParentsIds = autoOpenParentsIds;
+        this.autoOpenLimitsSet = autoOpenLimitsSet;
     }
 
 
@@ -275,8 +505,17 @@ public void setAutoOpenRequired(final char[][] autoOpenParents, final char[][] a
      * @param autoCloseLimits the names of the elements that will serve as limits for the auto-closing operation.
      */
     public void setAutoCloseRequired(final char[][] autoCloseRequired, final char[][] autoCloseLimits) {
+        setAutoCloseRequired(autoCloseRequired, autoCloseLimits, null, null);
+    }
+
+
+    void setAutoCloseRequired(
+            final char[][] autoCloseRequired, final char[][] autoCloseLimits,
+            final long[] autoCloseRequiredSet, final long[] autoCloseLimitsSet) {
         this.autoCloseRequired = autoCloseRequired;
         this.autoCloseLimits = autoCloseLimits;
+        this.autoCloseRequiredSet = autoCloseRequiredSet;
+        this.autoCloseLimitsSet = autoCloseLimitsSet;
     }
 
     /**
@@ -0,0 +1,303 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+
+
+/*
+ * Class containing utility methods for detecting the encoding of a markup document specified
+ * as a sequence of bytes.
+ *
+ * Detection is performed (in this order) by looking for a Byte Order Mark (BOM), an XML Declaration
+ * specifying an "encoding" and, when in HTML mode, a <meta> element specifying a charset (either
+ * by means of <meta charset="..."> or <meta http-equiv="Content-Type" content="...; charset=...">).
+ * The latter is a simplified version of the "prescan" algorithm established by the HTML5 spec,
+ * and just like that algorithm it only considers the first 1024 bytes of the document.
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+final class ParsingEncodingUtil {
+
+    // Amount of bytes that will be examined at the beginning of the document (as per the HTML5 spec prescan)
+    static final int PRESCAN_LEN = 1024;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final Charset UTF_16BE = Charset.forName("UTF-16BE");
+    static final Charset UTF_16LE = Charset.forName("UTF-16LE");
+    static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static final byte[] XML_DECLARATION_START = "<?xml".getBytes(US_ASCII);
+    private static final byte[] XML_DECLARATION_END = "?>".getBytes(US_ASCII);
+    private static final byte[] ENCODING = "encoding".getBytes(US_ASCII);
+    private static final byte[] META = "<meta".getBytes(US_ASCII);
+    private static final byte[] CHARSET = "charset".getBytes(US_ASCII);
+
+
+
+    private ParsingEncodingUtil() {
+        super();
+    }
+
+
+
+
+    /*
+     * Returns the charset that should be used for decoding the bytes (between position and limit) of the
+     * specified buffer, or the default charset if none could be detected. The position of the buffer is
+     * not modified.
+     */
+    static Charset detectCharset(final ByteBuffer bytes, final boolean html, final Charset defaultCharset) {
+
+        final int offset = bytes.position();
+        final int maxi = offset + Math.min(bytes.remaining(), PRESCAN_LEN);
+
+        final Charset bomCharset = detectBOMCharset(bytes);
+        if (bomCharset != null) {
+            return bomCharset;
+        }
+
+        // No BOM, but documents starting with '<' in UTF-16 can still be detected
+        if (maxi - offset >= 4) {
+            final byte b0 = bytes.get(offset);
+            final byte b1 = bytes.get(offset + 1);
+            final byte b2 = bytes.get(offset + 2);
+            final byte b3 = bytes.get(offset + 3);
+            if (b0 == 0x00 && b1 == '<' && b2 == 0x00 && b3 != 0x00) {
+                return UTF_16BE;
+            }
+            if (b0 == '<' && b1 == 0x00 && b2 != 0x00 && b3 == 0x00) {
+                return UTF_16LE;
+            }
+        }
+
+        // From this point on, we know we are dealing with an ASCII-compatible encoding
+
+        if (startsWith(bytes, offset, maxi, XML_DECLARATION_START)) {
+            final int declarationEnd = indexOf(bytes, offset, maxi, XML_DECLARATION_END, false);
+            if (declarationEnd != -1) {
+                final Charset xmlDeclarationCharset =
+                        findAttributeCharset(bytes, offset, declarationEnd, ENCODING);
+                if (xmlDeclarationCharset != null) {
+                    return xmlDeclarationCharset;
+                }
+            }
+        }
+
+        if (html) {
+            int i = offset;
+            int metaStart;
+            while ((metaStart = indexOf(bytes, i, maxi, META, true)) != -1) {
+                final int metaEnd = indexOf(bytes, metaStart, maxi, (byte)'>');
+                if (metaEnd == -1) {
+                    break;
+                }
+                final Charset metaCharset = findAttributeCharset(bytes, metaStart + META.length, metaEnd, CHARSET);
+                if (metaCharset != null) {
+                    return metaCharset;
+                }
+                i = metaEnd + 1;
+            }
+        }
+
+        return defaultCharset;
+
+    }
+
+
+
+
+    /*
+     * Returns the charset determined by the Byte Order Mark (BOM) at the position of the buffer,
+     * or null if there is no BOM.
+     */
+    static Charset detectBOMCharset(final ByteBuffer bytes) {
+
+        final int offset = bytes.position();
+        final int len = bytes.remaining();
+
+        if (len >= 3 &&
+                bytes.get(offset) == (byte)0xEF && bytes.get(offset + 1) == (byte)0xBB && bytes.get(offset + 2) == (byte)0xBF) {
+            return UTF_8;
+        }
+        if (len >= 2) {
+            if (bytes.get(offset) == (byte)0xFE && bytes.get(offset + 1) == (byte)0xFF) {
+                return UTF_16BE;
+            }
+            if (bytes.get(offset) == (byte)0xFF && bytes.get(offset + 1) == (byte)0xFE) {
+                return UTF_16LE;
+            }
+        }
+        return null;
+
+    }
+
+
+    /*
+     * Returns the length (in bytes) of the Byte Order Mark at the position of the buffer, if any.
+     */
+    static int computeBOMLength(final ByteBuffer bytes) {
+        final Charset bomCharset = detectBOMCharset(bytes);
+        if (bomCharset == null) {
+            return 0;
+        }
+        return (UTF_8.equals(bomCharset) ? 3 : 2);
+    }
+
+
+
+
+    /*
+     * Looks for an "attrName" followed by an (optional) whitespace-surrounded "=" and a (possibly quoted) value,
+     * and returns the charset corresponding to that value, if it exists and is supported.
+     */
+    private static Charset findAttributeCharset(
+            final ByteBuffer bytes, final int offset, final int maxi, final byte[] attrName) {
+
+        int i = offset;
+        int nameStart;
+
+        while ((nameStart = indexOf(bytes, i, maxi, attrName, true)) != -1) {
+
+            int j = skipWhitespace(bytes, nameStart + attrName.length, maxi);
+            if (j < maxi && bytes.get(j) == '=') {
+
+                j = skipWhitespace(bytes, j + 1, maxi);
+
+                byte quote = 0;
+                if (j < maxi && (bytes.get(j) == '"' || bytes.get(j) == '\'')) {
+                    quote = bytes.get(j);
+                    j++;
+                }
+
+                final int valueStart = j;
+                while (j < maxi) {
+                    final byte b = bytes.get(j);
+                    if (quote != 0 ? b == quote : (isWhitespace(b) || b == ';' || b == '"' || b == '\'' || b == '>' || b == '/')) {
+                        break;
+                    }
+                    j++;
+                }
+
+                if (j > valueStart) {
+                    final char[] value = new char[j - valueStart];
+                    for (int k = 0; k < value.length; k++) {
+                        value[k] = (char)(bytes.get(valueStart + k) & 0xFF);
+                    }
+                    return forName(new String(value).trim());
+                }
+
+            }
+
+            i = nameStart + attrName.length;
+
+        }
+
+        return null;
+
+    }
+
+
+    private static Charset forName(final String charsetName) {
+        try {
+            final Charset charset = Charset.forName(charsetName);
+            // If we have been able to read the name using single bytes, this cannot be UTF-16 (the HTML5
+            // spec establishes UTF-8 must be used in such case)
+            if (charset.name().startsWith("UTF-16")) {
+                return UTF_8;
+            }
+            return charset;
+        } catch (final IllegalCharsetNameException ignored) {
+            return null;
+        } catch (final UnsupportedCharsetException ignored) {
+            return null;
+        }
+    }
+
+
+
+
+    private static boolean startsWith(final ByteBuffer bytes, final int offset, final int maxi, final byte[] prefix) {
+        if (maxi - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static int indexOf(final ByteBuffer bytes, final int offset, final int maxi, final byte b) {
+        for (int i = offset; i < maxi; i++) {
+            if (bytes.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    private static int indexOf(
+            final ByteBuffer bytes, final int offset, final int maxi, final byte[] fragment, final boolean ignoreCase) {
+        final int n = maxi - fragment.length;
+        for (int i = offset; i <= n; i++) {
+            int j = 0;
+            while (j < fragment.length) {
+                byte b = bytes.get(i + j);
+                if (ignoreCase && b >= 'A' && b <= 'Z') {
+                    b = (byte)(b + ('a' - 'A'));
+                }
+                if (b != fragment[j]) {
+                    break;
+                }
+                j++;
+            }
+            if (j == fragment.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    private static int skipWhitespace(final ByteBuffer bytes, final int offset, final int maxi) {
+        int i = offset;
+        while (i < maxi && isWhitespace(bytes.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+
+    private static boolean isWhitespace(final byte b) {
+        return (b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f');
+    }
+
+
+}
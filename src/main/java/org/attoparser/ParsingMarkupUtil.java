@@ -43,9 +43,21 @@ private ParsingMarkupUtil() {
     static int findNextStructureEndAvoidQuotes(
             final char[] text, final int offset, final int maxi, 
             final int[] locator) {
-        
-        boolean inQuotes = false;
-        boolean inApos = false;
+        return findNextStructureEndAvoidQuotes(text, offset, maxi, locator, null);
+    }
+    
+    
+    /*
+     * If a parse status is specified, the scan starts with (and, if the end of the structure is not found, saves)
+     * the quote state in it, so that the scan can be resumed later once more content is available. Otherwise, the
+     * scan starts outside quotes.
+     */
+    static int findNextStructureEndAvoidQuotes(
+            final char[] text, final int offset, final int maxi,
+            final int[] locator, final ParseStatus status) {
+
+        boolean inQuotes = (status != null && status.scanInQuotes);
+        boolean inApos = (status != null && status.scanInApos);
 
         char c;
 
@@ -72,15 +84,19 @@ static int findNextStructureEndAvoidQuotes(
             }
 
             i++;
-            
+
         }
-            
+
         locator[1] += (maxi - colIndex);
+        if (status != null) {
+            status.scanInQuotes = inQuotes;
+            status.scanInApos = inApos;
+        }
         return -1;
-        
+
     }
-    
-    
+
+
     static int findNextStructureEndDontAvoidQuotes(
             final char[] text, final int offset, final int maxi, 
             final int[] locator) {
@@ -118,34 +134,15 @@ static int findNextStructureEndDontAvoidQuotes(
     static int findNextStructureStart(
             final char[] text, final int offset, final int maxi, 
             final int[] locator) {
+        return ParsingStructureStartUtil.findNextStructureStart(text, offset, maxi, locator);
+    }
 
-        char c;
-
-        int colIndex = offset;
-
-        int i = offset;
-        int n = (maxi - offset);
-
-        while (n-- != 0) {
-
-            c = text[i];
-            
-            if (c == '\n') {
-                colIndex = i;
-                locator[1] = 0;
-                locator[0]++;
-            } else if (c == '<') {
-                locator[1] += (i - colIndex);
-                return i;
-            }
-
-            i++;
-
-        }
-            
-        locator[1] += (maxi - colIndex);
-        return -1;
-        
+    
+    /*
+     * Equivalent to the above, but not keeping track of locations (used when these are computed lazily).
+     */
+    static int findNextStructureStart(final char[] text, final int offset, final int maxi) {
+        return ParsingStructureStartUtil.findNextStructureStart(text, offset, maxi);
     }
 
     
@@ -0,0 +1,112 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.attoparser;
+
+
+
+
+/*
+ * Class containing the scans for the start of the next structure ('<') in a text buffer.
+ *
+ * These scans are kept apart from ParsingMarkupUtil because they are the hottest loops in the
+ * parser, and the library jar is multi-release: on Java 17+ this class is replaced by the one at
+ * META-INF/versions/17 (source at src/main/java17), which can use the (incubating) Vector API.
+ * This Java 7 version is the scalar implementation, and the one used as a fallback by the
+ * Java 17 version when the Vector API module is not available.
+ *
+ * Both versions must offer exactly the same methods and produce exactly the same results
+ * (including locator updates).
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+final class ParsingStructureStartUtil {
+
+
+    
+    private ParsingStructureStartUtil() {
+        super();
+    }
+
+
+
+    static boolean isVectorized() {
+        return false;
+    }
+
+    
+    static int findNextStructureStart(
+            final char[] text, final int offset, final int maxi, 
+            final int[] locator) {
+
+        char c;
+
+        int colIndex = offset;
+
+        int i = offset;
+        int n = (maxi - offset);
+
+        while (n-- != 0) {
+
+            c = text[i];
+            
+            if (c == '\n') {
+                colIndex = i;
+                locator[1] = 0;
+                locator[0]++;
+            } else if (c == '<') {
+                locator[1] += (i - colIndex);
+                return i;
+            }
+
+            i++;
+
+        }
+            
+        locator[1] += (maxi - colIndex);
+        return -1;
+        
+    }
+
+    
+    /*
+     * Equivalent to the above, but not keeping track of locations (used when these are computed lazily).
+     */
+    static int findNextStructureStart(final char[] text, final int offset, final int maxi) {
+
+        int i = offset;
+        int n = (maxi - offset);
+
+        while (n-- != 0) {
+
+            if (text[i] == '<') {
+                return i;
+            }
+
+            i++;
+
+        }
+
+        return -1;
+
+    }
+
+
+}
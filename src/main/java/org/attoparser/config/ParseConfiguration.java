@@ -114,6 +114,7 @@ public static enum ElementBalancing {
     private boolean caseSensitive = true;
 
     private boolean textSplittable = false;
+    private boolean commentAndCDATASplittable = false;
     
     private ElementBalancing elementBalancing = ElementBalancing.NO_BALANCING;
 
@@ -124,6 +125,13 @@ public static enum ElementBalancing {
     private PrologParseConfiguration prologParseConfiguration = new PrologParseConfiguration();
     private UniqueRootElementPresence uniqueRootElementPresence = UniqueRootElementPresence.DEPENDS_ON_PROLOG_DOCTYPE;
 
+    private int maxStructureLength = Integer.MAX_VALUE;
+    private int maxBufferSize = Integer.MAX_VALUE;
+    private int maxElementDepth = Integer.MAX_VALUE;
+    private int maxAttributesPerElement = Integer.MAX_VALUE;
+
+    private LocationTracking locationTracking = LocationTracking.EAGER;
+
 
 
 
@@ -351,6 +359,56 @@ public void setTextSplittable(final boolean textSplittable) {
 
 
 
+    /**
+     * <p>
+     *   Returns whether comments and CDATA sections can be reported in more than one event (<i>chunks</i>),
+     *   if they reach the end of the contents available in the buffer before being closed.
+     * </p>
+     * <p>
+     *   Each chunk is reported as a normal comment or CDATA section event whose <i>outer</i> partition only
+     *   contains the part of the structure in that chunk: the first chunk includes the starting sequence
+     *   (e.g. <tt>&lt;!--</tt>) and the last one the ending sequence (e.g. <tt>--&gt;</tt>), so that writing
+     *   the outer partitions of all chunks one after another outputs the complete structure (and writing their
+     *   <i>content</i> partitions, its complete contents). Whether an event is a chunk or a complete structure
+     *   can therefore be determined by comparing both partitions.
+     * </p>
+     * <p>
+     *   This allows the size of the buffer to depend only on the size of the rest of the markup structures
+     *   (element tags, DOCTYPE clauses, etc.), no matter how large comments and CDATA sections are. Note
+     *   attribute values are never split, as they are reported along with their element.
+     * </p>
+     * <p>
+     *   Default is <tt>false</tt>.
+     * </p>
+     *
+     * @return whether comments and CDATA sections can be split or not.
+     * @since 2.0.6
+     */
+    public boolean isCommentAndCDATASplittable() {
+        return this.commentAndCDATASplittable;
+    }
+
+
+    /**
+     * <p>
+     *   Specify whether comments and CDATA sections can be reported in more than one event (<i>chunks</i>),
+     *   if they reach the end of the contents available in the buffer before being closed. See
+     *   {@link #isCommentAndCDATASplittable()} for the way chunks are reported.
+     * </p>
+     * <p>
+     *   Default is <tt>false</tt>.
+     * </p>
+     *
+     * @param commentAndCDATASplittable whether comments and CDATA sections can be split or not.
+     * @since 2.0.6
+     */
+    public void setCommentAndCDATASplittable(final boolean commentAndCDATASplittable) {
+        this.commentAndCDATASplittable = commentAndCDATASplittable;
+    }
+
+
+
+
     /**
      * <p>
      *   Returns the level of element balancing required at the document being parsed,
@@ -628,6 +686,225 @@ public void setUniqueRootElementPresence(final UniqueRootElementPresence uniqueR
 
 
 
+    /**
+     * <p>
+     *   Returns the maximum length (in chars) allowed for a markup structure (element tag, comment, CDATA section,
+     *   DOCTYPE clause, XML Declaration or Processing Instruction).
+     * </p>
+     * <p>
+     *   Documents containing larger structures (e.g. because of an unterminated quote inside an element tag or
+     *   a comment that is never closed) will raise a {@link org.attoparser.ParseLimitExceededException} as soon as
+     *   the limit is exceeded, without the need to read the rest of the structure.
+     * </p>
+     * <p>
+     *   Default value is <b>{@link Integer#MAX_VALUE}</b> (no limit).
+     * </p>
+     *
+     * @return the maximum structure length.
+     */
+    public int getMaxStructureLength() {
+        return this.maxStructureLength;
+    }
+
+
+    /**
+     * <p>
+     *   Sets the maximum length (in chars) allowed for a markup structure (element tag, comment, CDATA section,
+     *   DOCTYPE clause, XML Declaration or Processing Instruction).
+     * </p>
+     * <p>
+     *   Documents containing larger structures (e.g. because of an unterminated quote inside an element tag or
+     *   a comment that is never closed) will raise a {@link org.attoparser.ParseLimitExceededException} as soon as
+     *   the limit is exceeded, without the need to read the rest of the structure.
+     * </p>
+     * <p>
+     *   Default value is <b>{@link Integer#MAX_VALUE}</b> (no limit).
+     * </p>
+     *
+     * @param maxStructureLength the maximum structure length.
+     */
+    public void setMaxStructureLength(final int maxStructureLength) {
+        validatePositive(maxStructureLength, "The \"max structure length\" configuration value must be greater than zero");
+        this.maxStructureLength = maxStructureLength;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the maximum size (in chars) the parsing buffer will be allowed to grow to when a structure or
+     *   text does not fit into it.
+     * </p>
+     * <p>
+     *   This applies to documents read from a {@link java.io.Reader} (or any other sources that require reading
+     *   the document in fragments) and to documents parsed incrementally. Documents specified as <tt>char[]</tt>
+     *   are parsed without the need of any additional buffers. If the limit is exceeded, a
+     *   {@link org.attoparser.ParseLimitExceededException} will be raised.
+     * </p>
+     * <p>
+     *   Default value is <b>{@link Integer#MAX_VALUE}</b> (no limit).
+     * </p>
+     *
+     * @return the maximum buffer size.
+     */
+    public int getMaxBufferSize() {
+        return this.maxBufferSize;
+    }
+
+
+    /**
+     * <p>
+     *   Sets the maximum size (in chars) the parsing buffer will be allowed to grow to when a structure or
+     *   text does not fit into it.
+     * </p>
+     * <p>
+     *   This applies to documents read from a {@link java.io.Reader} (or any other sources that require reading
+     *   the document in fragments) and to documents parsed incrementally. Documents specified as <tt>char[]</tt>
+     *   are parsed without the need of any additional buffers. If the limit is exceeded, a
+     *   {@link org.attoparser.ParseLimitExceededException} will be raised.
+     * </p>
+     * <p>
+     *   Default value is <b>{@link Integer#MAX_VALUE}</b> (no limit).
+     * </p>
+     *
+     * @param maxBufferSize the maximum buffer size.
+     */
+    public void setMaxBufferSize(final int maxBufferSize) {
+        validatePositive(maxBufferSize, "The \"max buffer size\" configuration value must be greater than zero");
+        this.maxBufferSize = maxBufferSize;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the maximum depth allowed for nested elements.
+     * </p>
+     * <p>
+     *   This limit is only checked when the parser needs to keep a stack of open elements (i.e. when the
+     *   configuration requires any kind of element balancing or validation), which is the only case in which
+     *   deeply nested elements require an additional amount of memory. If the limit is exceeded, a
+     *   {@link org.attoparser.ParseLimitExceededException} will be raised.
+     * </p>
+     * <p>
+     *   Default value is <b>{@link Integer#MAX_VALUE}</b> (no limit).
+     * </p>
+     *
+     * @return the maximum element depth.
+     */
+    public int getMaxElementDepth() {
+        return this.maxElementDepth;
+    }
+
+
+    /**
+     * <p>
+     *   Sets the maximum depth allowed for nested elements.
+     * </p>
+     * <p>
+     *   This limit is only checked when the parser needs to keep a stack of open elements (i.e. when the
+     *   configuration requires any kind of element balancing or validation), which is the only case in which
+     *   deeply nested elements require an additional amount of memory. If the limit is exceeded, a
+     *   {@link org.attoparser.ParseLimitExceededException} will be raised.
+     * </p>
+     * <p>
+     *   Default value is <b>{@link Integer#MAX_VALUE}</b> (no limit).
+     * </p>
+     *
+     * @param maxElementDepth the maximum element depth.
+     */
+    public void setMaxElementDepth(final int maxElementDepth) {
+        validatePositive(maxElementDepth, "The \"max element depth\" configuration value must be greater than zero");
+        this.maxElementDepth = maxElementDepth;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the maximum number of attributes allowed in a single element. If the limit is exceeded, a
+     *   {@link org.attoparser.ParseLimitExceededException} will be raised.
+     * </p>
+     * <p>
+     *   Default value is <b>{@link Integer#MAX_VALUE}</b> (no limit).
+     * </p>
+     *
+     * @return the maximum number of attributes per element.
+     */
+    public int getMaxAttributesPerElement() {
+        return this.maxAttributesPerElement;
+    }
+
+
+    /**
+     * <p>
+     *   Sets the maximum number of attributes allowed in a single element. If the limit is exceeded, a
+     *   {@link org.attoparser.ParseLimitExceededException} will be raised.
+     * </p>
+     * <p>
+     *   Default value is <b>{@link Integer#MAX_VALUE}</b> (no limit).
+     * </p>
+     *
+     * @param maxAttributesPerElement the maximum number of attributes per element.
+     */
+    public void setMaxAttributesPerElement(final int maxAttributesPerElement) {
+        validatePositive(maxAttributesPerElement, "The \"max attributes per element\" configuration value must be greater than zero");
+        this.maxAttributesPerElement = maxAttributesPerElement;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the way in which the parser keeps track of the lines and columns at which events are found.
+     * </p>
+     * <p>
+     *   Default is <b>{@link LocationTracking#EAGER}</b>.
+     * </p>
+     *
+     * @return the location tracking mode.
+     */
+    public LocationTracking getLocationTracking() {
+        return this.locationTracking;
+    }
+
+
+    /**
+     * <p>
+     *   Specify the way in which the parser keeps track of the lines and columns at which events are found.
+     * </p>
+     * <p>
+     *   Possible values are:
+     * </p>
+     * <ul>
+     *   <li>{@link LocationTracking#EAGER}: the line and column of every event is computed while scanning the
+     *       document, and reported along with the event.</li>
+     *   <li>{@link LocationTracking#LAZY}: text is scanned without keeping track of lines and columns, and the
+     *       <tt>(line,col)</tt> pairs reported with events are unknown, i.e. <tt>-1</tt>. Absolute
+     *       locations are computed only when needed: for the messages of any
+     *       {@link org.attoparser.ParseException} being raised, and for handlers calling
+     *       {@link org.attoparser.ParseStatus#getEventLine()} or {@link org.attoparser.ParseStatus#getEventCol()}.
+     *       This mode only applies to documents parsed from memory (<tt>char[]</tt> or <tt>CharSequence</tt>
+     *       objects). Documents read from a <tt>Reader</tt>, parsed incrementally or in parallel always have their
+     *       locations computed eagerly.</li>
+     * </ul>
+     * <p>
+     *   Default is <b>{@link LocationTracking#EAGER}</b>.
+     * </p>
+     *
+     * @param locationTracking the location tracking mode.
+     */
+    public void setLocationTracking(final LocationTracking locationTracking) {
+        this.locationTracking = locationTracking;
+    }
+
+
+
+
     
     @Override
     public ParseConfiguration clone() throws CloneNotSupportedException {
@@ -639,6 +916,12 @@ public ParseConfiguration clone() throws CloneNotSupportedException {
         conf.xmlWellFormedAttributeValuesRequired = this.xmlWellFormedAttributeValuesRequired;
         conf.uniqueRootElementPresence = this.uniqueRootElementPresence;
         conf.prologParseConfiguration = this.prologParseConfiguration.clone();
+        conf.maxStructureLength = this.maxStructureLength;
+        conf.maxBufferSize = this.maxBufferSize;
+        conf.maxElementDepth = this.maxElementDepth;
+        conf.maxAttributesPerElement = this.maxAttributesPerElement;
+        conf.locationTracking = this.locationTracking;
+        conf.commentAndCDATASplittable = this.commentAndCDATASplittable;
         return conf;
     }
 
@@ -657,6 +940,22 @@ public static enum ParsingMode {
     }
 
 
+    /**
+     * <p>
+     *   Enumeration used for determining the way in which the parser will keep track of the lines and columns
+     *   events are found at. Values are <strong>EAGER</strong> and <strong>LAZY</strong>.
+     * </p>
+     * <p>
+     *   This enumeration is used at the {@link org.attoparser.config.ParseConfiguration} class.
+     * </p>
+     *
+     * @since 2.0.6
+     */
+    public static enum LocationTracking {
+        EAGER, LAZY
+    }
+
+
     /**
      * <p>
      *   Enumeration used for determining whether an element in the document prolog (DOCTYPE, XML Declaration) or
@@ -1006,6 +1305,13 @@ private static void validateNotNull(final Object obj, final String message) {
             throw new IllegalArgumentException(message);
         }
     }
+
+
+    private static void validatePositive(final int value, final String message) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(message);
+        }
+    }
     
         
 }
\ No newline at end of file
@@ -0,0 +1,609 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser.tape;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.attoparser.AbstractMarkupHandler;
+import org.attoparser.IMarkupHandler;
+import org.attoparser.ParseException;
+import org.attoparser.ParseStatus;
+import org.attoparser.config.ParseConfiguration;
+import org.attoparser.select.ParseSelection;
+
+
+/**
+ * <p>
+ *   Implementation of {@link org.attoparser.IMarkupHandler} that hands all the events it receives over to another
+ *   handler (or handler chain) executed on a different thread, so that parsing and handling can be performed in
+ *   parallel on two cores. Useful when the handler chain is expensive (e.g. building a DOM, filtering with markup
+ *   selectors and writing output at the same time).
+ * </p>
+ * <p>
+ *   Events are recorded (copying the texts they refer to, see {@link TapeBuilderMarkupHandler}) into a ring of
+ *   pre-allocated segments. Once a segment is full it is published, and replayed on the target handler by a
+ *   task executed by means of the specified {@link java.util.concurrent.Executor}. If no segments are available
+ *   because none of them has been replayed yet, the parsing thread waits.
+ * </p>
+ * <p>
+ *   Parsing does not finish until all the events of the document have been handled, and any exceptions raised
+ *   by the target handler are thrown by the parsing operation itself. Note however:
+ * </p>
+ * <ul>
+ *   <li>The target handler receives a {@link org.attoparser.ParseStatus} of its own. Stopping parsing from it
+ *       will prevent any more events (except the end of the document) from reaching the handler, but the parser
+ *       will only be stopped the next time a segment is published. Requests for avoiding the parsing of element
+ *       contents are ignored.</li>
+ *   <li>The executor must be able to run the task on a thread other than the one parsing (or else run it
+ *       right away in that same thread). If the task is rejected, events are handled in the parsing thread.</li>
+ *   <li>Instances can be used for parsing several documents one after the other, but not concurrently.</li>
+ * </ul>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class AsyncMarkupHandler extends AbstractMarkupHandler {
+
+    /**
+     * <p>
+     *   Default number of segments: {@value}
+     * </p>
+     */
+    public static final int DEFAULT_SEGMENTS = 8;
+
+    private static final int SEGMENT_EVENTS_LEN = 1024;
+    private static final int SEGMENT_CHARS_LEN = 4096;
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 50000L;
+
+    private final IMarkupHandler handler;
+    private final Executor executor;
+    private final TapeBuilderMarkupHandler[] segments;
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final Runnable drainTask;
+
+    // Both counters only grow, each of them written by a single thread (parsing and handling thread, respectively)
+    private volatile long published = 0L;
+    private volatile long consumed = 0L;
+
+    private volatile Throwable failure = null;
+    private volatile boolean stopped = false;
+    private volatile Thread waitingThread = null;
+
+    private ParseStatus status = null;
+    private ParseStatus handlerStatus = null;
+    private long startTimeNanos = 0L;
+    private TapeBuilderMarkupHandler segment = null;
+
+
+
+    /**
+     * <p>
+     *   Creates a new instance of this handler, using {@link #DEFAULT_SEGMENTS} segments.
+     * </p>
+     *
+     * @param handler the handler the events will be handed over to.
+     * @param executor the executor the handling tasks will be submitted to.
+     */
+    public AsyncMarkupHandler(final IMarkupHandler handler, final Executor executor) {
+        this(handler, executor, DEFAULT_SEGMENTS);
+    }
+
+
+    /**
+     * <p>
+     *   Creates a new instance of this handler.
+     * </p>
+     *
+     * @param handler the handler the events will be handed over to.
+     * @param executor the executor the handling tasks will be submitted to.
+     * @param segments the number of segments (at least 2) that can be waiting to be handled at a time.
+     */
+    public AsyncMarkupHandler(final IMarkupHandler handler, final Executor executor, final int segments) {
+
+        super();
+
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        if (segments < 2) {
+            throw new IllegalArgumentException("Number of segments must be at least 2");
+        }
+
+        this.handler = handler;
+        this.executor = executor;
+        this.segments = new TapeBuilderMarkupHandler[segments];
+        for (int i = 0; i < segments; i++) {
+            this.segments[i] = new TapeBuilderMarkupHandler();
+        }
+        this.drainTask = new Runnable() {
+            public void run() {
+                drain();
+            }
+        };
+
+    }
+
+
+
+
+    @Override
+    public void setParseConfiguration(final ParseConfiguration parseConfiguration) {
+        this.handler.setParseConfiguration(parseConfiguration);
+    }
+
+
+    @Override
+    public void setParseStatus(final ParseStatus status) {
+        this.status = status;
+    }
+
+
+    @Override
+    public void setParseSelection(final ParseSelection selection) {
+        this.handler.setParseSelection(selection);
+    }
+
+
+
+
+    @Override
+    public void handleDocumentStart(
+            final long startTimeNanos, final int line, final int col)
+            throws ParseException {
+
+        // A previous (failed) document might still be being handled
+        waitForConsumed(this.published);
+
+        this.failure = null;
+        this.stopped = false;
+        this.startTimeNanos = startTimeNanos;
+        this.handlerStatus = new ParseStatus();
+        this.handler.setParseStatus(this.handlerStatus);
+
+        this.segment = this.segments[(int) (this.published % this.segments.length)];
+        this.segment.handleDocumentStart(startTimeNanos, line, col);
+
+    }
+
+
+    @Override
+    public void handleDocumentEnd(
+            final long endTimeNanos, final long totalTimeNanos, final int line, final int col)
+            throws ParseException {
+
+        this.segment.handleDocumentEnd(endTimeNanos, totalTimeNanos, line, col);
+
+        this.published++;
+        scheduleDrain();
+        waitForConsumed(this.published);
+        checkFailure();
+
+    }
+
+
+    @Override
+    public void handleXmlDeclaration(
+            final char[] buffer,
+            final int keywordOffset, final int keywordLen,
+            final int keywordLine, final int keywordCol,
+            final int versionOffset, final int versionLen,
+            final int versionLine, final int versionCol,
+            final int encodingOffset, final int encodingLen,
+            final int encodingLine, final int encodingCol,
+            final int standaloneOffset, final int standaloneLen,
+            final int standaloneLine, final int standaloneCol,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleXmlDeclaration(buffer, keywordOffset, keywordLen, keywordLine, keywordCol, versionOffset,
+                versionLen, versionLine, versionCol, encodingOffset, encodingLen, encodingLine, encodingCol,
+                standaloneOffset, standaloneLen, standaloneLine, standaloneCol, outerOffset, outerLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleDocType(
+            final char[] buffer,
+            final int keywordOffset, final int keywordLen,
+            final int keywordLine, final int keywordCol,
+            final int elementNameOffset, final int elementNameLen,
+            final int elementNameLine, final int elementNameCol,
+            final int typeOffset, final int typeLen,
+            final int typeLine, final int typeCol,
+            final int publicIdOffset, final int publicIdLen,
+            final int publicIdLine, final int publicIdCol,
+            final int systemIdOffset, final int systemIdLen,
+            final int systemIdLine, final int systemIdCol,
+            final int internalSubsetOffset, final int internalSubsetLen,
+            final int internalSubsetLine, final int internalSubsetCol,
+            final int outerOffset, final int outerLen,
+            final int outerLine, final int outerCol)
+            throws ParseException {
+        this.segment.handleDocType(buffer, keywordOffset, keywordLen, keywordLine, keywordCol, elementNameOffset,
+                elementNameLen, elementNameLine, elementNameCol, typeOffset, typeLen, typeLine, typeCol, publicIdOffset,
+                publicIdLen, publicIdLine, publicIdCol, systemIdOffset, systemIdLen, systemIdLine, systemIdCol,
+                internalSubsetOffset, internalSubsetLen, internalSubsetLine, internalSubsetCol, outerOffset, outerLen,
+                outerLine, outerCol);
+        recorded();
+    }
+
+
+    @Override
+    public void handleCDATASection(
+            final char[] buffer,
+            final int contentOffset, final int contentLen,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleCDATASection(buffer, contentOffset, contentLen, outerOffset, outerLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleComment(
+            final char[] buffer,
+            final int contentOffset, final int contentLen,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleComment(buffer, contentOffset, contentLen, outerOffset, outerLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleText(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleText(buffer, offset, len, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleStandaloneElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final boolean minimized, final int line, final int col)
+            throws ParseException {
+        this.segment.handleStandaloneElementStart(buffer, nameOffset, nameLen, minimized, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleStandaloneElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final boolean minimized, final int line, final int col)
+            throws ParseException {
+        this.segment.handleStandaloneElementEnd(buffer, nameOffset, nameLen, minimized, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleOpenElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleOpenElementStart(buffer, nameOffset, nameLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleOpenElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleOpenElementEnd(buffer, nameOffset, nameLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleAutoOpenElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleAutoOpenElementStart(buffer, nameOffset, nameLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleAutoOpenElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleAutoOpenElementEnd(buffer, nameOffset, nameLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleCloseElementStart(buffer, nameOffset, nameLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleCloseElementEnd(buffer, nameOffset, nameLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleCloseTagEndBadSymbol(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleCloseTagEndBadSymbol(buffer, offset, len, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleAutoCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleAutoCloseElementStart(buffer, nameOffset, nameLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleAutoCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleAutoCloseElementEnd(buffer, nameOffset, nameLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleUnmatchedCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleUnmatchedCloseElementStart(buffer, nameOffset, nameLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleUnmatchedCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleUnmatchedCloseElementEnd(buffer, nameOffset, nameLen, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleAttribute(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int nameLine, final int nameCol,
+            final int operatorOffset, final int operatorLen,
+            final int operatorLine, final int operatorCol,
+            final int valueContentOffset, final int valueContentLen,
+            final int valueOuterOffset, final int valueOuterLen,
+            final int valueLine, final int valueCol)
+            throws ParseException {
+        this.segment.handleAttribute(buffer, nameOffset, nameLen, nameLine, nameCol, operatorOffset, operatorLen,
+                operatorLine, operatorCol, valueContentOffset, valueContentLen, valueOuterOffset, valueOuterLen,
+                valueLine, valueCol);
+        recorded();
+    }
+
+
+    @Override
+    public void handleInnerWhiteSpace(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleInnerWhiteSpace(buffer, offset, len, line, col);
+        recorded();
+    }
+
+
+    @Override
+    public void handleProcessingInstruction(
+            final char[] buffer,
+            final int targetOffset, final int targetLen,
+            final int targetLine, final int targetCol,
+            final int contentOffset, final int contentLen,
+            final int contentLine, final int contentCol,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        this.segment.handleProcessingInstruction(buffer, targetOffset, targetLen, targetLine, targetCol, contentOffset,
+                contentLen, contentLine, contentCol, outerOffset, outerLen, line, col);
+        recorded();
+    }
+
+
+
+
+
+    private void recorded() throws ParseException {
+        if (this.segment.getEventsSize() >= SEGMENT_EVENTS_LEN || this.segment.getCharsSize() >= SEGMENT_CHARS_LEN) {
+            publish();
+        }
+    }
+
+
+    private void publish() throws ParseException {
+
+        this.published++;
+        scheduleDrain();
+
+        // Wait for the next segment in the ring to be available
+        waitForConsumed(this.published - this.segments.length + 1);
+        checkFailure();
+
+        if (this.stopped && this.status != null) {
+            this.status.stopParsing();
+        }
+
+        this.segment = this.segments[(int) (this.published % this.segments.length)];
+        this.segment.reset();
+
+    }
+
+
+    private void scheduleDrain() {
+        if (this.draining.compareAndSet(false, true)) {
+            try {
+                this.executor.execute(this.drainTask);
+            } catch (final RejectedExecutionException e) {
+                drain();
+            }
+        }
+    }
+
+
+    private void waitForConsumed(final long target) {
+        int spins = 0;
+        while (this.consumed < target) {
+            if (spins < SPINS) {
+                spins++;
+                Thread.yield();
+                continue;
+            }
+            this.waitingThread = Thread.currentThread();
+            if (this.consumed < target) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            this.waitingThread = null;
+        }
+    }
+
+
+    private void checkFailure() throws ParseException {
+        final Throwable t = this.failure;
+        if (t == null) {
+            return;
+        }
+        if (t instanceof ParseException) {
+            throw (ParseException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new ParseException(t);
+    }
+
+
+
+
+    /*
+     * Executed by the handling thread while there are published segments waiting to be replayed. Once the
+     * handler fails, the rest of the segments are simply discarded.
+     */
+    private void drain() {
+
+        while (true) {
+
+            long consumed = this.consumed;
+            int spins = 0;
+            while (spins < SPINS) {
+
+                if (consumed == this.published) {
+                    spins++;
+                    Thread.yield();
+                    continue;
+                }
+
+                if (this.failure == null) {
+                    final TapeBuilderMarkupHandler next = this.segments[(int) (consumed % this.segments.length)];
+                    try {
+                        next.replayEvents(this.handler, this.handlerStatus, this.startTimeNanos);
+                        if (this.handlerStatus.isParsingStopped()) {
+                            this.stopped = true;
+                        }
+                    } catch (final Throwable t) {
+                        this.failure = t;
+                    }
+                }
+
+                this.consumed = ++consumed;
+                spins = 0;
+
+                final Thread waiting = this.waitingThread;
+                if (waiting != null) {
+                    LockSupport.unpark(waiting);
+                }
+
+            }
+
+            // Anything published after releasing the flag will be either seen here or drained by a new task
+            this.draining.set(false);
+            if (consumed == this.published || !this.draining.compareAndSet(false, true)) {
+                return;
+            }
+
+        }
+
+    }
+
+
+}
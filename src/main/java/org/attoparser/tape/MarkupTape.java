@@ -0,0 +1,681 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser.tape;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.attoparser.IMarkupHandler;
+import org.attoparser.ParseException;
+import org.attoparser.ParseStatus;
+import org.attoparser.config.ParseConfiguration;
+import org.attoparser.select.ParseSelection;
+
+
+/**
+ * <p>
+ *   Compact recording of all the events produced during the parsing of a document, built by means of a
+ *   {@link org.attoparser.tape.TapeBuilderMarkupHandler}, which can be replayed any number of times on any
+ *   {@link org.attoparser.IMarkupHandler} implementation.
+ * </p>
+ * <p>
+ *   Events are stored as an <tt>int[]</tt> containing, for each event, an event code followed by its arguments,
+ *   and all the texts these events refer to are stored in one single <tt>char[]</tt>, so that no objects are
+ *   created per event (unlike {@link org.attoparser.trace.TraceBuilderMarkupHandler}). Replaying these events
+ *   involves no scanning, location tracking or element balancing at all, which makes it a very cheap way of
+ *   processing the same document several times (e.g. templates which are parsed once and then processed for
+ *   each request).
+ * </p>
+ * <p>
+ *   Before replaying events, the handler will be initialized the same way {@link org.attoparser.MarkupParser}
+ *   does, i.e. calling its {@link org.attoparser.IMarkupHandler#setParseConfiguration(ParseConfiguration)},
+ *   {@link org.attoparser.IMarkupHandler#setParseStatus(ParseStatus)} and
+ *   {@link org.attoparser.IMarkupHandler#setParseSelection(ParseSelection)} methods, so that handlers like
+ *   selectors or minimizers can be used as replay targets. Handlers can stop parsing by means of
+ *   {@link org.attoparser.ParseStatus#stopParsing()}, in which case the rest of the events are skipped (except
+ *   the end of the document), but skipping the contents of elements
+ *   ({@link org.attoparser.ParseStatus#skipElementContents()}) is not supported during replay.
+ * </p>
+ * <p>
+ *   Tapes can also be stored in binary form by means of {@link #write(OutputStream)} (see
+ *   {@link org.attoparser.tape.MarkupTapeCompiler} for precompiling whole directories of documents) and loaded
+ *   again by means of {@link #read(ByteBuffer, ParseConfiguration)} or {@link #read(Path, ParseConfiguration)},
+ *   which memory-maps the file. The binary format is (all numbers big-endian):
+ * </p>
+ * <ul>
+ *   <li>Magic number <tt>0x41545450</tt> (<tt>"ATTP"</tt>) and format version (currently <tt>1</tt>), as
+ *       <tt>int</tt> values.</li>
+ *   <li>Parsing mode: <tt>0</tt> (unknown), <tt>1</tt> (HTML) or <tt>2</tt> (XML), as an <tt>int</tt>.</li>
+ *   <li>Size of the event tape (<tt>int</tt>s) and of the texts (<tt>char</tt>s), as <tt>int</tt> values.</li>
+ *   <li>The event tape, as <tt>int</tt> values, followed by the texts, as UTF-16 <tt>char</tt> values.</li>
+ *   <li>CRC-32 checksum of all the previous bytes, as a <tt>long</tt>.</li>
+ * </ul>
+ * <p>
+ *   Objects of this class are immutable, and therefore thread-safe: a tape can be replayed concurrently by
+ *   several threads.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class MarkupTape {
+
+    static final int DOCUMENT_START = 0;
+    static final int DOCUMENT_END = 1;
+    static final int XML_DECLARATION = 2;
+    static final int DOC_TYPE = 3;
+    static final int C_D_A_T_A_SECTION = 4;
+    static final int COMMENT = 5;
+    static final int TEXT = 6;
+    static final int STANDALONE_ELEMENT_START = 7;
+    static final int STANDALONE_ELEMENT_END = 8;
+    static final int OPEN_ELEMENT_START = 9;
+    static final int OPEN_ELEMENT_END = 10;
+    static final int AUTO_OPEN_ELEMENT_START = 11;
+    static final int AUTO_OPEN_ELEMENT_END = 12;
+    static final int CLOSE_ELEMENT_START = 13;
+    static final int CLOSE_ELEMENT_END = 14;
+    static final int CLOSE_TAG_END_BAD_SYMBOL = 15;
+    static final int AUTO_CLOSE_ELEMENT_START = 16;
+    static final int AUTO_CLOSE_ELEMENT_END = 17;
+    static final int UNMATCHED_CLOSE_ELEMENT_START = 18;
+    static final int UNMATCHED_CLOSE_ELEMENT_END = 19;
+    static final int ATTRIBUTE = 20;
+    static final int INNER_WHITE_SPACE = 21;
+    static final int PROCESSING_INSTRUCTION = 22;
+
+    static final int[] NO_TEXT_POSITIONS = new int[0];
+    static final int[] SINGLE_TEXT_POSITIONS = new int[] { 1 };
+    static final int[] CONTENT_OUTER_TEXT_POSITIONS = new int[] { 1, 3 };
+    static final int[] ATTRIBUTE_TEXT_POSITIONS = new int[] { 1, 5, 9, 11 };
+    static final int[] XML_DECLARATION_TEXT_POSITIONS = new int[] { 1, 5, 9, 13, 17 };
+    static final int[] DOC_TYPE_TEXT_POSITIONS = new int[] { 1, 5, 9, 13, 17, 21, 25 };
+    static final int[] PROCESSING_INSTRUCTION_TEXT_POSITIONS = new int[] { 1, 5, 9 };
+
+    private static final int FORMAT_MAGIC = 0x41545450;
+    private static final int FORMAT_VERSION = 1;
+    private static final int FORMAT_MODE_UNKNOWN = 0;
+    private static final int FORMAT_MODE_HTML = 1;
+    private static final int FORMAT_MODE_XML = 2;
+    private static final int FORMAT_HEADER_LEN = 20;
+    private static final int FORMAT_CHECKSUM_LEN = 8;
+
+    private final int[] events;
+    private final char[] chars;
+    private final ParseConfiguration configuration;
+
+
+
+    MarkupTape(final int[] events, final char[] chars, final ParseConfiguration configuration) {
+        super();
+        this.events = events;
+        this.chars = chars;
+        this.configuration = configuration;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the parse configuration that was being used when this tape was recorded (if any), which will be
+     *   used for initializing handlers before replaying events by means of {@link #replay(IMarkupHandler)}.
+     * </p>
+     *
+     * @return the parse configuration, or null if the tape was not recorded during parsing.
+     */
+    public ParseConfiguration getParseConfiguration() {
+        return this.configuration;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the size of the event tape (in ints), for monitoring purposes.
+     * </p>
+     *
+     * @return the size of the event tape.
+     */
+    public int getEventsSize() {
+        return this.events.length;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the size of the texts stored in this tape (in chars), for monitoring purposes.
+     * </p>
+     *
+     * @return the size of the stored texts.
+     */
+    public int getCharsSize() {
+        return this.chars.length;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Writes this tape in binary form (see the format above) into the specified output stream, which will
+     *   not be closed.
+     * </p>
+     *
+     * @param outputStream the stream to write the tape into.
+     * @throws IOException if the tape cannot be written.
+     */
+    public void write(final OutputStream outputStream) throws IOException {
+
+        if (outputStream == null) {
+            throw new IllegalArgumentException("Output stream cannot be null");
+        }
+
+        final CRC32 checksum = new CRC32();
+        final DataOutputStream out =
+                new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(outputStream), checksum));
+
+        out.writeInt(FORMAT_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(
+                this.configuration == null ?
+                        FORMAT_MODE_UNKNOWN :
+                        (ParseConfiguration.ParsingMode.HTML.equals(this.configuration.getMode()) ?
+                                FORMAT_MODE_HTML : FORMAT_MODE_XML));
+        out.writeInt(this.events.length);
+        out.writeInt(this.chars.length);
+        for (final int e : this.events) {
+            out.writeInt(e);
+        }
+        for (final char c : this.chars) {
+            out.writeChar(c);
+        }
+        // The checksum covers everything written before it
+        out.writeLong(checksum.getValue());
+        out.flush();
+
+    }
+
+
+    /**
+     * <p>
+     *   Reads a tape in binary form from a file (see {@link #read(ByteBuffer, ParseConfiguration)}). The file is
+     *   memory-mapped, so its contents are loaded directly by the operating system.
+     * </p>
+     *
+     * @param path the path of the file.
+     * @param configuration the parse configuration to be used when replaying the tape (can be null).
+     * @return the tape.
+     * @throws IOException if the file cannot be read or does not contain a valid tape.
+     */
+    public static MarkupTape read(final Path path, final ParseConfiguration configuration) throws IOException {
+
+        if (path == null) {
+            throw new IllegalArgumentException("Path cannot be null");
+        }
+
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), configuration);
+        } finally {
+            channel.close();
+        }
+
+    }
+
+
+    /**
+     * <p>
+     *   Reads a tape in binary form (see the format above) from the remaining bytes of the specified buffer, which
+     *   position will not be modified.
+     * </p>
+     * <p>
+     *   If no configuration is specified, the default configuration for the parsing mode stored in the tape
+     *   (see {@link ParseConfiguration#htmlConfiguration()} and {@link ParseConfiguration#xmlConfiguration()}) will
+     *   be used when replaying.
+     * </p>
+     *
+     * @param buffer the buffer containing the tape.
+     * @param configuration the parse configuration to be used when replaying the tape (can be null).
+     * @return the tape.
+     * @throws IOException if the buffer does not contain a valid tape.
+     */
+    public static MarkupTape read(final ByteBuffer buffer, final ParseConfiguration configuration)
+            throws IOException {
+
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+
+        final ByteBuffer in = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        final int start = in.position();
+        final int len = in.remaining();
+
+        if (len < FORMAT_HEADER_LEN + FORMAT_CHECKSUM_LEN || in.getInt() != FORMAT_MAGIC) {
+            throw new IOException("Not a markup tape");
+        }
+        final int version = in.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported markup tape format version: " + version);
+        }
+        final int mode = in.getInt();
+        final int eventsLen = in.getInt();
+        final int charsLen = in.getInt();
+        if (eventsLen < 0 || charsLen < 0 ||
+                (FORMAT_HEADER_LEN + (4L * eventsLen) + (2L * charsLen) + FORMAT_CHECKSUM_LEN) != len) {
+            throw new IOException("Corrupted markup tape: bad size");
+        }
+
+        final int checksumOffset = len - FORMAT_CHECKSUM_LEN;
+        final CRC32 checksum = new CRC32();
+        final byte[] chunk = new byte[8192];
+        final ByteBuffer checked = in.duplicate();
+        checked.position(start);
+        int pending = checksumOffset;
+        while (pending > 0) {
+            final int chunkLen = Math.min(pending, chunk.length);
+            checked.get(chunk, 0, chunkLen);
+            checksum.update(chunk, 0, chunkLen);
+            pending -= chunkLen;
+        }
+        if (checked.getLong() != checksum.getValue()) {
+            throw new IOException("Corrupted markup tape: bad checksum");
+        }
+
+        final int[] events = new int[eventsLen];
+        in.asIntBuffer().get(events);
+        in.position(in.position() + (4 * eventsLen));
+        final char[] chars = new char[charsLen];
+        in.asCharBuffer().get(chars);
+
+        validate(events, charsLen);
+
+        final ParseConfiguration tapeConfiguration;
+        if (configuration != null) {
+            tapeConfiguration = configuration;
+        } else if (mode == FORMAT_MODE_HTML) {
+            tapeConfiguration = ParseConfiguration.htmlConfiguration();
+        } else if (mode == FORMAT_MODE_XML) {
+            tapeConfiguration = ParseConfiguration.xmlConfiguration();
+        } else {
+            tapeConfiguration = null;
+        }
+
+        return new MarkupTape(events, chars, tapeConfiguration);
+
+    }
+
+
+    /*
+     * Checks that the event tape can be safely replayed: every event code is known and complete, and every text
+     * (offset followed by length) it contains lies inside the texts of the tape.
+     */
+    private static void validate(final int[] events, final int charsLen) throws IOException {
+
+        final int n = events.length;
+        int i = 0;
+        while (i < n) {
+            final int eventCode = events[i];
+            final int size = eventSize(eventCode);
+            if (size == 0 || i + size > n) {
+                throw new IOException("Corrupted markup tape: bad event at position " + i);
+            }
+            for (final int position : textPositions(eventCode)) {
+                final int offset = events[i + position];
+                final int len = events[i + position + 1];
+                if (offset < 0 || len < 0 || offset + len > charsLen || offset + len < 0) {
+                    throw new IOException("Corrupted markup tape: bad text at position " + i);
+                }
+            }
+            i += size;
+        }
+
+    }
+
+
+    /*
+     * Size (event code plus arguments) of each type of event, or zero if the event code is not known.
+     */
+    static int eventSize(final int eventCode) {
+        switch (eventCode) {
+            case DOCUMENT_START:
+            case DOCUMENT_END:
+                return 3;
+            case XML_DECLARATION:
+                return 21;
+            case DOC_TYPE:
+                return 29;
+            case C_D_A_T_A_SECTION:
+            case COMMENT:
+                return 7;
+            case STANDALONE_ELEMENT_START:
+            case STANDALONE_ELEMENT_END:
+                return 6;
+            case ATTRIBUTE:
+                return 15;
+            case PROCESSING_INSTRUCTION:
+                return 13;
+            case TEXT:
+            case OPEN_ELEMENT_START:
+            case OPEN_ELEMENT_END:
+            case AUTO_OPEN_ELEMENT_START:
+            case AUTO_OPEN_ELEMENT_END:
+            case CLOSE_ELEMENT_START:
+            case CLOSE_ELEMENT_END:
+            case CLOSE_TAG_END_BAD_SYMBOL:
+            case AUTO_CLOSE_ELEMENT_START:
+            case AUTO_CLOSE_ELEMENT_END:
+            case UNMATCHED_CLOSE_ELEMENT_START:
+            case UNMATCHED_CLOSE_ELEMENT_END:
+            case INNER_WHITE_SPACE:
+                return 5;
+            default:
+                return 0;
+        }
+    }
+
+
+    /*
+     * Positions (relative to the event code) of the offset+len pairs in the arguments of each type of event.
+     */
+    static int[] textPositions(final int eventCode) {
+        switch (eventCode) {
+            case DOCUMENT_START:
+            case DOCUMENT_END:
+                return NO_TEXT_POSITIONS;
+            case XML_DECLARATION:
+                return XML_DECLARATION_TEXT_POSITIONS;
+            case DOC_TYPE:
+                return DOC_TYPE_TEXT_POSITIONS;
+            case C_D_A_T_A_SECTION:
+            case COMMENT:
+                return CONTENT_OUTER_TEXT_POSITIONS;
+            case ATTRIBUTE:
+                return ATTRIBUTE_TEXT_POSITIONS;
+            case PROCESSING_INSTRUCTION:
+                return PROCESSING_INSTRUCTION_TEXT_POSITIONS;
+            default:
+                return SINGLE_TEXT_POSITIONS;
+        }
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Fires all the recorded events, in the same order they were recorded, on the specified handler, after
+     *   initializing it with the parse configuration the tape was recorded with.
+     * </p>
+     *
+     * @param handler the handler to which events will be fired.
+     * @throws ParseException if the handler raises any exceptions.
+     */
+    public void replay(final IMarkupHandler handler) throws ParseException {
+        replay(handler, this.configuration);
+    }
+
+
+    /**
+     * <p>
+     *   Fires all the recorded events, in the same order they were recorded, on the specified handler, after
+     *   initializing it with the specified parse configuration.
+     * </p>
+     * <p>
+     *   Document start and end events will report times corresponding to the replay.
+     * </p>
+     *
+     * @param handler the handler to which events will be fired.
+     * @param configuration the parse configuration to be set into the handler (can be null, in which case no
+     *                      configuration will be set).
+     * @throws ParseException if the handler raises any exceptions.
+     */
+    public void replay(final IMarkupHandler handler, final ParseConfiguration configuration) throws ParseException {
+
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+
+        final ParseStatus status = new ParseStatus();
+
+        if (configuration != null) {
+            handler.setParseConfiguration(configuration);
+        }
+        handler.setParseStatus(status);
+        handler.setParseSelection(new ParseSelection());
+
+        replayEvents(this.events, this.events.length, this.chars, handler, status, System.nanoTime());
+
+    }
+
+
+    /**
+     * <p>
+     *   Fires all the recorded events, in the same order they were recorded, on the specified handler, without
+     *   initializing it first. This is meant for handlers which are already being used for parsing (e.g. a
+     *   parser replaying the events recorded for a part of the document it is parsing on its own handlers).
+     * </p>
+     *
+     * @param handler the handler to which events will be fired.
+     * @throws ParseException if the handler raises any exceptions.
+     */
+    public void replayEvents(final IMarkupHandler handler) throws ParseException {
+
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+
+        replayEvents(this.events, this.events.length, this.chars, handler, null, System.nanoTime());
+
+    }
+
+
+
+
+    /*
+     * Fires the events contained in the first n positions of the events array (with texts in the chars array) on
+     * the specified handler. If a status is specified and a handler stops parsing, the rest of the events are
+     * skipped, except the end of the document. Returns whether the end of the document was reached.
+     */
+    static boolean replayEvents(
+            final int[] e, final int n, final char[] c,
+            final IMarkupHandler handler, final ParseStatus status, final long startTimeNanos)
+            throws ParseException {
+
+        boolean documentEnd = false;
+        int i = 0;
+
+        while (i < n) {
+
+            if (status != null && status.isParsingStopped() && e[i] != DOCUMENT_END) {
+                i += eventSize(e[i]);
+                continue;
+            }
+
+            switch (e[i]) {
+
+                case DOCUMENT_START:
+                    handler.handleDocumentStart(startTimeNanos, e[i + 1], e[i + 2]);
+                    i += 3;
+                    break;
+
+                case DOCUMENT_END:
+                    final long endTimeNanos = System.nanoTime();
+                    handler.handleDocumentEnd(endTimeNanos, endTimeNanos - startTimeNanos, e[i + 1], e[i + 2]);
+                    documentEnd = true;
+                    i += 3;
+                    break;
+
+                case XML_DECLARATION:
+                    handler.handleXmlDeclaration(
+                            c,
+                            e[i + 1], e[i + 2], e[i + 3], e[i + 4],
+                            e[i + 5], e[i + 6], e[i + 7], e[i + 8],
+                            e[i + 9], e[i + 10], e[i + 11], e[i + 12],
+                            e[i + 13], e[i + 14], e[i + 15], e[i + 16],
+                            e[i + 17], e[i + 18],
+                            e[i + 19], e[i + 20]);
+                    i += 21;
+                    break;
+
+                case DOC_TYPE:
+                    handler.handleDocType(
+                            c,
+                            e[i + 1], e[i + 2], e[i + 3], e[i + 4],
+                            e[i + 5], e[i + 6], e[i + 7], e[i + 8],
+                            e[i + 9], e[i + 10], e[i + 11], e[i + 12],
+                            e[i + 13], e[i + 14], e[i + 15], e[i + 16],
+                            e[i + 17], e[i + 18], e[i + 19], e[i + 20],
+                            e[i + 21], e[i + 22], e[i + 23], e[i + 24],
+                            e[i + 25], e[i + 26], e[i + 27], e[i + 28]);
+                    i += 29;
+                    break;
+
+                case C_D_A_T_A_SECTION:
+                    handler.handleCDATASection(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4], e[i + 5], e[i + 6]);
+                    i += 7;
+                    break;
+
+                case COMMENT:
+                    handler.handleComment(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4], e[i + 5], e[i + 6]);
+                    i += 7;
+                    break;
+
+                case TEXT:
+                    handler.handleText(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case STANDALONE_ELEMENT_START:
+                    handler.handleStandaloneElementStart(
+                            c, e[i + 1], e[i + 2], (e[i + 3] != 0), e[i + 4], e[i + 5]);
+                    i += 6;
+                    break;
+
+                case STANDALONE_ELEMENT_END:
+                    handler.handleStandaloneElementEnd(
+                            c, e[i + 1], e[i + 2], (e[i + 3] != 0), e[i + 4], e[i + 5]);
+                    i += 6;
+                    break;
+
+                case OPEN_ELEMENT_START:
+                    handler.handleOpenElementStart(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case OPEN_ELEMENT_END:
+                    handler.handleOpenElementEnd(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case AUTO_OPEN_ELEMENT_START:
+                    handler.handleAutoOpenElementStart(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case AUTO_OPEN_ELEMENT_END:
+                    handler.handleAutoOpenElementEnd(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case CLOSE_ELEMENT_START:
+                    handler.handleCloseElementStart(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case CLOSE_ELEMENT_END:
+                    handler.handleCloseElementEnd(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case CLOSE_TAG_END_BAD_SYMBOL:
+                    handler.handleCloseTagEndBadSymbol(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case AUTO_CLOSE_ELEMENT_START:
+                    handler.handleAutoCloseElementStart(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case AUTO_CLOSE_ELEMENT_END:
+                    handler.handleAutoCloseElementEnd(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case UNMATCHED_CLOSE_ELEMENT_START:
+                    handler.handleUnmatchedCloseElementStart(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case UNMATCHED_CLOSE_ELEMENT_END:
+                    handler.handleUnmatchedCloseElementEnd(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case ATTRIBUTE:
+                    handler.handleAttribute(
+                            c,
+                            e[i + 1], e[i + 2], e[i + 3], e[i + 4],
+                            e[i + 5], e[i + 6], e[i + 7], e[i + 8],
+                            e[i + 9], e[i + 10],
+                            e[i + 11], e[i + 12],
+                            e[i + 13], e[i + 14]);
+                    i += 15;
+                    break;
+
+                case INNER_WHITE_SPACE:
+                    handler.handleInnerWhiteSpace(c, e[i + 1], e[i + 2], e[i + 3], e[i + 4]);
+                    i += 5;
+                    break;
+
+                case PROCESSING_INSTRUCTION:
+                    handler.handleProcessingInstruction(
+                            c,
+                            e[i + 1], e[i + 2], e[i + 3], e[i + 4],
+                            e[i + 5], e[i + 6], e[i + 7], e[i + 8],
+                            e[i + 9], e[i + 10],
+                            e[i + 11], e[i + 12]);
+                    i += 13;
+                    break;
+
+                default:
+                    throw new IllegalStateException("Unrecognized event code in tape: " + e[i]);
+
+            }
+
+        }
+
+        return documentEnd;
+
+    }
+
+
+}
@@ -0,0 +1,455 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser.tape;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.attoparser.IMarkupHandler;
+import org.attoparser.MarkupParser;
+import org.attoparser.ParseException;
+
+
+/**
+ * <p>
+ *   Cache of parsed documents to be used in front of a {@link org.attoparser.MarkupParser}, for applications
+ *   which parse the same documents (e.g. templates) again and again.
+ * </p>
+ * <p>
+ *   The first time a document is parsed, its events (already balanced, auto-closed, etc. according to the
+ *   parser configuration) are recorded into a {@link MarkupTape}, which is stored in the cache and then replayed
+ *   on the specified handler. From then on, parsing the same document only requires replaying its tape, which
+ *   involves no scanning at all.
+ * </p>
+ * <p>
+ *   Documents are identified by:
+ * </p>
+ * <ul>
+ *   <li>Their contents, for documents specified as <tt>CharSequence</tt> or <tt>char[]</tt> (a 128-bit hash
+ *       of the contents is used, so the documents themselves are not retained).</li>
+ *   <li>Their path, for documents stored in files. The last modification time and size of the file are
+ *       stored along with its tape, so that modified files are parsed again (replacing their previous tape).</li>
+ * </ul>
+ * <p>
+ *   The cache is bounded by the (approximate) amount of memory its tapes use. When this maximum size is
+ *   exceeded, the least recently used entries are evicted. Documents which tape would be larger than the
+ *   maximum size are not cached at all. Statistics on cache usage can be obtained by means of
+ *   {@link #getStatistics()}.
+ * </p>
+ * <p>
+ *   Tapes are replayed by means of {@link MarkupTape#replay(IMarkupHandler)}, so handlers can stop parsing
+ *   (also on cache hits) but cannot skip the contents of elements.
+ * </p>
+ * <p>
+ *   This class is <b>thread-safe</b>. Entries are looked up and stored in mutual exclusion, but documents are
+ *   parsed and tapes replayed outside of it. If several threads miss the same document at the same time, each
+ *   of them will parse it (only one tape will be kept).
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class MarkupTapeCache {
+
+    // Approximate amount of memory used by each entry besides the arrays in its tape
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final MarkupParser parser;
+    private final long maxSize;
+
+    // Access-ordered, so that the least recently used entries come first. Guarded by the lock, as is size.
+    private final LinkedHashMap<Object,Entry> entries = new LinkedHashMap<Object,Entry>(16, 0.75f, true);
+    private long size = 0L;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicLong hits = new AtomicLong(0L);
+    private final AtomicLong misses = new AtomicLong(0L);
+    private final AtomicLong evictions = new AtomicLong(0L);
+
+
+
+    /**
+     * <p>
+     *   Creates a new cache for the documents parsed with the specified parser.
+     * </p>
+     *
+     * @param parser the parser to be used for documents not found in the cache.
+     * @param maxSize the maximum (approximate) amount of memory to be used by the cache, in bytes.
+     */
+    public MarkupTapeCache(final MarkupParser parser, final long maxSize) {
+        super();
+        if (parser == null) {
+            throw new IllegalArgumentException("Parser cannot be null");
+        }
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Maximum size cannot be less than zero");
+        }
+        this.parser = parser;
+        this.maxSize = maxSize;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns a snapshot of the statistics of this cache.
+     * </p>
+     *
+     * @return the cache statistics.
+     */
+    public MarkupTapeCacheStatistics getStatistics() {
+        this.lock.lock();
+        try {
+            return new MarkupTapeCacheStatistics(
+                    this.hits.get(), this.misses.get(), this.evictions.get(), this.entries.size(), this.size);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+
+    /**
+     * <p>
+     *   Removes all the entries from the cache.
+     * </p>
+     */
+    public void clear() {
+        this.lock.lock();
+        try {
+            this.entries.clear();
+            this.size = 0L;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Parse a document specified as a <tt>CharSequence</tt> (e.g. a <tt>String</tt>), replaying its cached
+     *   events if the same contents have already been parsed.
+     * </p>
+     *
+     * @param document the document to be parsed.
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parse(final CharSequence document, final IMarkupHandler handler) throws ParseException {
+
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+
+        final Object key = ContentKey.forCharSequence(document);
+
+        MarkupTape tape = get(key, 0L, 0L);
+        if (tape == null) {
+            final TapeBuilderMarkupHandler tapeBuilder = new TapeBuilderMarkupHandler();
+            this.parser.parse(document, tapeBuilder);
+            tape = put(key, 0L, 0L, tapeBuilder.getTape());
+        }
+        tape.replay(handler);
+
+    }
+
+
+    /**
+     * <p>
+     *   Parse a document specified as a <tt>char[]</tt>, replaying its cached events if the same contents have
+     *   already been parsed.
+     * </p>
+     *
+     * @param document the document to be parsed.
+     * @param offset the offset of the document contents in the char[].
+     * @param len the length (in chars) of the document.
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parse(final char[] document, final int offset, final int len, final IMarkupHandler handler)
+            throws ParseException {
+
+        if (document == null) {
+            throw new IllegalArgumentException("Document cannot be null");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+
+        final Object key = ContentKey.forChars(document, offset, len);
+
+        MarkupTape tape = get(key, 0L, 0L);
+        if (tape == null) {
+            final TapeBuilderMarkupHandler tapeBuilder = new TapeBuilderMarkupHandler();
+            this.parser.parse(document, offset, len, tapeBuilder);
+            tape = put(key, 0L, 0L, tapeBuilder.getTape());
+        }
+        tape.replay(handler);
+
+    }
+
+
+    /**
+     * <p>
+     *   Parse a document stored in a file, replaying its cached events if the file has already been parsed and
+     *   not modified since. See {@link MarkupParser#parse(Path, Charset, IMarkupHandler)}.
+     * </p>
+     *
+     * @param path the path of the file containing the document.
+     * @param charset the charset to be used for decoding the document, or <tt>null</tt> for auto-detection.
+     * @param handler the handler to be used, an {@link IMarkupHandler} implementation.
+     * @throws ParseException if the document cannot be parsed.
+     */
+    public void parse(final Path path, final Charset charset, final IMarkupHandler handler) throws ParseException {
+
+        if (path == null) {
+            throw new IllegalArgumentException("Path cannot be null");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+
+        final Object key = new PathKey(path.toAbsolutePath().normalize().toString(), charset);
+        final long lastModified;
+        final long fileSize;
+        try {
+            lastModified = Files.getLastModifiedTime(path).toMillis();
+            fileSize = Files.size(path);
+        } catch (final IOException e) {
+            throw new ParseException(e);
+        }
+
+        MarkupTape tape = get(key, lastModified, fileSize);
+        if (tape == null) {
+            final TapeBuilderMarkupHandler tapeBuilder = new TapeBuilderMarkupHandler();
+            this.parser.parse(path, charset, tapeBuilder);
+            tape = put(key, lastModified, fileSize, tapeBuilder.getTape());
+        }
+        tape.replay(handler);
+
+    }
+
+
+
+
+    /*
+     * Returns the tape for the specified key, or null if there is none or it was recorded for a different
+     * version of the document (only files have versions: their last modification time and size).
+     */
+    private MarkupTape get(final Object key, final long lastModified, final long fileSize) {
+        this.lock.lock();
+        try {
+            final Entry entry = this.entries.get(key);
+            if (entry == null || !entry.isVersion(lastModified, fileSize)) {
+                this.misses.incrementAndGet();
+                return null;
+            }
+            this.hits.incrementAndGet();
+            return entry.tape;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+
+    private MarkupTape put(final Object key, final long lastModified, final long fileSize, final MarkupTape tape) {
+
+        final long entrySize = ENTRY_OVERHEAD + (4L * tape.getEventsSize()) + (2L * tape.getCharsSize());
+
+        this.lock.lock();
+        try {
+
+            final Entry existing = this.entries.get(key);
+            if (existing != null) {
+                if (existing.isVersion(lastModified, fileSize)) {
+                    // Another thread parsed the same document at the same time
+                    return existing.tape;
+                }
+                // Previous version of the same file, which will never be used again
+                this.entries.remove(key);
+                this.size -= existing.size;
+            }
+
+            if (entrySize > this.maxSize) {
+                // Would never fit, so it will not be cached
+                return tape;
+            }
+
+            this.entries.put(key, new Entry(tape, entrySize, lastModified, fileSize));
+            this.size += entrySize;
+
+            // Evict the least recently used entries (the new one is the most recently used, and fits)
+            final Iterator<Entry> iterator = this.entries.values().iterator();
+            while (this.size > this.maxSize) {
+                this.size -= iterator.next().size;
+                iterator.remove();
+                this.evictions.incrementAndGet();
+            }
+
+            return tape;
+
+        } finally {
+            this.lock.unlock();
+        }
+
+    }
+
+
+
+
+    private static final class Entry {
+
+        final MarkupTape tape;
+        final long size;
+        final long lastModified;
+        final long fileSize;
+
+        Entry(final MarkupTape tape, final long size, final long lastModified, final long fileSize) {
+            super();
+            this.tape = tape;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileSize = fileSize;
+        }
+
+        boolean isVersion(final long lastModified, final long fileSize) {
+            return this.lastModified == lastModified && this.fileSize == fileSize;
+        }
+
+    }
+
+
+
+
+    /*
+     * Key for documents identified by their contents. Two different 64-bit hashes (plus the length) are used,
+     * so that the probability of two different documents having the same key is negligible.
+     */
+    private static final class ContentKey {
+
+        private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+        private static final long FNV_PRIME = 0x100000001B3L;
+        private static final long MIX_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+        private final int len;
+        private final long hash1;
+        private final long hash2;
+
+        static ContentKey forCharSequence(final CharSequence document) {
+            final int len = document.length();
+            long hash1 = FNV_OFFSET_BASIS;
+            long hash2 = len;
+            for (int i = 0; i < len; i++) {
+                final char c = document.charAt(i);
+                hash1 = (hash1 ^ c) * FNV_PRIME;
+                hash2 = Long.rotateLeft((hash2 + c) * MIX_MULTIPLIER, 31);
+            }
+            return new ContentKey(len, hash1, hash2);
+        }
+
+        static ContentKey forChars(final char[] document, final int offset, final int len) {
+            long hash1 = FNV_OFFSET_BASIS;
+            long hash2 = len;
+            final int maxi = offset + len;
+            for (int i = offset; i < maxi; i++) {
+                final char c = document[i];
+                hash1 = (hash1 ^ c) * FNV_PRIME;
+                hash2 = Long.rotateLeft((hash2 + c) * MIX_MULTIPLIER, 31);
+            }
+            return new ContentKey(len, hash1, hash2);
+        }
+
+        private ContentKey(final int len, final long hash1, final long hash2) {
+            super();
+            this.len = len;
+            this.hash1 = hash1;
+            this.hash2 = hash2;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ContentKey)) {
+                return false;
+            }
+            final ContentKey other = (ContentKey) o;
+            return this.len == other.len && this.hash1 == other.hash1 && this.hash2 == other.hash2;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (this.hash1 ^ (this.hash1 >>> 32));
+        }
+
+    }
+
+
+    /*
+     * Key for documents stored in files, identified by their path (and the charset used for decoding them). The
+     * version of the file the tape was recorded for is kept in the entry.
+     */
+    private static final class PathKey {
+
+        private final String path;
+        private final Charset charset;
+
+        PathKey(final String path, final Charset charset) {
+            super();
+            this.path = path;
+            this.charset = charset;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PathKey)) {
+                return false;
+            }
+            final PathKey other = (PathKey) o;
+            return this.path.equals(other.path) &&
+                    (this.charset == null ? other.charset == null : this.charset.equals(other.charset));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.path.hashCode() + (this.charset == null ? 0 : this.charset.hashCode());
+        }
+
+    }
+
+
+}
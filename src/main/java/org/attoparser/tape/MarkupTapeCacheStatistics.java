@@ -0,0 +1,130 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser.tape;
+
+
+/**
+ * <p>
+ *   Snapshot of the statistics of a {@link MarkupTapeCache}, obtained by means of
+ *   {@link MarkupTapeCache#getStatistics()}.
+ * </p>
+ * <p>
+ *   A high number of <em>evictions</em> compared to <em>misses</em> usually means the maximum size of the cache
+ *   is too small for the set of documents being frequently parsed.
+ * </p>
+ * <p>
+ *   Objects of this class are <strong>immutable</strong>.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class MarkupTapeCacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int entries;
+    private final long size;
+
+
+
+    MarkupTapeCacheStatistics(
+            final long hits, final long misses, final long evictions, final int entries, final long size) {
+        super();
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.entries = entries;
+        this.size = size;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of documents that were found in the cache, and therefore did not need to be parsed.
+     * </p>
+     *
+     * @return the number of hits.
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of documents that were not found in the cache, and therefore had to be parsed.
+     * </p>
+     *
+     * @return the number of misses.
+     */
+    public long getMisses() {
+        return this.misses;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of entries that have been removed from the cache in order to keep its size
+     *   under the configured maximum.
+     * </p>
+     *
+     * @return the number of evictions.
+     */
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of entries currently in the cache.
+     * </p>
+     *
+     * @return the number of entries.
+     */
+    public int getEntries() {
+        return this.entries;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the (approximate) amount of memory currently used by the entries in the cache, in bytes.
+     * </p>
+     *
+     * @return the size of the cache, in bytes.
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+
+    @Override
+    public String toString() {
+        return "{hits=" + this.hits + ", misses=" + this.misses + ", evictions=" + this.evictions +
+                ", entries=" + this.entries + ", size=" + this.size + "}";
+    }
+
+
+}
@@ -0,0 +1,211 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser.tape;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.attoparser.MarkupParser;
+import org.attoparser.ParseException;
+import org.attoparser.config.ParseConfiguration;
+
+
+/**
+ * <p>
+ *   Tool for precompiling documents (e.g. templates) into {@link MarkupTape} files, so that these can be loaded
+ *   and replayed at runtime (see {@link MarkupTape#read(Path, ParseConfiguration)}) without parsing them.
+ * </p>
+ * <p>
+ *   Every file in the source directory (and its subdirectories) is parsed and its tape is written into the same
+ *   relative path in the target directory, adding the {@link #TAPE_FILE_EXTENSION} extension to its name.
+ * </p>
+ * <p>
+ *   Can be used from the command line (e.g. from a build) as:
+ * </p>
+ * <pre><code>
+ *   java org.attoparser.tape.MarkupTapeCompiler (html|xml) sourceDir targetDir [charset]
+ * </code></pre>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class MarkupTapeCompiler {
+
+    /**
+     * <p>
+     *   Extension added to the names of the tape files: {@value}
+     * </p>
+     */
+    public static final String TAPE_FILE_EXTENSION = ".tape";
+
+    private final MarkupParser parser;
+    private final Charset charset;
+
+
+
+    /**
+     * <p>
+     *   Creates a new compiler.
+     * </p>
+     *
+     * @param parser the parser to be used (its configuration will be the one recorded in the tapes).
+     * @param charset the charset of the documents, or <tt>null</tt> for auto-detection.
+     */
+    public MarkupTapeCompiler(final MarkupParser parser, final Charset charset) {
+        super();
+        if (parser == null) {
+            throw new IllegalArgumentException("Parser cannot be null");
+        }
+        this.parser = parser;
+        this.charset = charset;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Compiles a single document into a tape file.
+     * </p>
+     *
+     * @param source the path of the document.
+     * @param target the path of the tape file to be written.
+     * @throws ParseException if the document cannot be parsed.
+     * @throws IOException if the tape file cannot be written.
+     */
+    public void compile(final Path source, final Path target) throws ParseException, IOException {
+
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("Neither source nor target can be null");
+        }
+
+        final TapeBuilderMarkupHandler tapeBuilder = new TapeBuilderMarkupHandler();
+        try {
+            this.parser.parse(source, this.charset, tapeBuilder);
+        } catch (final ParseException e) {
+            throw new ParseException("Error compiling \"" + source + "\": " + e.getMessage(), e);
+        }
+
+        final Path targetDir = target.toAbsolutePath().getParent();
+        if (targetDir != null) {
+            Files.createDirectories(targetDir);
+        }
+        final OutputStream outputStream = Files.newOutputStream(target);
+        try {
+            tapeBuilder.getTape().write(outputStream);
+        } finally {
+            outputStream.close();
+        }
+
+    }
+
+
+    /**
+     * <p>
+     *   Compiles all the documents in a directory (and its subdirectories) into tape files.
+     * </p>
+     *
+     * @param sourceDir the directory containing the documents.
+     * @param targetDir the directory into which the tape files will be written.
+     * @return the number of documents compiled.
+     * @throws ParseException if any of the documents cannot be parsed.
+     * @throws IOException if the directories cannot be read or any of the tape files cannot be written.
+     */
+    public int compileAll(final Path sourceDir, final Path targetDir) throws ParseException, IOException {
+
+        if (sourceDir == null || targetDir == null) {
+            throw new IllegalArgumentException("Neither source nor target directory can be null");
+        }
+
+        final int[] count = new int[1];
+        final ParseException[] parseException = new ParseException[1];
+
+        Files.walkFileTree(sourceDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                final Path relative = sourceDir.relativize(file);
+                final Path target = targetDir.resolve(relative.toString() + TAPE_FILE_EXTENSION);
+                try {
+                    compile(file, target);
+                } catch (final ParseException e) {
+                    parseException[0] = e;
+                    return FileVisitResult.TERMINATE;
+                }
+                count[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        if (parseException[0] != null) {
+            throw parseException[0];
+        }
+        return count[0];
+
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Compiles all the documents in a directory from the command line. Arguments are: the parsing mode
+     *   (<tt>html</tt> or <tt>xml</tt>, default configurations will be used), the source directory, the target
+     *   directory and, optionally, the charset of the documents.
+     * </p>
+     *
+     * @param args the command line arguments.
+     * @throws Exception if compilation fails.
+     */
+    public static void main(final String[] args) throws Exception {
+
+        if (args.length < 3 || args.length > 4 ||
+                !("html".equalsIgnoreCase(args[0]) || "xml".equalsIgnoreCase(args[0]))) {
+            System.err.println(
+                    "Usage: java " + MarkupTapeCompiler.class.getName() + " (html|xml) sourceDir targetDir [charset]");
+            System.exit(1);
+            return;
+        }
+
+        final ParseConfiguration configuration =
+                ("html".equalsIgnoreCase(args[0]) ?
+                        ParseConfiguration.htmlConfiguration() : ParseConfiguration.xmlConfiguration());
+        final Charset charset = (args.length == 4 ? Charset.forName(args[3]) : null);
+
+        final MarkupTapeCompiler compiler = new MarkupTapeCompiler(new MarkupParser(configuration), charset);
+        final int count = compiler.compileAll(Paths.get(args[1]), Paths.get(args[2]));
+
+        System.out.println("Compiled " + count + " document(s) into " + args[2]);
+
+    }
+
+
+}
@@ -0,0 +1,638 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser.tape;
+
+import java.util.Arrays;
+
+import org.attoparser.AbstractMarkupHandler;
+import org.attoparser.IMarkupHandler;
+import org.attoparser.ParseException;
+import org.attoparser.ParseStatus;
+import org.attoparser.config.ParseConfiguration;
+
+
+/**
+ * <p>
+ *   Implementation of {@link org.attoparser.IMarkupHandler} used for recording all the events produced during
+ *   the parsing of a document into a {@link org.attoparser.tape.MarkupTape}, which can be replayed afterwards
+ *   on any other handler.
+ * </p>
+ * <p>
+ *   All the texts the events refer to are copied into the tape, so the buffers used during parsing can be
+ *   safely reused afterwards (unless the handler is created for a specific buffer, see
+ *   {@link #TapeBuilderMarkupHandler(char[])}). The tape can be retrieved after parsing finishes by means of the
+ *   {@link #getTape()} method.
+ * </p>
+ * <p>
+ *   Instances of this handler can be used for parsing several documents one after another (each document start
+ *   event starts a new tape), but they are NOT thread-safe.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class TapeBuilderMarkupHandler extends AbstractMarkupHandler {
+
+    private static final int DEFAULT_EVENTS_LEN = 256;
+    private static final int DEFAULT_CHARS_LEN = 1024;
+
+    private int[] events;
+    private int eventsSize;
+
+    private char[] chars;
+    private int charsSize;
+    private final boolean copyChars;
+
+    // Last stored text, so that repeated ones (e.g. the name of an element in its start and end events) can be
+    // stored only once
+    private int lastCharsOffset;
+    private int lastCharsLen;
+
+    private ParseConfiguration configuration = null;
+
+
+
+    /**
+     * <p>
+     *   Creates a new instance of this handler.
+     * </p>
+     */
+    public TapeBuilderMarkupHandler() {
+        super();
+        this.events = new int[DEFAULT_EVENTS_LEN];
+        this.chars = new char[DEFAULT_CHARS_LEN];
+        this.copyChars = true;
+        reset();
+    }
+
+
+    /**
+     * <p>
+     *   Creates a new instance of this handler for recording events which texts all lie in the specified buffer
+     *   (e.g. a document parsed from memory). Texts are not copied: the tape will refer to this buffer directly,
+     *   so its contents must not be modified for as long as the tape is in use.
+     * </p>
+     * <p>
+     *   Events referring to any other buffer will raise an <tt>IllegalArgumentException</tt>.
+     * </p>
+     *
+     * @param buffer the buffer the texts of all events will lie in.
+     */
+    public TapeBuilderMarkupHandler(final char[] buffer) {
+        super();
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+        this.events = new int[DEFAULT_EVENTS_LEN];
+        this.chars = buffer;
+        this.copyChars = false;
+        reset();
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the tape containing the events of the last document parsed.
+     * </p>
+     *
+     * @return the event tape.
+     */
+    public MarkupTape getTape() {
+        return new MarkupTape(
+                Arrays.copyOf(this.events, this.eventsSize),
+                (this.copyChars ? Arrays.copyOf(this.chars, this.charsSize) : this.chars),
+                this.configuration);
+    }
+
+
+
+
+    @Override
+    public void setParseConfiguration(final ParseConfiguration parseConfiguration) {
+        this.configuration = parseConfiguration;
+    }
+
+
+
+
+    void reset() {
+        this.eventsSize = 0;
+        this.charsSize = (this.copyChars ? 0 : this.chars.length);
+        this.lastCharsOffset = 0;
+        this.lastCharsLen = -1;
+    }
+
+
+    /*
+     * Sizes and replay of the events recorded so far, used by AsyncMarkupHandler for recording the events of a
+     * document into several builders (segments) in turn, replaying each of them on another thread once filled.
+     */
+
+    int getEventsSize() {
+        return this.eventsSize;
+    }
+
+
+    int getCharsSize() {
+        return this.charsSize;
+    }
+
+
+    boolean replayEvents(final IMarkupHandler handler, final ParseStatus status, final long startTimeNanos)
+            throws ParseException {
+        return MarkupTape.replayEvents(this.events, this.eventsSize, this.chars, handler, status, startTimeNanos);
+    }
+
+
+    private int reserve(final int len) {
+        if (this.eventsSize + len > this.events.length) {
+            this.events = Arrays.copyOf(this.events, Math.max(this.events.length * 2, this.eventsSize + len));
+        }
+        final int i = this.eventsSize;
+        this.eventsSize += len;
+        return i;
+    }
+
+
+    /*
+     * Copies the texts referred to by the offset+len pairs at the specified positions of the event (which at this
+     * point still refer to the original buffer) into the tape chars, and rebases the offsets accordingly. A single
+     * range is copied for all the pairs, as they normally point to consecutive (or overlapping) parts of the buffer.
+     */
+    private void storeChars(final char[] buffer, final int eventIndex, final int[] positions) {
+
+        if (!this.copyChars) {
+            // Offsets already refer to the tape chars
+            if (buffer != this.chars) {
+                throw new IllegalArgumentException("Events can only refer to the buffer this handler was created for");
+            }
+            return;
+        }
+
+        final int[] e = this.events;
+
+        int start = Integer.MAX_VALUE;
+        int end = Integer.MIN_VALUE;
+        for (final int position : positions) {
+            final int offset = e[eventIndex + position];
+            final int len = e[eventIndex + position + 1];
+            if (len > 0) {
+                start = Math.min(start, offset);
+                end = Math.max(end, offset + len);
+            }
+        }
+
+        final int rangeLen = (end > start ? end - start : 0);
+        int rangeOffset = this.charsSize;
+
+        if (rangeLen == this.lastCharsLen &&
+                rangeLen > 0 &&
+                equalsLastChars(buffer, start, rangeLen)) {
+            rangeOffset = this.lastCharsOffset;
+        } else if (rangeLen > 0) {
+            if (this.charsSize + rangeLen > this.chars.length) {
+                this.chars = Arrays.copyOf(this.chars, Math.max(this.chars.length * 2, this.charsSize + rangeLen));
+            }
+            System.arraycopy(buffer, start, this.chars, this.charsSize, rangeLen);
+            this.lastCharsOffset = this.charsSize;
+            this.lastCharsLen = rangeLen;
+            this.charsSize += rangeLen;
+        }
+
+        for (final int position : positions) {
+            final int len = e[eventIndex + position + 1];
+            // Empty texts might have been reported at any offset, so we just keep them within the copied range
+            e[eventIndex + position] =
+                    (len > 0 ?
+                            rangeOffset + (e[eventIndex + position] - start) :
+                            rangeOffset + Math.max(0, Math.min(rangeLen, e[eventIndex + position] - start)));
+        }
+
+    }
+
+
+    private boolean equalsLastChars(final char[] buffer, final int offset, final int len) {
+        final char[] c = this.chars;
+        final int lastOffset = this.lastCharsOffset;
+        for (int i = 0; i < len; i++) {
+            if (c[lastOffset + i] != buffer[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private void storeSingleTextEvent(
+            final int eventCode, final char[] buffer,
+            final int offset, final int len, final int line, final int col) {
+        final int i = reserve(5);
+        this.events[i] = eventCode;
+        this.events[i + 1] = offset;
+        this.events[i + 2] = len;
+        this.events[i + 3] = line;
+        this.events[i + 4] = col;
+        storeChars(buffer, i, MarkupTape.SINGLE_TEXT_POSITIONS);
+    }
+
+
+
+
+    @Override
+    public void handleDocumentStart(
+            final long startTimeNanos, final int line, final int col)
+            throws ParseException {
+        reset();
+        final int i = reserve(3);
+        this.events[i] = MarkupTape.DOCUMENT_START;
+        this.events[i + 1] = line;
+        this.events[i + 2] = col;
+    }
+
+
+    @Override
+    public void handleDocumentEnd(
+            final long endTimeNanos, final long totalTimeNanos, final int line, final int col)
+            throws ParseException {
+        final int i = reserve(3);
+        this.events[i] = MarkupTape.DOCUMENT_END;
+        this.events[i + 1] = line;
+        this.events[i + 2] = col;
+    }
+
+
+    @Override
+    public void handleXmlDeclaration(
+            final char[] buffer,
+            final int keywordOffset, final int keywordLen,
+            final int keywordLine, final int keywordCol,
+            final int versionOffset, final int versionLen,
+            final int versionLine, final int versionCol,
+            final int encodingOffset, final int encodingLen,
+            final int encodingLine, final int encodingCol,
+            final int standaloneOffset, final int standaloneLen,
+            final int standaloneLine, final int standaloneCol,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        final int i = reserve(21);
+        this.events[i] = MarkupTape.XML_DECLARATION;
+        this.events[i + 1] = keywordOffset;
+        this.events[i + 2] = keywordLen;
+        this.events[i + 3] = keywordLine;
+        this.events[i + 4] = keywordCol;
+        this.events[i + 5] = versionOffset;
+        this.events[i + 6] = versionLen;
+        this.events[i + 7] = versionLine;
+        this.events[i + 8] = versionCol;
+        this.events[i + 9] = encodingOffset;
+        this.events[i + 10] = encodingLen;
+        this.events[i + 11] = encodingLine;
+        this.events[i + 12] = encodingCol;
+        this.events[i + 13] = standaloneOffset;
+        this.events[i + 14] = standaloneLen;
+        this.events[i + 15] = standaloneLine;
+        this.events[i + 16] = standaloneCol;
+        this.events[i + 17] = outerOffset;
+        this.events[i + 18] = outerLen;
+        this.events[i + 19] = line;
+        this.events[i + 20] = col;
+        storeChars(buffer, i, MarkupTape.XML_DECLARATION_TEXT_POSITIONS);
+    }
+
+
+    @Override
+    public void handleDocType(
+            final char[] buffer,
+            final int keywordOffset, final int keywordLen,
+            final int keywordLine, final int keywordCol,
+            final int elementNameOffset, final int elementNameLen,
+            final int elementNameLine, final int elementNameCol,
+            final int typeOffset, final int typeLen,
+            final int typeLine, final int typeCol,
+            final int publicIdOffset, final int publicIdLen,
+            final int publicIdLine, final int publicIdCol,
+            final int systemIdOffset, final int systemIdLen,
+            final int systemIdLine, final int systemIdCol,
+            final int internalSubsetOffset, final int internalSubsetLen,
+            final int internalSubsetLine, final int internalSubsetCol,
+            final int outerOffset, final int outerLen,
+            final int outerLine, final int outerCol)
+            throws ParseException {
+        final int i = reserve(29);
+        this.events[i] = MarkupTape.DOC_TYPE;
+        this.events[i + 1] = keywordOffset;
+        this.events[i + 2] = keywordLen;
+        this.events[i + 3] = keywordLine;
+        this.events[i + 4] = keywordCol;
+        this.events[i + 5] = elementNameOffset;
+        this.events[i + 6] = elementNameLen;
+        this.events[i + 7] = elementNameLine;
+        this.events[i + 8] = elementNameCol;
+        this.events[i + 9] = typeOffset;
+        this.events[i + 10] = typeLen;
+        this.events[i + 11] = typeLine;
+        this.events[i + 12] = typeCol;
+        this.events[i + 13] = publicIdOffset;
+        this.events[i + 14] = publicIdLen;
+        this.events[i + 15] = publicIdLine;
+        this.events[i + 16] = publicIdCol;
+        this.events[i + 17] = systemIdOffset;
+        this.events[i + 18] = systemIdLen;
+        this.events[i + 19] = systemIdLine;
+        this.events[i + 20] = systemIdCol;
+        this.events[i + 21] = internalSubsetOffset;
+        this.events[i + 22] = internalSubsetLen;
+        this.events[i + 23] = internalSubsetLine;
+        this.events[i + 24] = internalSubsetCol;
+        this.events[i + 25] = outerOffset;
+        this.events[i + 26] = outerLen;
+        this.events[i + 27] = outerLine;
+        this.events[i + 28] = outerCol;
+        storeChars(buffer, i, MarkupTape.DOC_TYPE_TEXT_POSITIONS);
+    }
+
+
+    @Override
+    public void handleCDATASection(
+            final char[] buffer,
+            final int contentOffset, final int contentLen,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        final int i = reserve(7);
+        this.events[i] = MarkupTape.C_D_A_T_A_SECTION;
+        this.events[i + 1] = contentOffset;
+        this.events[i + 2] = contentLen;
+        this.events[i + 3] = outerOffset;
+        this.events[i + 4] = outerLen;
+        this.events[i + 5] = line;
+        this.events[i + 6] = col;
+        storeChars(buffer, i, MarkupTape.CONTENT_OUTER_TEXT_POSITIONS);
+    }
+
+
+    @Override
+    public void handleComment(
+            final char[] buffer,
+            final int contentOffset, final int contentLen,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        final int i = reserve(7);
+        this.events[i] = MarkupTape.COMMENT;
+        this.events[i + 1] = contentOffset;
+        this.events[i + 2] = contentLen;
+        this.events[i + 3] = outerOffset;
+        this.events[i + 4] = outerLen;
+        this.events[i + 5] = line;
+        this.events[i + 6] = col;
+        storeChars(buffer, i, MarkupTape.CONTENT_OUTER_TEXT_POSITIONS);
+    }
+
+
+    @Override
+    public void handleText(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.TEXT, buffer, offset, len, line, col);
+    }
+
+
+    @Override
+    public void handleStandaloneElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final boolean minimized, final int line, final int col)
+            throws ParseException {
+        final int i = reserve(6);
+        this.events[i] = MarkupTape.STANDALONE_ELEMENT_START;
+        this.events[i + 1] = nameOffset;
+        this.events[i + 2] = nameLen;
+        this.events[i + 3] = (minimized ? 1 : 0);
+        this.events[i + 4] = line;
+        this.events[i + 5] = col;
+        storeChars(buffer, i, MarkupTape.SINGLE_TEXT_POSITIONS);
+    }
+
+
+    @Override
+    public void handleStandaloneElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final boolean minimized, final int line, final int col)
+            throws ParseException {
+        final int i = reserve(6);
+        this.events[i] = MarkupTape.STANDALONE_ELEMENT_END;
+        this.events[i + 1] = nameOffset;
+        this.events[i + 2] = nameLen;
+        this.events[i + 3] = (minimized ? 1 : 0);
+        this.events[i + 4] = line;
+        this.events[i + 5] = col;
+        storeChars(buffer, i, MarkupTape.SINGLE_TEXT_POSITIONS);
+    }
+
+
+    @Override
+    public void handleOpenElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.OPEN_ELEMENT_START, buffer, nameOffset, nameLen, line, col);
+    }
+
+
+    @Override
+    public void handleOpenElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.OPEN_ELEMENT_END, buffer, nameOffset, nameLen, line, col);
+    }
+
+
+    @Override
+    public void handleAutoOpenElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.AUTO_OPEN_ELEMENT_START, buffer, nameOffset, nameLen, line, col);
+    }
+
+
+    @Override
+    public void handleAutoOpenElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.AUTO_OPEN_ELEMENT_END, buffer, nameOffset, nameLen, line, col);
+    }
+
+
+    @Override
+    public void handleCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.CLOSE_ELEMENT_START, buffer, nameOffset, nameLen, line, col);
+    }
+
+
+    @Override
+    public void handleCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.CLOSE_ELEMENT_END, buffer, nameOffset, nameLen, line, col);
+    }
+
+
+    @Override
+    public void handleCloseTagEndBadSymbol(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.CLOSE_TAG_END_BAD_SYMBOL, buffer, offset, len, line, col);
+    }
+
+
+    @Override
+    public void handleAutoCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.AUTO_CLOSE_ELEMENT_START, buffer, nameOffset, nameLen, line, col);
+    }
+
+
+    @Override
+    public void handleAutoCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.AUTO_CLOSE_ELEMENT_END, buffer, nameOffset, nameLen, line, col);
+    }
+
+
+    @Override
+    public void handleUnmatchedCloseElementStart(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.UNMATCHED_CLOSE_ELEMENT_START, buffer, nameOffset, nameLen, line, col);
+    }
+
+
+    @Override
+    public void handleUnmatchedCloseElementEnd(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.UNMATCHED_CLOSE_ELEMENT_END, buffer, nameOffset, nameLen, line, col);
+    }
+
+
+    @Override
+    public void handleAttribute(
+            final char[] buffer,
+            final int nameOffset, final int nameLen,
+            final int nameLine, final int nameCol,
+            final int operatorOffset, final int operatorLen,
+            final int operatorLine, final int operatorCol,
+            final int valueContentOffset, final int valueContentLen,
+            final int valueOuterOffset, final int valueOuterLen,
+            final int valueLine, final int valueCol)
+            throws ParseException {
+        final int i = reserve(15);
+        this.events[i] = MarkupTape.ATTRIBUTE;
+        this.events[i + 1] = nameOffset;
+        this.events[i + 2] = nameLen;
+        this.events[i + 3] = nameLine;
+        this.events[i + 4] = nameCol;
+        this.events[i + 5] = operatorOffset;
+        this.events[i + 6] = operatorLen;
+        this.events[i + 7] = operatorLine;
+        this.events[i + 8] = operatorCol;
+        this.events[i + 9] = valueContentOffset;
+        this.events[i + 10] = valueContentLen;
+        this.events[i + 11] = valueOuterOffset;
+        this.events[i + 12] = valueOuterLen;
+        this.events[i + 13] = valueLine;
+        this.events[i + 14] = valueCol;
+        storeChars(buffer, i, MarkupTape.ATTRIBUTE_TEXT_POSITIONS);
+    }
+
+
+    @Override
+    public void handleInnerWhiteSpace(
+            final char[] buffer,
+            final int offset, final int len,
+            final int line, final int col)
+            throws ParseException {
+        storeSingleTextEvent(MarkupTape.INNER_WHITE_SPACE, buffer, offset, len, line, col);
+    }
+
+
+    @Override
+    public void handleProcessingInstruction(
+            final char[] buffer,
+            final int targetOffset, final int targetLen,
+            final int targetLine, final int targetCol,
+            final int contentOffset, final int contentLen,
+            final int contentLine, final int contentCol,
+            final int outerOffset, final int outerLen,
+            final int line, final int col)
+            throws ParseException {
+        final int i = reserve(13);
+        this.events[i] = MarkupTape.PROCESSING_INSTRUCTION;
+        this.events[i + 1] = targetOffset;
+        this.events[i + 2] = targetLen;
+        this.events[i + 3] = targetLine;
+        this.events[i + 4] = targetCol;
+        this.events[i + 5] = contentOffset;
+        this.events[i + 6] = contentLen;
+        this.events[i + 7] = contentLine;
+        this.events[i + 8] = contentCol;
+        this.events[i + 9] = outerOffset;
+        this.events[i + 10] = outerLen;
+        this.events[i + 11] = line;
+        this.events[i + 12] = col;
+        storeChars(buffer, i, MarkupTape.PROCESSING_INSTRUCTION_TEXT_POSITIONS);
+    }
+
+
+}
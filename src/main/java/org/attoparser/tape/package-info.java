@@ -0,0 +1,7 @@
+/**
+ * <p>
+ *   Handlers for recording parsing events into compact tapes that can be replayed afterwards, or
+ *   handed over to handlers running on a different thread.
+ * </p>
+ */
+package org.attoparser.tape;
\ No newline at end of file
@@ -0,0 +1,248 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2014, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.attoparser.util;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * <p>
+ *   Thread-safe, lock-free and size-bounded table for interning element and attribute names, so that the
+ *   <tt>char[]</tt> or <tt>String</tt> objects for the names found in documents are created only once and
+ *   then shared among all the parsing operations (and threads) in the application.
+ * </p>
+ * <p>
+ *   Names are looked up by their (case-sensitive) hash code in an open-addressing table with a limited number
+ *   of probes. When all the probed slots are in use by other names, one of them is replaced, so the table never
+ *   grows beyond its capacity even for documents containing lots of different names. Names longer than
+ *   {@link #MAX_NAME_LEN} are never interned.
+ * </p>
+ * <p>
+ *   A set of fixed names (e.g. the names known to be the most frequent ones in documents) can also be
+ *   specified. These are looked up first by means of a {@link PerfectNameHash}, and are never replaced.
+ * </p>
+ * <p>
+ *   The <tt>char[]</tt> objects returned by this class are shared, and must never be modified.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class NameInternTable {
+
+    /**
+     * <p>
+     *   Default capacity for tables: {@value}
+     * </p>
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * <p>
+     *   Maximum length of the names that will be interned: {@value}
+     * </p>
+     */
+    public static final int MAX_NAME_LEN = 64;
+
+    private static final int MAX_PROBES = 8;
+
+
+    private final PerfectNameHash fixedHash;
+    private final Entry[] fixedEntries;
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+
+
+
+    /**
+     * <p>
+     *   Creates a new table.
+     * </p>
+     *
+     * @param capacity the maximum number of names in the table (will be rounded up to a power of two).
+     */
+    public NameInternTable(final int capacity) {
+        this(capacity, null);
+    }
+
+
+    /**
+     * <p>
+     *   Creates a new table, containing a set of fixed names.
+     * </p>
+     *
+     * @param capacity the maximum number of (non-fixed) names in the table (will be rounded up to a power of two).
+     * @param fixedNames the fixed names (can be null).
+     */
+    public NameInternTable(final int capacity, final Collection<String> fixedNames) {
+        super();
+        if (capacity < MAX_PROBES) {
+            throw new IllegalArgumentException("Capacity cannot be less than " + MAX_PROBES);
+        }
+        int size = MAX_PROBES;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.entries = new AtomicReferenceArray<Entry>(size);
+        this.mask = size - 1;
+        if (fixedNames == null || fixedNames.isEmpty()) {
+            this.fixedHash = null;
+            this.fixedEntries = null;
+        } else {
+            final String[] names = new LinkedHashSet<String>(fixedNames).toArray(new String[0]);
+            this.fixedHash = new PerfectNameHash(names, true);
+            this.fixedEntries = new Entry[names.length];
+            for (int i = 0; i < names.length; i++) {
+                final char[] name = names[i].toCharArray();
+                this.fixedEntries[i] = new Entry(TextUtil.hashCode(name, 0, name.length), name, 0, name.length);
+            }
+        }
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the interned <tt>char[]</tt> for a name.
+     * </p>
+     *
+     * @param text the buffer containing the name.
+     * @param offset the offset of the name in the buffer.
+     * @param len the length of the name.
+     * @return the interned name (or a new copy, if it is too long to be interned).
+     */
+    public char[] internChars(final char[] text, final int offset, final int len) {
+        if (len > MAX_NAME_LEN) {
+            final char[] name = new char[len];
+            System.arraycopy(text, offset, name, 0, len);
+            return name;
+        }
+        return intern(text, offset, len).chars;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the interned <tt>String</tt> for a name.
+     * </p>
+     *
+     * @param text the buffer containing the name.
+     * @param offset the offset of the name in the buffer.
+     * @param len the length of the name.
+     * @return the interned name (or a new <tt>String</tt>, if it is too long to be interned).
+     */
+    public String internString(final char[] text, final int offset, final int len) {
+        if (len > MAX_NAME_LEN) {
+            return new String(text, offset, len);
+        }
+        return intern(text, offset, len).string;
+    }
+
+
+
+
+    private Entry intern(final char[] text, final int offset, final int len) {
+
+        if (this.fixedHash != null) {
+            final int index = this.fixedHash.indexOf(text, offset, len);
+            if (index >= 0) {
+                return this.fixedEntries[index];
+            }
+        }
+
+        int h = TextUtil.hashCode(text, offset, len);
+        h ^= (h >>> 16);
+
+        Entry entry = null;
+        int i = 0;
+        while (i < MAX_PROBES) {
+
+            final int slot = (h + i) & this.mask;
+            final Entry current = this.entries.get(slot);
+
+            if (current == null) {
+                if (entry == null) {
+                    entry = new Entry(h, text, offset, len);
+                }
+                if (this.entries.compareAndSet(slot, null, entry)) {
+                    return entry;
+                }
+                // Another thread used this slot in the meantime (maybe for this same name): check it again
+                continue;
+            }
+
+            if (current.matches(h, text, offset, len)) {
+                return current;
+            }
+
+            i++;
+
+        }
+
+        /*
+         * All probed slots are in use: replace one of them (always the same one for a specific name, so that
+         * repeated misses for the same name do not evict several other names).
+         */
+        if (entry == null) {
+            entry = new Entry(h, text, offset, len);
+        }
+        this.entries.set((h + ((h >>> 24) & (MAX_PROBES - 1))) & this.mask, entry);
+        return entry;
+
+    }
+
+
+
+
+    private static final class Entry {
+
+        final int hash;
+        final char[] chars;
+        final String string;
+
+        Entry(final int hash, final char[] text, final int offset, final int len) {
+            super();
+            this.hash = hash;
+            this.chars = new char[len];
+            System.arraycopy(text, offset, this.chars, 0, len);
+            this.string = new String(this.chars);
+        }
+
+        boolean matches(final int hash, final char[] text, final int offset, final int len) {
+            if (this.hash != hash || this.chars.length != len) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (this.chars[i] != text[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+
+}
@@ -0,0 +1,273 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2014, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.attoparser.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/**
+ * <p>
+ *   Perfect hash for a fixed set of names (e.g. the standard HTML element and attribute names), allowing to
+ *   find out whether a name in a buffer is one of them (and which one) by mixing only its length and a few of
+ *   its characters (first, third, middle and last) and then performing a single verifying comparison.
+ * </p>
+ * <p>
+ *   Names are distributed into small buckets, and a displacement is computed at construction time for each
+ *   bucket so that no two names fall into the same slot of a table of the smallest power-of-two size able to
+ *   contain all of them. If the set contains names that cannot be told apart by the sampled characters and their
+ *   length, all the characters in names are mixed instead.
+ * </p>
+ * <p>
+ *   Instances are immutable and thread-safe.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 2.0.6
+ *
+ */
+public final class PerfectNameHash {
+
+    private static final int MAX_DISPLACEMENT = 1 << 20;
+
+    private final char[][] names;
+    private final boolean caseSensitive;
+    private final boolean fullKey;
+    private final int[] displacements; // one per bucket
+    private final int[] table; // name index + 1, 0 = empty slot
+
+
+
+    /**
+     * <p>
+     *   Creates a new perfect hash for the specified names. The index of each name in the array will be the
+     *   one returned by {@link #indexOf(char[], int, int)}.
+     * </p>
+     *
+     * @param names the names (must not contain duplicates).
+     * @param caseSensitive whether names should be matched in a case-sensitive way.
+     */
+    public PerfectNameHash(final String[] names, final boolean caseSensitive) {
+
+        super();
+
+        if (names == null) {
+            throw new IllegalArgumentException("Names cannot be null");
+        }
+
+        this.caseSensitive = caseSensitive;
+        this.names = new char[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null || names[i].length() == 0) {
+                throw new IllegalArgumentException("Names cannot be null or empty");
+            }
+            this.names[i] = names[i].toCharArray();
+        }
+
+        // Slots can only be computed for the sampled keys if no two names share the same key
+        this.fullKey = !allDistinct(keys(this.names, caseSensitive, false));
+        final int[] keys = keys(this.names, caseSensitive, this.fullKey);
+        if (this.fullKey && !allDistinct(keys)) {
+            throw new IllegalArgumentException("Names cannot contain duplicates");
+        }
+
+        int tableSize = 1;
+        while (tableSize < names.length) {
+            tableSize <<= 1;
+        }
+        final int bucketCount = Math.max(1, tableSize >> 2);
+
+        this.table = new int[tableSize];
+        this.displacements = new int[bucketCount];
+
+        // Compute the contents of each bucket, and place the biggest buckets first
+        final int[][] buckets = new int[bucketCount][];
+        final int[] bucketSizes = new int[bucketCount];
+        for (int i = 0; i < keys.length; i++) {
+            final int bucket = mix(keys[i]) & (bucketCount - 1);
+            if (buckets[bucket] == null) {
+                buckets[bucket] = new int[4];
+            } else if (bucketSizes[bucket] == buckets[bucket].length) {
+                buckets[bucket] = Arrays.copyOf(buckets[bucket], bucketSizes[bucket] * 2);
+            }
+            buckets[bucket][bucketSizes[bucket]++] = i;
+        }
+        final Integer[] bucketOrder = new Integer[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            bucketOrder[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(bucketOrder, new Comparator<Integer>() {
+            public int compare(final Integer o1, final Integer o2) {
+                return bucketSizes[o2.intValue()] - bucketSizes[o1.intValue()];
+            }
+        });
+
+        final int[] slots = new int[4];
+        for (final Integer bucketIndex : bucketOrder) {
+            final int bucket = bucketIndex.intValue();
+            final int size = bucketSizes[bucket];
+            if (size == 0) {
+                break;
+            }
+            final int[] slotsForBucket = (size <= slots.length ? slots : new int[size]);
+            int displacement = 0;
+            while (!place(keys, buckets[bucket], size, displacement, slotsForBucket)) {
+                if (++displacement == MAX_DISPLACEMENT) {
+                    // Should never happen for sets of names of a reasonable size
+                    throw new IllegalArgumentException("Cannot compute perfect hash for " + names.length + " names");
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                this.table[slotsForBucket[i]] = buckets[bucket][i] + 1;
+            }
+            this.displacements[bucket] = displacement;
+        }
+
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the number of names in this hash.
+     * </p>
+     *
+     * @return the number of names.
+     */
+    public int size() {
+        return this.names.length;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the index of a name (in the array the hash was created with), or -1 if it is not one of the names.
+     * </p>
+     *
+     * @param text the buffer containing the name.
+     * @param offset the offset of the name in the buffer.
+     * @param len the length of the name.
+     * @return the index of the name, or -1 if not found.
+     */
+    public int indexOf(final char[] text, final int offset, final int len) {
+        if (len == 0) {
+            return -1;
+        }
+        final int key = key(this.caseSensitive, this.fullKey, text, offset, len);
+        final int displacement = this.displacements[mix(key) & (this.displacements.length - 1)];
+        final int index = this.table[slot(key, displacement, this.table.length)] - 1;
+        if (index < 0) {
+            return -1;
+        }
+        final char[] name = this.names[index];
+        if (name.length != len || !TextUtil.equals(this.caseSensitive, name, 0, len, text, offset, len)) {
+            return -1;
+        }
+        return index;
+    }
+
+
+
+
+    private boolean place(
+            final int[] keys, final int[] bucket, final int size, final int displacement, final int[] slots) {
+        for (int i = 0; i < size; i++) {
+            final int slot = slot(keys[bucket[i]], displacement, this.table.length);
+            if (this.table[slot] != 0) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slot) {
+                    return false;
+                }
+            }
+            slots[i] = slot;
+        }
+        return true;
+    }
+
+
+    private static int slot(final int key, final int displacement, final int tableSize) {
+        return mix(key ^ (displacement * 0x9E3779B9)) & (tableSize - 1);
+    }
+
+
+    private static int mix(final int key) {
+        int h = key * 0x85EBCA6B;
+        h ^= (h >>> 13);
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+
+    private static int[] keys(final char[][] names, final boolean caseSensitive, final boolean fullKey) {
+        final int[] keys = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            keys[i] = key(caseSensitive, fullKey, names[i], 0, names[i].length);
+        }
+        return keys;
+    }
+
+
+    private static boolean allDistinct(final int[] keys) {
+        final int[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static int key(
+            final boolean caseSensitive, final boolean fullKey, final char[] text, final int offset, final int len) {
+        int h = len;
+        if (fullKey) {
+            final int maxi = offset + len;
+            for (int i = offset; i < maxi; i++) {
+                h = 31 * h + fold(caseSensitive, text[i]);
+            }
+        } else {
+            h = 31 * h + fold(caseSensitive, text[offset]);
+            h = 31 * h + fold(caseSensitive, text[offset + Math.min(2, len - 1)]);
+            h = 31 * h + fold(caseSensitive, text[offset + (len >> 1)]);
+            h = 31 * h + fold(caseSensitive, text[offset + len - 1]);
+        }
+        return h;
+    }
+
+
+    private static int fold(final boolean caseSensitive, final char c) {
+        if (caseSensitive) {
+            return c;
+        }
+        if (c < 128) {
+            return (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+        }
+        // Consistent with TextUtil#equals (chars equal if their upper case, or the lower case of it, are equal)
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+
+}
@@ -0,0 +1,240 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.attoparser;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+
+
+
+/*
+ * Java 17+ version of the scans for the start of the next structure ('<') in a text buffer. This
+ * class is packaged at META-INF/versions/17 in the (multi-release) library jar, replacing the
+ * Java 7 scalar version at src/main/java when running on Java 17 or newer.
+ *
+ * The vectorized scans use the Vector API, which is still an incubator module
+ * (jdk.incubator.vector), only resolved when the JVM is started with
+ * '--add-modules jdk.incubator.vector'. When it is not, this class falls back to the same scalar
+ * loops as the Java 7 version. All vector types are confined to the VectorScans nested class so
+ * that they are never loaded in that case.
+ *
+ * Both versions must offer exactly the same methods and produce exactly the same results
+ * (including locator updates).
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+final class ParsingStructureStartUtil {
+
+    private static final boolean VECTORIZED =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+
+    
+    private ParsingStructureStartUtil() {
+        super();
+    }
+
+
+
+    static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    
+    static int findNextStructureStart(
+            final char[] text, final int offset, final int maxi, 
+            final int[] locator) {
+        if (VECTORIZED) {
+            return VectorScans.findNextStructureStart(text, offset, maxi, locator);
+        }
+        return findNextStructureStartScalar(text, offset, maxi, offset, locator);
+    }
+
+    
+    /*
+     * Equivalent to the above, but not keeping track of locations (used when these are computed lazily).
+     */
+    static int findNextStructureStart(final char[] text, final int offset, final int maxi) {
+        if (VECTORIZED) {
+            return VectorScans.findNextStructureStart(text, offset, maxi);
+        }
+        return findNextStructureStartScalar(text, offset, maxi);
+    }
+
+
+
+
+    /*
+     * Scalar scans, the same as the Java 7 version. Also used by the vectorized scans for the tail
+     * of the buffer shorter than a vector, so the location-tracking one receives the index of the
+     * last '\n' already seen (or the offset at which the scan originally started) as colIndex.
+     */
+
+    static int findNextStructureStartScalar(
+            final char[] text, final int offset, final int maxi, 
+            final int colIndexStart, final int[] locator) {
+
+        char c;
+
+        int colIndex = colIndexStart;
+
+        int i = offset;
+        int n = (maxi - offset);
+
+        while (n-- != 0) {
+
+            c = text[i];
+            
+            if (c == '\n') {
+                colIndex = i;
+                locator[1] = 0;
+                locator[0]++;
+            } else if (c == '<') {
+                locator[1] += (i - colIndex);
+                return i;
+            }
+
+            i++;
+
+        }
+            
+        locator[1] += (maxi - colIndex);
+        return -1;
+        
+    }
+
+
+    static int findNextStructureStartScalar(final char[] text, final int offset, final int maxi) {
+
+        int i = offset;
+        int n = (maxi - offset);
+
+        while (n-- != 0) {
+
+            if (text[i] == '<') {
+                return i;
+            }
+
+            i++;
+
+        }
+
+        return -1;
+
+    }
+
+
+
+
+    /*
+     * Vectorized scans: the buffer is read one vector of chars (as 16-bit lanes) at a time, comparing all
+     * lanes against '<' (and '\n' when tracking locations) at once. Lines are counted from the '\n' mask, and
+     * the column is computed from the last '\n' found, exactly as the scalar scan would.
+     */
+    private static final class VectorScans {
+
+        private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+        private static final short LT = (short) '<';
+        private static final short LF = (short) '\n';
+
+
+        static int findNextStructureStart(
+                final char[] text, final int offset, final int maxi,
+                final int[] locator) {
+
+            final int length = SPECIES.length();
+            final int upperBound = maxi - length;
+
+            int colIndex = offset;
+
+            int i = offset;
+
+            while (i <= upperBound) {
+
+                final ShortVector chars = ShortVector.fromCharArray(SPECIES, text, i);
+                final VectorMask<Short> structureStarts = chars.eq(LT);
+                VectorMask<Short> lineFeeds = chars.eq(LF);
+
+                if (structureStarts.anyTrue()) {
+
+                    final int lane = structureStarts.firstTrue();
+
+                    // Only the line feeds before the structure start count
+                    lineFeeds = lineFeeds.and(SPECIES.indexInRange(0, lane));
+                    if (lineFeeds.anyTrue()) {
+                        colIndex = i + lineFeeds.lastTrue();
+                        locator[1] = 0;
+                        locator[0] += lineFeeds.trueCount();
+                    }
+
+                    locator[1] += (i + lane - colIndex);
+                    return i + lane;
+
+                }
+
+                if (lineFeeds.anyTrue()) {
+                    colIndex = i + lineFeeds.lastTrue();
+                    locator[1] = 0;
+                    locator[0] += lineFeeds.trueCount();
+                }
+
+                i += length;
+
+            }
+
+            return findNextStructureStartScalar(text, i, maxi, colIndex, locator);
+
+        }
+
+
+        static int findNextStructureStart(final char[] text, final int offset, final int maxi) {
+
+            final int length = SPECIES.length();
+            final int upperBound = maxi - length;
+
+            int i = offset;
+
+            while (i <= upperBound) {
+
+                final VectorMask<Short> structureStarts = ShortVector.fromCharArray(SPECIES, text, i).eq(LT);
+                if (structureStarts.anyTrue()) {
+                    return i + structureStarts.firstTrue();
+                }
+
+                i += length;
+
+            }
+
+            return findNextStructureStartScalar(text, i, maxi);
+
+        }
+
+
+        private VectorScans() {
+            super();
+        }
+
+    }
+
+
+}
@@ -20,6 +20,9 @@
 package org.attoparser;
 
 import junit.framework.TestCase;
+import org.attoparser.config.ParseConfiguration;
+import org.attoparser.trace.TraceBuilderMarkupHandler;
+import org.attoparser.util.NameInternTable;
 
 
 /*
@@ -72,5 +75,184 @@ public void test() throws Exception {
 
     }
 
+
+    public void testNonStandardElementsAreBounded() throws Exception {
+
+        final HtmlElement[] elements = new HtmlElement[20000];
+        for (int i = 0; i < elements.length; i++) {
+            final char[] name = ("x-" + i).toCharArray();
+            elements[i] = HtmlElements.forName(name, 0, name.length);
+            assertEquals("x-" + i, new String(elements[i].name));
+        }
+
+        // Old entries have been replaced, but the elements obtained for them are equivalent
+        final char[] first = "X-0".toCharArray();
+        final HtmlElement element = HtmlElements.forName(first, 0, first.length);
+        assertEquals("x-0", new String(element.name));
+        assertSame(element, HtmlElements.forName("x-0".toCharArray(), 0, 3));
+        assertSame(HtmlElements.DIV, HtmlElements.forName("DIV".toCharArray(), 0, 3));
+
+    }
+
+
+    public void testNonStandardElementsIgnoreCase() throws Exception {
+
+        // The first name seen is uppercase, but the element created (and cached) for it is lowercase
+        final HtmlElement upper = HtmlElements.forName("ATTOPARSER-TEST-CASE".toCharArray(), 0, 20);
+        assertEquals("attoparser-test-case", new String(upper.name));
+        assertSame(upper, HtmlElements.forName("attoparser-test-case".toCharArray(), 0, 20));
+        assertSame(upper, HtmlElements.forName("Attoparser-Test-Case".toCharArray(), 0, 20));
+        assertSame(upper, HtmlElements.forName("xAttoParser-TEST-casex".toCharArray(), 1, 20));
+
+    }
+
+
+    public void testRegisteredElements() throws Exception {
+
+        // Registrations cannot be undone, so names used here should not collide with those of any other test
+        HtmlVocabulary.registerVoidElements("attoparser-test-void");
+        HtmlVocabulary.registerBlockElements("attoparser-test-block");
+        HtmlVocabulary.registerCDATAContentElements("attoparser-test-raw");
+        // Registering again with the same type is allowed
+        HtmlVocabulary.registerVoidElements("ATTOPARSER-TEST-VOID");
+
+        assertTrue(HtmlElements.forName("Attoparser-Test-Void".toCharArray(), 0, 20) instanceof HtmlVoidElement);
+        assertTrue(HtmlElements.forName("attoparser-test-block".toCharArray(), 0, 21) instanceof HtmlBodyBlockElement);
+        assertTrue(HtmlElements.forName("attoparser-test-raw".toCharArray(), 0, 19) instanceof HtmlCDATAContentElement);
+
+        try {
+            HtmlVocabulary.registerBlockElements("attoparser-test-void");
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            HtmlVocabulary.registerVoidElements("div");
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+
+        final String document =
+                "<p>a<attoparser-test-block>b<attoparser-test-void>c</attoparser-test-block>" +
+                "<attoparser-test-raw><p>d</attoparser-test-raw>";
+        final TraceBuilderMarkupHandler handler = new TraceBuilderMarkupHandler();
+        new MarkupParser(ParseConfiguration.htmlConfiguration()).parse(document, handler);
+        final String trace = handler.getTrace().toString();
+        assertTrue(trace.contains("T(a){1,4}, ACES(p){1,5}, ACEE(p){1,5}, OES(attoparser-test-block){1,5}"));
+        assertTrue(trace.contains(
+                "NSES(attoparser-test-void){1,29}, NSEE(attoparser-test-void){1,50}, T(c){1,51}"));
+        assertTrue(trace.contains("T(<p>d){1,97}, CES(attoparser-test-raw){1,101}"));
+
+    }
+
+
+    public void testElementIdSets() throws Exception {
+
+        final long[] set = HtmlElements.idSetForNames(new char[][] { "li".toCharArray(), "TD".toCharArray() });
+        assertTrue(HtmlElements.idSetContains(set, HtmlVocabulary.getElementId("li")));
+        assertTrue(HtmlElements.idSetContains(set, HtmlVocabulary.getElementId("td")));
+        assertFalse(HtmlElements.idSetContains(set, HtmlVocabulary.getElementId("ul")));
+        assertFalse(HtmlElements.idSetContains(set, 0));
+        assertFalse(HtmlElements.idSetContains(set, Integer.MAX_VALUE));
+
+        // Sets cannot be computed if any of the names has no ID
+        assertNull(HtmlElements.idSetForNames(new char[][] { "li".toCharArray(), "x-unknown".toCharArray() }));
+        assertNull(HtmlElements.idSetForNames(null));
+
+        // Auto-closing by means of the sets stops at limits (<ol> for <li>, <table> for <tr>)
+        final String document = "<ul><li>a<LI>b<ol><li>c<li>d</ol><li>e</ul><table><tr><td>f<TD>g<tr><td>h</table>";
+        final TraceBuilderMarkupHandler handler = new TraceBuilderMarkupHandler();
+        new MarkupParser(ParseConfiguration.htmlConfiguration()).parse(document, handler);
+        final String trace = handler.getTrace().toString();
+        assertTrue(trace.contains("T(a){1,9}, ACES(li){1,10}, ACEE(li){1,10}, OES(LI){1,10}"));
+        assertTrue(trace.contains("OES(ol){1,15}, OEE(ol){1,18}, OES(li){1,19}"));
+        assertTrue(trace.contains("CEE(ol){1,33}, ACES(LI){1,34}, ACEE(LI){1,34}, OES(li){1,34}"));
+        assertTrue(trace.contains("T(g){1,64}, ACES(TD){1,65}, ACEE(TD){1,65}, ACES(tr){1,65}, ACEE(tr){1,65}"));
+        assertTrue(trace.contains("ACES(tr){1,74}, ACEE(tr){1,74}, CES(table){1,74}"));
+
+    }
+
+
+    public void testNameInternTable() throws Exception {
+
+        // Standard HTML names are fixed in the shared table
+        final NameInternTable shared = HtmlVocabulary.getNameInternTable();
+        assertSame(shared, HtmlVocabulary.getNameInternTable());
+        assertSame(shared.internString("tbody".toCharArray(), 0, 5), shared.internString("tbody".toCharArray(), 0, 5));
+        final char[] onclick = "onclick".toCharArray();
+        assertSame(shared.internChars(onclick, 0, onclick.length), shared.internChars(onclick, 0, onclick.length));
+
+    }
+
+
+    public void testElementIds() throws Exception {
+
+        assertTrue(HtmlVocabulary.getElementId("div") != 0);
+        assertEquals(HtmlVocabulary.getElementId("div"), HtmlVocabulary.getElementId("DIV"));
+        assertTrue(HtmlVocabulary.getElementId("div") != HtmlVocabulary.getElementId("p"));
+        assertEquals(0, HtmlVocabulary.getElementId("x-unknown"));
+
+        // IDs reported for every element event (including auto-open and auto-close ones) match their names
+        final String document =
+                "<TABLE><TR><TD>a<td>b</table><UL><li>c<LI>d<x-unknown>e</UL><p>f<br>g<div>h</DIV>";
+        final StringBuilder events = new StringBuilder();
+        final AbstractMarkupHandler handler = new AbstractMarkupHandler() {
+
+            private ParseStatus status;
+
+            @Override
+            public void setParseStatus(final ParseStatus status) {
+                this.status = status;
+            }
+
+            @Override
+            public void handleStandaloneElementStart(
+                    final char[] buffer, final int nameOffset, final int nameLen,
+                    final boolean minimized, final int line, final int col) {
+                check("NS", buffer, nameOffset, nameLen);
+            }
+
+            @Override
+            public void handleOpenElementStart(
+                    final char[] buffer, final int nameOffset, final int nameLen, final int line, final int col) {
+                check("O", buffer, nameOffset, nameLen);
+            }
+
+            @Override
+            public void handleAutoOpenElementStart(
+                    final char[] buffer, final int nameOffset, final int nameLen, final int line, final int col) {
+                check("AO", buffer, nameOffset, nameLen);
+            }
+
+            @Override
+            public void handleCloseElementStart(
+                    final char[] buffer, final int nameOffset, final int nameLen, final int line, final int col) {
+                check("C", buffer, nameOffset, nameLen);
+            }
+
+            @Override
+            public void handleAutoCloseElementStart(
+                    final char[] buffer, final int nameOffset, final int nameLen, final int line, final int col) {
+                check("AC", buffer, nameOffset, nameLen);
+            }
+
+            private void check(final String type, final char[] buffer, final int nameOffset, final int nameLen) {
+                final String name = new String(buffer, nameOffset, nameLen);
+                assertEquals(name, HtmlVocabulary.getElementId(name), this.status.getElementId());
+                events.append(type).append('(').append(name).append(')');
+            }
+
+        };
+
+        new MarkupParser(ParseConfiguration.htmlConfiguration()).parse(document, handler);
+        assertEquals(
+                "O(TABLE)O(TR)O(TD)AC(TD)O(td)AC(td)AC(TR)C(table)" +
+                "O(UL)O(li)AC(li)O(LI)O(x-unknown)AC(x-unknown)AC(LI)C(UL)" +
+                "O(p)NS(br)AC(p)O(div)C(DIV)",
+                events.toString());
+
+    }
+
     
 }
@@ -19,9 +19,23 @@
  */
 package org.attoparser;
 
+import java.io.ByteArrayInputStream;
 import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import junit.framework.ComparisonFailure;
 import junit.framework.TestCase;
@@ -1876,10 +1890,1300 @@ public void test() throws Exception {
                 noRestrictions);
         
         System.out.println("TOTAL Test executions: " + totalTestExecutions);
-        
-        
+
+
     }
-    
+
+
+
+    public void testCharSequenceDocuments() throws Exception {
+
+        final ParseConfiguration htmlConfig = ParseConfiguration.htmlConfiguration();
+        final MarkupParser parser = new MarkupParser(htmlConfig);
+
+        final String doc = "<!DOCTYPE html>\n<html><body><ul><li>one<li a=\"x\">two</ul><!-- c --></body></html>";
+        final StringBuilder bigDocBuilder = new StringBuilder();
+        while (bigDocBuilder.length() <= MarkupParser.DEFAULT_BUFFER_SIZE * 3) {
+            bigDocBuilder.append(doc);
+        }
+        final String bigDoc = bigDocBuilder.toString();
+
+        for (final String input : new String[] { doc, bigDoc, "" }) {
+
+            assertEquals(input, parseToOutput(parser, input));
+            assertEquals(input, parseToOutput(parser, new StringBuilder(input)));
+            assertEquals(input, parseToOutput(parser, new StringBuffer(input)));
+            assertEquals(input, parseToOutput(parser, CharBuffer.wrap(input)));
+            assertEquals(input, parseToOutput(parser, CharBuffer.wrap(input.toCharArray()).asReadOnlyBuffer()));
+
+            // Heap buffer with a position and a limit, which must be respected and not modified
+            final char[] padded = ("XXX" + input + "YYY").toCharArray();
+            final CharBuffer heapBuffer = CharBuffer.wrap(padded, 3, input.length());
+            assertEquals(input, parseToOutput(parser, heapBuffer));
+            assertEquals(3, heapBuffer.position());
+            assertEquals(3 + input.length(), heapBuffer.limit());
+
+            // Sliced buffer (non-zero array offset), passed as a CharSequence
+            final CharBuffer slicedBuffer = CharBuffer.wrap(padded, 3, input.length()).slice();
+            final StringWriter sw = new StringWriter();
+            parser.parse((CharSequence) slicedBuffer, new OutputMarkupHandler(sw));
+            assertEquals(input, sw.toString());
+
+        }
+
+    }
+
+
+    private static String parseToOutput(final MarkupParser parser, final CharSequence input) throws ParseException {
+        final StringWriter sw = new StringWriter();
+        if (input instanceof CharBuffer) {
+            parser.parse((CharBuffer) input, new OutputMarkupHandler(sw));
+        } else if (input instanceof String) {
+            parser.parse((String) input, new OutputMarkupHandler(sw));
+        } else {
+            parser.parse(input, new OutputMarkupHandler(sw));
+        }
+        return sw.toString();
+    }
+
+
+
+    public void testByteDocuments() throws Exception {
+
+        final MarkupParser htmlParser = new MarkupParser(ParseConfiguration.htmlConfiguration());
+        final MarkupParser xmlParser = new MarkupParser(ParseConfiguration.xmlConfiguration());
+
+        final Charset utf8 = Charset.forName("UTF-8");
+        final Charset utf16le = Charset.forName("UTF-16LE");
+        final Charset latin1 = Charset.forName("ISO-8859-1");
+        final Charset ascii = Charset.forName("US-ASCII");
+
+        final String doc = "<html><body><p a=\"\u00e1\u00e9\">Espa\u00f1a \u20ac \ud83d\ude00</p><!-- \u00fc --></body></html>";
+        final StringBuilder bigDocBuilder = new StringBuilder();
+        while (bigDocBuilder.length() <= 8192 * 3) {
+            bigDocBuilder.append(doc);
+        }
+        final String bigDoc = bigDocBuilder.toString();
+
+        for (final String input : new String[] { doc, bigDoc, "" }) {
+            assertEquals(input, parseBytesToOutput(htmlParser, input.getBytes(utf8), utf8));
+            assertEquals(input, parseBytesToOutput(htmlParser, input.getBytes(utf8), null));
+            assertEquals(input, parseBytesToOutput(htmlParser, input.getBytes(utf16le), utf16le));
+        }
+
+        final String latinDoc = "<p>Espa\u00f1a \u00e1\u00e9\u00ed</p>";
+        assertEquals(latinDoc, parseBytesToOutput(htmlParser, latinDoc.getBytes(latin1), latin1));
+        assertEquals("<p>Espa\ufffda</p>", parseBytesToOutput(htmlParser, "<p>Espa\u00f1a</p>".getBytes(latin1), ascii));
+        assertEquals("<p>plain</p>", parseBytesToOutput(htmlParser, "<p>plain</p>".getBytes(ascii), ascii));
+
+        // Byte Order Marks: removed when auto-detecting
+        final byte[] utf8NoBom = doc.getBytes(utf8);
+        final byte[] utf8Bom = new byte[utf8NoBom.length + 3];
+        utf8Bom[0] = (byte)0xEF; utf8Bom[1] = (byte)0xBB; utf8Bom[2] = (byte)0xBF;
+        System.arraycopy(utf8NoBom, 0, utf8Bom, 3, utf8NoBom.length);
+        assertEquals(doc, parseBytesToOutput(htmlParser, utf8Bom, null));
+        assertEquals(doc, parseBytesToOutput(htmlParser, doc.getBytes(Charset.forName("UTF-16")), null));
+        assertEquals(doc, parseBytesToOutput(htmlParser, doc.getBytes(utf16le), null));
+
+        // XML declaration
+        final String xmlDoc = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<a b=\"\u00f1\">\u00e1</a>";
+        assertEquals(xmlDoc, parseBytesToOutput(xmlParser, xmlDoc.getBytes(latin1), null));
+
+        // HTML meta prescan (only in HTML mode)
+        final String metaDoc1 = "<html><head><meta charset=\"iso-8859-1\"></head><body>\u00f1</body></html>";
+        final String metaDoc2 =
+                "<html><head><META http-equiv='Content-Type' content='text/html; charset=ISO-8859-1'></head>" +
+                "<body>\u00f1</body></html>";
+        assertEquals(metaDoc1, parseBytesToOutput(htmlParser, metaDoc1.getBytes(latin1), null));
+        assertEquals(metaDoc2, parseBytesToOutput(htmlParser, metaDoc2.getBytes(latin1), null));
+        final String metaDoc3 = "<html><head><meta charset=\"iso-8859-1\"/></head><body>\u00f1</body></html>";
+        assertFalse(metaDoc3.equals(parseBytesToOutput(xmlParser, metaDoc3.getBytes(latin1), null)));
+
+        // Unknown charsets are ignored
+        final String unknownDoc = "<meta charset=\"nonexistent\"><p>\u00f1</p>";
+        assertEquals(unknownDoc, parseBytesToOutput(htmlParser, unknownDoc.getBytes(utf8), null));
+
+        // Direct and read-only buffers, with a position which must not be modified
+        final byte[] docBytes = bigDoc.getBytes(utf8);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(docBytes.length + 6);
+        direct.put(new byte[] { 'X', 'X', 'X' }).put(docBytes).put(new byte[] { 'Y', 'Y', 'Y' });
+        direct.position(3);
+        direct.limit(3 + docBytes.length);
+        StringWriter sw = new StringWriter();
+        htmlParser.parse(direct, null, new OutputMarkupHandler(sw));
+        assertEquals(bigDoc, sw.toString());
+        assertEquals(3, direct.position());
+        sw = new StringWriter();
+        htmlParser.parse(direct.asReadOnlyBuffer(), latin1, new OutputMarkupHandler(sw));
+        assertEquals(new String(docBytes, latin1), sw.toString());
+
+    }
+
+
+    public void testFileDocuments() throws Exception {
+
+        final MarkupParser parser = new MarkupParser(ParseConfiguration.htmlConfiguration());
+
+        final Charset utf8 = Charset.forName("UTF-8");
+        final Charset latin1 = Charset.forName("ISO-8859-1");
+
+        final String doc = "<html><body><p a=\"\u00e1\u00e9\">Espa\u00f1a \u20ac \ud83d\ude00</p><!-- \u00fc --></body></html>";
+        final StringBuilder bigDocBuilder = new StringBuilder();
+        while (bigDocBuilder.length() <= 8192 * 3) {
+            bigDocBuilder.append(doc);
+        }
+        final String bigDoc = bigDocBuilder.toString();
+
+        final Path file = Files.createTempFile("attoparser", ".html");
+        try {
+
+            for (final String input : new String[] { doc, bigDoc, "" }) {
+                Files.write(file, input.getBytes(utf8));
+                // Small windows (mapped in odd sizes) force multi-byte chars to be split between windows
+                for (final int windowSize : new int[] { 1, 7, 1000, ByteDecodingReader.DEFAULT_MAPPED_WINDOW_SIZE }) {
+                    if (windowSize < 1000 && input.length() > 1000) {
+                        continue;
+                    }
+                    StringWriter sw = new StringWriter();
+                    parser.parse(file, windowSize, utf8, new OutputMarkupHandler(sw));
+                    assertEquals(input, sw.toString());
+                    sw = new StringWriter();
+                    parser.parse(file, windowSize, null, new OutputMarkupHandler(sw));
+                    assertEquals(input, sw.toString());
+                }
+                final StringWriter sw = new StringWriter();
+                parser.parse(file, utf8, new OutputMarkupHandler(sw));
+                assertEquals(input, sw.toString());
+            }
+
+            final String metaDoc = "<html><head><meta charset=\"iso-8859-1\"></head><body>\u00f1</body></html>";
+            Files.write(file, metaDoc.getBytes(latin1));
+            final StringWriter sw = new StringWriter();
+            parser.parse(file, 16, null, new OutputMarkupHandler(sw));
+            assertEquals(metaDoc, sw.toString());
+
+        } finally {
+            Files.delete(file);
+        }
+
+    }
+
+
+    public void testIncrementalParser() throws Exception {
+
+        final MarkupParser parser = new MarkupParser(ParseConfiguration.htmlConfiguration());
+
+        final String doc =
+                "<!DOCTYPE html>\n<html><head><script>if (a < b) { x = '</p>'; }</script></head>" +
+                "<body><ul><li>one<li a=\"x > y\">two</ul><!-- a > b --><![CDATA[ c ]]>text</body></html>";
+
+        final StringWriter expected = new StringWriter();
+        parser.parse(doc, new OutputMarkupHandler(expected));
+
+        final char[] docChars = doc.toCharArray();
+        for (int chunkSize = 1; chunkSize <= docChars.length; chunkSize++) {
+            final StringWriter sw = new StringWriter();
+            final IncrementalMarkupParser incrementalParser = parser.createIncrementalParser(new OutputMarkupHandler(sw));
+            for (int i = 0; i < docChars.length; i += chunkSize) {
+                incrementalParser.feed(docChars, i, Math.min(chunkSize, docChars.length - i));
+            }
+            incrementalParser.finish();
+            assertEquals(expected.toString(), sw.toString());
+        }
+
+        // Empty document
+        final StringWriter sw = new StringWriter();
+        final IncrementalMarkupParser emptyParser = parser.createIncrementalParser(new OutputMarkupHandler(sw));
+        emptyParser.finish();
+        assertEquals("", sw.toString());
+        try {
+            emptyParser.feed(docChars, 0, docChars.length);
+            fail();
+        } catch (final IllegalStateException e) {
+            // Expected: already finished
+        }
+
+        // Unfinished structures are reported on finish
+        final IncrementalMarkupParser unfinishedParser =
+                parser.createIncrementalParser(new OutputMarkupHandler(new StringWriter()));
+        unfinishedParser.feed("<p>hello</p><div class=".toCharArray(), 0, 23);
+        try {
+            unfinishedParser.finish();
+            fail();
+        } catch (final ParseException e) {
+            assertEquals(Integer.valueOf(1), e.getLine());
+            assertEquals(Integer.valueOf(13), e.getCol());
+        }
+
+    }
+
+
+    public void testBufferPool() throws Exception {
+
+        final String doc = "<html><body><p class=\"a\">Hello</p><!-- comment --></body></html>";
+        final StringBuilder bigDocBuilder = new StringBuilder("<p title=\"");
+        while (bigDocBuilder.length() <= 20000) {
+            bigDocBuilder.append("0123456789");
+        }
+        bigDocBuilder.append("\">big</p>");
+        final String bigDoc = bigDocBuilder.toString();
+
+        final MarkupParser parser = new MarkupParser(ParseConfiguration.htmlConfiguration(), 2, 1024);
+
+        assertEquals(doc, parseReaderToOutput(parser, doc));
+        BufferPoolStatistics stats = parser.getBufferPoolStatistics();
+        assertEquals(0L, stats.getHits());
+        assertEquals(1L, stats.getMisses());
+        assertEquals(0L, stats.getGrowths());
+        assertEquals(1024L, stats.getRetainedSize());
+
+        assertEquals(doc, parseReaderToOutput(parser, doc));
+        stats = parser.getBufferPoolStatistics();
+        assertEquals(1L, stats.getHits());
+        assertEquals(1L, stats.getMisses());
+
+        // The structure does not fit, so the buffer will grow (1024 -> 2048 -> ... -> 32768)
+        assertEquals(bigDoc, parseReaderToOutput(parser, bigDoc));
+        stats = parser.getBufferPoolStatistics();
+        assertEquals(5L, stats.getGrowths());
+        assertEquals(1024L + 2048L + 4096L + 8192L + 16384L + 32768L, stats.getRetainedSize());
+
+        // Grown buffers have been retained, so they can be reused
+        final long hitsBefore = stats.getHits();
+        assertEquals(bigDoc, parseReaderToOutput(parser, bigDoc));
+        stats = parser.getBufferPoolStatistics();
+        assertEquals(hitsBefore + 6L, stats.getHits());
+
+        // Growth capped by the maximum buffer size allocates exactly that size, which is not retained
+        final ParseConfiguration cappedConfig = ParseConfiguration.htmlConfiguration();
+        cappedConfig.setMaxBufferSize(5000);
+        final MarkupParser cappedParser = new MarkupParser(cappedConfig, 2, 1024);
+        final String cappedDoc = bigDoc.substring(0, 4500) + "\">big</p>";
+        assertEquals(cappedDoc, parseReaderToOutput(cappedParser, cappedDoc));
+        stats = cappedParser.getBufferPoolStatistics();
+        assertEquals(3L, stats.getGrowths());
+        assertEquals(1024L + 2048L + 4096L, stats.getRetainedSize());
+        assertEquals(cappedDoc, parseReaderToOutput(cappedParser, cappedDoc));
+        stats = cappedParser.getBufferPoolStatistics();
+        assertEquals(3L, stats.getHits());
+        assertEquals(1024L + 2048L + 4096L, stats.getRetainedSize());
+        assertEquals(5000, cappedParser.allocateBuffer(5000).length);
+        final IncrementalMarkupParser cappedIncrementalParser =
+                cappedParser.createIncrementalParser(new OutputMarkupHandler(new StringWriter()));
+        final char[] cappedDocChars = cappedDoc.toCharArray();
+        cappedIncrementalParser.feed(cappedDocChars, 0, 4500);
+        try {
+            cappedIncrementalParser.feed(cappedDocChars, 0, 501);
+            fail();
+        } catch (final ParseLimitExceededException e) {
+            assertEquals(ParseLimitExceededException.Limit.MAX_BUFFER_SIZE, e.getLimit());
+        }
+
+        // No buffers are retained if the maximum retained size does not allow it
+        final MarkupParser noRetainParser = new MarkupParser(ParseConfiguration.htmlConfiguration(), 2, 1024, 1000L);
+        assertEquals(doc, parseReaderToOutput(noRetainParser, doc));
+        assertEquals(doc, parseReaderToOutput(noRetainParser, doc));
+        stats = noRetainParser.getBufferPoolStatistics();
+        assertEquals(0L, stats.getHits());
+        assertEquals(2L, stats.getMisses());
+        assertEquals(0L, stats.getRetainedSize());
+
+        // Concurrent use of the same parser
+        final MarkupParser sharedParser = new MarkupParser(ParseConfiguration.htmlConfiguration(), 4, 1024);
+        final Thread[] threads = new Thread[8];
+        final Throwable[] errors = new Throwable[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int threadIndex = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 50; j++) {
+                            final String input = (j % 10 == 0 ? bigDoc : doc);
+                            assertEquals(input, parseReaderToOutput(sharedParser, input));
+                        }
+                    } catch (final Throwable t) {
+                        errors[threadIndex] = t;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            assertNull(errors[i]);
+        }
+        stats = sharedParser.getBufferPoolStatistics();
+        assertEquals(8L * (50L + 5L * 5L), stats.getHits() + stats.getMisses());
+        assertTrue(stats.getRetainedSize() <= MarkupParser.DEFAULT_POOL_MAX_RETAINED_SIZE);
+
+    }
+
+
+    private static String parseReaderToOutput(final MarkupParser parser, final String input) throws ParseException {
+        final StringWriter sw = new StringWriter();
+        parser.parse(new CharArrayReader(input.toCharArray()), new OutputMarkupHandler(sw));
+        return sw.toString();
+    }
+
+
+    public void testResumableScanning() throws Exception {
+
+        // Structures (and texts) containing chars that affect the scan of their ends (quotes, '>', newlines), so
+        // that these have to be correctly resumed when the structures span several buffer refills.
+        final String[] docs = new String[] {
+                "<svg a=\"x > 'y'\"\n b='\"z\" > w' c=\"d\">text\n\n<!-- a > b -- > c\n -->\n" +
+                        "<![CDATA[ x > ]] > y ]]><?pi a > b ?></svg>",
+                "<?xml version=\"1.0\"?>\n<a>\n<b c=\"data:image/png;base64,AAAA>BBBB\n'CCCC\"/>\n</a  \n>",
+                "Some long text\nwithout any structures at all\n, ending at the end of the document\n",
+                "<p title=\"unclosed quotes are OK ' ' '\">Hello</p\n>",
+                "<!DOCTYPE html>\n<?xml-stylesheet href=\"a.css\"?><html>text</html>"
+        };
+
+        for (final String doc : docs) {
+            for (int bufferSize = 1; bufferSize <= doc.length() + 1; bufferSize++) {
+                testDoc(doc, null, null, bufferSize, ParseConfiguration.xmlConfiguration());
+                testDoc(doc, null, null, bufferSize, ParseConfiguration.htmlConfiguration());
+            }
+        }
+
+    }
+
+
+    public void testScanLocations() throws Exception {
+
+        // Long texts and attribute values mixing the chars the scans look for (newlines, quotes, '<', '>') with
+        // other chars, checking the locations computed for the elements that follow them
+        final StringBuilder docBuilder = new StringBuilder();
+        docBuilder.append("<root>");
+        for (int i = 0; i < 50; i++) {
+            docBuilder.append("Some text, with 12.345 numbers; and symbols! ~ {[|]} ");
+            if (i % 3 == 0) {
+                docBuilder.append("\n");
+            }
+            if (i % 5 == 0) {
+                docBuilder.append("\n\n   ");
+            }
+            docBuilder.append("<e").append(i).append(" a=\"x > 'y'\n z\" b='\"w\" > v'>");
+            docBuilder.append("text with no newlines at all = \"quoted\" 'apos'");
+            docBuilder.append("</e").append(i).append(i % 4 == 0 ? "\n>" : ">");
+        }
+        docBuilder.append("\n</root>");
+        final String doc = docBuilder.toString();
+
+        for (final ParseConfiguration config :
+                new ParseConfiguration[] { ParseConfiguration.xmlConfiguration(), ParseConfiguration.htmlConfiguration() }) {
+
+            final TraceBuilderMarkupHandler traceHandler = new TraceBuilderMarkupHandler();
+            new MarkupParser(config).parse(doc, traceHandler);
+            final String trace = traceToString(traceHandler);
+
+            for (int i = 0; i < 50; i++) {
+                final int pos = doc.indexOf("<e" + i + " ");
+                final int line = 1 + doc.substring(0, pos).replaceAll("[^\\n]", "").length();
+                final int col = pos - doc.lastIndexOf('\n', pos - 1);
+                assertTrue(trace.contains("OES(e" + i + "){" + line + "," + col + "}"));
+            }
+
+        }
+
+    }
+
+
+    public void testLazyLocations() throws Exception {
+
+        final String doc =
+                "<?xml version=\"1.0\"?>\n<!-- a\n comment -->\n<root>\n  <a b=\"1\"\n     c='2'>text\n\nmore text</a>" +
+                "<![CDATA[ x\n y ]]>  <b/>\n<script>var a = 1 < 2;\n</script> < not a tag\n<c\n>end</c></root>\n";
+
+        for (final ParseConfiguration config :
+                new ParseConfiguration[] { ParseConfiguration.xmlConfiguration(), ParseConfiguration.htmlConfiguration() }) {
+
+            final ParseConfiguration lazyConfig = config.clone();
+            lazyConfig.setLocationTracking(ParseConfiguration.LocationTracking.LAZY);
+
+            final EventLocationHandler eagerHandler = new EventLocationHandler(true);
+            new MarkupParser(config).parse(doc, eagerHandler);
+            final EventLocationHandler lazyHandler = new EventLocationHandler(false);
+            new MarkupParser(lazyConfig).parse(doc, lazyHandler);
+
+            assertTrue(eagerHandler.locations.toString().contains("OES(c){12,1}"));
+            assertEquals(eagerHandler.locations.toString(), lazyHandler.locations.toString());
+
+            // Contents are not affected
+            final StringWriter writer = new StringWriter();
+            new MarkupParser(lazyConfig).parse(doc.toCharArray(), new OutputMarkupHandler(writer));
+            assertEquals(doc, writer.toString());
+
+        }
+
+        // Exceptions are reported at the same locations
+        final ParseConfiguration balancedConfig = ParseConfiguration.xmlConfiguration();
+        balancedConfig.setElementBalancing(ParseConfiguration.ElementBalancing.REQUIRE_BALANCED);
+        final ParseConfiguration limitedConfig = ParseConfiguration.xmlConfiguration();
+        limitedConfig.setMaxAttributesPerElement(2);
+        final Object[][] errors = new Object[][] {
+                { balancedConfig, "<root>\n  <a>text\n</b>\n</root>" },
+                { limitedConfig, "<root>\n  <a>text</a><b\n  c=\"1\" d=\"2\"\n   e=\"3\"/>\n</root>" },
+                { limitedConfig, "<root>\n  <a>text</a>\n  <b c=\"1\" d=\"2\" e=\"3\"/>\n</root>" },
+                { ParseConfiguration.xmlConfiguration(), "<root>\n  <a>text</a>\n  <b c=\"1\"\n" }
+        };
+        for (final Object[] error : errors) {
+            final ParseConfiguration config = (ParseConfiguration) error[0];
+            final ParseConfiguration lazyConfig = config.clone();
+            lazyConfig.setLocationTracking(ParseConfiguration.LocationTracking.LAZY);
+            final ParseException eagerException = parseForException(new MarkupParser(config), (String) error[1]);
+            final ParseException lazyException = parseForException(new MarkupParser(lazyConfig), (String) error[1]);
+            assertEquals(eagerException.getClass(), lazyException.getClass());
+            assertEquals(eagerException.getMessage(), lazyException.getMessage());
+            assertEquals(eagerException.getLine(), lazyException.getLine());
+            assertEquals(eagerException.getCol(), lazyException.getCol());
+        }
+
+    }
+
+
+    private static ParseException parseForException(final MarkupParser parser, final String input) {
+        try {
+            parser.parse(input, new TraceBuilderMarkupHandler());
+        } catch (final ParseException e) {
+            return e;
+        }
+        fail("Exception expected for: " + input);
+        return null;
+    }
+
+
+    private static final class EventLocationHandler extends AbstractMarkupHandler {
+
+        private final boolean checkReported;
+        private final StringBuilder locations = new StringBuilder();
+        private ParseStatus status;
+
+        EventLocationHandler(final boolean checkReported) {
+            super();
+            this.checkReported = checkReported;
+        }
+
+        @Override
+        public void setParseStatus(final ParseStatus status) {
+            this.status = status;
+        }
+
+        private void location(final String type, final char[] buffer, final int offset, final int len,
+                              final int line, final int col) {
+            if (this.checkReported) {
+                assertEquals(line, this.status.getEventLine());
+                assertEquals(col, this.status.getEventCol());
+            } else {
+                // Lazily tracked locations are reported as unknown
+                assertEquals(-1, line);
+                assertEquals(-1, col);
+            }
+            this.locations.append(type).append('(').append(buffer, offset, len).append(')');
+            this.locations.append('{').append(this.status.getEventLine()).append(',');
+            this.locations.append(this.status.getEventCol()).append('}');
+        }
+
+        @Override
+        public void handleText(final char[] buffer, final int offset, final int len, final int line, final int col) {
+            location("T", buffer, offset, len, line, col);
+        }
+
+        @Override
+        public void handleOpenElementStart(
+                final char[] buffer, final int nameOffset, final int nameLen, final int line, final int col) {
+            location("OES", buffer, nameOffset, nameLen, line, col);
+        }
+
+        @Override
+        public void handleCloseElementStart(
+                final char[] buffer, final int nameOffset, final int nameLen, final int line, final int col) {
+            location("CES", buffer, nameOffset, nameLen, line, col);
+        }
+
+        @Override
+        public void handleComment(
+                final char[] buffer, final int contentOffset, final int contentLen,
+                final int outerOffset, final int outerLen, final int line, final int col) {
+            location("C", buffer, contentOffset, contentLen, line, col);
+        }
+
+        @Override
+        public void handleCDATASection(
+                final char[] buffer, final int contentOffset, final int contentLen,
+                final int outerOffset, final int outerLen, final int line, final int col) {
+            location("CD", buffer, contentOffset, contentLen, line, col);
+        }
+
+    }
+
+
+    public void testStopParsing() throws Exception {
+
+        final String head =
+                "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>The title</title>";
+        final StringBuilder docBuilder = new StringBuilder(head);
+        docBuilder.append("\n<link rel=\"stylesheet\" href=\"a.css\">\n</head>\n<body>\n");
+        for (int i = 0; i < 5000; i++) {
+            docBuilder.append("<div class=\"item\"><p>Item ").append(i).append("</p><title>x</title></div>\n");
+        }
+        docBuilder.append("</body>\n</html>\n");
+        final String doc = docBuilder.toString();
+
+        final ParseConfiguration htmlConfig = ParseConfiguration.htmlConfiguration();
+        final MarkupParser htmlParser = new MarkupParser(htmlConfig);
+
+        // Stopping after the title should produce the same events as a document ending right after it
+        final TraceBuilderMarkupHandler headTrace = new TraceBuilderMarkupHandler();
+        htmlParser.parse(head, headTrace);
+        final String expected = traceToString(headTrace);
+        assertTrue(expected.contains("ACES(head)"));
+
+        final TraceBuilderMarkupHandler readerTrace = new TraceBuilderMarkupHandler();
+        final int[] charsRead = new int[1];
+        final Reader reader = new StringReader(doc) {
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                final int read = super.read(cbuf, off, len);
+                charsRead[0] += Math.max(read, 0);
+                return read;
+            }
+        };
+        htmlParser.parse(reader, new StoppingMarkupHandler("title", readerTrace));
+        assertEquals(expected, traceToString(readerTrace));
+        assertTrue(charsRead[0] < doc.length() / 10);
+
+        final TraceBuilderMarkupHandler charsTrace = new TraceBuilderMarkupHandler();
+        htmlParser.parse(doc.toCharArray(), new StoppingMarkupHandler("title", charsTrace));
+        assertEquals(expected, traceToString(charsTrace));
+
+        final TraceBuilderMarkupHandler incrementalTrace = new TraceBuilderMarkupHandler();
+        final IncrementalMarkupParser incrementalParser =
+                htmlParser.createIncrementalParser(new StoppingMarkupHandler("title", incrementalTrace));
+        final char[] docChars = doc.toCharArray();
+        for (int i = 0; i < docChars.length; i += 50) {
+            incrementalParser.feed(docChars, i, Math.min(50, docChars.length - i));
+        }
+        incrementalParser.finish();
+        assertEquals(expected, traceToString(incrementalTrace));
+
+        // Unclosed elements are not an error if parsing was stopped
+        final ParseConfiguration balancedConfig = ParseConfiguration.xmlConfiguration();
+        balancedConfig.setElementBalancing(ParseConfiguration.ElementBalancing.REQUIRE_BALANCED);
+        final TraceBuilderMarkupHandler balancedTrace = new TraceBuilderMarkupHandler();
+        new MarkupParser(balancedConfig).parse(
+                "<root>\n<a>text</a>\n<b>text</b>\n</root>", new StoppingMarkupHandler("a", balancedTrace));
+        assertFalse(traceToString(balancedTrace).contains("(b)"));
+
+        // Parallel parsing also stops at the same event
+        final ParseConfiguration xmlConfig = ParseConfiguration.xmlConfiguration();
+        xmlConfig.setElementBalancing(ParseConfiguration.ElementBalancing.AUTO_CLOSE);
+        final MarkupParser xmlParser = new MarkupParser(xmlConfig);
+        final StringBuilder xmlBuilder = new StringBuilder("<catalog>\n");
+        for (int i = 0; i < 200; i++) {
+            xmlBuilder.append("  <product id=\"").append(i).append("\"><name>Product ").append(i);
+            xmlBuilder.append(i == 120 ? "<mark>last</mark>" : "").append("</name></product>\n");
+        }
+        xmlBuilder.append("</catalog>\n");
+        final String xml = xmlBuilder.toString();
+        final String xmlHead = xml.substring(0, xml.indexOf("</mark>") + "</mark>".length());
+        final TraceBuilderMarkupHandler xmlHeadTrace = new TraceBuilderMarkupHandler();
+        xmlParser.parse(xmlHead, xmlHeadTrace);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (final int parallelism : new int[] { 2, 5, 16 }) {
+                final TraceBuilderMarkupHandler parallelTrace = new TraceBuilderMarkupHandler();
+                xmlParser.parseInParallel(
+                        xml.toCharArray(), 0, xml.length(),
+                        new StoppingMarkupHandler("mark", parallelTrace), executor, parallelism, 16);
+                assertEquals(traceToString(xmlHeadTrace), traceToString(parallelTrace));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+
+    private static final class StoppingMarkupHandler extends AbstractChainedMarkupHandler {
+
+        private final String stopAfterElementName;
+        private ParseStatus status;
+
+        StoppingMarkupHandler(final String stopAfterElementName, final IMarkupHandler next) {
+            super(next);
+            this.stopAfterElementName = stopAfterElementName;
+        }
+
+        @Override
+        public void setParseStatus(final ParseStatus status) {
+            this.status = status;
+            super.setParseStatus(status);
+        }
+
+        @Override
+        public void handleCloseElementEnd(
+                final char[] buffer, final int nameOffset, final int nameLen, final int line, final int col)
+                throws ParseException {
+            getNext().handleCloseElementEnd(buffer, nameOffset, nameLen, line, col);
+            if (this.stopAfterElementName.equals(new String(buffer, nameOffset, nameLen))) {
+                this.status.stopParsing();
+            }
+        }
+
+    }
+
+
+    public void testSkipElementContents() throws Exception {
+
+        final String xml =
+                "<?xml version=\"1.0\"?>\n<root>\n  <keep a=\"1\">text</keep>\n" +
+                "  <skipme id=\"x\" title=\"a > b\">\n" +
+                "    <skipme>nested <b/> </skipme>\n" +
+                "    <!-- </skipme> in comment -->\n" +
+                "    <![CDATA[ </skipme> in cdata ]]>\n" +
+                "    <?pi </skipme> ?>\n" +
+                "    a < b\n" +
+                "    <other attr='</skipme>'/>\n" +
+                "    <skipmeToo>x</skipmeToo>\n" +
+                "  </skipme>\n  <after>text</after>\n</root>";
+
+        final MarkupParser xmlParser = new MarkupParser(ParseConfiguration.xmlConfiguration());
+
+        final TraceBuilderMarkupHandler fullTrace = new TraceBuilderMarkupHandler();
+        xmlParser.parse(xml, fullTrace);
+        final String full = traceToString(fullTrace);
+        final int skipStart = full.indexOf('}', full.indexOf("OEE(skipme)")) + 1;
+        final String expected = full.substring(0, skipStart) + full.substring(full.lastIndexOf("CES(skipme)"));
+        assertTrue(expected.contains("OES(after)"));
+        assertFalse(expected.contains("skipmeToo"));
+
+        final TraceBuilderMarkupHandler charsTrace = new TraceBuilderMarkupHandler();
+        xmlParser.parse(xml, new SkippingMarkupHandler("skipme", charsTrace));
+        assertEquals(expected, traceToString(charsTrace));
+
+        // Content might end at any point in the middle of the skipped contents
+        for (int bufferSize = 1; bufferSize < 40; bufferSize++) {
+            final TraceBuilderMarkupHandler readerTrace = new TraceBuilderMarkupHandler();
+            new MarkupParser(ParseConfiguration.xmlConfiguration(), 2, bufferSize).parse(
+                    new StringReader(xml), new SkippingMarkupHandler("skipme", readerTrace));
+            assertEquals(expected, traceToString(readerTrace));
+        }
+
+        final TraceBuilderMarkupHandler incrementalTrace = new TraceBuilderMarkupHandler();
+        final IncrementalMarkupParser incrementalParser =
+                xmlParser.createIncrementalParser(new SkippingMarkupHandler("skipme", incrementalTrace));
+        final char[] xmlChars = xml.toCharArray();
+        for (int i = 0; i < xmlChars.length; i++) {
+            incrementalParser.feed(xmlChars, i, 1);
+        }
+        incrementalParser.finish();
+        assertEquals(expected, traceToString(incrementalTrace));
+
+        final ParseConfiguration lazyConfig = ParseConfiguration.xmlConfiguration();
+        lazyConfig.setLocationTracking(ParseConfiguration.LocationTracking.LAZY);
+        final MarkupParser lazyParser = new MarkupParser(lazyConfig);
+        final TraceBuilderMarkupHandler lazyFullTrace = new TraceBuilderMarkupHandler();
+        lazyParser.parse(xml.toCharArray(), lazyFullTrace);
+        final String lazyFull = traceToString(lazyFullTrace);
+        final TraceBuilderMarkupHandler lazyTrace = new TraceBuilderMarkupHandler();
+        lazyParser.parse(xml.toCharArray(), new SkippingMarkupHandler("skipme", lazyTrace));
+        assertEquals(
+                lazyFull.substring(0, lazyFull.indexOf('}', lazyFull.indexOf("OEE(skipme)")) + 1) +
+                lazyFull.substring(lazyFull.lastIndexOf("CES(skipme)")),
+                traceToString(lazyTrace));
+
+        // Skipped contents are not output either
+        final StringWriter writer = new StringWriter();
+        xmlParser.parse(xml, new SkippingMarkupHandler("skipme", new OutputMarkupHandler(writer)));
+        assertEquals(
+                xml.substring(0, xml.indexOf("b\">") + 3) + xml.substring(xml.lastIndexOf("</skipme>")),
+                writer.toString());
+
+        // HTML: elements with CDATA bodies, case-insensitive names
+        final String html =
+                "<div id=\"a\"><DIV>one<script>if (a < b) { x = \"</div>\"; }</script></div>" +
+                "<div>two</div></Div><p>after</p><ul><li>1<li>2</ul>";
+        final MarkupParser htmlParser = new MarkupParser(ParseConfiguration.htmlConfiguration());
+        final TraceBuilderMarkupHandler htmlFullTrace = new TraceBuilderMarkupHandler();
+        htmlParser.parse(html, htmlFullTrace);
+        final String htmlFull = traceToString(htmlFullTrace);
+        final int htmlSkipStart = htmlFull.indexOf('}', htmlFull.indexOf("OEE(div)")) + 1;
+        final String htmlExpected =
+                htmlFull.substring(0, htmlSkipStart) + htmlFull.substring(htmlFull.indexOf("CES(Div)"));
+        for (int bufferSize = 1; bufferSize < 40; bufferSize++) {
+            final TraceBuilderMarkupHandler htmlTrace = new TraceBuilderMarkupHandler();
+            new MarkupParser(ParseConfiguration.htmlConfiguration(), 2, bufferSize).parse(
+                    new StringReader(html), new SkippingMarkupHandler("div", htmlTrace));
+            assertEquals(htmlExpected, traceToString(htmlTrace));
+        }
+
+        final TraceBuilderMarkupHandler scriptTrace = new TraceBuilderMarkupHandler();
+        htmlParser.parse(html, new SkippingMarkupHandler("script", scriptTrace));
+        final String scriptSkipStart = htmlFull.substring(0, htmlFull.indexOf('}', htmlFull.indexOf("OEE(script)")) + 1);
+        assertEquals(
+                scriptSkipStart + htmlFull.substring(htmlFull.indexOf("CES(script)")), traceToString(scriptTrace));
+
+        // Skipped elements with CDATA bodies might span several buffers, and locations of the events after them
+        // must still be right
+        final StringBuilder scriptBuilder = new StringBuilder("<div>\n<p>before</p>\n<script>\n");
+        for (int i = 0; i < 50; i++) {
+            scriptBuilder.append("  if (a < b) { x = \"</div>\"; }\n");
+        }
+        scriptBuilder.append("</script>\n<p>after</p>\n</div>");
+        final String longScript = scriptBuilder.toString();
+        final TraceBuilderMarkupHandler longScriptFullTrace = new TraceBuilderMarkupHandler();
+        htmlParser.parse(longScript, longScriptFullTrace);
+        final String longScriptFull = traceToString(longScriptFullTrace);
+        final String longScriptExpected =
+                longScriptFull.substring(0, longScriptFull.indexOf('}', longScriptFull.indexOf("OEE(script)")) + 1) +
+                longScriptFull.substring(longScriptFull.indexOf("CES(script)"));
+        assertTrue(longScriptExpected.contains("CES(script){54,1}"));
+        assertTrue(longScriptExpected.contains("OES(p){55,1}"));
+        for (final int bufferSize : new int[] { 16, 37, 64, 100, 1000 }) {
+            final TraceBuilderMarkupHandler longScriptTrace = new TraceBuilderMarkupHandler();
+            new MarkupParser(ParseConfiguration.htmlConfiguration(), 2, bufferSize).parse(
+                    new StringReader(longScript), new SkippingMarkupHandler("script", longScriptTrace));
+            assertEquals(longScriptExpected, traceToString(longScriptTrace));
+        }
+
+        // Elements which close tag can be omitted cannot be skipped
+        final TraceBuilderMarkupHandler liTrace = new TraceBuilderMarkupHandler();
+        htmlParser.parse(html, new SkippingMarkupHandler("li", liTrace));
+        assertEquals(htmlFull, traceToString(liTrace));
+
+    }
+
+
+    private static final class SkippingMarkupHandler extends AbstractChainedMarkupHandler {
+
+        private final String skippedElementName;
+        private ParseStatus status;
+
+        SkippingMarkupHandler(final String skippedElementName, final IMarkupHandler next) {
+            super(next);
+            this.skippedElementName = skippedElementName;
+        }
+
+        @Override
+        public void setParseStatus(final ParseStatus status) {
+            this.status = status;
+            super.setParseStatus(status);
+        }
+
+        @Override
+        public void handleOpenElementEnd(
+                final char[] buffer, final int nameOffset, final int nameLen, final int line, final int col)
+                throws ParseException {
+            getNext().handleOpenElementEnd(buffer, nameOffset, nameLen, line, col);
+            if (this.skippedElementName.equalsIgnoreCase(new String(buffer, nameOffset, nameLen))) {
+                this.status.skipElementContents();
+            }
+        }
+
+    }
+
+
+    public void testSplitCommentsAndCDATASections() throws Exception {
+
+        // Contents including chars of the closing sequences, so that these can end up at the end of any buffer
+        final StringBuilder commentBuilder = new StringBuilder();
+        final StringBuilder cdataBuilder = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            commentBuilder.append(" a - b -- c > d ->\n");
+            cdataBuilder.append(" a ] b ]] c > d ]>\n");
+        }
+        final String comment = commentBuilder.toString();
+        final String cdata = cdataBuilder.toString();
+        final String doc =
+                "<div>\n<!--" + comment + "--><p>x</p>\n<![CDATA[" + cdata + "]]><p>y</p><!---->" +
+                "<![CDATA[]]></div>";
+
+        ParseConfiguration config = ParseConfiguration.xmlConfiguration();
+        config.setCommentAndCDATASplittable(true);
+        config.setMaxBufferSize(256);
+        MarkupParser parser = new MarkupParser(config, 2, 64);
+
+        assertEquals(doc, parseReaderToOutput(parser, doc));
+
+        final char[] docChars = doc.toCharArray();
+        for (int chunkSize = 1; chunkSize <= 40; chunkSize++) {
+            final StringWriter sw = new StringWriter();
+            final IncrementalMarkupParser incrementalParser = parser.createIncrementalParser(new OutputMarkupHandler(sw));
+            for (int i = 0; i < docChars.length; i += chunkSize) {
+                incrementalParser.feed(docChars, i, Math.min(chunkSize, docChars.length - i));
+            }
+            incrementalParser.finish();
+            assertEquals(doc, sw.toString());
+        }
+
+        // Chunks can be joined, and do not affect the locations of the rest of the events
+        StructureChunkHandler chunkHandler = new StructureChunkHandler();
+        parser.parse(new CharArrayReader(docChars), chunkHandler);
+        assertTrue(chunkHandler.comments > 2);
+        assertTrue(chunkHandler.cdataSections > 2);
+        assertEquals("<!--" + comment + "--><!---->", chunkHandler.commentOuter.toString());
+        assertEquals(comment, chunkHandler.commentContent.toString());
+        assertEquals("<![CDATA[" + cdata + "]]><![CDATA[]]>", chunkHandler.cdataOuter.toString());
+        assertEquals(cdata, chunkHandler.cdataContent.toString());
+        assertEquals("div{1,1}p{502,4}p{1003,4}", chunkHandler.elements.toString());
+
+        // Documents entirely in memory need no chunks
+        chunkHandler = new StructureChunkHandler();
+        parser.parse(doc, chunkHandler);
+        assertEquals(2, chunkHandler.comments);
+        assertEquals(2, chunkHandler.cdataSections);
+
+        // Cloned configurations keep comments and CDATA sections splittable
+        final ParseConfiguration clonedConfig = config.clone();
+        assertTrue(clonedConfig.isCommentAndCDATASplittable());
+        chunkHandler = new StructureChunkHandler();
+        new MarkupParser(clonedConfig, 2, 64).parse(new CharArrayReader(docChars), chunkHandler);
+        assertTrue(chunkHandler.comments > 2);
+        assertTrue(chunkHandler.cdataSections > 2);
+        assertEquals(comment, chunkHandler.commentContent.toString());
+
+        try {
+            parseReaderToOutput(parser, "<div><!--" + comment);
+            fail();
+        } catch (final ParseException e) {
+            assertTrue(e.getMessage().contains("comment is not closed"));
+        }
+
+        // Fragments scanned in parallel might end (and start) inside comments and CDATA sections
+        final StringBuilder parallelDocBuilder = new StringBuilder("<root>");
+        for (int i = 0; i < 200; i++) {
+            parallelDocBuilder.append("<a>").append(i).append("</a><!-- <b>y</b> --><![CDATA[ <c>z</c> ]]>\n");
+        }
+        parallelDocBuilder.append("</root>");
+        final char[] parallelDoc = parallelDocBuilder.toString().toCharArray();
+        final ParseConfiguration parallelConfig = ParseConfiguration.xmlConfiguration();
+        parallelConfig.setCommentAndCDATASplittable(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (final int parallelism : new int[] { 2, 7, 64 }) {
+                final StringWriter writer = new StringWriter();
+                new MarkupParser(parallelConfig).parseInParallel(
+                        parallelDoc, 0, parallelDoc.length, new OutputMarkupHandler(writer), executor, parallelism, 16);
+                assertEquals(new String(parallelDoc), writer.toString());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Maximum structure length applies to the whole structure
+        config.setMaxStructureLength(1000);
+        parser = new MarkupParser(config, 2, 64);
+        try {
+            parseReaderToOutput(parser, doc);
+            fail();
+        } catch (final ParseLimitExceededException e) {
+            assertEquals(ParseLimitExceededException.Limit.MAX_STRUCTURE_LENGTH, e.getLimit());
+        }
+
+        // Without splitting, buffers need to contain the whole structures
+        config = ParseConfiguration.xmlConfiguration();
+        config.setMaxBufferSize(256);
+        parser = new MarkupParser(config, 2, 64);
+        try {
+            parseReaderToOutput(parser, doc);
+            fail();
+        } catch (final ParseLimitExceededException e) {
+            assertEquals(ParseLimitExceededException.Limit.MAX_BUFFER_SIZE, e.getLimit());
+        }
+
+    }
+
+
+    private static final class StructureChunkHandler extends AbstractMarkupHandler {
+
+        int comments = 0;
+        int cdataSections = 0;
+        final StringBuilder commentOuter = new StringBuilder();
+        final StringBuilder commentContent = new StringBuilder();
+        final StringBuilder cdataOuter = new StringBuilder();
+        final StringBuilder cdataContent = new StringBuilder();
+        final StringBuilder elements = new StringBuilder();
+
+        @Override
+        public void handleComment(
+                final char[] buffer,
+                final int contentOffset, final int contentLen,
+                final int outerOffset, final int outerLen,
+                final int line, final int col) {
+            this.comments++;
+            this.commentOuter.append(buffer, outerOffset, outerLen);
+            this.commentContent.append(buffer, contentOffset, contentLen);
+        }
+
+        @Override
+        public void handleCDATASection(
+                final char[] buffer,
+                final int contentOffset, final int contentLen,
+                final int outerOffset, final int outerLen,
+                final int line, final int col) {
+            this.cdataSections++;
+            this.cdataOuter.append(buffer, outerOffset, outerLen);
+            this.cdataContent.append(buffer, contentOffset, contentLen);
+        }
+
+        @Override
+        public void handleOpenElementStart(
+                final char[] buffer, final int nameOffset, final int nameLen, final int line, final int col) {
+            this.elements.append(buffer, nameOffset, nameLen).append('{').append(line).append(',').append(col).append('}');
+        }
+
+    }
+
+
+    public void testResourceLimits() throws Exception {
+
+        final StringBuilder longTagBuilder = new StringBuilder("<p title=\"");
+        while (longTagBuilder.length() <= 2500) {
+            longTagBuilder.append("0123456789");
+        }
+        longTagBuilder.append("\">long</p>");
+        final String longTag = longTagBuilder.toString();
+
+        // Structure length
+        ParseConfiguration config = ParseConfiguration.htmlConfiguration();
+        config.setMaxStructureLength(100);
+        MarkupParser parser = new MarkupParser(config, 2, 1024);
+        assertEquals("<p title=\"a\">x</p><!-- c -->", parseToOutput(parser, "<p title=\"a\">x</p><!-- c -->"));
+        assertLimitExceeded(ParseLimitExceededException.Limit.MAX_STRUCTURE_LENGTH, parser, longTag, 1, 1);
+        assertLimitExceeded(ParseLimitExceededException.Limit.MAX_STRUCTURE_LENGTH, parser, "a\n<!--" + longTag, 2, 1);
+        try {
+            // Unfinished structures fail as soon as the limit is exceeded, before the end of the document is read
+            parseReaderToOutput(parser, "<p title=\"" + longTag);
+            fail();
+        } catch (final ParseLimitExceededException e) {
+            assertEquals(ParseLimitExceededException.Limit.MAX_STRUCTURE_LENGTH, e.getLimit());
+        }
+
+        // Buffer size
+        config = ParseConfiguration.htmlConfiguration();
+        config.setMaxBufferSize(3000);
+        parser = new MarkupParser(config, 2, 1024);
+        assertEquals(longTag, parseReaderToOutput(parser, longTag));
+        try {
+            parseReaderToOutput(parser, "<p title=\"" + longTag + longTag);
+            fail();
+        } catch (final ParseLimitExceededException e) {
+            assertEquals(ParseLimitExceededException.Limit.MAX_BUFFER_SIZE, e.getLimit());
+        }
+        final IncrementalMarkupParser incrementalParser = parser.createIncrementalParser(new OutputMarkupHandler(new StringWriter()));
+        final char[] longTagChars = longTag.toCharArray();
+        incrementalParser.feed(longTagChars, 0, 2000);
+        try {
+            incrementalParser.feed(longTagChars, 0, 2000);
+            fail();
+        } catch (final ParseLimitExceededException e) {
+            assertEquals(ParseLimitExceededException.Limit.MAX_BUFFER_SIZE, e.getLimit());
+        }
+
+        // Element depth (only checked when an element stack is needed)
+        config = ParseConfiguration.htmlConfiguration();
+        config.setMaxElementDepth(3);
+        parser = new MarkupParser(config);
+        assertEquals("<div><div><p>x</p></div></div>", parseToOutput(parser, "<div><div><p>x</p></div></div>"));
+        assertLimitExceeded(
+                ParseLimitExceededException.Limit.MAX_ELEMENT_DEPTH, parser, "<div>\n<div><div><div>x", 2, 11);
+        // Auto-opened elements (html, body) count too
+        config.setElementBalancing(ElementBalancing.AUTO_OPEN_CLOSE);
+        parser = new MarkupParser(config);
+        assertLimitExceeded(ParseLimitExceededException.Limit.MAX_ELEMENT_DEPTH, parser, "<div><p>x", 1, 6);
+
+        // Attributes per element
+        config = ParseConfiguration.xmlConfiguration();
+        config.setMaxAttributesPerElement(2);
+        parser = new MarkupParser(config);
+        assertEquals("<a b=\"1\" c=\"2\"><d e=\"3\"/></a>", parseToOutput(parser, "<a b=\"1\" c=\"2\"><d e=\"3\"/></a>"));
+        assertLimitExceeded(
+                ParseLimitExceededException.Limit.MAX_ATTRIBUTES_PER_ELEMENT, parser, "<a><d e=\"1\" f=\"2\" g=\"3\"/></a>", 1, 19);
+
+        try {
+            ParseConfiguration.htmlConfiguration().setMaxElementDepth(0);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // Expected
+        }
+
+    }
+
+
+    public void testBatchParsing() throws Exception {
+
+        final int documentCount = 200;
+        final List<MarkupSource> sources = new ArrayList<MarkupSource>();
+        final String[] documents = new String[documentCount];
+        for (int i = 0; i < documentCount; i++) {
+            documents[i] = "<?xml version=\"1.0\"?>\n<root id=\"" + i + "\"><item>" + i + "</item><!-- c --></root>";
+            switch (i % 4) {
+                case 0: sources.add(MarkupSource.forCharSequence(documents[i])); break;
+                case 1: sources.add(MarkupSource.forChars(documents[i].toCharArray())); break;
+                case 2: sources.add(MarkupSource.forReader(new StringReader(documents[i]))); break;
+                default: sources.add(MarkupSource.forBytes(documents[i].getBytes("UTF-8"), null)); break;
+            }
+        }
+        // Unbalanced: will fail, but should not affect the rest of the documents parsed by the same worker
+        sources.set(17, MarkupSource.forCharSequence("<root><item></root>"));
+
+        final StringWriter[] outputs = new StringWriter[documentCount];
+        final IMarkupHandlerFactory handlerFactory = new IMarkupHandlerFactory() {
+            public IMarkupHandler createHandler(final int documentIndex, final MarkupSource source) {
+                outputs[documentIndex] = new StringWriter();
+                return new OutputMarkupHandler(outputs[documentIndex]);
+            }
+        };
+
+        final MarkupParser parser = new MarkupParser(ParseConfiguration.xmlConfiguration(), 4, 1024);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+
+            final BatchParseResult result = parser.parseAll(sources, handlerFactory, executor, 4);
+            assertEquals(documentCount, result.getDocumentCount());
+            assertEquals(1, result.getFailedDocumentCount());
+            assertFalse(result.isSuccessful());
+            assertEquals(Integer.valueOf(17), result.getErrors().firstKey());
+            for (int i = 0; i < documentCount; i++) {
+                if (i != 17) {
+                    assertEquals(documents[i], outputs[i].toString());
+                }
+            }
+
+        } finally {
+            executor.shutdown();
+        }
+
+        // Workers rejected by the executor are run by the calling thread
+        final Executor rejectingExecutor = new Executor() {
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        };
+        final List<MarkupSource> htmlSources = new ArrayList<MarkupSource>();
+        htmlSources.add(MarkupSource.forCharSequence("<p>one"));
+        htmlSources.add(MarkupSource.forCharSequence("<div>two</div>"));
+        final BatchParseResult result =
+                new MarkupParser(ParseConfiguration.htmlConfiguration()).parseAll(
+                        htmlSources, handlerFactory, rejectingExecutor, 2);
+        assertTrue(result.isSuccessful());
+        assertEquals(2, result.getDocumentCount());
+        assertEquals("<p>one", outputs[0].toString());
+        assertEquals("<div>two</div>", outputs[1].toString());
+
+    }
+
+
+    public void testParallelParsing() throws Exception {
+
+        final StringBuilder docBuilder = new StringBuilder();
+        docBuilder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!DOCTYPE catalog>\n<catalog>\n");
+        for (int i = 0; i < 300; i++) {
+            docBuilder.append("  <product id=\"").append(i).append("\" note=\"a &gt; b\">\n");
+            docBuilder.append("    <name>Product ").append(i).append("</name><price/>\n");
+            if (i % 7 == 0) {
+                // Elements inside comments and CDATA sections might be taken as fragment starts
+                docBuilder.append("    <!-- <old><name>Old ").append(i).append("</name></old> -->\n");
+                docBuilder.append("    <![CDATA[ <x>").append(i).append("</x> ]]>\n");
+            }
+            if (i % 11 == 0) {
+                docBuilder.append("    <?pi <product>").append(i).append("</product> ?>\n");
+            }
+            docBuilder.append("  </product>\n");
+        }
+        docBuilder.append("</catalog>\n");
+        final char[] doc = docBuilder.toString().toCharArray();
+
+        final ParseConfiguration config = ParseConfiguration.xmlConfiguration();
+        final MarkupParser parser = new MarkupParser(config);
+
+        final TraceBuilderMarkupHandler sequentialTrace = new TraceBuilderMarkupHandler();
+        parser.parse(doc, sequentialTrace);
+        final String expected = traceToString(sequentialTrace);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+
+            for (final int parallelism : new int[] { 2, 3, 4, 16, 200 }) {
+                final TraceBuilderMarkupHandler parallelTrace = new TraceBuilderMarkupHandler();
+                parser.parseInParallel(doc, 0, doc.length, parallelTrace, executor, parallelism, 16);
+                assertEquals(expected, traceToString(parallelTrace));
+            }
+
+            final StringWriter writer = new StringWriter();
+            parser.parseInParallel(doc, 0, doc.length, new OutputMarkupHandler(writer), executor, 8, 16);
+            assertEquals(new String(doc), writer.toString());
+
+            // Errors are reported at the same point as in sequential parsing
+            final char[] badDoc = (new String(doc) + "<product>\n<name></product>").toCharArray();
+            String sequentialError = null;
+            try {
+                parser.parse(badDoc, new TraceBuilderMarkupHandler());
+            } catch (final ParseException e) {
+                sequentialError = e.getMessage();
+            }
+            assertNotNull(sequentialError);
+            try {
+                parser.parseInParallel(badDoc, 0, badDoc.length, new TraceBuilderMarkupHandler(), executor, 16, 16);
+                fail();
+            } catch (final ParseException e) {
+                assertEquals(sequentialError, e.getMessage());
+            }
+
+        } finally {
+            executor.shutdown();
+        }
+
+        // HTML is always parsed sequentially
+        final TraceBuilderMarkupHandler htmlTrace = new TraceBuilderMarkupHandler();
+        new MarkupParser(ParseConfiguration.htmlConfiguration()).parseInParallel(
+                "<div><script>var a = '<div>';</script></div>".toCharArray(), htmlTrace, Executors.newSingleThreadExecutor());
+
+    }
+
+
+    private static String traceToString(final TraceBuilderMarkupHandler traceHandler) {
+        final StringBuilder strBuilder = new StringBuilder();
+        for (final MarkupTraceEvent event : traceHandler.getTrace()) {
+            // Document start and end events include times
+            if (event.getEventType() != MarkupTraceEvent.EventType.DOCUMENT_START &&
+                    event.getEventType() != MarkupTraceEvent.EventType.DOCUMENT_END) {
+                strBuilder.append(event);
+            }
+        }
+        return strBuilder.toString();
+    }
+
+
+    public void testParseContext() throws Exception {
+
+        final String[] documents = new String[] {
+                "<?xml version=\"1.0\"?>\n<root a=\"1\" b=\"2\"><item>1</item></root>",
+                "<?xml version=\"1.0\"?>\n<root><item c=\"3\">2</item><!-- c --></root>",
+                "<root><item>3</item></root>"
+        };
+
+        final MarkupParser parser = new MarkupParser(ParseConfiguration.xmlConfiguration());
+        final ParseContext context = parser.createParseContext();
+        assertSame(parser, context.getParser());
+
+        // Each document gets a new handler
+        for (int i = 0; i < 3; i++) {
+            for (final String document : documents) {
+                final StringWriter writer = new StringWriter();
+                context.parse(document, new OutputMarkupHandler(writer));
+                assertEquals(document, writer.toString());
+            }
+        }
+
+        // Errors do not affect the next documents
+        try {
+            context.parse("<root><item></root>", new OutputMarkupHandler(new StringWriter()));
+            fail();
+        } catch (final ParseException e) {
+            // Expected
+        }
+        try {
+            context.parse("<root a=\"1\" a=\"2\"/>", new OutputMarkupHandler(new StringWriter()));
+            fail();
+        } catch (final ParseException e) {
+            // Expected
+        }
+
+        // In HTML mode, events reach the handler of each document both through the internal HTML handler
+        // and directly (those not affected by HTML rules, like texts)
+        final ParseContext htmlContext = new MarkupParser(ParseConfiguration.htmlConfiguration()).createParseContext();
+        final String htmlDocument = "<div>text<!-- c --><![CDATA[ d ]]><p>more text<br></div>";
+        for (int i = 0; i < 3; i++) {
+            final StringWriter htmlWriter = new StringWriter();
+            htmlContext.parse(htmlDocument, new OutputMarkupHandler(htmlWriter));
+            assertEquals(htmlDocument, htmlWriter.toString());
+            htmlContext.reset();
+        }
+
+        // The same handler is only set up once
+        final int[] setUps = new int[1];
+        final StringWriter writer = new StringWriter();
+        final IMarkupHandler handler = new AbstractChainedMarkupHandler(new OutputMarkupHandler(writer)) {
+            @Override
+            public void setParseConfiguration(final ParseConfiguration parseConfiguration) {
+                setUps[0]++;
+                super.setParseConfiguration(parseConfiguration);
+            }
+        };
+        final StringBuilder expected = new StringBuilder();
+        for (final String document : documents) {
+            context.parse(document.toCharArray(), handler);
+            expected.append(document);
+        }
+        context.parse(MarkupSource.forReader(new StringReader(documents[0])), handler);
+        expected.append(documents[0]);
+        assertEquals(expected.toString(), writer.toString());
+        assertEquals(1, setUps[0]);
+
+        context.reset();
+        context.parse(documents[2], handler);
+        assertEquals(2, setUps[0]);
+
+        // Locations tracked lazily are reported as unknown for all events, including those sent directly
+        final ParseConfiguration lazyConfig = ParseConfiguration.htmlConfiguration();
+        lazyConfig.setLocationTracking(ParseConfiguration.LocationTracking.LAZY);
+        final MarkupParser lazyParser = new MarkupParser(lazyConfig);
+        final String lazyDocument = "<div>\nhello<!--c--><![CDATA[d]]><p>more</div>";
+        final TraceBuilderMarkupHandler lazyTrace = new TraceBuilderMarkupHandler();
+        lazyParser.parse(lazyDocument, lazyTrace);
+        final String lazyExpected = traceToString(lazyTrace);
+        assertTrue(lazyExpected.contains("C(c){-1,-1}"));
+        final ParseContext lazyContext = lazyParser.createParseContext();
+        for (int i = 0; i < 2; i++) {
+            final TraceBuilderMarkupHandler lazyContextTrace = new TraceBuilderMarkupHandler();
+            lazyContext.parse(lazyDocument, lazyContextTrace);
+            assertEquals(lazyExpected, traceToString(lazyContextTrace));
+            lazyContext.reset();
+        }
+
+    }
+
+
+    private static void assertLimitExceeded(
+            final ParseLimitExceededException.Limit limit, final MarkupParser parser, final String input,
+            final int line, final int col) {
+        try {
+            parseToOutput(parser, input);
+            fail();
+        } catch (final ParseLimitExceededException e) {
+            assertEquals(limit, e.getLimit());
+            assertEquals(Integer.valueOf(line), e.getLine());
+            assertEquals(Integer.valueOf(col), e.getCol());
+        } catch (final ParseException e) {
+            fail(e.getMessage());
+        }
+    }
+
+
+    private static String parseBytesToOutput(final MarkupParser parser, final byte[] input, final Charset charset)
+            throws ParseException {
+
+        final StringWriter sw1 = new StringWriter();
+        parser.parse(input, charset, new OutputMarkupHandler(sw1));
+
+        // Streams returning only a few bytes at a time will force multi-byte chars to be split between reads
+        final StringWriter sw2 = new StringWriter();
+        parser.parse(
+                new ByteArrayInputStream(input) {
+                    @Override
+                    public synchronized int read(final byte[] b, final int off, final int len) {
+                        return super.read(b, off, Math.min(len, 7));
+                    }
+                }, charset, new OutputMarkupHandler(sw2));
+        assertEquals(sw1.toString(), sw2.toString());
+
+        return sw1.toString();
+
+    }
+
     
     
     static void testDocError(final String input, final String outputBreakDown, final String outputSimple, final int errorLine, final int errorCol, final ParseConfiguration parseConfiguration) {
@@ -1996,6 +3300,45 @@ static void testDoc(
             }
 
 
+            // TEST WITH TRACING HANDLER AND INCREMENTAL PARSER (FED IN CHUNKS OF BUFFER SIZE)
+            {
+
+                final ParseStatus status = new ParseStatus();
+                final TraceBuilderMarkupHandler traceHandler = new TraceBuilderMarkupHandler();
+                IMarkupHandler handler = new MarkupEventProcessorHandler(traceHandler);
+                handler.setParseStatus(status);
+                handler.setParseConfiguration(parseConfiguration);
+                final ParseSelection selection = new ParseSelection();
+                handler.setParseSelection(selection);
+
+                final IncrementalMarkupParser incrementalParser = new IncrementalMarkupParser(parser, handler, status);
+                final char[] chunk = new char[bufferSize];
+                for (int i = offset; i < offset + len; i += bufferSize) {
+                    final int chunkLen = Math.min(bufferSize, (offset + len) - i);
+                    System.arraycopy(input, i, chunk, 0, chunkLen);
+                    incrementalParser.feed(chunk, 0, chunkLen);
+                }
+                incrementalParser.finish();
+
+                final List<MarkupTraceEvent> trace = traceHandler.getTrace();
+                final StringBuilder strBuilder = new StringBuilder();
+                for (final MarkupTraceEvent event : trace) {
+                    if (event.getEventType().equals(MarkupTraceEvent.EventType.DOCUMENT_START)) {
+                        strBuilder.append("[");
+                    } else if (event.getEventType().equals(MarkupTraceEvent.EventType.DOCUMENT_END)) {
+                        strBuilder.append("]");
+                    } else {
+                        strBuilder.append(event);
+                    }
+                }
+
+                final String result = strBuilder.toString();
+                if (outputBreakDown != null) {
+                    assertEquals(outputBreakDown, result);
+                }
+            }
+
+
             // TEST WITH TRACING HANDLER AND NO READER
             {
 
@@ -0,0 +1,166 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.attoparser;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+
+/*
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+public class ParsingStructureStartUtilTest extends TestCase {
+
+    // Set by the build when the Java 17 versions of classes have been compiled into META-INF/versions/17
+    private static final String JAVA17_CLASSES_PROPERTY = "attoparser.java17.classes";
+
+    private static final char[] ALPHABET = "aaaaaaaaaa   \n\n>/\"=<".toCharArray();
+
+
+
+    public void testScalarScans() throws Exception {
+        checkScans(null);
+        assertFalse(ParsingStructureStartUtil.isVectorized());
+    }
+
+
+    public void testJava17Scans() throws Exception {
+
+        final String java17Classes = System.getProperty(JAVA17_CLASSES_PROPERTY);
+        if (java17Classes == null) {
+            // Not built on Java 17+, so there is no Java 17 version to test
+            return;
+        }
+
+        final File java17ClassesDir = new File(java17Classes);
+        assertTrue(new File(java17ClassesDir, "org/attoparser/ParsingStructureStartUtil.class").isFile());
+
+        // Loaded from the versioned directory by a loader that does not delegate to the application class
+        // loader, so that the Java 17 version is used instead of the Java 7 one in target/classes
+        final URLClassLoader loader =
+                new URLClassLoader(
+                        new URL[] { java17ClassesDir.toURI().toURL() },
+                        ClassLoader.getSystemClassLoader().getParent());
+        try {
+
+            final Class<?> java17Class = loader.loadClass(ParsingStructureStartUtil.class.getName());
+            assertNotSame(ParsingStructureStartUtil.class, java17Class);
+
+            final Method isVectorized = java17Class.getDeclaredMethod("isVectorized");
+            isVectorized.setAccessible(true);
+            // The build runs tests with the Vector API module added, so the vectorized scans must be in use
+            assertTrue(((Boolean) isVectorized.invoke(null)).booleanValue());
+
+            checkScans(java17Class);
+
+        } finally {
+            loader.close();
+        }
+
+    }
+
+
+
+
+    private static void checkScans(final Class<?> scanClass) throws Exception {
+
+        final Method locatorScan;
+        final Method scan;
+        if (scanClass != null) {
+            locatorScan =
+                    scanClass.getDeclaredMethod(
+                            "findNextStructureStart", char[].class, int.class, int.class, int[].class);
+            scan =
+                    scanClass.getDeclaredMethod(
+                            "findNextStructureStart", char[].class, int.class, int.class);
+            locatorScan.setAccessible(true);
+            scan.setAccessible(true);
+        } else {
+            locatorScan = null;
+            scan = null;
+        }
+
+        final Random random = new Random(2345678L);
+
+        for (int t = 0; t < 20000; t++) {
+
+            // Sizes around and above usual vector lengths, with structure starts sparse or dense
+            final char[] text = new char[random.nextInt(300)];
+            final int density = 1 + random.nextInt(200);
+            for (int i = 0; i < text.length; i++) {
+                text[i] =
+                        (random.nextInt(density) == 0 ? '<' : ALPHABET[random.nextInt(ALPHABET.length - 1)]);
+            }
+
+            final int offset = (text.length == 0 ? 0 : random.nextInt(text.length));
+            final int maxi = offset + random.nextInt(text.length - offset + 1);
+
+            final int[] expectedLocator = new int[] { 1 + random.nextInt(10), 1 + random.nextInt(10) };
+            final int[] locator = Arrays.copyOf(expectedLocator, 2);
+
+            final int expected = referenceScan(text, offset, maxi, expectedLocator);
+
+            final int result;
+            final int resultNoLocator;
+            if (scanClass == null) {
+                result = ParsingStructureStartUtil.findNextStructureStart(text, offset, maxi, locator);
+                resultNoLocator = ParsingStructureStartUtil.findNextStructureStart(text, offset, maxi);
+            } else {
+                result =
+                        ((Integer) locatorScan.invoke(
+                                null, text, Integer.valueOf(offset), Integer.valueOf(maxi), locator)).intValue();
+                resultNoLocator =
+                        ((Integer) scan.invoke(
+                                null, text, Integer.valueOf(offset), Integer.valueOf(maxi))).intValue();
+            }
+
+            final String input = new String(text, offset, maxi - offset);
+            assertEquals(input, expected, result);
+            assertEquals(input, expected, resultNoLocator);
+            assertEquals(input, expectedLocator[0], locator[0]);
+            assertEquals(input, expectedLocator[1], locator[1]);
+
+        }
+
+    }
+
+
+    /*
+     * Char-by-char reference: the locator ends pointing at the '<' found, or at the end of the range.
+     */
+    private static int referenceScan(final char[] text, final int offset, final int maxi, final int[] locator) {
+        for (int i = offset; i < maxi; i++) {
+            if (text[i] == '<') {
+                return i;
+            }
+            ParsingLocatorUtil.countChar(locator, text[i]);
+        }
+        return -1;
+    }
+
+}
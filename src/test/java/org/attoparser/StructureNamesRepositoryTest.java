@@ -20,6 +20,7 @@
 package org.attoparser;
 
 import junit.framework.TestCase;
+import org.attoparser.util.NameInternTable;
 
 
 /*
@@ -33,34 +34,59 @@ public class StructureNamesRepositoryTest extends TestCase {
 
     public void test() throws Exception {
 
-        final MarkupEventProcessorHandler.StructureNamesRepository structureNamesRepository = new MarkupEventProcessorHandler.StructureNamesRepository();
+        final NameInternTable structureNamesRepository = HtmlVocabulary.getNameInternTable();
 
 
         final char[][] structureNamesArr = new char[HtmlNames.ALL_STANDARD_ELEMENT_NAMES.size() * 2 + HtmlNames.ALL_STANDARD_ATTRIBUTE_NAMES.size() * 2][];
         int j = 0;
         for (final String elementName : HtmlNames.ALL_STANDARD_ELEMENT_NAMES) {
             structureNamesArr[j++] =
-                    structureNamesRepository.getStructureName(elementName.toCharArray(), 0, elementName.length());
+                    structureNamesRepository.internChars(elementName.toCharArray(), 0, elementName.length());
             structureNamesArr[j++] =
-                    structureNamesRepository.getStructureName(elementName.toUpperCase().toCharArray(), 0, elementName.length());
+                    structureNamesRepository.internChars(elementName.toUpperCase().toCharArray(), 0, elementName.length());
         }
         for (final String attributeName : HtmlNames.ALL_STANDARD_ATTRIBUTE_NAMES) {
             structureNamesArr[j++] =
-                    structureNamesRepository.getStructureName(attributeName.toCharArray(), 0, attributeName.length());
+                    structureNamesRepository.internChars(attributeName.toCharArray(), 0, attributeName.length());
             structureNamesArr[j++] =
-                    structureNamesRepository.getStructureName(attributeName.toUpperCase().toCharArray(), 0, attributeName.length());
+                    structureNamesRepository.internChars(attributeName.toUpperCase().toCharArray(), 0, attributeName.length());
+        }
+
+
+        // Lots of other names (as interned when parsing other documents) cannot evict standard names in any case
+        for (int i = 0; i < 100000; i++) {
+            final char[] otherName = ("x-other-" + i).toCharArray();
+            structureNamesRepository.internChars(otherName, 0, otherName.length);
         }
 
 
         for (int i = 0; i < 1000000; i++) {
             for (final char[] structureName : structureNamesArr) {
                 final char[] sn =
-                        structureNamesRepository.getStructureName(structureName, 0, structureName.length);
+                        structureNamesRepository.internChars(structureName, 0, structureName.length);
                 assertSame(structureName, sn);
             }
         }
 
 
+        // Mixed-case names are not fixed, but are interned as any other non-standard name
+        final String[] mixedCaseNames = new String[] { "Div", "tAbLe", "onClick", "Class", "DATA-Foo", "xmlns:Th" };
+        final char[][] mixedCaseNamesArr = new char[mixedCaseNames.length][];
+        for (int i = 0; i < mixedCaseNames.length; i++) {
+            mixedCaseNamesArr[i] =
+                    structureNamesRepository.internChars(mixedCaseNames[i].toCharArray(), 0, mixedCaseNames[i].length());
+            assertEquals(mixedCaseNames[i], new String(mixedCaseNamesArr[i]));
+            assertSame(
+                    structureNamesRepository.internString(mixedCaseNamesArr[i], 0, mixedCaseNamesArr[i].length),
+                    structureNamesRepository.internString(mixedCaseNames[i].toCharArray(), 0, mixedCaseNames[i].length()));
+        }
+        for (int i = 0; i < 1000; i++) {
+            for (final char[] structureName : mixedCaseNamesArr) {
+                assertSame(structureName, structureNamesRepository.internChars(structureName, 0, structureName.length));
+            }
+        }
+
+
 
     }
 
@@ -0,0 +1,213 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser.tape;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+import org.attoparser.AbstractMarkupHandler;
+import org.attoparser.MarkupParser;
+import org.attoparser.ParseException;
+import org.attoparser.ParseStatus;
+import org.attoparser.config.ParseConfiguration;
+import org.attoparser.output.OutputMarkupHandler;
+
+/*
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+public class AsyncMarkupHandlerTest extends TestCase {
+
+
+    public void testOutput() throws Exception {
+
+        final StringBuilder htmlBuilder = new StringBuilder();
+        final StringBuilder xmlBuilder = new StringBuilder();
+        htmlBuilder.append("<!DOCTYPE html>\n<html><body>");
+        xmlBuilder.append("<?xml version=\"1.0\"?>\n<root>");
+        for (int i = 0; i < 3000; i++) {
+            htmlBuilder.append("<div class=\"item\" id=\"i" + i + "\"><p>Item " + i + "<br>text<!-- c" + i + " --></div>\n");
+            xmlBuilder.append("<item id=\"i" + i + "\"><![CDATA[Item " + i + "]]><empty/></item>\n");
+        }
+        htmlBuilder.append("</body></html>");
+        xmlBuilder.append("</root>");
+        final String html = htmlBuilder.toString();
+        final String xml = xmlBuilder.toString();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+
+            assertEquals(html, output(ParseConfiguration.htmlConfiguration(), html, executor, 3));
+            assertEquals(xml, output(ParseConfiguration.xmlConfiguration(), xml, executor, 2));
+
+            // Executors running tasks in the calling thread should also work
+            final Executor callerExecutor = new Executor() {
+                public void execute(final Runnable command) {
+                    command.run();
+                }
+            };
+            assertEquals(html, output(ParseConfiguration.htmlConfiguration(), html, callerExecutor, 3));
+
+            // The same handler can be used for several documents
+            final MarkupParser parser = new MarkupParser(ParseConfiguration.htmlConfiguration());
+            final StringWriter writer = new StringWriter();
+            final AsyncMarkupHandler handler = new AsyncMarkupHandler(new OutputMarkupHandler(writer), executor);
+            parser.parse(new StringReader(html), handler);
+            parser.parse(html, handler);
+            assertEquals(html + html, writer.toString());
+
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+
+    public void testFailure() throws Exception {
+
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append("<p>text " + i + "</p>");
+        }
+        builder.append("<p>boom</p>");
+        for (int i = 0; i < 5000; i++) {
+            builder.append("<p>text " + i + "</p>");
+        }
+        final String document = builder.toString();
+
+        final MarkupParser parser = new MarkupParser(ParseConfiguration.htmlConfiguration());
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+
+            final CountingMarkupHandler counting = new CountingMarkupHandler();
+            counting.failOn = "boom";
+            final AsyncMarkupHandler handler = new AsyncMarkupHandler(counting, executor, 4);
+            try {
+                parser.parse(document, handler);
+                fail();
+            } catch (final ParseException e) {
+                assertEquals("boom", e.getMessage());
+            }
+            assertFalse(counting.documentEnded);
+
+            counting.failOn = null;
+            counting.openElements = 0;
+            parser.parse(document, handler);
+            assertEquals(10001, counting.openElements);
+            assertTrue(counting.documentEnded);
+
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+
+    public void testStopParsing() throws Exception {
+
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append("<p>text " + i + "</p>");
+        }
+        final String document = builder.toString();
+
+        final MarkupParser parser = new MarkupParser(ParseConfiguration.htmlConfiguration());
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+
+            final CountingMarkupHandler counting = new CountingMarkupHandler();
+            counting.stopAfter = 10;
+            parser.parse(document, new AsyncMarkupHandler(counting, executor, 2));
+            assertEquals(10, counting.openElements);
+            assertTrue(counting.documentEnded);
+
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+
+
+
+    private static String output(
+            final ParseConfiguration configuration, final String document, final Executor executor,
+            final int segments) throws Exception {
+        final StringWriter writer = new StringWriter();
+        final AsyncMarkupHandler handler =
+                new AsyncMarkupHandler(new OutputMarkupHandler(writer), executor, segments);
+        new MarkupParser(configuration).parse(new StringReader(document), handler);
+        return writer.toString();
+    }
+
+
+
+
+    private static final class CountingMarkupHandler extends AbstractMarkupHandler {
+
+        private ParseStatus status;
+        String failOn = null;
+        int stopAfter = -1;
+        int openElements = 0;
+        boolean documentEnded = false;
+
+        @Override
+        public void setParseStatus(final ParseStatus status) {
+            this.status = status;
+        }
+
+        @Override
+        public void handleDocumentStart(final long startTimeNanos, final int line, final int col) {
+            this.documentEnded = false;
+        }
+
+        @Override
+        public void handleDocumentEnd(
+                final long endTimeNanos, final long totalTimeNanos, final int line, final int col) {
+            this.documentEnded = true;
+        }
+
+        @Override
+        public void handleOpenElementStart(
+                final char[] buffer, final int nameOffset, final int nameLen, final int line, final int col) {
+            this.openElements++;
+            if (this.openElements == this.stopAfter) {
+                this.status.stopParsing();
+            }
+        }
+
+        @Override
+        public void handleText(
+                final char[] buffer, final int offset, final int len, final int line, final int col)
+                throws ParseException {
+            if (this.failOn != null && this.failOn.equals(new String(buffer, offset, len))) {
+                throw new ParseException(this.failOn);
+            }
+        }
+
+    }
+
+
+}
@@ -0,0 +1,263 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser.tape;
+
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+import org.attoparser.AbstractChainedMarkupHandler;
+import org.attoparser.MarkupParser;
+import org.attoparser.ParseException;
+import org.attoparser.ParseStatus;
+import org.attoparser.config.ParseConfiguration;
+import org.attoparser.output.OutputMarkupHandler;
+
+/*
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+public class MarkupTapeCacheTest extends TestCase {
+
+
+    public void testHitsAndMisses() throws Exception {
+
+        final MarkupParser parser = new MarkupParser(ParseConfiguration.htmlConfiguration());
+        final MarkupTapeCache cache = new MarkupTapeCache(parser, 1024 * 1024);
+
+        final String doc1 = "<div class=\"one\"><p>First<p>Second</div>";
+        final String doc2 = "<ul><li>1<li>2</ul>";
+
+        assertEquals(doc1, output(cache, doc1));
+        assertEquals(doc1, output(cache, doc1));
+        assertEquals(doc1, output(cache, new StringBuilder(doc1)));
+        assertEquals(doc2, output(cache, doc2));
+
+        final StringWriter writer = new StringWriter();
+        cache.parse(doc2.toCharArray(), 0, doc2.length(), new OutputMarkupHandler(writer));
+        assertEquals(doc2, writer.toString());
+
+        MarkupTapeCacheStatistics statistics = cache.getStatistics();
+        assertEquals(3L, statistics.getHits());
+        assertEquals(2L, statistics.getMisses());
+        assertEquals(2, statistics.getEntries());
+        assertTrue(statistics.getSize() > 0L);
+
+        // Errors are not cached
+        final ParseConfiguration xmlConfig = ParseConfiguration.xmlConfiguration();
+        final MarkupTapeCache xmlCache = new MarkupTapeCache(new MarkupParser(xmlConfig), 1024 * 1024);
+        for (int i = 0; i < 2; i++) {
+            try {
+                output(xmlCache, "<root><a></root>");
+                fail();
+            } catch (final ParseException e) {
+                // expected
+            }
+        }
+        assertEquals(0, xmlCache.getStatistics().getEntries());
+
+        cache.clear();
+        statistics = cache.getStatistics();
+        assertEquals(0, statistics.getEntries());
+        assertEquals(0L, statistics.getSize());
+
+    }
+
+
+    public void testEviction() throws Exception {
+
+        final MarkupParser parser = new MarkupParser(ParseConfiguration.htmlConfiguration());
+
+        final String[] docs = new String[10];
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = "<div id=\"d" + i + "\">Document number " + i + "</div>";
+        }
+
+        final MarkupTapeCache probe = new MarkupTapeCache(parser, Long.MAX_VALUE);
+        output(probe, docs[0]);
+        final long entrySize = probe.getStatistics().getSize();
+
+        // Room for three entries only
+        final MarkupTapeCache cache = new MarkupTapeCache(parser, (entrySize * 3) + (entrySize / 2));
+        for (final String doc : docs) {
+            output(cache, doc);
+            // Keep the first document recently used
+            output(cache, docs[0]);
+        }
+
+        final MarkupTapeCacheStatistics statistics = cache.getStatistics();
+        assertEquals(3, statistics.getEntries());
+        assertEquals(7L, statistics.getEvictions());
+        assertTrue(statistics.getSize() <= (entrySize * 3) + (entrySize / 2));
+
+        final long hitsBefore = statistics.getHits();
+        output(cache, docs[0]);
+        output(cache, docs[9]);
+        assertEquals(hitsBefore + 2, cache.getStatistics().getHits());
+
+        // Documents that would never fit are not cached
+        final MarkupTapeCache tinyCache = new MarkupTapeCache(parser, 10);
+        assertEquals(docs[0], output(tinyCache, docs[0]));
+        assertEquals(0, tinyCache.getStatistics().getEntries());
+
+    }
+
+
+    public void testPaths() throws Exception {
+
+        final MarkupTapeCache cache =
+                new MarkupTapeCache(new MarkupParser(ParseConfiguration.htmlConfiguration()), 1024 * 1024);
+
+        final Path file = Files.createTempFile("attoparser-cache", ".html");
+        try {
+
+            final Charset utf8 = Charset.forName("UTF-8");
+            Files.write(file, "<p>one</p>".getBytes(utf8));
+
+            assertEquals("<p>one</p>", output(cache, file, utf8));
+            assertEquals("<p>one</p>", output(cache, file, utf8));
+            assertEquals(1L, cache.getStatistics().getHits());
+
+            // Modified files are parsed again
+            Files.write(file, "<p>two!</p>".getBytes(utf8));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10000L));
+            assertEquals("<p>two!</p>", output(cache, file, utf8));
+            assertEquals(2L, cache.getStatistics().getMisses());
+            // The tape for the previous version of the file is dropped
+            assertEquals(1, cache.getStatistics().getEntries());
+
+        } finally {
+            Files.delete(file);
+        }
+
+    }
+
+
+    public void testStopParsing() throws Exception {
+
+        final MarkupTapeCache cache =
+                new MarkupTapeCache(new MarkupParser(ParseConfiguration.htmlConfiguration()), 1024 * 1024);
+        final String doc = "<div><p>one</p><p>two</p></div><span>three</span>";
+
+        // Both when parsing (miss) and when replaying a cached tape (hit), handlers can stop parsing
+        for (int i = 0; i < 2; i++) {
+            final StringWriter writer = new StringWriter();
+            cache.parse(doc, new AbstractChainedMarkupHandler(new OutputMarkupHandler(writer)) {
+
+                private ParseStatus status;
+
+                @Override
+                public void setParseStatus(final ParseStatus status) {
+                    this.status = status;
+                    super.setParseStatus(status);
+                }
+
+                @Override
+                public void handleCloseElementEnd(
+                        final char[] buffer, final int nameOffset, final int nameLen, final int line, final int col)
+                        throws ParseException {
+                    super.handleCloseElementEnd(buffer, nameOffset, nameLen, line, col);
+                    this.status.stopParsing();
+                }
+
+            });
+            assertEquals("<div><p>one</p>", writer.toString());
+        }
+        assertEquals(1L, cache.getStatistics().getHits());
+
+        // Stopping does not affect the cached tape
+        assertEquals(doc, output(cache, doc));
+
+    }
+
+
+    public void testConcurrency() throws Exception {
+
+        final MarkupParser parser = new MarkupParser(ParseConfiguration.htmlConfiguration());
+        final String[] docs = new String[20];
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = "<html><body><div id=\"d" + i + "\"><p>Document<p>number " + i + "</div></body></html>";
+        }
+
+        final MarkupTapeCache probe = new MarkupTapeCache(parser, Long.MAX_VALUE);
+        output(probe, docs[0]);
+        final long maxSize = probe.getStatistics().getSize() * 8;
+        final MarkupTapeCache cache = new MarkupTapeCache(parser, maxSize);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 8; t++) {
+                final int seed = t;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        for (int i = 0; i < 500; i++) {
+                            final String doc = docs[(i * (seed + 1)) % docs.length];
+                            if (!doc.equals(output(cache, doc))) {
+                                return Boolean.FALSE;
+                            }
+                        }
+                        return Boolean.TRUE;
+                    }
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                assertTrue(result.get().booleanValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        final MarkupTapeCacheStatistics statistics = cache.getStatistics();
+        assertEquals(8L * 500L, statistics.getHits() + statistics.getMisses());
+        assertTrue(statistics.getSize() <= maxSize);
+        assertTrue(statistics.getEntries() <= 8);
+
+    }
+
+
+
+
+    private static String output(final MarkupTapeCache cache, final CharSequence document) throws Exception {
+        final StringWriter writer = new StringWriter();
+        cache.parse(document, new OutputMarkupHandler(writer));
+        return writer.toString();
+    }
+
+
+    private static String output(final MarkupTapeCache cache, final Path path, final Charset charset)
+            throws Exception {
+        final StringWriter writer = new StringWriter();
+        cache.parse(path, charset, new OutputMarkupHandler(writer));
+        return writer.toString();
+    }
+
+
+}
@@ -0,0 +1,163 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser.tape;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import junit.framework.TestCase;
+import org.attoparser.MarkupParser;
+import org.attoparser.ParseException;
+import org.attoparser.config.ParseConfiguration;
+import org.attoparser.output.OutputMarkupHandler;
+import org.attoparser.select.BlockSelectorMarkupHandler;
+
+/*
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+public class MarkupTapeCompilerTest extends TestCase {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String HTML =
+            "<!DOCTYPE html>\n<html><head><title>T\u00edtulo</title></head>\n" +
+            "<body><div class=\"a\"><p>One<p>Two</div><!-- c --></body></html>";
+
+
+
+    public void testWriteAndRead() throws Exception {
+
+        final TapeBuilderMarkupHandler tapeBuilder = new TapeBuilderMarkupHandler();
+        new MarkupParser(ParseConfiguration.htmlConfiguration()).parse(HTML, tapeBuilder);
+        final MarkupTape tape = tapeBuilder.getTape();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tape.write(out);
+        final byte[] bytes = out.toByteArray();
+
+        // Some bytes before the tape should not matter
+        final ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 3);
+        buffer.position(3);
+        buffer.put(bytes);
+        buffer.position(3);
+
+        final MarkupTape readTape = MarkupTape.read(buffer, null);
+        assertEquals(3, buffer.position());
+        assertEquals(tape.getEventsSize(), readTape.getEventsSize());
+        assertEquals(tape.getCharsSize(), readTape.getCharsSize());
+        assertEquals(
+                ParseConfiguration.ParsingMode.HTML, readTape.getParseConfiguration().getMode());
+        assertEquals(HTML, output(readTape));
+
+        final StringWriter selected = new StringWriter();
+        readTape.replay(new BlockSelectorMarkupHandler(new OutputMarkupHandler(selected), "p"));
+        assertEquals("<p>One<p>Two", selected.toString());
+
+        // Any modification should be detected
+        for (final int position : new int[] { 0, 5, 30, bytes.length / 2, bytes.length - 1 }) {
+            final byte[] corrupted = bytes.clone();
+            corrupted[position] ^= 0x10;
+            try {
+                MarkupTape.read(ByteBuffer.wrap(corrupted), null);
+                fail();
+            } catch (final IOException e) {
+                // expected
+            }
+        }
+        try {
+            MarkupTape.read(ByteBuffer.wrap(bytes, 0, bytes.length - 1), null);
+            fail();
+        } catch (final IOException e) {
+            // expected
+        }
+
+    }
+
+
+
+    public void testCompileAll() throws Exception {
+
+        final Path sourceDir = Files.createTempDirectory("attoparser-source");
+        final Path targetDir = Files.createTempDirectory("attoparser-target");
+        try {
+
+            Files.createDirectories(sourceDir.resolve("sub"));
+            Files.write(sourceDir.resolve("index.html"), HTML.getBytes(UTF8));
+            Files.write(sourceDir.resolve("sub/fragment.html"), "<p>fragment<br></p>".getBytes(UTF8));
+
+            final MarkupTapeCompiler compiler =
+                    new MarkupTapeCompiler(new MarkupParser(ParseConfiguration.htmlConfiguration()), UTF8);
+            assertEquals(2, compiler.compileAll(sourceDir, targetDir));
+
+            final Path indexTape = targetDir.resolve("index.html" + MarkupTapeCompiler.TAPE_FILE_EXTENSION);
+            final Path fragmentTape = targetDir.resolve("sub/fragment.html" + MarkupTapeCompiler.TAPE_FILE_EXTENSION);
+            assertEquals(HTML, output(MarkupTape.read(indexTape, null)));
+            assertEquals("<p>fragment<br></p>", output(MarkupTape.read(fragmentTape, null)));
+
+            // Parsing errors are reported along with the file
+            final ParseConfiguration xmlConfig = ParseConfiguration.xmlConfiguration();
+            final MarkupTapeCompiler xmlCompiler = new MarkupTapeCompiler(new MarkupParser(xmlConfig), UTF8);
+            try {
+                xmlCompiler.compileAll(sourceDir, targetDir);
+                fail();
+            } catch (final ParseException e) {
+                assertTrue(e.getMessage().contains(".html"));
+            }
+
+        } finally {
+            deleteAll(targetDir);
+            deleteAll(sourceDir);
+        }
+
+    }
+
+
+
+
+    private static String output(final MarkupTape tape) throws Exception {
+        final StringWriter writer = new StringWriter();
+        tape.replay(new OutputMarkupHandler(writer));
+        return writer.toString();
+    }
+
+
+    private static void deleteAll(final Path dir) throws IOException {
+        final Path sub = dir.resolve("sub");
+        if (Files.isDirectory(sub)) {
+            for (final Path file : Files.newDirectoryStream(sub)) {
+                Files.delete(file);
+            }
+            Files.delete(sub);
+        }
+        for (final Path file : Files.newDirectoryStream(dir)) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+
+}
@@ -0,0 +1,173 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2012-2014, The ATTOPARSER team (http://www.attoparser.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.attoparser.tape;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+import org.attoparser.IMarkupHandler;
+import org.attoparser.MarkupParser;
+import org.attoparser.config.ParseConfiguration;
+import org.attoparser.minimize.MinimizeHtmlMarkupHandler;
+import org.attoparser.output.OutputMarkupHandler;
+import org.attoparser.select.BlockSelectorMarkupHandler;
+import org.attoparser.trace.MarkupTraceEvent;
+import org.attoparser.trace.TraceBuilderMarkupHandler;
+
+/*
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+public class TapeBuilderMarkupHandlerTest extends TestCase {
+
+
+    private static final String HTML =
+            "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Strict//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd\">\n" +
+            "<html>\n<head>\n  <title>The   title</title>\n" +
+            "  <script>if (a < b) { x = \"</div>\"; }</script>\n</head>\n<body>\n" +
+            "  <!-- a comment -->\n" +
+            "  <div   class = \"one two\" id='main'  hidden data-x=y>\n" +
+            "    <p>One<p>Two <br/> <img src=\"a.png\" >\n" +
+            "    <ul><li>1<li>2</ul>\n" +
+            "  </div>\n" +
+            "  <span th:fragment=\"frag\">fragment <b>text</b></span>\n" +
+            "  </p></div >\n" +
+            "</body>\n</html>\n";
+
+    private static final String XML =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+            "<!DOCTYPE catalog [ <!ELEMENT catalog ANY> ]>\n" +
+            "<?pi some content ?>\n" +
+            "<catalog>\n" +
+            "  <product id=\"1\" name='one'><![CDATA[ <raw> ]]></product>\n" +
+            "  <product id=\"2\"/>\n" +
+            "</catalog>";
+
+
+
+    public void testReplay() throws Exception {
+
+        final ParseConfiguration htmlConfig = ParseConfiguration.htmlConfiguration();
+        final ParseConfiguration xmlConfig = ParseConfiguration.xmlConfiguration();
+
+        for (final int bufferSize : new int[] { 7, 50, 4096 }) {
+
+            final MarkupTape htmlTape = record(htmlConfig, bufferSize, HTML);
+            final MarkupTape xmlTape = record(xmlConfig, bufferSize, XML);
+
+            assertSame(htmlConfig, htmlTape.getParseConfiguration());
+            assertTrue(htmlTape.getCharsSize() <= HTML.length() + 200);
+
+            // Output
+            assertEquals(HTML, output(htmlTape, null));
+            assertEquals(XML, output(xmlTape, null));
+
+            // Events, including auto-open and auto-close ones added during parsing
+            for (final String document : new String[] { HTML, XML }) {
+                final ParseConfiguration config = (document == HTML ? htmlConfig : xmlConfig);
+                final TraceBuilderMarkupHandler parsedTrace = new TraceBuilderMarkupHandler();
+                new MarkupParser(config).parse(document, parsedTrace);
+                final TraceBuilderMarkupHandler replayedTrace = new TraceBuilderMarkupHandler();
+                (document == HTML ? htmlTape : xmlTape).replay(replayedTrace);
+                assertEquals(traceToString(parsedTrace), traceToString(replayedTrace));
+                assertTrue(traceToString(replayedTrace).contains(document == HTML ? "ACES(li)" : "CD( <raw> )"));
+            }
+
+            // Minimization
+            final StringWriter minimizedWriter = new StringWriter();
+            new MarkupParser(htmlConfig).parse(
+                    HTML,
+                    new MinimizeHtmlMarkupHandler(
+                            MinimizeHtmlMarkupHandler.MinimizeMode.COMPLETE, new OutputMarkupHandler(minimizedWriter)));
+            assertEquals(
+                    minimizedWriter.toString(),
+                    output(htmlTape, MinimizeHtmlMarkupHandler.MinimizeMode.COMPLETE));
+
+            // Selection
+            for (final String selector : new String[] { "div", "[th:fragment='frag']", "li", "p" }) {
+                final StringWriter selectedWriter = new StringWriter();
+                new MarkupParser(htmlConfig).parse(
+                        HTML, new BlockSelectorMarkupHandler(new OutputMarkupHandler(selectedWriter), selector));
+                final StringWriter replayedWriter = new StringWriter();
+                htmlTape.replay(new BlockSelectorMarkupHandler(new OutputMarkupHandler(replayedWriter), selector));
+                assertEquals(selectedWriter.toString(), replayedWriter.toString());
+                assertTrue(replayedWriter.toString().length() > 0);
+            }
+
+            // Tapes can be replayed any number of times
+            assertEquals(HTML, output(htmlTape, null));
+
+        }
+
+    }
+
+
+
+    public void testReuse() throws Exception {
+
+        final MarkupParser parser = new MarkupParser(ParseConfiguration.xmlConfiguration());
+        final TapeBuilderMarkupHandler tapeBuilder = new TapeBuilderMarkupHandler();
+
+        parser.parse(XML, tapeBuilder);
+        final MarkupTape first = tapeBuilder.getTape();
+        parser.parse("<root>other</root>", tapeBuilder);
+        final MarkupTape second = tapeBuilder.getTape();
+
+        assertEquals(XML, output(first, null));
+        assertEquals("<root>other</root>", output(second, null));
+
+    }
+
+
+
+
+    private static MarkupTape record(
+            final ParseConfiguration config, final int bufferSize, final String document) throws Exception {
+        final TapeBuilderMarkupHandler tapeBuilder = new TapeBuilderMarkupHandler();
+        new MarkupParser(config, 2, bufferSize).parse(new StringReader(document), tapeBuilder);
+        return tapeBuilder.getTape();
+    }
+
+
+    private static String output(
+            final MarkupTape tape, final MinimizeHtmlMarkupHandler.MinimizeMode minimizeMode) throws Exception {
+        final StringWriter writer = new StringWriter();
+        final IMarkupHandler outputHandler = new OutputMarkupHandler(writer);
+        tape.replay(minimizeMode == null ? outputHandler : new MinimizeHtmlMarkupHandler(minimizeMode, outputHandler));
+        return writer.toString();
+    }
+
+
+    private static String traceToString(final TraceBuilderMarkupHandler traceHandler) {
+        final StringBuilder strBuilder = new StringBuilder();
+        for (final MarkupTraceEvent event : traceHandler.getTrace()) {
+            // Document start and end events include times
+            if (event.getEventType() != MarkupTraceEvent.EventType.DOCUMENT_START &&
+                    event.getEventType() != MarkupTraceEvent.EventType.DOCUMENT_END) {
+                strBuilder.append(event);
+            }
+        }
+        return strBuilder.toString();
+    }
+
+
+}
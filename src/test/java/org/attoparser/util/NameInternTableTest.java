@@ -0,0 +1,131 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2014, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.attoparser.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+/*
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+public class NameInternTableTest extends TestCase {
+
+
+    public void testIntern() throws Exception {
+
+        final NameInternTable table = new NameInternTable(64);
+
+        final char[] buffer = "<div class=\"a\"><DIV>".toCharArray();
+        final char[] div = table.internChars(buffer, 1, 3);
+        assertEquals("div", new String(div));
+        assertSame(div, table.internChars("div".toCharArray(), 0, 3));
+        assertSame(table.internString(buffer, 1, 3), table.internString("xdiv".toCharArray(), 1, 3));
+        assertEquals("class", table.internString(buffer, 5, 5));
+
+        // Names are case-sensitive
+        assertEquals("DIV", new String(table.internChars(buffer, 16, 3)));
+        assertNotSame(div, table.internChars(buffer, 16, 3));
+
+        // Long names are never interned
+        final char[] longName = new char[NameInternTable.MAX_NAME_LEN + 1];
+        Arrays.fill(longName, 'x');
+        assertNotSame(
+                table.internChars(longName, 0, longName.length), table.internChars(longName, 0, longName.length));
+        assertEquals(new String(longName), table.internString(longName, 0, longName.length));
+
+    }
+
+
+    public void testBounded() throws Exception {
+
+        final NameInternTable table = new NameInternTable(64);
+
+        for (int i = 0; i < 10000; i++) {
+            final char[] name = ("name" + i).toCharArray();
+            assertEquals("name" + i, table.internString(name, 0, name.length));
+        }
+
+        // Recently interned names are still there
+        final char[] last = "name9999".toCharArray();
+        assertSame(table.internChars(last, 0, last.length), table.internChars(last, 0, last.length));
+
+    }
+
+
+    public void testFixedNames() throws Exception {
+
+        final NameInternTable table = new NameInternTable(8, Arrays.asList("div", "span", "class"));
+
+        final char[] div = table.internChars("<div>".toCharArray(), 1, 3);
+        assertEquals("div", new String(div));
+
+        // Fixed names are never replaced
+        for (int i = 0; i < 1000; i++) {
+            final char[] name = ("name" + i).toCharArray();
+            table.internChars(name, 0, name.length);
+        }
+        assertSame(div, table.internChars("div".toCharArray(), 0, 3));
+        assertSame(table.internString("class".toCharArray(), 0, 5), table.internString("xclass".toCharArray(), 1, 5));
+        assertEquals("SPAN", table.internString("SPAN".toCharArray(), 0, 4));
+
+    }
+
+
+    public void testConcurrency() throws Exception {
+
+        final NameInternTable table = new NameInternTable(256);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        for (int i = 0; i < 20000; i++) {
+                            final String name = "n" + (i % 500);
+                            final char[] chars = name.toCharArray();
+                            if (!name.equals(new String(table.internChars(chars, 0, chars.length))) ||
+                                    !name.equals(table.internString(chars, 0, chars.length))) {
+                                return Boolean.FALSE;
+                            }
+                        }
+                        return Boolean.TRUE;
+                    }
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                assertTrue(result.get().booleanValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+
+}
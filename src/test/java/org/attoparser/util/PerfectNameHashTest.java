@@ -0,0 +1,94 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2014, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.attoparser.util;
+
+import java.util.Set;
+
+import junit.framework.TestCase;
+import org.attoparser.HtmlVocabulary;
+
+/*
+ *
+ * @author Daniel Fernandez
+ * @since 2.0.6
+ */
+public class PerfectNameHashTest extends TestCase {
+
+
+    public void testStandardNames() throws Exception {
+
+        check(HtmlVocabulary.getStandardElementNames());
+        check(HtmlVocabulary.getStandardAttributeNames());
+
+    }
+
+
+    public void testCaseSensitivity() throws Exception {
+
+        final String[] names = new String[] { "li", "td", "th", "tr", "title" };
+
+        final PerfectNameHash caseInsensitive = new PerfectNameHash(names, false);
+        assertEquals(5, caseInsensitive.size());
+        assertEquals(1, caseInsensitive.indexOf("<TD>".toCharArray(), 1, 2));
+        assertEquals(4, caseInsensitive.indexOf("TiTlE".toCharArray(), 0, 5));
+        assertEquals(-1, caseInsensitive.indexOf("tx".toCharArray(), 0, 2));
+        assertEquals(-1, caseInsensitive.indexOf("tt".toCharArray(), 0, 0));
+
+        final PerfectNameHash caseSensitive = new PerfectNameHash(names, true);
+        assertEquals(2, caseSensitive.indexOf("th".toCharArray(), 0, 2));
+        assertEquals(-1, caseSensitive.indexOf("TH".toCharArray(), 0, 2));
+
+        // Names that cannot be told apart by their length, first, middle and last chars
+        final PerfectNameHash similar = new PerfectNameHash(new String[] { "abxcd", "abycd", "abzcd" }, false);
+        assertEquals(1, similar.indexOf("ABYCD".toCharArray(), 0, 5));
+        assertEquals(-1, similar.indexOf("abwcd".toCharArray(), 0, 5));
+
+        try {
+            new PerfectNameHash(new String[] { "li", "li" }, true);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+
+    }
+
+
+
+
+    private static void check(final Set<String> nameSet) {
+
+        final String[] names = nameSet.toArray(new String[nameSet.size()]);
+        final PerfectNameHash hash = new PerfectNameHash(names, false);
+
+        for (int i = 0; i < names.length; i++) {
+            final char[] name = ("<" + names[i] + ">").toCharArray();
+            assertEquals(i, hash.indexOf(name, 1, name.length - 2));
+            final char[] upperName = names[i].toUpperCase().toCharArray();
+            assertEquals(i, hash.indexOf(upperName, 0, upperName.length));
+            final char[] otherName = (names[i] + "x").toCharArray();
+            if (!nameSet.contains(new String(otherName))) {
+                assertEquals(-1, hash.indexOf(otherName, 0, otherName.length));
+            }
+        }
+
+    }
+
+
+}